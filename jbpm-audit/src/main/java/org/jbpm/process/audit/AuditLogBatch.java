@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Audit log entries collected within single transaction by {@link WriteBehindDbLogger}.
+ * New log entries are kept as they are until the batch is written so any change made to them
+ * later in the same transaction (e.g. work item id set after node was triggered) is part of the
+ * single insert. Entries that were already written before are merged. Completion of process instances
+ * that were started in another transaction is recorded as an update of the existing log entry.
+ */
+public class AuditLogBatch implements Serializable {
+
+    private static final long serialVersionUID = -3406282553317616442L;
+
+    private List<Object> inserts = new ArrayList<Object>();
+    private List<Object> updates = new ArrayList<Object>();
+    private List<ProcessInstanceLog> completions = new ArrayList<ProcessInstanceLog>();
+
+    private transient Set<Object> pending;
+
+    public void insert(Object log) {
+        inserts.add(log);
+        pendingLogs().add(log);
+    }
+
+    public void update(Object log) {
+        updates.add(log);
+    }
+
+    public void complete(ProcessInstanceLog log) {
+        completions.add(log);
+    }
+
+    /**
+     * Returns true if given log entry was added to this batch and thus can still be modified.
+     */
+    public boolean contains(Object log) {
+        return log != null && pendingLogs().contains(log);
+    }
+
+    public int size() {
+        return inserts.size() + updates.size() + completions.size();
+    }
+
+    public boolean isEmpty() {
+        return inserts.isEmpty() && updates.isEmpty() && completions.isEmpty();
+    }
+
+    /**
+     * Writes all entries of this batch with given entity manager - it's up to the caller to provide transaction
+     * and to flush the entity manager. Can be invoked again after a failed attempt - ids generated
+     * by the rolled back attempt are cleared so the entries are persisted as new ones.
+     */
+    @SuppressWarnings("unchecked")
+    public void write(EntityManager em) {
+        for (Object log : inserts) {
+            clearId(log);
+            em.persist(log);
+        }
+        for (Object log : updates) {
+            em.merge(log);
+        }
+        for (ProcessInstanceLog completed : completions) {
+            List<ProcessInstanceLog> result = em.createQuery(
+                    "from ProcessInstanceLog as log where log.processInstanceId = :piId and log.end is null")
+                    .setParameter("piId", completed.getProcessInstanceId()).getResultList();
+            if (result != null && !result.isEmpty()) {
+                ProcessInstanceLog log = result.get(result.size() - 1);
+                log.setOutcome(completed.getOutcome());
+                log.setStatus(completed.getStatus());
+                log.setEnd(completed.getEnd());
+                // completion entry was not built from the stored log so duration needs to be computed again
+                log.setDuration(log.getStart() != null ? completed.getEnd().getTime() - log.getStart().getTime() : completed.getDuration());
+                log.setProcessInstanceDescription(completed.getProcessInstanceDescription());
+            }
+        }
+    }
+
+    private void clearId(Object log) {
+        if (log instanceof ProcessInstanceLog) {
+            ((ProcessInstanceLog) log).setId(0);
+        } else if (log instanceof NodeInstanceLog) {
+            ((NodeInstanceLog) log).setId(0);
+        } else if (log instanceof VariableInstanceLog) {
+            ((VariableInstanceLog) log).setId(0);
+        }
+    }
+
+    private Set<Object> pendingLogs() {
+        if (pending == null) {
+            pending = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            pending.addAll(inserts);
+        }
+        return pending;
+    }
+
+    @Override
+    public String toString() {
+        return "AuditLogBatch [inserts=" + inserts.size() + ", updates=" + updates.size() + ", completions=" + completions.size() + "]";
+    }
+}
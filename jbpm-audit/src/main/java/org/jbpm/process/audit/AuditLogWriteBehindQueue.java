@@ -0,0 +1,405 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.drools.persistence.api.TransactionManager;
+import org.drools.persistence.api.TransactionManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous writer of {@link AuditLogBatch}es used by {@link WriteBehindDbLogger}. Committed batches are put
+ * into bounded in memory queue (org.jbpm.audit.writebehind.capacity system property, defaults to 1000 batches)
+ * and written by single background thread, each batch in its own transaction, in the order they were committed.
+ * <br/>
+ * Batch that cannot be written is retried (with a pause) before any later batch is written. After
+ * org.jbpm.audit.writebehind.retries attempts (defaults to 5) it is considered poisoned and moved to the dead
+ * letter directory (<code>failed</code> sub directory of the overflow directory) so it does not block the others.
+ * <br/>
+ * When the queue is full batches are stored in overflow directory (org.jbpm.audit.writebehind.overflow.dir
+ * system property, defaults to jbpm-audit-overflow in temp directory) and written once the queue is drained.
+ * As long as there are overflow files new batches go to the overflow directory as well so batches are written
+ * in the order they were committed. Overflow is bounded (org.jbpm.audit.writebehind.overflow.max, defaults to
+ * 10000 batches) - once full, committing threads wait for the writer to catch up. Overflow files left from
+ * previous run are written when the queue is started.
+ * <br/>
+ * Queue is stopped (remaining batches are moved to overflow directory) by {@link #stop()}, when the owning
+ * {@link WriteBehindDbLogger} is disposed or when JVM shuts down.
+ */
+public class AuditLogWriteBehindQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogWriteBehindQueue.class);
+
+    private static final String OVERFLOW_PREFIX = "audit-";
+    private static final String OVERFLOW_SUFFIX = ".batch";
+    private static final String DEAD_LETTER_DIR = "failed";
+
+    private final EntityManagerFactory emf;
+    private final boolean jta;
+    private final BlockingQueue<AuditLogBatch> queue;
+    private final File overflowDir;
+    private final File deadLetterDir;
+    private final int maxRetries;
+    private final int maxOverflow;
+
+    // batches put into the in memory queue that were not written yet (including the one being written)
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger overflowCount = new AtomicInteger();
+    private final AtomicLong overflowSequence = new AtomicLong();
+    private final Object overflowLock = new Object();
+
+    // overflow file that failed to be written and number of attempts made
+    private String failingFile;
+    private int failingAttempts;
+
+    private long retryDelay = 1000;
+
+    private volatile boolean running;
+    private Thread worker;
+    private Thread shutdownHook;
+
+    public AuditLogWriteBehindQueue(EntityManagerFactory emf) {
+        this(emf, true);
+    }
+
+    public AuditLogWriteBehindQueue(EntityManagerFactory emf, boolean jta) {
+        this(emf, jta, Integer.parseInt(System.getProperty("org.jbpm.audit.writebehind.capacity", "1000")),
+                new File(System.getProperty("org.jbpm.audit.writebehind.overflow.dir", new File(System.getProperty("java.io.tmpdir"), "jbpm-audit-overflow").getPath())));
+    }
+
+    public AuditLogWriteBehindQueue(EntityManagerFactory emf, boolean jta, int capacity, File overflowDir) {
+        this(emf, jta, capacity, overflowDir,
+                Integer.parseInt(System.getProperty("org.jbpm.audit.writebehind.retries", "5")),
+                Integer.parseInt(System.getProperty("org.jbpm.audit.writebehind.overflow.max", "10000")));
+    }
+
+    public AuditLogWriteBehindQueue(EntityManagerFactory emf, boolean jta, int capacity, File overflowDir, int maxRetries, int maxOverflow) {
+        this.emf = emf;
+        this.jta = jta;
+        this.queue = new ArrayBlockingQueue<AuditLogBatch>(Math.max(capacity, 1));
+        this.overflowDir = overflowDir;
+        this.deadLetterDir = new File(overflowDir, DEAD_LETTER_DIR);
+        this.maxRetries = Math.max(maxRetries, 1);
+        this.maxOverflow = Math.max(maxOverflow, 1);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        overflowDir.mkdirs();
+        File[] existing = listOverflowFiles();
+        overflowCount.set(existing.length);
+        if (existing.length > 0) {
+            logger.info("Found {} audit log batches in overflow directory {} that will be written", existing.length, overflowDir);
+        }
+        running = true;
+        worker = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                process();
+            }
+        }, "jbpm-audit-write-behind");
+        worker.setDaemon(true);
+        worker.start();
+
+        shutdownHook = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                stop();
+            }
+        }, "jbpm-audit-write-behind-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Stops the background writer, batches that were not written yet are moved to the overflow directory.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (overflowLock) {
+            AuditLogBatch batch;
+            while ((batch = queue.poll()) != null) {
+                queued.decrementAndGet();
+                overflow(batch);
+            }
+            overflowLock.notifyAll();
+        }
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM is shutting down already
+            }
+        }
+        shutdownHook = null;
+    }
+
+    /**
+     * @param retryDelay pause (ms) before a batch that could not be written is retried
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void offer(AuditLogBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // keep the order - once batches overflow all new ones go there until overflow is written,
+        // the check and the enqueue happen under the lock so no batch can pass one that is just overflowing
+        synchronized (overflowLock) {
+            if (overflowCount.get() == 0) {
+                queued.incrementAndGet();
+                if (queue.offer(batch)) {
+                    return;
+                }
+                queued.decrementAndGet();
+            }
+            awaitOverflowSpace();
+            overflow(batch);
+        }
+    }
+
+    public int size() {
+        return queue.size() + overflowCount.get();
+    }
+
+    /**
+     * Returns true when all offered batches were written (or moved to dead letter directory).
+     */
+    public boolean isIdle() {
+        return queued.get() == 0 && overflowCount.get() == 0;
+    }
+
+    public File getDeadLetterDir() {
+        return deadLetterDir;
+    }
+
+    protected void process() {
+        // batch is kept until it is written (or given up) so no later batch is written before it
+        AuditLogBatch batch = null;
+        int attempts = 0;
+        while (running) {
+            try {
+                if (batch == null) {
+                    batch = queue.poll(1, TimeUnit.SECONDS);
+                    attempts = 0;
+                    if (batch == null) {
+                        if (overflowCount.get() > 0) {
+                            processOverflow();
+                        }
+                        continue;
+                    }
+                }
+                attempts++;
+                if (write(batch)) {
+                    batch = null;
+                    queued.decrementAndGet();
+                } else if (attempts >= maxRetries) {
+                    logger.error("Audit log batch {} could not be written after {} attempts, moving it to {}", batch, attempts, deadLetterDir);
+                    store(batch, deadLetterDir);
+                    batch = null;
+                    queued.decrementAndGet();
+                } else {
+                    pause();
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            } catch (Throwable e) {
+                logger.error("Unexpected error in audit log write behind queue", e);
+            }
+        }
+        if (batch != null) {
+            // goes to overflow before batches still in the queue
+            overflow(batch);
+            queued.decrementAndGet();
+        }
+    }
+
+    protected void processOverflow() throws InterruptedException {
+        for (File file : listOverflowFiles()) {
+            if (!running) {
+                return;
+            }
+            AuditLogBatch batch;
+            try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+                batch = (AuditLogBatch) in.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                logger.error("Unable to read audit log batch from {}, moving it to {}", file, deadLetterDir, e);
+                moveToDeadLetter(file);
+                continue;
+            }
+            if (!write(batch)) {
+                failingAttempts = file.getName().equals(failingFile) ? failingAttempts + 1 : 1;
+                failingFile = file.getName();
+                if (failingAttempts < maxRetries) {
+                    pause();
+                    return;
+                }
+                logger.error("Audit log batch {} from {} could not be written after {} attempts, moving it to {}", batch, file, failingAttempts, deadLetterDir);
+                moveToDeadLetter(file);
+                continue;
+            }
+            failingFile = null;
+            if (file.delete()) {
+                overflowWritten();
+            }
+        }
+    }
+
+    protected boolean write(AuditLogBatch batch) {
+        TransactionManager txm = null;
+        boolean transactionOwner = false;
+        EntityManager em = null;
+        try {
+            em = emf.createEntityManager();
+            if (jta) {
+                txm = TransactionManagerFactory.get().newTransactionManager();
+                transactionOwner = txm.begin();
+                em.joinTransaction();
+            } else {
+                em.getTransaction().begin();
+            }
+            batch.write(em);
+            em.flush();
+            if (jta) {
+                txm.commit(transactionOwner);
+            } else {
+                em.getTransaction().commit();
+            }
+            return true;
+        } catch (Throwable e) {
+            logger.warn("Unable to write audit log batch {} due to {}", batch, e.getMessage());
+            try {
+                if (jta && txm != null) {
+                    txm.rollback(transactionOwner);
+                } else if (em != null && em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+            } catch (Throwable re) {
+                logger.debug("Error when rolling back audit log transaction", re);
+            }
+            return false;
+        } finally {
+            if (em != null && em.isOpen()) {
+                em.close();
+            }
+        }
+    }
+
+    protected void overflow(AuditLogBatch batch) {
+        if (store(batch, overflowDir)) {
+            overflowCount.incrementAndGet();
+        }
+    }
+
+    protected boolean store(AuditLogBatch batch, File dir) {
+        dir.mkdirs();
+        // sequence keeps files of the same millisecond ordered
+        File file = new File(dir, String.format("%s%013d-%09d%s", OVERFLOW_PREFIX, System.currentTimeMillis(), overflowSequence.incrementAndGet() % 1000000000, OVERFLOW_SUFFIX));
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+            out.writeObject(batch);
+            return true;
+        } catch (IOException e) {
+            logger.error("Unable to store audit log batch {} in directory {}, entries are lost", batch, dir, e);
+            file.delete();
+            return false;
+        }
+    }
+
+    protected void moveToDeadLetter(File file) {
+        deadLetterDir.mkdirs();
+        if (!file.renameTo(new File(deadLetterDir, file.getName()))) {
+            logger.error("Unable to move {} to {}, it is removed", file, deadLetterDir);
+            file.delete();
+        }
+        failingFile = null;
+        overflowWritten();
+    }
+
+    protected File[] listOverflowFiles() {
+        File[] files = overflowDir.listFiles((dir, name) -> name.startsWith(OVERFLOW_PREFIX) && name.endsWith(OVERFLOW_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private void overflowWritten() {
+        synchronized (overflowLock) {
+            overflowCount.decrementAndGet();
+            overflowLock.notifyAll();
+        }
+    }
+
+    /*
+     * blocks caller while overflow is full and the writer is running so it can catch up
+     */
+    private void awaitOverflowSpace() {
+        if (overflowCount.get() < maxOverflow || !running) {
+            return;
+        }
+        logger.warn("Audit log overflow directory {} is full ({} batches), waiting for batches to be written", overflowDir, maxOverflow);
+        synchronized (overflowLock) {
+            while (running && overflowCount.get() >= maxOverflow) {
+                try {
+                    overflowLock.wait(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void pause() throws InterruptedException {
+        Thread.sleep(retryDelay);
+    }
+}
@@ -55,6 +55,7 @@ public class AuditLoggerFactory {
      * <bold>JMS</bold>
      * <ul>
      * <li>jbpm.audit.jms.transacted - determines if JMS session is transacted or not - default true - type Boolean</li>
+     * <li>jbpm.audit.jms.batch - determines if events of a transaction are sent as single message - default false - type Boolean</li>
      * <li>jbpm.audit.jms.connection.factory - connection factory instance - type javax.jms.ConnectionFactory</li>
      * <li>jbpm.audit.jms.queue - JMS queue instance - type javax.jms.Queue</li>
      * <li>jbpm.audit.jms.connection.factory.jndi - JNDI name of the connection factory to look up - type String</li>
@@ -78,6 +79,9 @@ public class AuditLoggerFactory {
                 }
                 
                 logger = new AsyncAuditLogProducer(ksession, transacted);
+                if (properties.containsKey("jbpm.audit.jms.batch")) {
+                    ((AsyncAuditLogProducer) logger).setBatched((Boolean) properties.get("jbpm.audit.jms.batch"));
+                }
                 // set connection factory and queue if given as property
                 if (properties.containsKey("jbpm.audit.jms.connection.factory")) {
                     ConnectionFactory connFactory = (ConnectionFactory) properties.get("jbpm.audit.jms.connection.factory"); 
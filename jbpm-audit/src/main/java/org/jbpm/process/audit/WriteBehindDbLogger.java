@@ -0,0 +1,305 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.drools.persistence.api.TransactionManager;
+import org.drools.persistence.api.TransactionManagerFactory;
+import org.drools.persistence.api.TransactionSynchronization;
+import org.jbpm.process.audit.variable.ProcessIndexerManager;
+import org.jbpm.process.instance.impl.ProcessInstanceImpl;
+import org.jbpm.workflow.instance.impl.NodeInstanceImpl;
+import org.kie.api.event.KieRuntimeEvent;
+import org.kie.api.event.process.ProcessCompletedEvent;
+import org.kie.api.event.process.ProcessNodeLeftEvent;
+import org.kie.api.event.process.ProcessNodeTriggeredEvent;
+import org.kie.api.event.process.ProcessStartedEvent;
+import org.kie.api.event.process.ProcessVariableChangedEvent;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Alternative to {@link JPAWorkingMemoryDbLogger} that does not write log entries as events occur but collects
+ * them for the whole transaction into {@link AuditLogBatch} and writes them together:
+ * <ul>
+ *  <li>synchronously - right before the transaction completes, within the same transaction</li>
+ *  <li>asynchronously - after the transaction was committed, by given {@link AuditLogWriteBehindQueue}</li>
+ * </ul>
+ * As log entries are written once they are final, node instance logs updated after the node was triggered
+ * and process instance logs of processes that completed in the same transaction are inserted just once instead of
+ * being inserted and updated. All inserts of the transaction are flushed together so they can be sent as JDBC
+ * batch when the persistence unit enables it (hibernate.jdbc.batch_size).
+ * <br/>
+ * Events that occur outside of a transaction are written immediately.
+ */
+public class WriteBehindDbLogger extends AbstractAuditLogger {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindDbLogger.class);
+
+    private EntityManagerFactory emf;
+    private AuditLogWriteBehindQueue writeBehindQueue;
+    private boolean stopQueueOnDispose;
+    private TransactionManager transactionManager;
+
+    private ProcessIndexerManager indexManager = ProcessIndexerManager.get();
+
+    public WriteBehindDbLogger() {
+        // default constructor when this is used with a persistent KieSession
+    }
+
+    public WriteBehindDbLogger(KieSession session) {
+        session.addEventListener(this);
+    }
+
+    public WriteBehindDbLogger(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /**
+     * Creates logger that writes log entries asynchronously with given queue once transaction is committed.
+     */
+    public WriteBehindDbLogger(AuditLogWriteBehindQueue writeBehindQueue) {
+        this(writeBehindQueue, false);
+    }
+
+    /**
+     * Creates logger that writes log entries asynchronously with given queue once transaction is committed.
+     * @param stopQueueOnDispose if the queue belongs to this logger only and should be stopped (remaining
+     * batches moved to overflow directory) when the logger is disposed
+     */
+    public WriteBehindDbLogger(AuditLogWriteBehindQueue writeBehindQueue, boolean stopQueueOnDispose) {
+        this.writeBehindQueue = writeBehindQueue;
+        this.stopQueueOnDispose = stopQueueOnDispose;
+    }
+
+    @Override
+    public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+        NodeInstanceLog log = (NodeInstanceLog) builder.buildEvent(event);
+        getBatch(event).insert(log);
+        ((NodeInstanceImpl) event.getNodeInstance()).getMetaData().put("NodeInstanceLog", log);
+    }
+
+    @Override
+    public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+        // within transaction log is still in the batch so the change becomes part of the insert
+        NodeInstanceLog log = (NodeInstanceLog) ((NodeInstanceImpl) event.getNodeInstance()).getMetaData().get("NodeInstanceLog");
+        NodeInstanceLog updated = (NodeInstanceLog) builder.buildEvent(event, log);
+        if (updated != null && (updated.getWorkItemId() != null || updated.getReferenceId() != null)) {
+            AuditLogBatch batch = getBatch(event);
+            if (!batch.contains(updated)) {
+                batch.update(updated);
+            }
+        }
+    }
+
+    @Override
+    public void afterNodeLeft(ProcessNodeLeftEvent event) {
+        NodeInstanceLog log = (NodeInstanceLog) builder.buildEvent(event, null);
+        getBatch(event).insert(log);
+    }
+
+    @Override
+    public void afterVariableChanged(ProcessVariableChangedEvent event) {
+        List<org.kie.api.runtime.manager.audit.VariableInstanceLog> variables = indexManager.index(getBuilder(), event);
+        AuditLogBatch batch = getBatch(event);
+        for (org.kie.api.runtime.manager.audit.VariableInstanceLog log : variables) {
+            batch.insert(log);
+        }
+    }
+
+    @Override
+    public void beforeProcessStarted(ProcessStartedEvent event) {
+        ProcessInstanceLog log = (ProcessInstanceLog) builder.buildEvent(event);
+        getBatch(event).insert(log);
+        ((ProcessInstanceImpl) event.getProcessInstance()).getMetaData().put("ProcessInstanceLog", log);
+    }
+
+    @Override
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        AuditLogBatch batch = getBatch(event);
+        ProcessInstanceLog log = (ProcessInstanceLog) ((ProcessInstanceImpl) event.getProcessInstance()).getMetaData().get("ProcessInstanceLog");
+        if (batch.contains(log)) {
+            // started within the same transaction, complete the log before it's inserted
+            builder.buildEvent(event, log);
+        } else {
+            // log was already handed over for writing, record the completion as an update
+            batch.complete((ProcessInstanceLog) builder.buildEvent(event, null));
+        }
+    }
+
+    @Override
+    public void beforeNodeLeft(ProcessNodeLeftEvent event) {
+    }
+
+    @Override
+    public void beforeVariableChanged(ProcessVariableChangedEvent event) {
+    }
+
+    @Override
+    public void afterProcessStarted(ProcessStartedEvent event) {
+    }
+
+    @Override
+    public void beforeProcessCompleted(ProcessCompletedEvent event) {
+    }
+
+    /**
+     * Returns batch of the current transaction, if there is no active transaction returned batch is written
+     * as soon as the event is processed.
+     */
+    protected AuditLogBatch getBatch(final KieRuntimeEvent event) {
+        TransactionManager txm = getTransactionManager(event);
+        if (txm.getStatus() != TransactionManager.STATUS_ACTIVE) {
+            return new ImmediateAuditLogBatch(event);
+        }
+        AuditLogBatch batch = (AuditLogBatch) txm.getResource(this);
+        if (batch == null) {
+            final AuditLogBatch transactionBatch = new AuditLogBatch();
+            txm.putResource(this, transactionBatch);
+            txm.registerTransactionSynchronization(new TransactionSynchronization() {
+
+                @Override
+                public void beforeCompletion() {
+                    if (writeBehindQueue == null && !transactionBatch.isEmpty()) {
+                        write(transactionBatch, event);
+                    }
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (writeBehindQueue != null && status == TransactionManager.STATUS_COMMITTED) {
+                        writeBehindQueue.offer(transactionBatch);
+                    }
+                }
+            });
+            batch = transactionBatch;
+        }
+        return batch;
+    }
+
+    protected void write(AuditLogBatch batch, KieRuntimeEvent event) {
+        logger.debug("Writing {}", batch);
+        Environment env = event.getKieRuntime().getEnvironment();
+        EntityManager em = getSharedEntityManager(env);
+        if (em != null) {
+            batch.write(em);
+            em.flush();
+            return;
+        }
+        EntityManagerFactory factory = emf != null ? emf : (EntityManagerFactory) env.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
+        if (factory == null) {
+            throw new RuntimeException("Could not find or create a new EntityManager!");
+        }
+        em = factory.createEntityManager();
+        try {
+            em.joinTransaction();
+            batch.write(em);
+            em.flush();
+        } finally {
+            em.close();
+        }
+    }
+
+    protected EntityManager getSharedEntityManager(Environment env) {
+        if (emf != null || env == null) {
+            return null;
+        }
+        EntityManager em = null;
+        if (env.get(EnvironmentName.TRANSACTION_MANAGER) instanceof TransactionManager) {
+            em = (EntityManager) ((TransactionManager) env.get(EnvironmentName.TRANSACTION_MANAGER)).getResource(EnvironmentName.CMD_SCOPED_ENTITY_MANAGER);
+        }
+        if (em == null) {
+            em = (EntityManager) env.get(EnvironmentName.CMD_SCOPED_ENTITY_MANAGER);
+        }
+        return em != null && em.isOpen() ? em : null;
+    }
+
+    protected TransactionManager getTransactionManager(KieRuntimeEvent event) {
+        Object txm = event.getKieRuntime().getEnvironment().get(EnvironmentName.TRANSACTION_MANAGER);
+        if (txm instanceof TransactionManager) {
+            return (TransactionManager) txm;
+        }
+        if (transactionManager == null) {
+            transactionManager = TransactionManagerFactory.get().newTransactionManager();
+        }
+        return transactionManager;
+    }
+
+    public void dispose() {
+        if (writeBehindQueue != null && stopQueueOnDispose) {
+            writeBehindQueue.stop();
+        }
+    }
+
+    /*
+     * Batch used outside of transaction - writes every entry right away
+     */
+    private class ImmediateAuditLogBatch extends AuditLogBatch {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient KieRuntimeEvent event;
+
+        ImmediateAuditLogBatch(KieRuntimeEvent event) {
+            this.event = event;
+        }
+
+        @Override
+        public void insert(Object log) {
+            AuditLogBatch batch = new AuditLogBatch();
+            batch.insert(log);
+            flush(batch);
+        }
+
+        @Override
+        public void update(Object log) {
+            AuditLogBatch batch = new AuditLogBatch();
+            batch.update(log);
+            flush(batch);
+        }
+
+        @Override
+        public void complete(ProcessInstanceLog log) {
+            AuditLogBatch batch = new AuditLogBatch();
+            batch.complete(log);
+            flush(batch);
+        }
+
+        private void flush(AuditLogBatch batch) {
+            if (writeBehindQueue != null) {
+                writeBehindQueue.offer(batch);
+                return;
+            }
+            TransactionManager txm = getTransactionManager(event);
+            boolean transactionOwner = txm.begin();
+            try {
+                write(batch, event);
+                txm.commit(transactionOwner);
+            } catch (RuntimeException e) {
+                txm.rollback(transactionOwner);
+                throw e;
+            }
+        }
+    }
+}
@@ -26,16 +26,21 @@ import javax.jms.Queue;
 import javax.jms.Session;
 import javax.jms.TextMessage;
 
+import org.drools.persistence.api.TransactionManager;
+import org.drools.persistence.api.TransactionManagerFactory;
+import org.drools.persistence.api.TransactionSynchronization;
 import org.jbpm.process.audit.AbstractAuditLogger;
 import org.jbpm.process.audit.NodeInstanceLog;
 import org.jbpm.process.audit.ProcessInstanceLog;
 import org.jbpm.process.audit.variable.ProcessIndexerManager;
 import org.jbpm.workflow.instance.impl.NodeInstanceImpl;
 import org.kie.api.event.process.ProcessCompletedEvent;
+import org.kie.api.event.process.ProcessEvent;
 import org.kie.api.event.process.ProcessNodeLeftEvent;
 import org.kie.api.event.process.ProcessNodeTriggeredEvent;
 import org.kie.api.event.process.ProcessStartedEvent;
 import org.kie.api.event.process.ProcessVariableChangedEvent;
+import org.kie.api.runtime.EnvironmentName;
 import org.kie.api.runtime.KieSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,14 +67,28 @@ import static org.kie.internal.xstream.XStreamUtils.createXStream;
  * </ul>
  * 
  * Default receiver is <code>AsyncAuditLogReceiver</code> class
+ * <br/>
+ * When batching is enabled (org.jbpm.audit.jms.batch system property or <code>setBatched</code>) events produced
+ * within a transaction are collected and sent as single message (with EventType property set to
+ * <code>BATCH_EVENT_TYPE</code> and content being serialized <code>AuditEventBatch</code>) right before the
+ * transaction completes, so single connection and session is used per transaction instead of per event.
+ * Events produced outside of a transaction, as well as events produced by other transaction synchronizations
+ * after the batch was sent, are always sent right away.
  */
 public class AsyncAuditLogProducer extends AbstractAuditLogger {
     
     private static final Logger logger = LoggerFactory.getLogger(AsyncAuditLogProducer.class);
 
+    public static final int BATCH_EVENT_TYPE = -1;
+
     private ConnectionFactory connectionFactory;    
     private Queue queue;
     private boolean transacted = true;
+    private boolean batched = Boolean.parseBoolean(System.getProperty("org.jbpm.audit.jms.batch", "false"));
+
+    // configured xstream instance is thread safe so it is shared by all messages
+    private final XStream xstream = createMessageXStream();
+    private TransactionManager transactionManager;
     
     private ProcessIndexerManager indexManager = ProcessIndexerManager.get();
 
@@ -102,35 +121,35 @@ public class AsyncAuditLogProducer extends AbstractAuditLogger {
     @Override
     public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
         NodeInstanceLog log = (NodeInstanceLog) builder.buildEvent(event);
-        sendMessage(log, BEFORE_NODE_ENTER_EVENT_TYPE);
+        sendMessage(log, BEFORE_NODE_ENTER_EVENT_TYPE, event);
         ((NodeInstanceImpl) event.getNodeInstance()).getMetaData().put("NodeInstanceLog", log);
     }
 
     @Override
     public void afterNodeLeft(ProcessNodeLeftEvent event) {
         NodeInstanceLog log = (NodeInstanceLog) builder.buildEvent(event, null);
-        sendMessage(log, AFTER_NODE_LEFT_EVENT_TYPE);   
+        sendMessage(log, AFTER_NODE_LEFT_EVENT_TYPE, event);
     }
 
     @Override
     public void afterVariableChanged(ProcessVariableChangedEvent event) {
         List<org.kie.api.runtime.manager.audit.VariableInstanceLog> variables = indexManager.index(getBuilder(), event);
         for (org.kie.api.runtime.manager.audit.VariableInstanceLog log : variables) {  
-            sendMessage(log, AFTER_VAR_CHANGE_EVENT_TYPE);   
+            sendMessage(log, AFTER_VAR_CHANGE_EVENT_TYPE, event);
         }
     }
 
     @Override
     public void beforeProcessStarted(ProcessStartedEvent event) {
         ProcessInstanceLog log = (ProcessInstanceLog) builder.buildEvent(event);
-        sendMessage(log, BEFORE_START_EVENT_TYPE);
+        sendMessage(log, BEFORE_START_EVENT_TYPE, event);
         
     }
 
     @Override
     public void afterProcessCompleted(ProcessCompletedEvent event) {
         ProcessInstanceLog log = (ProcessInstanceLog) builder.buildEvent(event, null);
-        sendMessage(log, AFTER_COMPLETE_EVENT_TYPE);
+        sendMessage(log, AFTER_COMPLETE_EVENT_TYPE, event);
     }
     
     @Override
@@ -139,7 +158,7 @@ public class AsyncAuditLogProducer extends AbstractAuditLogger {
     	NodeInstanceLog log = (NodeInstanceLog) ((NodeInstanceImpl) event.getNodeInstance()).getMetaData().get("NodeInstanceLog");
     	NodeInstanceLog logUpdated = (NodeInstanceLog) builder.buildEvent(event, log);
     	if (logUpdated != null) {
-    		sendMessage(log, AFTER_NODE_ENTER_EVENT_TYPE);
+    		sendMessage(log, AFTER_NODE_ENTER_EVENT_TYPE, event);
     	}
     }
 
@@ -161,6 +180,56 @@ public class AsyncAuditLogProducer extends AbstractAuditLogger {
     public void beforeProcessCompleted(ProcessCompletedEvent event) {
     }
     
+    protected void sendMessage(Object messageContent, Integer eventType, ProcessEvent event) {
+        if (!batched) {
+            sendMessage(messageContent, eventType);
+            return;
+        }
+        TransactionManager txm = getTransactionManager(event);
+        if (txm.getStatus() != TransactionManager.STATUS_ACTIVE) {
+            sendMessage(messageContent, eventType);
+            return;
+        }
+        AuditEventBatch batch = (AuditEventBatch) txm.getResource(this);
+        if (batch != null && batch.isSent()) {
+            // produced by another synchronization after the batch of the transaction was already sent
+            logger.debug("Audit event of type {} produced after batch of the transaction was sent, sending it on its own", eventType);
+            sendMessage(messageContent, eventType);
+            return;
+        }
+        if (batch == null) {
+            final AuditEventBatch transactionBatch = new AuditEventBatch();
+            txm.putResource(this, transactionBatch);
+            txm.registerTransactionSynchronization(new TransactionSynchronization() {
+
+                @Override
+                public void beforeCompletion() {
+                    transactionBatch.markSent();
+                    if (!transactionBatch.isEmpty()) {
+                        sendMessage(transactionBatch, BATCH_EVENT_TYPE);
+                    }
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                }
+            });
+            batch = transactionBatch;
+        }
+        batch.add(messageContent, eventType);
+    }
+
+    protected TransactionManager getTransactionManager(ProcessEvent event) {
+        Object txm = event.getKieRuntime().getEnvironment().get(EnvironmentName.TRANSACTION_MANAGER);
+        if (txm instanceof TransactionManager) {
+            return (TransactionManager) txm;
+        }
+        if (transactionManager == null) {
+            transactionManager = TransactionManagerFactory.get().newTransactionManager();
+        }
+        return transactionManager;
+    }
+
     protected void sendMessage(Object messageContent, Integer eventType) {
         if (connectionFactory == null && queue == null) {
             throw new IllegalStateException("ConnectionFactory and Queue cannot be null");
@@ -172,12 +241,12 @@ public class AsyncAuditLogProducer extends AbstractAuditLogger {
             queueConnection = connectionFactory.createConnection();
             queueSession = queueConnection.createSession(transacted, Session.AUTO_ACKNOWLEDGE);
            
-            XStream xstream = createXStream();
-            String[] voidDeny = {"void.class", "Void.class"};
-            xstream.denyTypes(voidDeny);
             String eventXml = xstream.toXML(messageContent);
             TextMessage message = queueSession.createTextMessage(eventXml);
             message.setIntProperty("EventType", eventType);
+            if (messageContent instanceof AuditEventBatch) {
+                message.setIntProperty("EventCount", ((AuditEventBatch) messageContent).size());
+            }
             producer = queueSession.createProducer(queue);            
             producer.send(message);
         } catch (Exception e) {
@@ -209,6 +278,21 @@ public class AsyncAuditLogProducer extends AbstractAuditLogger {
         }
     }
 
+    static XStream createMessageXStream() {
+        XStream xstream = createXStream();
+        String[] voidDeny = {"void.class", "Void.class"};
+        xstream.denyTypes(voidDeny);
+        return xstream;
+    }
+
+    public boolean isBatched() {
+        return batched;
+    }
+
+    public void setBatched(boolean batched) {
+        this.batched = batched;
+    }
+
     public boolean isTransacted() {
         return transacted;
     }
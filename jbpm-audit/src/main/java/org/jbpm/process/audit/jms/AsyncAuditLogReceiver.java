@@ -31,8 +31,6 @@ import org.jbpm.process.audit.ProcessInstanceLog;
 
 import com.thoughtworks.xstream.XStream;
 
-import static org.kie.internal.xstream.XStreamUtils.createXStream;
-
 /**
  * Asynchronous audit event receiver. Receives messages from JMS queue
  * that it is attached to as <code>MessageListener</code>.
@@ -40,7 +38,8 @@ import static org.kie.internal.xstream.XStreamUtils.createXStream;
  * (producer is provide by <code>AsyncAuditLogProducer</code> class).
  * Thus it shares the same message format that is TextMessage with 
  * Xstream serialized *Log classes (ProcessInstanceLog,
- * NodeInstanceLog, VaraiableInstanceLog) as content.
+ * NodeInstanceLog, VaraiableInstanceLog) as content. Batches of events (<code>AuditEventBatch</code>)
+ * are stored using single entity manager and thus within the transaction the message is received in.
  * 
  * by default it uses entity manager factory and creates entity manager for each message
  * although it provides getEntityManager method that can be overloaded by extensions to supply 
@@ -56,12 +55,13 @@ import static org.kie.internal.xstream.XStreamUtils.createXStream;
 public class AsyncAuditLogReceiver implements MessageListener {
     
     private EntityManagerFactory entityManagerFactory;
+
+    private final XStream xstream = AsyncAuditLogProducer.createMessageXStream();
     
     public AsyncAuditLogReceiver(EntityManagerFactory entityManagerFactory) {
         this.entityManagerFactory = entityManagerFactory;
     }
     
-    @SuppressWarnings("unchecked")
     @Override
     public void onMessage(Message message) {
         if (message instanceof TextMessage) {
@@ -70,48 +70,16 @@ public class AsyncAuditLogReceiver implements MessageListener {
             try {
                 String messageContent = textMessage.getText();
                 Integer eventType = textMessage.getIntProperty("EventType");
-                XStream xstream = createXStream();
-                String[] voidDeny = {"void.class", "Void.class"};
-                xstream.denyTypes(voidDeny);
                 Object event = xstream.fromXML(messageContent);
                 
-                switch (eventType) {
-                case AbstractAuditLogger.AFTER_NODE_ENTER_EVENT_TYPE:
-                    NodeInstanceLog nodeAfterEnterEvent = (NodeInstanceLog) event;
-                    if (nodeAfterEnterEvent.getWorkItemId() != null) {
-                    List<NodeInstanceLog> result = em.createQuery(
-                            "from NodeInstanceLog as log where log.nodeInstanceId = :nodeId and log.type = 0")
-                            .setParameter("nodeId", nodeAfterEnterEvent.getNodeInstanceId()).getResultList();
-                            
-                            if (result != null && result.size() != 0) {
-                            	NodeInstanceLog log = result.get(result.size() - 1);
-                               log.setWorkItemId(nodeAfterEnterEvent.getWorkItemId());
-                               
-                               
-                               em.merge(log);   
-                           }
+                if (eventType == AsyncAuditLogProducer.BATCH_EVENT_TYPE) {
+                    // all events of the batch are stored with the same entity manager
+                    AuditEventBatch batch = (AuditEventBatch) event;
+                    for (int i = 0; i < batch.size(); i++) {
+                        processEvent(em, batch.getEvent(i), batch.getEventType(i));
                     }
-                    break;
-                
-                case AbstractAuditLogger.AFTER_COMPLETE_EVENT_TYPE:
-                    ProcessInstanceLog processCompletedEvent = (ProcessInstanceLog) event;
-                    List<ProcessInstanceLog> result = em.createQuery(
-                            "from ProcessInstanceLog as log where log.processInstanceId = :piId and log.end is null")
-                            .setParameter("piId", processCompletedEvent.getProcessInstanceId()).getResultList();
-                            
-                            if (result != null && result.size() != 0) {
-                               ProcessInstanceLog log = result.get(result.size() - 1);
-                               log.setOutcome(processCompletedEvent.getOutcome());
-                               log.setStatus(processCompletedEvent.getStatus());
-                               log.setEnd(processCompletedEvent.getEnd());
-                               log.setDuration(processCompletedEvent.getDuration());
-                               
-                               em.merge(log);   
-                           }
-                    break;
-                default:
-                    em.persist(event);
-                    break;
+                } else {
+                    processEvent(em, event, eventType);
                 }
                 em.flush();
                 em.close();
@@ -123,6 +91,47 @@ public class AsyncAuditLogReceiver implements MessageListener {
 
     }
 
+    @SuppressWarnings("unchecked")
+    protected void processEvent(EntityManager em, Object event, Integer eventType) {
+        switch (eventType) {
+        case AbstractAuditLogger.AFTER_NODE_ENTER_EVENT_TYPE:
+            NodeInstanceLog nodeAfterEnterEvent = (NodeInstanceLog) event;
+            if (nodeAfterEnterEvent.getWorkItemId() != null) {
+                List<NodeInstanceLog> result = em.createQuery(
+                        "from NodeInstanceLog as log where log.nodeInstanceId = :nodeId and log.type = 0")
+                        .setParameter("nodeId", nodeAfterEnterEvent.getNodeInstanceId()).getResultList();
+
+                if (result != null && result.size() != 0) {
+                    NodeInstanceLog log = result.get(result.size() - 1);
+                    log.setWorkItemId(nodeAfterEnterEvent.getWorkItemId());
+
+                    em.merge(log);
+                }
+            }
+            break;
+
+        case AbstractAuditLogger.AFTER_COMPLETE_EVENT_TYPE:
+            ProcessInstanceLog processCompletedEvent = (ProcessInstanceLog) event;
+            List<ProcessInstanceLog> result = em.createQuery(
+                    "from ProcessInstanceLog as log where log.processInstanceId = :piId and log.end is null")
+                    .setParameter("piId", processCompletedEvent.getProcessInstanceId()).getResultList();
+
+            if (result != null && result.size() != 0) {
+                ProcessInstanceLog log = result.get(result.size() - 1);
+                log.setOutcome(processCompletedEvent.getOutcome());
+                log.setStatus(processCompletedEvent.getStatus());
+                log.setEnd(processCompletedEvent.getEnd());
+                log.setDuration(processCompletedEvent.getDuration());
+
+                em.merge(log);
+            }
+            break;
+        default:
+            em.persist(event);
+            break;
+        }
+    }
+
     public EntityManagerFactory getEntityManagerFactory() {
         return entityManagerFactory;
     }
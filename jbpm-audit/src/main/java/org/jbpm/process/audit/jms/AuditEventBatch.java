@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit.jms;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Audit events (*Log instances) produced within single transaction together with their event types,
+ * in the order they were produced. Sent by <code>AsyncAuditLogProducer</code> as single message
+ * when batching is enabled.
+ */
+public class AuditEventBatch implements Serializable {
+
+    private static final long serialVersionUID = 4113962357391780826L;
+
+    private List<Integer> eventTypes = new ArrayList<Integer>();
+    private List<Object> events = new ArrayList<Object>();
+    // not part of the message, set once the batch was handed over for sending
+    private transient boolean sent;
+
+    public void add(Object event, Integer eventType) {
+        events.add(event);
+        eventTypes.add(eventType);
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    public boolean isEmpty() {
+        return events.isEmpty();
+    }
+
+    public boolean isSent() {
+        return sent;
+    }
+
+    public void markSent() {
+        this.sent = true;
+    }
+
+    public Object getEvent(int index) {
+        return events.get(index);
+    }
+
+    public Integer getEventType(int index) {
+        return eventTypes.get(index);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import static org.jbpm.persistence.util.PersistenceUtil.JBPM_PERSISTENCE_UNIT_NAME;
+import static org.jbpm.persistence.util.PersistenceUtil.cleanUp;
+import static org.jbpm.persistence.util.PersistenceUtil.setupWithPoolingDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.runtime.EnvironmentName;
+
+/**
+ * This class tests the following classes:
+ * <ul>
+ * <li>AuditLogWriteBehindQueue writing to data base when first attempt fails</li>
+ * </ul>
+ */
+public class AuditLogWriteBehindQueueRetryTest {
+
+    private HashMap<String, Object> context;
+    private EntityManagerFactory emf;
+    private AuditLogWriteBehindQueue queue;
+    private File overflowDir;
+
+    @Before
+    public void setUp() throws Exception {
+        context = setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+        emf = (EntityManagerFactory) context.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
+        overflowDir = Files.createTempDirectory("jbpm-audit-overflow").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (queue != null) {
+            queue.stop();
+        }
+        deleteAll(overflowDir);
+        cleanUp(context);
+    }
+
+    @Test(timeout = 30000)
+    public void testBatchWrittenAfterRolledBackAttempt() throws Exception {
+        queue = new AuditLogWriteBehindQueue(emf, true, 10, overflowDir, 3, 100);
+        queue.setRetryDelay(10);
+        queue.start();
+
+        ProcessInstanceLog processInstanceLog = new ProcessInstanceLog(1, "retried");
+        processInstanceLog.setStart(new Date());
+        processInstanceLog.setStatus(1);
+        NodeInstanceLog nodeInstanceLog = new NodeInstanceLog(0, 1, "retried", "1", "start", "Start");
+        FailingOnceBatch batch = new FailingOnceBatch();
+        batch.insert(processInstanceLog);
+        batch.insert(nodeInstanceLog);
+
+        queue.offer(batch);
+        while (!queue.isIdle()) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(2, batch.attempts.get());
+        File[] deadLetters = queue.getDeadLetterDir().listFiles();
+        assertEquals(0, deadLetters == null ? 0 : deadLetters.length);
+
+        JPAAuditLogService auditLogService = new JPAAuditLogService(emf);
+        try {
+            ProcessInstanceLog stored = auditLogService.findProcessInstance(1);
+            assertNotNull(stored);
+            assertEquals(processInstanceLog.getId(), stored.getId());
+            assertEquals(1, auditLogService.findNodeInstances(1).size());
+        } finally {
+            auditLogService.dispose();
+        }
+    }
+
+    private void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+
+    /*
+     * entries are flushed (ids are generated) before the first attempt fails so the transaction is rolled back
+     */
+    private static class FailingOnceBatch extends AuditLogBatch {
+
+        private static final long serialVersionUID = 1L;
+
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        @Override
+        public void write(EntityManager em) {
+            super.write(em);
+            if (attempts.incrementAndGet() == 1) {
+                em.flush();
+                throw new IllegalStateException("Forced failure of the first attempt");
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AuditLogWriteBehindQueueTest {
+
+    private File overflowDir;
+    private TestQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        overflowDir = Files.createTempDirectory("jbpm-audit-overflow").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (queue != null) {
+            queue.stop();
+        }
+        deleteAll(overflowDir);
+    }
+
+    @Test(timeout = 10000)
+    public void testFailedBatchIsRetriedBeforeLaterBatches() throws Exception {
+        queue = new TestQueue(10, 5, 100);
+        queue.failures.put(1, 2);
+        queue.start();
+
+        queue.offer(batch(1));
+        queue.offer(batch(2));
+        queue.offer(batch(3));
+        awaitIdle();
+
+        assertEquals(Arrays.asList(1, 2, 3), queue.written);
+        assertEquals(0, deadLetters().length);
+    }
+
+    @Test(timeout = 10000)
+    public void testPoisonedBatchMovedToDeadLetterDirectory() throws Exception {
+        queue = new TestQueue(10, 3, 100);
+        queue.failures.put(1, Integer.MAX_VALUE);
+        queue.start();
+
+        queue.offer(batch(1));
+        queue.offer(batch(2));
+        awaitIdle();
+
+        assertEquals(Arrays.asList(2), queue.written);
+        assertEquals(3, queue.attempts(1));
+        assertEquals(1, deadLetters().length);
+    }
+
+    @Test(timeout = 10000)
+    public void testOverflowWrittenInOrderAfterRestart() throws Exception {
+        queue = new TestQueue(1, 5, 100);
+        // not started - first batch stays in the queue, others overflow
+        queue.offer(batch(1));
+        queue.offer(batch(2));
+        queue.offer(batch(3));
+        assertEquals(2, overflowFiles().length);
+
+        queue.start();
+        queue.offer(batch(4));
+        awaitIdle();
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), queue.written);
+        assertEquals(0, overflowFiles().length);
+    }
+
+    @Test(timeout = 10000)
+    public void testStopMovesPendingBatchesToOverflow() throws Exception {
+        queue = new TestQueue(10, 5, 100);
+        queue.failures.put(1, Integer.MAX_VALUE);
+        queue.setRetryDelay(10000);
+        queue.start();
+
+        queue.offer(batch(1));
+        queue.offer(batch(2));
+        while (queue.attempts(1) == 0) {
+            Thread.sleep(10);
+        }
+        queue.stop();
+        assertEquals(2, overflowFiles().length);
+
+        // written in the original order by the next queue
+        queue = new TestQueue(10, 5, 100);
+        queue.start();
+        awaitIdle();
+        assertEquals(Arrays.asList(1, 2), queue.written);
+    }
+
+    @Test(timeout = 10000)
+    public void testLoggerStopsOwnedQueueOnDispose() throws Exception {
+        queue = new TestQueue(10, 5, 100);
+        queue.start();
+        new WriteBehindDbLogger(queue).dispose();
+        assertTrue(queue.isRunning());
+
+        new WriteBehindDbLogger(queue, true).dispose();
+        assertTrue(!queue.isRunning());
+    }
+
+    private AuditLogBatch batch(int size) {
+        AuditLogBatch batch = new AuditLogBatch();
+        for (int i = 0; i < size; i++) {
+            batch.insert("log " + i);
+        }
+        return batch;
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        while (!queue.isIdle()) {
+            Thread.sleep(10);
+        }
+    }
+
+    private File[] overflowFiles() {
+        return queue.listOverflowFiles();
+    }
+
+    private File[] deadLetters() {
+        File[] files = queue.getDeadLetterDir().listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    private void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+
+    /*
+     * records written batches (by their size) instead of writing them to data base
+     */
+    private class TestQueue extends AuditLogWriteBehindQueue {
+
+        private final Map<Integer, Integer> failures = Collections.synchronizedMap(new HashMap<Integer, Integer>());
+        private final Map<Integer, Integer> attempts = Collections.synchronizedMap(new HashMap<Integer, Integer>());
+        private final List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+
+        TestQueue(int capacity, int maxRetries, int maxOverflow) {
+            super(null, false, capacity, overflowDir, maxRetries, maxOverflow);
+            setRetryDelay(10);
+        }
+
+        @Override
+        protected boolean write(AuditLogBatch batch) {
+            int attempt = attempts(batch.size()) + 1;
+            attempts.put(batch.size(), attempt);
+            Integer failing = failures.get(batch.size());
+            if (failing != null && attempt <= failing) {
+                return false;
+            }
+            written.add(batch.size());
+            return true;
+        }
+
+        int attempts(int batch) {
+            Integer count = attempts.get(batch);
+            return count == null ? 0 : count;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import static org.jbpm.persistence.util.PersistenceUtil.createEnvironment;
+import static org.jbpm.process.audit.AbstractAuditLogServiceTest.createKieSession;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.jbpm.process.instance.impl.demo.SystemOutWorkItemHandler;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.process.ProcessInstance;
+
+/**
+ * This class tests the following classes: 
+ * <ul>
+ * <li>WriteBehindDbLogger with AuditLogWriteBehindQueue</li>
+ * </ul>
+ */
+public class WriteBehindDbLoggerAsyncWithPersistentSessionTest extends AbstractWorkingMemoryDbLoggerTest {
+
+    private KieSession ksession = null;
+    private WriteBehindDbLogger auditLogger;
+    private AuditLogWriteBehindQueue queue;
+    private File overflowDir;
+
+    @Override
+    public ProcessInstance startProcess(String processName) {
+        if( ksession == null ) { 
+            KieBase kbase = createKnowledgeBase();
+
+            Environment env = createEnvironment(context);
+            ksession = createKieSession(kbase, env);
+
+            try {
+                overflowDir = Files.createTempDirectory("jbpm-audit-overflow").toFile();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            queue = new AuditLogWriteBehindQueue((EntityManagerFactory) context.get(EnvironmentName.ENTITY_MANAGER_FACTORY), true, 100, overflowDir);
+            queue.start();
+            auditLogger = new WriteBehindDbLogger(queue, true);
+            ksession.addEventListener(auditLogger);
+            ksession.getWorkItemManager().registerWorkItemHandler("Human Task", new SystemOutWorkItemHandler());
+        }
+        ProcessInstance processInstance = ksession.startProcess(processName);
+        awaitWritten();
+        return processInstance;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        if (auditLogger != null) {
+            auditLogger.dispose();
+            assertTrue("Audit log batches left in overflow directory", queue.isIdle());
+            for (File file : overflowDir.listFiles()) {
+                file.delete();
+            }
+            overflowDir.delete();
+        }
+        super.tearDown();
+    }
+
+    private void awaitWritten() {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!queue.isIdle() && System.currentTimeMillis() < timeout) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        assertTrue("Audit log batches were not written in time", queue.isIdle());
+    }
+
+}
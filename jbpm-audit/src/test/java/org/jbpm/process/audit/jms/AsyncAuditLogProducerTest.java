@@ -46,6 +46,8 @@ import javax.transaction.UserTransaction;
 
 import org.hornetq.jms.server.embedded.EmbeddedJMS;
 import org.jboss.narayana.jta.jms.ConnectionFactoryProxy;
+import org.drools.persistence.api.TransactionManager;
+import org.drools.persistence.api.TransactionSynchronization;
 import org.jboss.narayana.jta.jms.TransactionHelperImpl;
 import org.jbpm.process.audit.AbstractAuditLogger;
 import org.jbpm.process.audit.AuditLogService;
@@ -61,6 +63,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.kie.api.KieBase;
+import org.kie.api.event.process.ProcessEvent;
 import org.kie.api.runtime.Environment;
 import org.kie.api.runtime.EnvironmentName;
 import org.kie.api.runtime.KieSession;
@@ -248,6 +251,70 @@ public class AsyncAuditLogProducerTest extends AbstractBaseTest {
         assertTrue(processInstances.isEmpty());
     }
     
+    @Test
+    public void testAsyncAuditProducerTransactionalBatch() throws Exception {
+        UserTransaction ut = InitialContext.doLookup("java:comp/UserTransaction");
+        ut.begin();
+        Environment env = createEnvironment(context);
+        // load the process
+        KieBase kbase = createKnowledgeBase();
+        // create a new session
+        KieSession session = createSession(kbase, env);
+        
+        Map<String, Object> jmsProps = new HashMap<String, Object>();
+        jmsProps.put("jbpm.audit.jms.transacted", true);
+        jmsProps.put("jbpm.audit.jms.batch", true);
+        jmsProps.put("jbpm.audit.jms.connection.factory", factory);
+        jmsProps.put("jbpm.audit.jms.queue", queue);
+        AbstractAuditLogger logger = AuditLoggerFactory.newInstance(Type.JMS, session, jmsProps);
+        assertNotNull(logger);
+        assertTrue(((AsyncAuditLogProducer) logger).isBatched());
+
+        // start process instance
+        session.startProcess("com.sample.ruleflow");
+        
+        ut.commit();
+        
+        MessageReceiver receiver = new MessageReceiver();
+        List<Message> messages = receiver.receive(queue);
+        assertNotNull(messages);
+        assertEquals(1, messages.size());
+        assertEquals(AsyncAuditLogProducer.BATCH_EVENT_TYPE, messages.get(0).getIntProperty("EventType"));
+        assertEquals(11, messages.get(0).getIntProperty("EventCount"));
+    }
+    
+    @Test
+    public void testAsyncAuditLoggerCompleteBatch() throws Exception {
+        UserTransaction ut = InitialContext.doLookup("java:comp/UserTransaction");
+        ut.begin();
+        Environment env = createEnvironment(context);
+        // load the process
+        KieBase kbase = createKnowledgeBase();
+        // create a new session
+        KieSession session = createSession(kbase, env);
+        
+        AsyncAuditLogProducer logger = (AsyncAuditLogProducer) AuditLoggerFactory.newJMSInstance(true, factory, queue);
+        logger.setBatched(true);
+        session.addEventListener(logger);
+
+        // start process instance
+        ProcessInstance processInstance = session.startProcess("com.sample.ruleflow");
+        
+        ut.commit();
+        
+        MessageReceiver receiver = new MessageReceiver();
+        receiver.receiveAndProcess(queue, ((EntityManagerFactory)env.get(EnvironmentName.ENTITY_MANAGER_FACTORY)));
+     
+        // validate if everything is stored in db
+        AuditLogService logService = new JPAAuditLogService(env);
+        List<ProcessInstanceLog> processInstances = logService.findProcessInstances("com.sample.ruleflow");
+        assertEquals(1, processInstances.size());
+        List<NodeInstanceLog> nodeInstances = logService.findNodeInstances(processInstance.getId());
+        assertEquals(6, nodeInstances.size());
+        logService.clear();
+        logService.dispose();
+    }
+    
     @Test
     public void testAsyncAuditLoggerCompleteDirectCreation() throws Exception {
         Environment env = createEnvironment(context);
@@ -440,6 +507,48 @@ public class AsyncAuditLogProducerTest extends AbstractBaseTest {
         assertTrue(processInstances.isEmpty());
     }
     
+    @Test
+    public void testEventProducedAfterBatchWasSentIsNotLost() {
+        final TestTransactionManager txm = new TestTransactionManager();
+        final List<Object> sent = new ArrayList<Object>();
+        final List<Integer> sentTypes = new ArrayList<Integer>();
+        final AsyncAuditLogProducer producer = new AsyncAuditLogProducer() {
+
+            @Override
+            protected TransactionManager getTransactionManager(ProcessEvent event) {
+                return txm;
+            }
+
+            @Override
+            protected void sendMessage(Object messageContent, Integer eventType) {
+                sent.add(messageContent);
+                sentTypes.add(eventType);
+            }
+        };
+        producer.setBatched(true);
+
+        producer.sendMessage(new ProcessInstanceLog(1L, "com.sample.ruleflow"), AbstractAuditLogger.BEFORE_START_EVENT_TYPE, null);
+        producer.sendMessage(new NodeInstanceLog(), AbstractAuditLogger.BEFORE_NODE_ENTER_EVENT_TYPE, null);
+        // another synchronization that produces audit event once the batch is already sent
+        txm.registerTransactionSynchronization(new TransactionSynchronization() {
+
+            @Override
+            public void beforeCompletion() {
+                producer.sendMessage(new ProcessInstanceLog(1L, "com.sample.ruleflow"), AbstractAuditLogger.AFTER_COMPLETE_EVENT_TYPE, null);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+            }
+        });
+        txm.commit(true);
+
+        assertEquals(2, sent.size());
+        assertEquals(AsyncAuditLogProducer.BATCH_EVENT_TYPE, sentTypes.get(0).intValue());
+        assertEquals(2, ((AuditEventBatch) sent.get(0)).size());
+        assertEquals(AbstractAuditLogger.AFTER_COMPLETE_EVENT_TYPE, sentTypes.get(1).intValue());
+    }
+    
     public KieSession createSession(KieBase kbase, Environment env) {
         
         KieSession session = createKieSession(kbase, env);
@@ -521,4 +630,56 @@ public class AsyncAuditLogProducerTest extends AbstractBaseTest {
             return messages;
         }
     }
+    
+    /*
+     * transaction manager that keeps single always active transaction until it is committed
+     */
+    private static class TestTransactionManager implements TransactionManager {
+
+        private final List<TransactionSynchronization> synchronizations = new ArrayList<TransactionSynchronization>();
+        private final Map<Object, Object> resources = new HashMap<Object, Object>();
+        private int status = STATUS_ACTIVE;
+
+        @Override
+        public boolean begin() {
+            return false;
+        }
+
+        @Override
+        public void commit(boolean transactionOwner) {
+            // synchronizations may register other ones while completing
+            for (int i = 0; i < synchronizations.size(); i++) {
+                synchronizations.get(i).beforeCompletion();
+            }
+            status = STATUS_COMMITTED;
+            for (TransactionSynchronization ts : synchronizations) {
+                ts.afterCompletion(status);
+            }
+        }
+
+        @Override
+        public void rollback(boolean transactionOwner) {
+            status = STATUS_ROLLEDBACK;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public void registerTransactionSynchronization(TransactionSynchronization ts) {
+            synchronizations.add(ts);
+        }
+
+        @Override
+        public void putResource(Object key, Object resource) {
+            resources.put(key, resource);
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            return resources.get(key);
+        }
+    }
 }
@@ -17,6 +17,9 @@
 package org.jbpm.casemgmt.impl.generator;
 
 import org.drools.core.command.impl.ExecutableCommand;
+import org.drools.persistence.api.TransactionManager;
+import org.drools.persistence.api.TransactionManagerFactory;
+import org.drools.persistence.api.TransactionSynchronization;
 import org.jbpm.casemgmt.api.generator.CaseIdGenerator;
 import org.jbpm.casemgmt.api.generator.CasePrefixNotFoundException;
 import org.jbpm.shared.services.impl.TransactionalCommandService;
@@ -31,6 +34,10 @@ import javax.persistence.NoResultException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Data base tabled backed case id generator. The underlying table keeps single entry per case prefix and updates it 
@@ -38,6 +45,15 @@ import java.util.Map;
  * 
  * Generation is done with pessimistic locking to secure correctness and since it's the only operation in transaction it should not
  * cause any performance issues.
+ * <br/>
+ * For case definitions with high rate of new cases block allocation can be enabled by setting
+ * org.jbpm.casemgmt.table.generator.block.size system property to value bigger than 1 (default). Then the table entry is
+ * incremented by the block size and ids of the reserved block are handed out from memory, so the row is locked once per block
+ * instead of once per case. Ids remain unique across nodes and increasing on given node, though not consecutive -
+ * unused ids of a block are lost on restart. Reserved block is used by other cases only after the transaction that
+ * reserved it is committed, if it is rolled back the block is discarded. Only one block per prefix is reserved at a time,
+ * callers that run out of ids while a reservation is in progress wait (up to org.jbpm.casemgmt.table.generator.block.wait
+ * milliseconds) for it to complete instead of reserving blocks of their own.
  */
 public class TableCaseIdGenerator implements CaseIdGenerator {
     
@@ -47,10 +63,29 @@ public class TableCaseIdGenerator implements CaseIdGenerator {
     private static final String IDENTIFIER = "DB";
     
     private TransactionalCommandService commandService;
+    private TransactionManager transactionManager;
+
+    private int blockSize = Integer.parseInt(System.getProperty("org.jbpm.casemgmt.table.generator.block.size", "1"));
+    private long blockWait = Long.parseLong(System.getProperty("org.jbpm.casemgmt.table.generator.block.wait", "30000"));
+    private Map<String, IdBlock> blocks = new ConcurrentHashMap<String, IdBlock>();
+    private ConcurrentMap<String, Reservation> reservations = new ConcurrentHashMap<String, Reservation>();
 
     public TableCaseIdGenerator(TransactionalCommandService commandService) {
         this.commandService = commandService;
     }
+
+    public TableCaseIdGenerator(TransactionalCommandService commandService, TransactionManager transactionManager) {
+        this.commandService = commandService;
+        this.transactionManager = transactionManager;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public void setBlockWait(long blockWait) {
+        this.blockWait = blockWait;
+    }
     
     @Override
     public String getIdentifier() {
@@ -83,17 +118,169 @@ public class TableCaseIdGenerator implements CaseIdGenerator {
         } else {
             logger.debug("Skipping remove of case id info for prefix {}", prefix);
         }
-
+        blocks.remove(prefix);
     }
 
     @Override
     public String generate(String prefix, Map<String, Object> optionalParameters) throws CasePrefixNotFoundException {
-        CaseIdInfo caseIdInfo = commandService.execute(new IncrementAndGetCaseIdCommand(prefix));
-        logger.debug("Next sequence value for case id prefix {} is {}", prefix, caseIdInfo.getCurrentValue());
-        long nextVal = caseIdInfo.getCurrentValue();
+        long nextVal;
+        if (blockSize > 1) {
+            nextVal = nextFromBlock(prefix);
+        } else {
+            CaseIdInfo caseIdInfo = commandService.execute(new IncrementAndGetCaseIdCommand(prefix, 1));
+            logger.debug("Next sequence value for case id prefix {} is {}", prefix, caseIdInfo.getCurrentValue());
+            nextVal = caseIdInfo.getCurrentValue();
+        }
         String paddedNumber = String.format("%010d", nextVal);
         return prefix + "-" + paddedNumber;
     }
+
+    protected long nextFromBlock(String prefix) {
+        while (true) {
+            Long published = nextPublished(prefix);
+            if (published != null) {
+                return published;
+            }
+            Reservation reservation = new Reservation();
+            Reservation pending = reservations.putIfAbsent(prefix, reservation);
+            if (pending == null) {
+                // block might have been published between the lookup and taking over the reservation
+                Long nextVal = nextPublished(prefix);
+                if (nextVal != null) {
+                    complete(prefix, reservation, false);
+                    return nextVal;
+                }
+                return reserve(prefix, reservation);
+            }
+            if (pending.owner == Thread.currentThread()) {
+                // same transaction reserved the block so its ids can be used before it is committed
+                Long nextVal = pending.block.next();
+                return nextVal != null ? nextVal : reserveMore(prefix, pending);
+            }
+            try {
+                if (!pending.await(blockWait)) {
+                    logger.warn("Reservation of case ids for prefix {} not completed within {} ms, reserving separate block", prefix, blockWait);
+                    return reserveSeparate(prefix);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for case id reservation of prefix " + prefix, e);
+            }
+        }
+    }
+
+    protected Long nextPublished(String prefix) {
+        IdBlock block = blocks.get(prefix);
+        return block == null ? null : block.next();
+    }
+
+    /*
+     * reserves new block for given prefix, only one thread per prefix is reserving at a time - others wait
+     * for the block to be published and then use it
+     */
+    protected long reserve(String prefix, Reservation reservation) {
+        boolean registered = false;
+        try {
+            reservation.block = incrementAndGet(prefix);
+            long first = reservation.block.next();
+            registered = completeWhenCommitted(prefix, reservation);
+            return first;
+        } finally {
+            if (!registered) {
+                complete(prefix, reservation, reservation.block != null);
+            }
+        }
+    }
+
+    protected long reserveMore(String prefix, Reservation reservation) {
+        // still in the reserving transaction, the newest block is published once it is committed
+        reservation.block = incrementAndGet(prefix);
+        return reservation.block.next();
+    }
+
+    protected long reserveSeparate(String prefix) {
+        final IdBlock block = incrementAndGet(prefix);
+        long first = block.next();
+        TransactionManager txm = getTransactionManager();
+        if (txm.getStatus() == TransactionManager.STATUS_NO_TRANSACTION) {
+            publish(prefix, block);
+        } else {
+            txm.registerTransactionSynchronization(new TransactionSynchronization() {
+
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == TransactionManager.STATUS_COMMITTED) {
+                        publish(prefix, block);
+                    }
+                }
+            });
+        }
+        return first;
+    }
+
+    protected IdBlock incrementAndGet(String prefix) {
+        CaseIdInfo caseIdInfo = commandService.execute(new IncrementAndGetCaseIdCommand(prefix, blockSize));
+        if (caseIdInfo == null) {
+            throw new CasePrefixNotFoundException("Case id prefix " + prefix + " is not registered");
+        }
+        long last = caseIdInfo.getCurrentValue();
+        long first = last - blockSize + 1;
+        logger.debug("Reserved block of case ids {} - {} for prefix {}", first, last, prefix);
+        return new IdBlock(first, last);
+    }
+
+    /*
+     * returns true if the reservation is completed by transaction synchronization
+     */
+    protected boolean completeWhenCommitted(final String prefix, final Reservation reservation) {
+        TransactionManager txm = getTransactionManager();
+        if (txm.getStatus() == TransactionManager.STATUS_NO_TRANSACTION) {
+            return false;
+        }
+        txm.registerTransactionSynchronization(new TransactionSynchronization() {
+
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                boolean committed = status == TransactionManager.STATUS_COMMITTED;
+                if (!committed) {
+                    logger.debug("Reservation of case ids for prefix {} was not committed, discarding the block", prefix);
+                }
+                complete(prefix, reservation, committed);
+            }
+        });
+        return true;
+    }
+
+    protected void complete(String prefix, Reservation reservation, boolean publish) {
+        try {
+            if (publish) {
+                publish(prefix, reservation.block);
+            }
+        } finally {
+            reservations.remove(prefix, reservation);
+            reservation.done.countDown();
+        }
+    }
+
+    protected void publish(String prefix, IdBlock block) {
+        // blocks are reserved in increasing order, keep the newest one
+        blocks.merge(prefix, block, (current, reserved) -> reserved.last > current.last ? reserved : current);
+    }
+
+    protected TransactionManager getTransactionManager() {
+        if (transactionManager == null) {
+            transactionManager = TransactionManagerFactory.get().newTransactionManager();
+        }
+        return transactionManager;
+    }
     
     protected CaseIdInfo findCaseIdInfoByPrefix(String prefix) {
         Map<String, Object> params = new HashMap<String, Object>();
@@ -113,9 +300,11 @@ public class TableCaseIdGenerator implements CaseIdGenerator {
         private static final long serialVersionUID = 8670412133363766162L;
         
         private String prefix;
+        private int increment;
         
-        public IncrementAndGetCaseIdCommand(String prefix) {
+        public IncrementAndGetCaseIdCommand(String prefix, int increment) {
             this.prefix = prefix;
+            this.increment = increment;
         }
 
         @Override
@@ -130,7 +319,7 @@ public class TableCaseIdGenerator implements CaseIdGenerator {
                 caseIdInfo = ctx.queryAndLockWithParametersInTransaction("findCaseIdInfoByPrefix",params, true, CaseIdInfo.class);
                 
                 if (caseIdInfo != null) {
-                    caseIdInfo.setCurrentValue(caseIdInfo.getCurrentValue() + 1);
+                    caseIdInfo.setCurrentValue(caseIdInfo.getCurrentValue() + increment);
                     ctx.merge(caseIdInfo);
                 }
             } catch (NoResultException e) {
@@ -141,4 +330,35 @@ public class TableCaseIdGenerator implements CaseIdGenerator {
         
     }
 
+    protected static class IdBlock {
+
+        private final long last;
+        private long next;
+
+        IdBlock(long next, long last) {
+            this.next = next;
+            this.last = last;
+        }
+
+        synchronized Long next() {
+            if (next > last) {
+                return null;
+            }
+            return next++;
+        }
+    }
+
+    /*
+     * block reservation in progress - owned by the reserving thread until its transaction completes
+     */
+    protected static class Reservation {
+
+        private final Thread owner = Thread.currentThread();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile IdBlock block;
+
+        boolean await(long timeout) throws InterruptedException {
+            return done.await(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
 }
@@ -16,10 +16,13 @@
 
 package org.jbpm.casemgmt.impl.marshalling;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -39,6 +42,14 @@ import org.kie.internal.runtime.Cacheable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Marshalling strategy of {@link CaseFileInstanceImpl} - case file meta data (dates, role assignments and comments)
+ * is serialized together with data entries, each of them marshalled by the first strategy that accepts it.
+ * <br/>
+ * With org.jbpm.casemgmt.casefile.lazy system property set to true data entries are not unmarshalled together with the
+ * case file but only when they are accessed for the first time. Entries that were not accessed are written back in their
+ * serialized form so only entries that were used (and could have been changed) are marshalled again.
+ */
 public class CaseFileInstanceMarshallingStrategy implements ObjectMarshallingStrategy, TransactionAware, Cacheable {
 
     private static final Logger logger = LoggerFactory.getLogger(CaseFileInstanceMarshallingStrategy.class);
@@ -55,6 +66,8 @@ public class CaseFileInstanceMarshallingStrategy implements ObjectMarshallingStr
     private Map<String, ObjectMarshallingStrategy> marshallersByName = new LinkedHashMap<String, ObjectMarshallingStrategy>();
     
     private SerializablePlaceholderResolverStrategy caseFileMarshaller = new SerializablePlaceholderResolverStrategy(ClassObjectMarshallingStrategyAcceptor.DEFAULT);
+
+    private boolean lazyData = Boolean.parseBoolean(System.getProperty("org.jbpm.casemgmt.casefile.lazy", "false"));
         
     public CaseFileInstanceMarshallingStrategy() {
         marshallersByName.put(caseFileMarshaller.getClass().getName(), caseFileMarshaller);
@@ -70,6 +83,10 @@ public class CaseFileInstanceMarshallingStrategy implements ObjectMarshallingStr
         logger.debug("Created CaseFileInstance marshaller with following marshallers {}", marshallersByName);
     }
     
+    public void setLazyData(boolean lazyData) {
+        this.lazyData = lazyData;
+    }
+
     @Override
     public void close() {
         marshallersByName.values().stream().filter(m -> m instanceof Cacheable).forEach(m -> {
@@ -131,8 +148,10 @@ public class CaseFileInstanceMarshallingStrategy implements ObjectMarshallingStr
         
         List<SerializedContent> caseDataContent = new ArrayList<>();
         caseFileContent.put(CASE_DATA_KEY, caseDataContent);
+        // data that was not accessed since unmarshal is stored as is
+        caseDataContent.addAll(caseFile.getSerializedData().values());
         // transform with various strategies data that belong to a case
-        for (Entry<String, Object> dataEntry : caseFile.getData().entrySet()) {
+        for (Entry<String, Object> dataEntry : caseFile.getLoadedData().entrySet()) {
             byte[] content = null;
             String marshallerName = null;
             logger.debug("About to find marshaller for {}", dataEntry.getValue());
@@ -173,19 +192,53 @@ public class CaseFileInstanceMarshallingStrategy implements ObjectMarshallingStr
         logger.debug("CaseFileInstance meta data unmarshalled properly into {}", caseFileInstance);
         List<SerializedContent> caseDataContent = (List<SerializedContent>) caseFileContent.get(CASE_DATA_KEY); 
         logger.debug("About to read serialized content {}", caseDataContent);
-        for (SerializedContent serializedContent : caseDataContent) {
-            
-            ObjectMarshallingStrategy marshaller = marshallersByName.get(serializedContent.getMarshaller());
-            logger.debug("Marshaller for {} is of type {}", serializedContent, marshaller);
-            Object value = marshaller.unmarshal(context, is, serializedContent.getContent(), classloader);
-            caseFileInstance.add(serializedContent.getName(), value);
-            logger.debug("Data unmarshalled into {} and put into case file under '{}' name", value, serializedContent.getName());
+        if (lazyData) {
+            Map<String, SerializedContent> serializedData = new HashMap<>();
+            for (SerializedContent serializedContent : caseDataContent) {
+                // own copy of the content as the loader might run long after the given byte array was reused
+                byte[] content = serializedContent.getContent() == null ? null : Arrays.copyOf(serializedContent.getContent(), serializedContent.getContent().length);
+                serializedData.put(serializedContent.getName(), new SerializedContent(serializedContent.getMarshaller(), serializedContent.getName(), content));
+            }
+            // loader must not hold on to given context and stream - they belong to this unmarshal call only
+            caseFileInstance.setSerializedData(serializedData, serializedContent -> loadContent(serializedContent, classloader));
+            logger.debug("Case file data {} will be unmarshalled on first access", serializedData.keySet());
+        } else {
+            for (SerializedContent serializedContent : caseDataContent) {
+                Object value = unmarshalContent(context, is, serializedContent, classloader);
+                caseFileInstance.add(serializedContent.getName(), value);
+            }
         }
                 
         logger.debug("Unmarshal of CaseFileInstance completed - result {}", caseFileInstance);
         return caseFileInstance;
     }
 
+    protected Object loadContent(SerializedContent serializedContent, ClassLoader classloader) {
+        ObjectMarshallingStrategy marshaller = marshallersByName.get(serializedContent.getMarshaller());
+        try (ObjectInputStream is = newInputStream()) {
+            return unmarshalContent(marshaller.createContext(), is, serializedContent, classloader);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("Unable to unmarshal case file data '" + serializedContent.getName() + "'", e);
+        }
+    }
+
+    /*
+     * stream given to data marshallers on lazy load, content of the entry is always passed as byte array
+     */
+    protected ObjectInputStream newInputStream() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        new ObjectOutputStream(header).close();
+        return new ObjectInputStream(new ByteArrayInputStream(header.toByteArray()));
+    }
+
+    protected Object unmarshalContent(Context context, ObjectInputStream is, SerializedContent serializedContent, ClassLoader classloader) throws IOException, ClassNotFoundException {
+        ObjectMarshallingStrategy marshaller = marshallersByName.get(serializedContent.getMarshaller());
+        logger.debug("Marshaller for {} is of type {}", serializedContent, marshaller);
+        Object value = marshaller.unmarshal(context, is, serializedContent.getContent(), classloader);
+        logger.debug("Data unmarshalled into {} and put into case file under '{}' name", value, serializedContent.getName());
+        return value;
+    }
+
     @Override
     public Context createContext() {
         return caseFileMarshaller.createContext();
@@ -16,6 +16,8 @@
 
 package org.jbpm.casemgmt.impl.model.instance;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -24,6 +26,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import org.jbpm.casemgmt.api.auth.AuthorizationManager;
 import org.jbpm.casemgmt.api.model.CaseRole;
@@ -31,6 +34,7 @@ import org.jbpm.casemgmt.api.model.instance.CaseFileDataFilter;
 import org.jbpm.casemgmt.api.model.instance.CaseFileInstance;
 import org.jbpm.casemgmt.api.model.instance.CaseRoleInstance;
 import org.jbpm.casemgmt.api.model.instance.CommentInstance;
+import org.jbpm.casemgmt.impl.marshalling.SerializedContent;
 import org.kie.api.runtime.process.CaseAssignment;
 import org.kie.api.task.model.OrganizationalEntity;
 import org.kie.api.task.model.User;
@@ -60,6 +64,10 @@ public class CaseFileInstanceImpl implements CaseFileInstance, CaseAssignment, S
     private Map<String, Object> data = new HashMap<>();    
     private Map<String, CaseRoleInstance> roles = new HashMap<>();    
     private List<CommentInstance> comments = new ArrayList<>();
+
+    // data entries not accessed since the case file was unmarshalled, kept in their serialized form
+    private transient Map<String, SerializedContent> serializedData;
+    private transient Function<SerializedContent, Object> dataLoader;
     
     private TaskModelFactory factory = TaskModelProvider.getFactory();
     
@@ -107,11 +115,13 @@ public class CaseFileInstanceImpl implements CaseFileInstance, CaseAssignment, S
 
     @Override
     public Map<String, Object> getData() {
+        loadData();
         return this.data;
     }
 
     @Override
     public Map<String, Object> getData(CaseFileDataFilter filter) {
+        loadData();
         this.data.entrySet()
         .stream()
         .filter(p -> filter.accept(p.getKey(), p.getValue()))
@@ -121,16 +131,25 @@ public class CaseFileInstanceImpl implements CaseFileInstance, CaseAssignment, S
 
     @Override
     public void addAll(Map<String, Object> data) {
+        if (serializedData != null) {
+            data.keySet().forEach(key -> serializedData.remove(key));
+        }
         this.data.putAll(data);
     }
 
     @Override
     public void add(String name, Object data) {
+        if (serializedData != null) {
+            serializedData.remove(name);
+        }
         this.data.put(name, data);
     }
 
     @Override
     public void remove(String name) {
+        if (serializedData != null) {
+            serializedData.remove(name);
+        }
         this.data.remove(name);
     }
 
@@ -142,13 +161,62 @@ public class CaseFileInstanceImpl implements CaseFileInstance, CaseAssignment, S
 
     @Override
     public void removeAll() {
+        if (serializedData != null) {
+            serializedData.clear();
+        }
         this.data.clear();
     }
 
     @Override
     public Object getData(String name) {
+        loadData(name);
         return this.data.get(name);
     }
+
+    /**
+     * Sets data entries that are kept in serialized form until they are accessed for the first time - then
+     * they are unmarshalled with given loader. Entries that are never accessed are written back as they are.
+     */
+    public void setSerializedData(Map<String, SerializedContent> serializedData, Function<SerializedContent, Object> dataLoader) {
+        this.serializedData = serializedData;
+        this.dataLoader = dataLoader;
+    }
+
+    /**
+     * Returns data entries that were not accessed (and thus could not be changed) since the case file was unmarshalled.
+     */
+    public Map<String, SerializedContent> getSerializedData() {
+        if (serializedData == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(serializedData);
+    }
+
+    /**
+     * Returns data entries that were already unmarshalled or added, without loading the serialized ones.
+     */
+    public Map<String, Object> getLoadedData() {
+        return this.data;
+    }
+
+    protected void loadData(String name) {
+        if (serializedData == null || serializedData.isEmpty()) {
+            return;
+        }
+        SerializedContent content = serializedData.remove(name);
+        if (content != null) {
+            this.data.put(name, dataLoader.apply(content));
+        }
+    }
+
+    protected void loadData() {
+        if (serializedData == null || serializedData.isEmpty()) {
+            return;
+        }
+        for (String name : new ArrayList<>(serializedData.keySet())) {
+            loadData(name);
+        }
+    }
     
     public void setCaseEndDate(Date caseEndDate) {
         this.caseEndDate = caseEndDate;
@@ -256,6 +324,7 @@ public class CaseFileInstanceImpl implements CaseFileInstance, CaseAssignment, S
 
     
     public void setData(Map<String, Object> data) {
+        this.serializedData = null;
         this.data = data;
     }
 
@@ -272,16 +341,20 @@ public class CaseFileInstanceImpl implements CaseFileInstance, CaseAssignment, S
         this.definitionId = caseDefinitionId;
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        loadData();
+        out.defaultWriteObject();
+    }
+
+    /*
+     * identity of case file is its case id - data entries are not part of it so comparing case files never
+     * unmarshals lazily loaded entries
+     */
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((caseEndDate == null) ? 0 : caseEndDate.hashCode());
         result = prime * result + ((caseId == null) ? 0 : caseId.hashCode());
-        result = prime * result + ((definitionId == null) ? 0 : definitionId.hashCode());
-        result = prime * result + ((caseStartDate == null) ? 0 : caseStartDate.hashCode());
-        result = prime * result + ((caseReopenDate == null) ? 0 : caseReopenDate.hashCode());
-        result = prime * result + ((data == null) ? 0 : data.hashCode());
         return result;
     }
 
@@ -294,36 +367,11 @@ public class CaseFileInstanceImpl implements CaseFileInstance, CaseAssignment, S
         if (getClass() != obj.getClass())
             return false;
         CaseFileInstanceImpl other = (CaseFileInstanceImpl) obj;
-        if (caseEndDate == null) {
-            if (other.caseEndDate != null)
-                return false;
-        } else if (!caseEndDate.equals(other.caseEndDate))
-            return false;
         if (caseId == null) {
             if (other.caseId != null)
                 return false;
         } else if (!caseId.equals(other.caseId))
             return false;
-        if (definitionId == null) {
-            if (other.definitionId != null)
-                return false;
-        } else if (!definitionId.equals(other.definitionId))
-            return false;
-        if (caseStartDate == null) {
-            if (other.caseStartDate != null)
-                return false;
-        } else if (!caseStartDate.equals(other.caseStartDate))
-            return false;
-        if (caseReopenDate == null) {
-            if (other.caseReopenDate != null)
-                return false;
-        } else if (!caseReopenDate.equals(other.caseReopenDate))
-            return false;
-        if (data == null) {
-            if (other.data != null)
-                return false;
-        } else if (!data.equals(other.data))
-            return false;
         return true;
     }
 
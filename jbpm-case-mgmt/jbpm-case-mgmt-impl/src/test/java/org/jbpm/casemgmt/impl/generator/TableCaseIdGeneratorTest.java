@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.casemgmt.impl.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drools.persistence.api.TransactionManager;
+import org.drools.persistence.api.TransactionSynchronization;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class TableCaseIdGeneratorTest {
+
+    private static final String PREFIX = "CASE";
+    private static final int BLOCK_SIZE = 10;
+
+    private AtomicLong currentValue = new AtomicLong();
+    private AtomicInteger reservations = new AtomicInteger();
+    private TestTransactionManager transactionManager = new TestTransactionManager();
+    private TableCaseIdGenerator generator;
+
+    @Before
+    public void setup() {
+        generator = new TableCaseIdGenerator(null, transactionManager) {
+
+            @Override
+            protected IdBlock incrementAndGet(String prefix) {
+                reservations.incrementAndGet();
+                long last = currentValue.addAndGet(BLOCK_SIZE);
+                return new IdBlock(last - BLOCK_SIZE + 1, last);
+            }
+        };
+        generator.setBlockSize(BLOCK_SIZE);
+    }
+
+    @Test
+    public void testConcurrentCallersReserveSingleBlock() throws Exception {
+        int threads = 8;
+        int perThread = 25;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    List<String> ids = new ArrayList<>();
+                    for (int j = 0; j < perThread; j++) {
+                        ids.add(generator.generate(PREFIX, null));
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+
+            Set<String> ids = ConcurrentHashMap.newKeySet();
+            for (Future<List<String>> future : futures) {
+                ids.addAll(future.get(30, TimeUnit.SECONDS));
+            }
+            assertThat(ids).hasSize(threads * perThread);
+            // no block is reserved while there are ids left in the current one
+            assertThat(reservations.get()).isEqualTo(threads * perThread / BLOCK_SIZE);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRolledBackBlockIsDiscarded() {
+        transactionManager.begin();
+        assertThat(generator.generate(PREFIX, null)).isEqualTo("CASE-0000000001");
+        // reserving transaction uses its own block before it is committed
+        assertThat(generator.generate(PREFIX, null)).isEqualTo("CASE-0000000002");
+        transactionManager.complete(TransactionManager.STATUS_ROLLEDBACK);
+
+        assertThat(generator.generate(PREFIX, null)).isEqualTo("CASE-0000000011");
+        assertThat(reservations.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testCommittedBlockIsShared() {
+        transactionManager.begin();
+        assertThat(generator.generate(PREFIX, null)).isEqualTo("CASE-0000000001");
+        transactionManager.complete(TransactionManager.STATUS_COMMITTED);
+
+        assertThat(generator.generate(PREFIX, null)).isEqualTo("CASE-0000000002");
+        assertThat(reservations.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCallerWaitsForPendingReservation() throws Exception {
+        transactionManager.begin();
+        assertThat(generator.generate(PREFIX, null)).isEqualTo("CASE-0000000001");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> waiting = executor.submit(() -> generator.generate(PREFIX, null));
+            Thread.sleep(200);
+            assertThat(waiting.isDone()).isFalse();
+
+            transactionManager.complete(TransactionManager.STATUS_COMMITTED);
+            assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo("CASE-0000000002");
+            assertThat(reservations.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCallerWaitingForRolledBackReservationReservesNewBlock() throws Exception {
+        transactionManager.begin();
+        generator.generate(PREFIX, null);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> waiting = executor.submit(() -> generator.generate(PREFIX, null));
+            Thread.sleep(200);
+            transactionManager.complete(TransactionManager.STATUS_ROLLEDBACK);
+
+            assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo("CASE-0000000011");
+            assertThat(reservations.get()).isEqualTo(2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * transaction manager with transaction bound to the thread that began it
+     */
+    private static class TestTransactionManager implements TransactionManager {
+
+        private final ThreadLocal<List<TransactionSynchronization>> transaction = new ThreadLocal<>();
+
+        @Override
+        public boolean begin() {
+            transaction.set(new ArrayList<>());
+            return true;
+        }
+
+        void complete(int status) {
+            List<TransactionSynchronization> synchronizations = transaction.get();
+            transaction.remove();
+            synchronizations.forEach(ts -> ts.afterCompletion(status));
+        }
+
+        @Override
+        public void commit(boolean transactionOwner) {
+            complete(STATUS_COMMITTED);
+        }
+
+        @Override
+        public void rollback(boolean transactionOwner) {
+            complete(STATUS_ROLLEDBACK);
+        }
+
+        @Override
+        public int getStatus() {
+            return transaction.get() == null ? STATUS_NO_TRANSACTION : STATUS_ACTIVE;
+        }
+
+        @Override
+        public void registerTransactionSynchronization(TransactionSynchronization ts) {
+            transaction.get().add(ts);
+        }
+
+        @Override
+        public void putResource(Object key, Object resource) {
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.casemgmt.impl.marshalling;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.drools.core.marshalling.impl.ClassObjectMarshallingStrategyAcceptor;
+import org.drools.core.marshalling.impl.SerializablePlaceholderResolverStrategy;
+import org.jbpm.casemgmt.impl.model.instance.CaseFileInstanceImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class CaseFileInstanceMarshallingStrategyTest {
+
+    private CaseFileInstanceMarshallingStrategy strategy;
+    private CaseFileInstanceImpl caseFile;
+
+    @Before
+    public void setup() {
+        strategy = new CaseFileInstanceMarshallingStrategy();
+        strategy.setLazyData(true);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("name", "John");
+        data.put("amount", 10);
+        data.put("items", new ArrayList<>());
+        caseFile = new CaseFileInstanceImpl("CASE-0000000001", "my-case", data);
+    }
+
+    @Test
+    public void testDataIsUnmarshalledOnFirstAccess() throws Exception {
+        CaseFileInstanceImpl restored = roundTrip(caseFile);
+
+        assertThat(restored.getLoadedData()).isEmpty();
+        assertThat(restored.getSerializedData()).containsOnlyKeys("name", "amount", "items");
+
+        assertThat(restored.getData("name")).isEqualTo("John");
+        assertThat(restored.getLoadedData()).containsOnlyKeys("name");
+        assertThat(restored.getSerializedData()).containsOnlyKeys("amount", "items");
+
+        assertThat(restored.getData()).isEqualTo(caseFile.getData());
+        assertThat(restored.getSerializedData()).isEmpty();
+    }
+
+    @Test
+    public void testEqualsAndHashCodeOfLazyCaseFile() throws Exception {
+        CaseFileInstanceImpl restored = roundTrip(caseFile);
+        assertThat(restored.hashCode()).isEqualTo(caseFile.hashCode());
+        assertThat(restored).isEqualTo(caseFile);
+        assertThat(caseFile).isEqualTo(restored);
+        // case file is identified by case id, comparing it does not unmarshal its data
+        assertThat(restored.getLoadedData()).isEmpty();
+
+        assertThat(restored).isNotEqualTo(new CaseFileInstanceImpl("CASE-0000000002", "my-case", caseFile.getData()));
+    }
+
+    @Test
+    public void testNotAccessedDataIsNotUnmarshalledNorMarshalledAgain() throws Exception {
+        CountingMarshallingStrategy counting = new CountingMarshallingStrategy();
+        strategy = new CaseFileInstanceMarshallingStrategy(counting);
+        strategy.setLazyData(true);
+
+        CaseFileInstanceImpl restored = roundTrip(caseFile);
+        assertThat(counting.marshalled).isEqualTo(3);
+        assertThat(counting.unmarshalled).isEqualTo(0);
+
+        counting.marshalled = 0;
+        assertThat(restored.getData("name")).isEqualTo("John");
+        restored.add("amount", 20);
+        CaseFileInstanceImpl written = roundTrip(restored);
+        // only the accessed and the changed entry went through the data marshaller
+        assertThat(counting.unmarshalled).isEqualTo(1);
+        assertThat(counting.marshalled).isEqualTo(2);
+
+        assertThat(written.getData()).containsOnlyKeys("name", "amount", "items");
+        assertThat(written.getData("amount")).isEqualTo(20);
+    }
+
+    @Test
+    public void testNotAccessedDataIsWrittenBack() throws Exception {
+        CaseFileInstanceImpl restored = roundTrip(caseFile);
+        restored.add("amount", 20);
+
+        CaseFileInstanceImpl written = roundTrip(restored);
+
+        assertThat(written.getData("name")).isEqualTo("John");
+        assertThat(written.getData("amount")).isEqualTo(20);
+        assertThat(written.getData("items")).isEqualTo(new ArrayList<>());
+    }
+
+    @Test
+    public void testDataIsLoadedAfterUnmarshalCompleted() throws Exception {
+        byte[] content = strategy.marshal(strategy.createContext(), null, caseFile);
+        CaseFileInstanceImpl restored = (CaseFileInstanceImpl) strategy.unmarshal(strategy.createContext(), null, content, getClass().getClassLoader());
+        // stored bytes are reused by the caller once unmarshal is done
+        Arrays.fill(content, (byte) 0);
+
+        assertThat(restored.getData()).isEqualTo(caseFile.getData());
+    }
+
+    private CaseFileInstanceImpl roundTrip(CaseFileInstanceImpl caseFile) throws Exception {
+        byte[] content = strategy.marshal(strategy.createContext(), null, caseFile);
+        return (CaseFileInstanceImpl) strategy.unmarshal(strategy.createContext(), null, content, getClass().getClassLoader());
+    }
+
+    /*
+     * counts data entries marshalled and unmarshalled by it
+     */
+    private static class CountingMarshallingStrategy extends SerializablePlaceholderResolverStrategy {
+
+        private int marshalled;
+        private int unmarshalled;
+
+        CountingMarshallingStrategy() {
+            super(ClassObjectMarshallingStrategyAcceptor.DEFAULT);
+        }
+
+        @Override
+        public byte[] marshal(Context context, ObjectOutputStream os, Object object) throws IOException {
+            marshalled++;
+            return super.marshal(context, os, object);
+        }
+
+        @Override
+        public Object unmarshal(Context context, ObjectInputStream is, byte[] object, ClassLoader classloader) throws IOException, ClassNotFoundException {
+            unmarshalled++;
+            return super.unmarshal(context, is, object, classloader);
+        }
+    }
+}
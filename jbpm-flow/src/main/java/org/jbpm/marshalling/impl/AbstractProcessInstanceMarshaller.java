@@ -467,9 +467,10 @@ public abstract class AbstractProcessInstanceMarshaller implements
                 stream, context, processInstance);
 
         nodeInstance.setNodeId(nodeId);
+        // id must be set before the node instance is added to its container so it keeps its id and is indexed by it
+        nodeInstance.setId(id);
         nodeInstance.setNodeInstanceContainer(nodeInstanceContainer);
         nodeInstance.setProcessInstance((org.jbpm.workflow.instance.WorkflowProcessInstance) processInstance);
-        nodeInstance.setId(id);
 
         switch (nodeType) {
             case PersisterEnums.COMPOSITE_NODE_INSTANCE:
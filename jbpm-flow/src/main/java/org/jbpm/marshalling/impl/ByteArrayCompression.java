@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.marshalling.impl;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional compression of binary state stored in the data base - process instance byte array,
+ * task content and any other blob that is produced by marshalling.
+ * <br/>
+ * Compressed data is prefixed with a header (magic bytes followed by codec id) and is only written when
+ * the data is bigger than configured threshold and compression actually reduces its size. Data without
+ * the header is returned as is on decompression so existing (uncompressed) records remain readable
+ * and compression can be enabled or disabled at any time.
+ * <br/>
+ * Configured with system properties:
+ * <ul>
+ *  <li>org.jbpm.compression.codec - none (default), deflate or fully qualified class name of {@link CompressionCodec}</li>
+ *  <li>org.jbpm.compression.threshold - minimum size in bytes of data to be compressed, defaults to 4096</li>
+ * </ul>
+ */
+public class ByteArrayCompression {
+
+    private static final Logger logger = LoggerFactory.getLogger(ByteArrayCompression.class);
+
+    private static final byte[] MAGIC = new byte[]{'J', 'B', 'Z'};
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+
+    private static final ByteArrayCompression INSTANCE = new ByteArrayCompression(
+            System.getProperty("org.jbpm.compression.codec", "none"),
+            Integer.parseInt(System.getProperty("org.jbpm.compression.threshold", "4096")));
+
+    private final Map<Byte, CompressionCodec> codecs = new ConcurrentHashMap<Byte, CompressionCodec>();
+    private volatile CompressionCodec codec;
+    private volatile int threshold;
+
+    public ByteArrayCompression(String codecName, int threshold) {
+        register(new DeflateCompressionCodec());
+        this.codec = resolve(codecName);
+        this.threshold = threshold;
+        if (codec != null) {
+            logger.info("Compression of stored data enabled with codec {} for data larger than {} bytes", codec.getClass().getName(), threshold);
+        }
+    }
+
+    public static ByteArrayCompression get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers given codec so data compressed by it can be decompressed.
+     */
+    public void register(CompressionCodec codec) {
+        this.codecs.put(codec.getId(), codec);
+    }
+
+    /**
+     * Sets codec used to compress data, null disables compression. Given codec is registered as well.
+     */
+    public void setCodec(CompressionCodec codec) {
+        if (codec != null) {
+            register(codec);
+        }
+        this.codec = codec;
+    }
+
+    public CompressionCodec getCodec() {
+        return codec;
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public byte[] compress(byte[] data) {
+        CompressionCodec current = this.codec;
+        if (current == null || data == null || data.length < threshold) {
+            return data;
+        }
+        try {
+            byte[] compressed = current.compress(data);
+            if (compressed.length + HEADER_LENGTH >= data.length) {
+                // not worth it, keep it uncompressed
+                return data;
+            }
+            byte[] result = new byte[compressed.length + HEADER_LENGTH];
+            System.arraycopy(MAGIC, 0, result, 0, MAGIC.length);
+            result[MAGIC.length] = current.getId();
+            System.arraycopy(compressed, 0, result, HEADER_LENGTH, compressed.length);
+            logger.debug("Data compressed from {} to {} bytes", data.length, result.length);
+            return result;
+        } catch (IOException e) {
+            logger.warn("Unable to compress data with codec {}, storing it uncompressed", current.getClass().getName(), e);
+            return data;
+        }
+    }
+
+    public byte[] decompress(byte[] data) {
+        if (!isCompressed(data)) {
+            return data;
+        }
+        byte id = data[MAGIC.length];
+        CompressionCodec dataCodec = codecs.get(id);
+        if (dataCodec == null) {
+            throw new IllegalArgumentException("Data compressed with unknown codec (id " + id + "), make sure the codec is registered");
+        }
+        byte[] compressed = new byte[data.length - HEADER_LENGTH];
+        System.arraycopy(data, HEADER_LENGTH, compressed, 0, compressed.length);
+        try {
+            return dataCodec.decompress(compressed);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to decompress data with codec " + dataCodec.getClass().getName(), e);
+        }
+    }
+
+    public static boolean isCompressed(byte[] data) {
+        if (data == null || data.length <= HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected CompressionCodec resolve(String codecName) {
+        if (codecName == null || codecName.isEmpty() || "none".equalsIgnoreCase(codecName)) {
+            return null;
+        }
+        if ("deflate".equalsIgnoreCase(codecName)) {
+            return codecs.get(DeflateCompressionCodec.ID);
+        }
+        try {
+            CompressionCodec custom = (CompressionCodec) Class.forName(codecName, true, ByteArrayCompression.class.getClassLoader()).newInstance();
+            register(custom);
+            return custom;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unable to create compression codec " + codecName, e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.marshalling.impl;
+
+import java.io.IOException;
+
+/**
+ * Compression algorithm used for binary state stored in the data base (process instances,
+ * task content). Every codec is identified by unique id that is stored together with compressed
+ * data so it can be decompressed with the same codec regardless of current configuration.
+ * Ids 0-15 are reserved for codecs provided by jBPM.
+ */
+public interface CompressionCodec {
+
+    byte getId();
+
+    byte[] compress(byte[] data) throws IOException;
+
+    byte[] decompress(byte[] data) throws IOException;
+}
@@ -16,16 +16,36 @@
 
 package org.jbpm.process.core.async;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.kie.api.executor.Command;
 import org.kie.api.executor.CommandContext;
 import org.kie.api.executor.ExecutionResults;
+import org.kie.api.executor.ExecutorService;
 import org.kie.api.runtime.manager.RuntimeEngine;
+import org.kie.api.runtime.manager.RuntimeEnvironment;
 import org.kie.api.runtime.manager.RuntimeManager;
+import org.kie.internal.runtime.manager.InternalRuntimeManager;
 import org.kie.internal.runtime.manager.RuntimeManagerRegistry;
 import org.kie.internal.runtime.manager.context.ProcessInstanceIdContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
+/**
+ * Signals process instance given by processInstanceId or, when processInstanceIds list is given,
+ * each of the listed process instances - every one of them with its own runtime engine so they are
+ * signalled in separate transactions.
+ * <br/>
+ * Ids of listed process instances that could not be signalled are returned as FailedProcessInstanceIds and
+ * new command is scheduled (with executor service of the deployment) to signal just them, so instances that
+ * were signalled already are not signalled again. When none of them could be signalled the command fails so
+ * it is retried by the executor, same as when there is no executor service to schedule the follow up command.
+ */
 public class AsyncSignalEventCommand implements Command {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AsyncSignalEventCommand.class);
 
     @Override
     public ExecutionResults execute(CommandContext ctx) throws Exception {
@@ -48,11 +68,66 @@ public class AsyncSignalEventCommand implements Command {
         if (runtimeManager == null) {
             throw new IllegalArgumentException("No runtime manager found for deployment id " + deploymentId);  
         }
+        List<Long> processInstanceIds = (List<Long>) ctx.getData("processInstanceIds");
+        if (processInstanceIds != null) {
+            List<Long> failed = new ArrayList<Long>();
+            for (Long id : processInstanceIds) {
+                try {
+                    signal(runtimeManager, id, signal, event);
+                } catch (RuntimeException e) {
+                    logger.warn("Signal '{}' could not be delivered to process instance {}", signal, id, e);
+                    failed.add(id);
+                }
+            }
+            if (!failed.isEmpty() && failed.size() == processInstanceIds.size()) {
+                // nothing has been delivered so the executor can safely retry the whole chunk
+                throw new IllegalStateException("Signal '" + signal + "' could not be delivered to any of process instances " + failed);
+            }
+            if (!failed.isEmpty()) {
+                scheduleFailed(runtimeManager, deploymentId, failed, signal, event);
+            }
+            ExecutionResults results = new ExecutionResults();
+            results.setData("FailedProcessInstanceIds", failed);
+            return results;
+        }
+        signal(runtimeManager, processInstanceId, signal, event);
+        
+        return new ExecutionResults();
+    }
+    
+    /*
+     * failed instances get their own job as retrying this one would signal the others once again
+     */
+    protected void scheduleFailed(RuntimeManager runtimeManager, String deploymentId, List<Long> failed, String signal, Object event) {
+        ExecutorService executorService = getExecutorService(runtimeManager);
+        if (executorService == null) {
+            throw new IllegalStateException("Signal '" + signal + "' could not be delivered to process instances " + failed
+                                            + " and there is no executor service to schedule it again");
+        }
+        CommandContext ctx = new CommandContext();
+        ctx.setData("deploymentId", deploymentId);
+        ctx.setData("processInstanceIds", new ArrayList<Long>(failed));
+        ctx.setData("Signal", signal);
+        ctx.setData("Event", event);
+        
+        Long requestId = executorService.scheduleRequest(AsyncSignalEventCommand.class.getName(), ctx);
+        logger.debug("Signal '{}' for process instances {} scheduled again as request {}", signal, failed, requestId);
+    }
+    
+    protected ExecutorService getExecutorService(RuntimeManager runtimeManager) {
+        if (runtimeManager instanceof InternalRuntimeManager) {
+            RuntimeEnvironment environment = ((InternalRuntimeManager) runtimeManager).getEnvironment();
+            if (environment != null && environment.getEnvironment() != null) {
+                return (ExecutorService) environment.getEnvironment().get("ExecutorService");
+            }
+        }
+        return null;
+    }
+    
+    protected void signal(RuntimeManager runtimeManager, Long processInstanceId, String signal, Object event) {
         RuntimeEngine engine = runtimeManager.getRuntimeEngine(ProcessInstanceIdContext.get(processInstanceId));        
         try {
             engine.getKieSession().signalEvent(signal, event, processInstanceId);
-            
-            return new ExecutionResults();
         } finally {
             runtimeManager.disposeRuntimeEngine(engine);
         }
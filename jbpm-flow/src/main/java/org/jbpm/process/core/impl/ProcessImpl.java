@@ -30,6 +30,7 @@ import org.jbpm.process.core.ContextContainer;
 import org.jbpm.process.core.ContextResolver;
 import org.jbpm.process.core.Process;
 import org.jbpm.process.core.context.AbstractContext;
+import org.jbpm.util.MVELExpressionCache;
 import org.kie.api.io.Resource;
 
 /**
@@ -49,6 +50,7 @@ public class ProcessImpl implements Process, Serializable, ContextResolver {
     private ContextContainer contextContainer = new ContextContainerImpl();
     private Map<String, Object> metaData = new HashMap<String, Object>();
     private transient Map<String, Object> runtimeMetaData = new HashMap<String, Object>();
+    private transient MVELExpressionCache expressionCache = new MVELExpressionCache();
     private Set<String> imports;
     private Map<String, String> globals;
     private List<String> functionImports;
@@ -211,11 +213,16 @@ public class ProcessImpl implements Process, Serializable, ContextResolver {
         this.runtimeMetaData = runtimeMetaData;
     }
     
+    public MVELExpressionCache getExpressionCache() {
+        return expressionCache;
+    }
+    
     /*
      * Special handling for serialization to initialize transient (runtime related) meta data
      */
     private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
         this.runtimeMetaData = new HashMap<String, Object>();
+        this.expressionCache = new MVELExpressionCache();
     }
 }
@@ -74,4 +74,13 @@ public interface GlobalSchedulerService extends SchedulerService, InternalSchedu
      * @return
      */
     boolean isValid(GlobalJobHandle jobHandle);
+    
+    /**
+     * Provides next id from the sequence used for job handles of this scheduler service so that
+     * handles created outside of it (e.g. for deferred timers) do not collide with its own handles.
+     * @return next job handle id or negative value if not supported by given implementation
+     */
+    default long nextJobHandleId() {
+        return -1;
+    }
 }
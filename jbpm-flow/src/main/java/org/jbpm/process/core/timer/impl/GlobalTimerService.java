@@ -28,10 +28,14 @@ import org.drools.core.time.TimerService;
 import org.drools.core.time.Trigger;
 import org.drools.core.time.impl.CommandServiceTimerJobFactoryManager;
 import org.drools.core.time.impl.DefaultJobHandle;
+import org.drools.core.time.impl.IntervalTrigger;
 import org.drools.core.time.impl.TimerJobFactoryManager;
 import org.drools.core.time.impl.TimerJobInstance;
 import org.jbpm.process.core.timer.GlobalSchedulerService;
 import org.jbpm.process.core.timer.NamedJobContext;
+import org.jbpm.process.instance.timer.TimerInstance;
+import org.jbpm.process.instance.timer.TimerManager;
+import org.jbpm.process.instance.timer.TimerManager.ProcessJob;
 import org.jbpm.process.instance.timer.TimerManager.ProcessJobContext;
 import org.kie.api.runtime.Environment;
 import org.kie.api.runtime.Executable;
@@ -46,11 +50,31 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-
+/**
+ * Timer service that delegates to global (shared by all sessions of runtime manager) scheduler service.
+ * <br/>
+ * For in memory (non transactional) scheduler services it can be configured to keep in the scheduler only
+ * timers that are due within given horizon (in milliseconds) - org.jbpm.timer.lazy.horizon system property,
+ * disabled by default. Timers that are due later are kept aside as lightweight deferred entries and moved into
+ * the scheduler by background sweeper as they approach their fire time. Deferred entry keeps only the timer instance
+ * and its next fire time - job, trigger and job context (with the session) are built again when the timer is moved
+ * into the scheduler or the session is marshalled. For that reason only process timers with interval trigger that
+ * can be rebuilt exactly (not repeating or repeating without limit) are deferred.
+ * <br/>
+ * Timers restored with a session that are already registered (scheduled or deferred) for that session are reused
+ * as is, their triggers are not deserialized again.
+ */
 public class GlobalTimerService implements TimerService, InternalSchedulerService {
 	
 	private static final Logger logger = LoggerFactory.getLogger(GlobalTimerService.class);
@@ -62,6 +86,10 @@ public class GlobalTimerService implements TimerService, InternalSchedulerServic
  
     private String timerServiceId;
     
+    private long lazyHorizon = Long.parseLong(System.getProperty("org.jbpm.timer.lazy.horizon", "0"));
+    private ConcurrentSkipListSet<DeferredJobHandle> deferredJobs = new ConcurrentSkipListSet<DeferredJobHandle>();
+    private ScheduledExecutorService sweeper;
+    
     public GlobalTimerService(RuntimeManager manager, GlobalSchedulerService schedulerService) {
         this.manager = manager;
         this.schedulerService = schedulerService;
@@ -92,7 +120,13 @@ public class GlobalTimerService implements TimerService, InternalSchedulerServic
                     }
                 }
             }
-            GlobalJobHandle jobHandle = (GlobalJobHandle) this.schedulerService.scheduleJob(job, ctx, trigger);
+            GlobalJobHandle jobHandle = null;
+            if (shouldDefer(job, processCtx, trigger)) {
+                jobHandle = defer(processCtx, trigger);
+            }
+            if (jobHandle == null) {
+                jobHandle = (GlobalJobHandle) this.schedulerService.scheduleJob(job, ctx, trigger);
+            }
             if (jobHandle != null) {
             	jobHandles.add(jobHandle);
             }
@@ -108,6 +142,24 @@ public class GlobalTimerService implements TimerService, InternalSchedulerServic
         if (jobHandle == null) {
             return false;
         }
+        if (jobHandle instanceof DeferredJobHandle) {
+            DeferredJobHandle deferred = (DeferredJobHandle) jobHandle;
+            JobHandle delegate = null;
+            // guarded by the handle so it cannot be moved into the scheduler at the same time
+            synchronized (deferred) {
+                deferred.setCancel(true);
+                delegate = deferred.getDelegate();
+                if (delegate == null) {
+                    List<GlobalJobHandle> handles = timerJobsPerSession.get(deferred.getSessionId());
+                    if (handles != null) {
+                        handles.remove(deferred);
+                    }
+                    return deferredJobs.remove(deferred);
+                }
+            }
+            // already moved to the scheduler
+            return removeJob(delegate);
+        }
         
         long sessionId = ((GlobalJobHandle) jobHandle).getSessionId();
         List<GlobalJobHandle> handles = timerJobsPerSession.get(sessionId);
@@ -144,9 +196,16 @@ public class GlobalTimerService implements TimerService, InternalSchedulerServic
         Collection<List<GlobalJobHandle>> activeTimers = timerJobsPerSession.values();
         for (List<GlobalJobHandle> handles : activeTimers) {
             for (GlobalJobHandle handle : handles) {
+                if (handle instanceof DeferredJobHandle) {
+                    continue;
+                }
                 this.schedulerService.removeJob(handle);
             }
         }
+        deferredJobs.clear();
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
     }
 
     @Override
@@ -160,7 +219,9 @@ public class GlobalTimerService implements TimerService, InternalSchedulerServic
         List<GlobalJobHandle> jobs = timerJobsPerSession.get(id); {
             if (jobs != null) {
                 for (GlobalJobHandle job : jobs) {
-                	if (job != null && schedulerService.isValid(job)) {
+                	if (job instanceof DeferredJobHandle) {
+                	    timers.add(job.getTimerJobInstance());
+                	} else if (job != null && schedulerService.isValid(job)) {
                 		timers.add(job.getTimerJobInstance());
                 	}
                 }
@@ -178,6 +239,11 @@ public class GlobalTimerService implements TimerService, InternalSchedulerServic
             logger.debug("Size of timer jobs per session is {}", timerJobsPerSession.size());
             if (jobs != null) {
                 for (GlobalJobHandle handle : jobs) {
+                    if (handle instanceof DeferredJobHandle) {
+                        // deferred timers are not known to the job factory manager
+                        deferredJobs.remove(handle);
+                        continue;
+                    }
                     jobFactoryManager.removeTimerJobInstance(handle.getTimerJobInstance());
                 }
             }
@@ -273,6 +339,225 @@ public class GlobalTimerService implements TimerService, InternalSchedulerServic
     public ConcurrentHashMap<Long, List<GlobalJobHandle>> getTimerJobsPerSession() {
         return timerJobsPerSession;
     }
+    
+    public long getLazyHorizon() {
+        return lazyHorizon;
+    }
+
+    public void setLazyHorizon(long lazyHorizon) {
+        this.lazyHorizon = lazyHorizon;
+    }
+    
+    public int getDeferredJobsCount() {
+        return deferredJobs.size();
+    }
+    
+    /**
+     * Returns handle of the timer with given id that is already registered for given session, if any.
+     */
+    public GlobalJobHandle getRegisteredJobHandle(long sessionId, long timerId) {
+        List<GlobalJobHandle> jobHandles = timerJobsPerSession.get(sessionId);
+        if (jobHandles != null) {
+            for (GlobalJobHandle handle : jobHandles) {
+                if (handle.getTimerId() == timerId) {
+                    return handle;
+                }
+            }
+        }
+        return null;
+    }
+    
+    protected boolean shouldDefer(Job job, ProcessJobContext ctx, Trigger trigger) {
+        if (lazyHorizon <= 0 || schedulerService.isTransactional()) {
+            return false;
+        }
+        // deferred timer is rebuilt from its timer instance so only the ones that can be rebuilt exactly are deferred
+        TimerInstance timer = ctx.getTimer();
+        if (!(job instanceof ProcessJob) || ctx.getClass() != ProcessJobContext.class || !(trigger instanceof IntervalTrigger)
+                || timer.getCronExpression() != null || (timer.getPeriod() > 0 && timer.getRepeatLimit() >= 0)) {
+            return false;
+        }
+        Date nextFireTime = trigger.hasNextFireTime();
+        return nextFireTime != null && nextFireTime.getTime() > getCurrentTime() + lazyHorizon;
+    }
+    
+    protected GlobalJobHandle defer(ProcessJobContext ctx, Trigger trigger) {
+        // use id sequence of the scheduler service as the job factory manager keys timers by handle id
+        long id = schedulerService.nextJobHandleId();
+        if (id < 0) {
+            return null;
+        }
+        DeferredJobHandle jobHandle = new DeferredJobHandle(id, trigger.hasNextFireTime().getTime(), ctx.getTimer());
+        ctx.setJobHandle(jobHandle);
+        deferredJobs.add(jobHandle);
+        startSweeper();
+        logger.debug("Timer {} deferred as it is due at {} which is beyond horizon", jobHandle, trigger.hasNextFireTime());
+        return jobHandle;
+    }
+    
+    protected synchronized void startSweeper() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jbpm-timer-sweeper-" + timerServiceId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(lazyHorizon / 4, 1);
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (Throwable e) {
+                logger.error("Unexpected error while moving deferred timers into scheduler", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Moves all deferred timers that are due within the horizon into the scheduler service.
+     */
+    public void sweep() {
+        long windowEnd = getCurrentTime() + lazyHorizon;
+        Iterator<DeferredJobHandle> it = deferredJobs.iterator();
+        while (it.hasNext()) {
+            DeferredJobHandle deferred = it.next();
+            if (deferred.getFireTime() > windowEnd) {
+                break;
+            }
+            synchronized (deferred) {
+                if (deferred.isCancel() || !deferredJobs.remove(deferred)) {
+                    continue;
+                }
+                // session is set on the job context by the runner when the timer fires
+                ProcessJobContext ctx = deferred.buildJobContext(null);
+                
+                GlobalJobHandle jobHandle = (GlobalJobHandle) this.schedulerService.scheduleJob(TimerManager.processJob, ctx, ctx.getTrigger());
+                deferred.setDelegate(jobHandle);
+                ctx.getTimer().setJobHandle(jobHandle);
+                
+                List<GlobalJobHandle> handles = timerJobsPerSession.get(deferred.getSessionId());
+                if (handles != null && handles.remove(deferred) && jobHandle != null) {
+                    handles.add(jobHandle);
+                }
+                logger.debug("Deferred timer {} moved into scheduler as {}", deferred, jobHandle);
+            }
+        }
+    }
+    
+    /**
+     * Handle of the timer that is not yet scheduled in scheduler service, ordered by fire time. It keeps only
+     * the timer instance and the next fire time, timer job instance is built from them whenever it is needed.
+     */
+    public static class DeferredJobHandle extends GlobalJobHandle implements Comparable<DeferredJobHandle> {
+        
+        private static final long     serialVersionUID = 510l;
+        
+        private final long fireTime;
+        private final TimerInstance timer;
+        private volatile transient JobHandle delegate;
+        
+        public DeferredJobHandle(long id, long fireTime, TimerInstance timer) {
+            super(id);
+            this.fireTime = fireTime;
+            this.timer = timer;
+        }
+        
+        public long getFireTime() {
+            return fireTime;
+        }
+        
+        public TimerInstance getTimer() {
+            return timer;
+        }
+        
+        @Override
+        public long getTimerId() {
+            return timer.getId();
+        }
+        
+        @Override
+        public long getSessionId() {
+            return timer.getSessionId();
+        }
+        
+        /**
+         * Builds job context of the deferred timer - its trigger fires at the fire time of this handle and then
+         * repeats with the period of the timer.
+         */
+        public ProcessJobContext buildJobContext(InternalKnowledgeRuntime kruntime) {
+            Trigger trigger = new IntervalTrigger(System.currentTimeMillis(), new Date(fireTime), null, timer.getRepeatLimit(),
+                                                  0, timer.getPeriod(), null, null);
+            ProcessJobContext ctx = new ProcessJobContext(timer, trigger, timer.getProcessInstanceId(), kruntime, false);
+            ctx.setJobHandle(this);
+            return ctx;
+        }
+        
+        @Override
+        public TimerJobInstance getTimerJobInstance() {
+            // wrapped the same way as the job factory manager does so the session marshaller can write it
+            ProcessJobContext ctx = buildJobContext(null);
+            return new DeferredTimerJobInstance(TimerManager.processJob,
+                                                new SelfRemovalJobContext(ctx, new HashMap<Long, TimerJobInstance>()),
+                                                ctx.getTrigger(),
+                                                this);
+        }
+        
+        public JobHandle getDelegate() {
+            return delegate;
+        }
+        
+        public void setDelegate(JobHandle delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int compareTo(DeferredJobHandle o) {
+            int result = Long.compare(fireTime, o.fireTime);
+            if (result == 0) {
+                result = Long.compare(getId(), o.getId());
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * Timer job instance of deferred timer built on demand so it can be persisted together with the session.
+     */
+    public static class DeferredTimerJobInstance implements TimerJobInstance {
+        
+        private final Job job;
+        private final JobContext ctx;
+        private final Trigger trigger;
+        private final JobHandle handle;
+        
+        public DeferredTimerJobInstance(Job job, JobContext ctx, Trigger trigger, JobHandle handle) {
+            this.job = job;
+            this.ctx = ctx;
+            this.trigger = trigger;
+            this.handle = handle;
+        }
+
+        @Override
+        public JobHandle getJobHandle() {
+            return handle;
+        }
+
+        @Override
+        public Job getJob() {
+            return job;
+        }
+
+        @Override
+        public Trigger getTrigger() {
+            return trigger;
+        }
+
+        @Override
+        public JobContext getJobContext() {
+            return ctx;
+        }
+    }
 
 
     public static class GlobalJobHandle extends DefaultJobHandle
@@ -179,6 +179,11 @@ public class ThreadPoolSchedulerService implements GlobalSchedulerService {
         globalTimerService.getTimerJobFactoryManager().addTimerJobInstance( timerJobInstance );
     }
     
+    @Override
+    public long nextJobHandleId() {
+        return idCounter.getAndIncrement();
+    }
+
     public static class GlobalJDKJobHandle extends GlobalJobHandle implements Serializable {
     
         private static final long     serialVersionUID = 510l;
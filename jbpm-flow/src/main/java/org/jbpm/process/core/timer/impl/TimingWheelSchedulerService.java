@@ -0,0 +1,564 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.core.timer.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.drools.core.time.InternalSchedulerService;
+import org.drools.core.time.Job;
+import org.drools.core.time.JobContext;
+import org.drools.core.time.JobHandle;
+import org.drools.core.time.SelfRemovalJobContext;
+import org.drools.core.time.TimerService;
+import org.drools.core.time.Trigger;
+import org.drools.core.time.impl.TimerJobInstance;
+import org.jbpm.process.core.timer.GlobalSchedulerService;
+import org.jbpm.process.core.timer.NamedJobContext;
+import org.jbpm.process.core.timer.SchedulerServiceInterceptor;
+import org.jbpm.process.core.timer.impl.GlobalTimerService.GlobalJobHandle;
+import org.jbpm.process.instance.timer.TimerManager.ProcessJobContext;
+import org.jbpm.process.instance.timer.TimerManager.StartProcessJobContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In memory scheduler service backed by hierarchical timing wheel. Scheduling and cancelling of timers
+ * is constant time operation (timers are kept in linked buckets instead of a heap). Timers that expire
+ * within the same tick are collected by single pass of the ticker and each of them is then submitted
+ * to the worker thread pool on its own so slow timer does not hold back the others.
+ * <br/>
+ * Wheel can be configured with following system properties:
+ * <ul>
+ *  <li>org.jbpm.timer.wheel.tick - duration of single tick in milliseconds - default 100</li>
+ *  <li>org.jbpm.timer.wheel.size - number of buckets in every level of the wheel - default 512</li>
+ * </ul>
+ * Timers are fired with precision of the tick.
+ */
+public class TimingWheelSchedulerService implements GlobalSchedulerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheelSchedulerService.class);
+
+    private static final Integer FAILED_JOB_RETRIES = Integer.parseInt(System.getProperty("org.jbpm.timer.thread.retries", "5"));
+    private static final Integer FAILED_JOB_DELAY = Integer.parseInt(System.getProperty("org.jbpm.timer.thread.delay", "1000"));
+
+    private AtomicLong idCounter = new AtomicLong();
+    private TimerService globalTimerService;
+    private SchedulerServiceInterceptor interceptor = new DelegateSchedulerServiceInterceptor(this);
+
+    private int poolSize;
+    private long tickMs = Long.parseLong(System.getProperty("org.jbpm.timer.wheel.tick", "100"));
+    private int wheelSize = Integer.parseInt(System.getProperty("org.jbpm.timer.wheel.size", "512"));
+
+    private ConcurrentHashMap<String, JobHandle> activeTimer = new ConcurrentHashMap<String, JobHandle>();
+
+    private DelayQueue<TimerBucket> delayQueue;
+    private TimingWheel timingWheel;
+    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ExecutorService workers;
+    private Thread ticker;
+    private volatile boolean active = false;
+
+    public TimingWheelSchedulerService(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public TimingWheelSchedulerService(int poolSize, long tickMs, int wheelSize) {
+        this.poolSize = poolSize;
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+    }
+
+    @Override
+    public void initScheduler(TimerService globalTimerService) {
+        this.globalTimerService = globalTimerService;
+
+        this.delayQueue = new DelayQueue<TimerBucket>();
+        this.timingWheel = new TimingWheel(tickMs, wheelSize, System.currentTimeMillis(), delayQueue);
+        this.workers = Executors.newFixedThreadPool(poolSize);
+        this.active = true;
+        this.ticker = new Thread(new Ticker(), "jbpm-timing-wheel-" + System.identityHashCode(this));
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    @Override
+    public void shutdown() {
+        this.active = false;
+        if (this.ticker != null) {
+            this.ticker.interrupt();
+        }
+        try {
+            this.workers.shutdown();
+            if ( !this.workers.awaitTermination( 10, TimeUnit.SECONDS ) ) {
+                this.workers.shutdownNow();
+            }
+        } catch ( InterruptedException e ) {
+            this.workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        this.activeTimer.clear();
+    }
+
+    @Override
+    public JobHandle scheduleJob(Job job, JobContext ctx, Trigger trigger) {
+
+        Date date = trigger.hasNextFireTime();
+        if ( date != null ) {
+            String jobname = null;
+            if (ctx instanceof ProcessJobContext) {
+                jobname = getJobName((ProcessJobContext) ctx);
+                if (activeTimer.containsKey(jobname)) {
+                    return activeTimer.get(jobname);
+                }
+
+            }
+            GlobalTimingWheelJobHandle jobHandle = new GlobalTimingWheelJobHandle( idCounter.getAndIncrement() );
+
+            TimerJobInstance jobInstance = globalTimerService.
+                                 getTimerJobFactoryManager().createTimerJobInstance( job,
+                                                                                     ctx,
+                                                                                     trigger,
+                                                                                     jobHandle,
+                                                                                     (InternalSchedulerService) globalTimerService );
+            jobHandle.setTimerJobInstance( (TimerJobInstance) jobInstance );
+            interceptor.internalSchedule( (TimerJobInstance) jobInstance );
+            if (jobname != null) {
+                activeTimer.put(jobname, jobHandle);
+            }
+            return jobHandle;
+        } else {
+            return null;
+        }
+
+    }
+
+    @Override
+    public boolean removeJob(JobHandle jobHandle) {
+        if (jobHandle == null) {
+            return false;
+        }
+        jobHandle.setCancel( true );
+        GlobalTimingWheelJobHandle wheelJobHandle = (GlobalTimingWheelJobHandle) jobHandle;
+        JobContext jobContext = wheelJobHandle.getTimerJobInstance().getJobContext();
+        try {
+            ProcessJobContext processCtx = null;
+            if (jobContext instanceof SelfRemovalJobContext) {
+                processCtx = (ProcessJobContext) ((SelfRemovalJobContext) jobContext).getJobContext();
+            } else {
+                processCtx = (ProcessJobContext) jobContext;
+            }
+
+            activeTimer.remove(getJobName(processCtx));
+            globalTimerService.getTimerJobFactoryManager().removeTimerJobInstance( wheelJobHandle.getTimerJobInstance() );
+        } catch (ClassCastException e) {
+            // do nothing in case ProcessJobContext was not given
+        }
+        TimerEntry entry = wheelJobHandle.getEntry();
+        return entry != null && entry.cancel();
+    }
+
+    @Override
+    public void internalSchedule(TimerJobInstance timerJobInstance) {
+        if (!active) {
+            return;
+        }
+        Date date = timerJobInstance.getTrigger().hasNextFireTime();
+
+        GlobalTimingWheelJobHandle jobHandle = (GlobalTimingWheelJobHandle) timerJobInstance.getJobHandle();
+        TimerEntry entry = new TimerEntry(date.getTime(), new RetriggerCallable(timerJobInstance));
+        jobHandle.setEntry( entry );
+        globalTimerService.getTimerJobFactoryManager().addTimerJobInstance( timerJobInstance );
+
+        schedule(entry);
+    }
+
+    protected void schedule(TimerEntry entry) {
+        boolean added;
+        lock.readLock().lock();
+        try {
+            added = timingWheel.add(entry);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (!added && !entry.isCancelled()) {
+            // already expired, fire it right away
+            fire(entry);
+        }
+    }
+
+    protected void fire(List<TimerEntry> expired) {
+        for (TimerEntry entry : expired) {
+            fire(entry);
+        }
+    }
+
+    protected void fire(final TimerEntry entry) {
+        workers.execute(() -> {
+            if (entry.isCancelled()) {
+                return;
+            }
+            try {
+                entry.getCallable().call();
+            } catch (Exception e) {
+                logger.debug("Timer job {} failed due to {}", entry, e.getMessage());
+            }
+        });
+    }
+
+    protected String getJobName(ProcessJobContext processCtx) {
+        String jobname = processCtx.getSessionId() + "-" + processCtx.getProcessInstanceId() + "-" + processCtx.getTimer().getId();
+        if (processCtx instanceof StartProcessJobContext) {
+            jobname = "StartProcess-"+((StartProcessJobContext) processCtx).getProcessId()+ "-" + processCtx.getTimer().getId();
+        }
+        return jobname;
+    }
+
+    @Override
+    public long nextJobHandleId() {
+        return idCounter.getAndIncrement();
+    }
+
+    public static class GlobalTimingWheelJobHandle extends GlobalJobHandle implements Serializable {
+
+        private static final long     serialVersionUID = 510l;
+
+        private transient TimerEntry entry;
+
+        public GlobalTimingWheelJobHandle(long id) {
+            super(id);
+        }
+
+        public TimerEntry getEntry() {
+            return entry;
+        }
+
+        public void setEntry(TimerEntry entry) {
+            this.entry = entry;
+        }
+
+    }
+
+    @Override
+    public JobHandle buildJobHandleForContext(NamedJobContext ctx) {
+        // this is in memory scheduler and the building of context is required for permanent ScueduleService only
+        return null;
+    }
+
+
+    @Override
+    public boolean isTransactional() {
+        return false;
+    }
+
+
+    @Override
+    public void setInterceptor(SchedulerServiceInterceptor interceptor) {
+        this.interceptor = interceptor;
+    }
+
+	@Override
+	public boolean retryEnabled() {
+		return false;
+	}
+
+
+	@Override
+	public boolean isValid(GlobalJobHandle jobHandle) {
+
+		return true;
+	}
+
+	private class Ticker implements Runnable {
+
+        @Override
+        public void run() {
+            while (active) {
+                try {
+                    advance(tickMs);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Throwable e) {
+                    logger.error("Unexpected error in timing wheel ticker", e);
+                }
+            }
+        }
+
+        private void advance(long timeoutMs) throws InterruptedException {
+            TimerBucket bucket = delayQueue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            if (bucket == null) {
+                return;
+            }
+            List<TimerEntry> expired = new ArrayList<TimerEntry>();
+            lock.writeLock().lock();
+            try {
+                while (bucket != null) {
+                    timingWheel.advanceClock(bucket.getExpiration());
+                    for (TimerEntry entry : bucket.flush()) {
+                        // cascade to lower level wheel or collect as expired
+                        if (!timingWheel.add(entry) && !entry.isCancelled()) {
+                            expired.add(entry);
+                        }
+                    }
+                    bucket = delayQueue.poll();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            fire(expired);
+        }
+	}
+
+	private class RetriggerCallable implements Callable<Void> {
+
+	    private TimerJobInstance delegate;
+
+	    private int retries = 0;
+
+	    RetriggerCallable(TimerJobInstance delegate) {
+	        this.delegate = delegate;
+	    }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Void call() throws Exception {
+            try {
+                ((Callable<Void>) this.delegate).call();
+                return null;
+            } catch (Exception e) {
+                GlobalTimingWheelJobHandle jobHandle = (GlobalTimingWheelJobHandle) this.delegate.getJobHandle();
+                if (retries < FAILED_JOB_RETRIES) {
+                    TimerEntry entry = new TimerEntry(System.currentTimeMillis() + FAILED_JOB_DELAY, this);
+                    jobHandle.setEntry( entry );
+                    retries++;
+                    schedule(entry);
+                } else {
+                    logger.error("Timer execution failed {} times in a roll, unscheduling ({})", FAILED_JOB_RETRIES, jobHandle);
+                }
+                throw e;
+            }
+        }
+
+	}
+
+	/**
+	 * Single timer kept in the wheel - element of doubly linked list of the bucket it belongs to.
+	 */
+	public static class TimerEntry {
+
+	    private final long expiration;
+	    private final Callable<Void> callable;
+	    private volatile boolean cancelled = false;
+
+	    private volatile TimerBucket bucket;
+	    private TimerEntry prev;
+	    private TimerEntry next;
+
+	    TimerEntry(long expiration, Callable<Void> callable) {
+	        this.expiration = expiration;
+	        this.callable = callable;
+	    }
+
+	    public long getExpiration() {
+	        return expiration;
+	    }
+
+	    Callable<Void> getCallable() {
+	        return callable;
+	    }
+
+	    public boolean isCancelled() {
+	        return cancelled;
+	    }
+
+	    /**
+	     * Cancels this timer and unlinks it from its bucket.
+	     * @return true if the timer was still waiting to be fired
+	     */
+	    boolean cancel() {
+	        boolean wasPending = !cancelled;
+	        cancelled = true;
+	        // bucket can change when timer is cascaded to lower level wheel so retry until removed
+	        TimerBucket current = bucket;
+	        while (current != null) {
+	            current.remove(this);
+	            current = bucket;
+	        }
+	        return wasPending;
+	    }
+
+	    @Override
+	    public String toString() {
+	        return "TimerEntry [expiration=" + expiration + ", cancelled=" + cancelled + "]";
+	    }
+	}
+
+	/**
+	 * Bucket of the wheel - all timers that expire within the same tick of given wheel level.
+	 */
+	static class TimerBucket implements Delayed {
+
+	    // sentinel of circular doubly linked list
+	    private final TimerEntry root = new TimerEntry(-1, null);
+	    private final AtomicLong expiration = new AtomicLong(-1);
+
+	    TimerBucket() {
+	        root.next = root;
+	        root.prev = root;
+	    }
+
+	    synchronized void add(TimerEntry entry) {
+	        entry.bucket = this;
+	        TimerEntry tail = root.prev;
+	        entry.next = root;
+	        entry.prev = tail;
+	        tail.next = entry;
+	        root.prev = entry;
+	    }
+
+	    synchronized void remove(TimerEntry entry) {
+	        if (entry.bucket != this) {
+	            return;
+	        }
+	        entry.next.prev = entry.prev;
+	        entry.prev.next = entry.next;
+	        entry.next = null;
+	        entry.prev = null;
+	        entry.bucket = null;
+	    }
+
+	    /**
+	     * Removes all timers from this bucket and resets its expiration.
+	     */
+	    synchronized List<TimerEntry> flush() {
+	        List<TimerEntry> entries = new ArrayList<TimerEntry>();
+	        TimerEntry entry = root.next;
+	        while (entry != root) {
+	            TimerEntry next = entry.next;
+	            remove(entry);
+	            entries.add(entry);
+	            entry = next;
+	        }
+	        expiration.set(-1);
+	        return entries;
+	    }
+
+	    /**
+	     * Sets expiration of the bucket
+	     * @return true if expiration was changed and bucket needs to be (re)queued
+	     */
+	    boolean setExpiration(long expirationMs) {
+	        return expiration.getAndSet(expirationMs) != expirationMs;
+	    }
+
+	    long getExpiration() {
+	        return expiration.get();
+	    }
+
+	    @Override
+	    public long getDelay(TimeUnit unit) {
+	        return unit.convert(Math.max(getExpiration() - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+	    }
+
+	    @Override
+	    public int compareTo(Delayed o) {
+	        return Long.compare(getExpiration(), ((TimerBucket) o).getExpiration());
+	    }
+	}
+
+	/**
+	 * Single level of the hierarchical wheel, timers that do not fit into its interval are
+	 * passed to (lazily created) overflow wheel with tick equal to the interval of this one.
+	 */
+	static class TimingWheel {
+
+	    private final long tickMs;
+	    private final int wheelSize;
+	    private final long interval;
+	    private final TimerBucket[] buckets;
+	    private final DelayQueue<TimerBucket> queue;
+	    private volatile long currentTime;
+	    private volatile TimingWheel overflowWheel;
+
+	    TimingWheel(long tickMs, int wheelSize, long startMs, DelayQueue<TimerBucket> queue) {
+	        this.tickMs = tickMs;
+	        this.wheelSize = wheelSize;
+	        this.interval = tickMs * wheelSize;
+	        this.queue = queue;
+	        this.currentTime = startMs - (startMs % tickMs);
+	        this.buckets = new TimerBucket[wheelSize];
+	        for (int i = 0; i < wheelSize; i++) {
+	            buckets[i] = new TimerBucket();
+	        }
+	    }
+
+	    /**
+	     * Adds timer to the wheel.
+	     * @return false if timer is already expired (or cancelled) and was not added
+	     */
+	    boolean add(TimerEntry entry) {
+	        long expiration = entry.getExpiration();
+	        if (entry.isCancelled()) {
+	            return false;
+	        } else if (expiration < currentTime + tickMs) {
+	            return false;
+	        } else if (expiration < currentTime + interval) {
+	            long virtualId = expiration / tickMs;
+	            TimerBucket bucket = buckets[(int) (virtualId % wheelSize)];
+	            bucket.add(entry);
+	            if (bucket.setExpiration(virtualId * tickMs)) {
+	                queue.offer(bucket);
+	            }
+	            return true;
+	        } else {
+	            return getOverflowWheel().add(entry);
+	        }
+	    }
+
+	    void advanceClock(long timeMs) {
+	        if (timeMs >= currentTime + tickMs) {
+	            currentTime = timeMs - (timeMs % tickMs);
+	            TimingWheel overflow = overflowWheel;
+	            if (overflow != null) {
+	                overflow.advanceClock(currentTime);
+	            }
+	        }
+	    }
+
+	    private TimingWheel getOverflowWheel() {
+	        if (overflowWheel == null) {
+	            synchronized (this) {
+	                if (overflowWheel == null) {
+	                    overflowWheel = new TimingWheel(interval, wheelSize, currentTime, queue);
+	                }
+	            }
+	        }
+	        return overflowWheel;
+	    }
+	}
+}
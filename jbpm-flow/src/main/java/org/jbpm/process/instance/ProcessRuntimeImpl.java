@@ -83,6 +83,8 @@ public class ProcessRuntimeImpl implements InternalProcessRuntime {
 	private SignalManager signalManager;
 	private TimerManager timerManager;
 	private ProcessEventSupport processEventSupport;
+	// execution mode of process instances of this runtime, see WorkflowProcessInstanceImpl.setAgendaExecution
+	private boolean agendaExecution = Boolean.parseBoolean(System.getProperty("org.jbpm.process.execution.agenda", "false"));
 
 	public ProcessRuntimeImpl(InternalKnowledgeRuntime kruntime) {
 		this.kruntime = kruntime;
@@ -103,6 +105,14 @@ public class ProcessRuntimeImpl implements InternalProcessRuntime {
         initProcessActivationListener(); 
 	}
 	
+	public boolean isAgendaExecution() {
+		return agendaExecution;
+	}
+
+	public void setAgendaExecution(boolean agendaExecution) {
+		this.agendaExecution = agendaExecution;
+	}
+	
 	public void initStartTimers() {
 	    KieBase kbase = kruntime.getKieBase();
         Collection<Process> processes = kbase.getProcesses();
@@ -120,6 +120,7 @@ public class MigrateProcessInstanceCommand implements ExecutableCommand<Void>, P
 	        processInstance.setKnowledgeRuntime((InternalKnowledgeRuntime) ksession);
 	        processInstance.setProcess(process);
 	        processInstance.reconnect();
+	        processInstance.markDirty();
 		}
         return null;
     }
@@ -125,6 +125,7 @@ public class UpdateTimerCommand implements ExecutableCommand<Void>, ProcessInsta
                     logger.debug("New timer {} about to be registered", newTimer);
                     tm.registerTimer(newTimer, wfp);                    
                     tni.internalSetTimerId(newTimer.getId());
+                    wfp.markDirty();
                     logger.debug("New timer {} successfully registered", newTimer);
 
                     break;
@@ -144,6 +145,7 @@ public class UpdateTimerCommand implements ExecutableCommand<Void>, ProcessInsta
                         timerList.add(newTimer.getId());
     
                         sbni.internalSetTimerInstances(timerList);
+                        wfp.markDirty();
                         logger.debug("New timer {} successfully registered", newTimer);
                     
                     }
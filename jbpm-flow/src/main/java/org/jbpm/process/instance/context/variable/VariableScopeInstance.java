@@ -16,10 +16,15 @@
 
 package org.jbpm.process.instance.context.variable;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.drools.core.ClassObjectFilter;
 import org.drools.core.event.ProcessEventSupport;
@@ -29,6 +34,7 @@ import org.jbpm.process.instance.ContextInstanceContainer;
 import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.context.AbstractContextInstance;
 import org.jbpm.workflow.core.Node;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
 import org.jbpm.workflow.instance.node.CompositeContextNodeInstance;
 import org.kie.api.runtime.process.CaseData;
 import org.kie.api.runtime.rule.FactHandle;
@@ -39,6 +45,11 @@ import org.kie.api.runtime.rule.FactHandle;
 public class VariableScopeInstance extends AbstractContextInstance {
 
     private static final long serialVersionUID = 510l;    
+
+    // values of these types cannot be modified by the caller once returned from the variable scope
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+            Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class));
     
     private Map<String, Object> variables = new HashMap<String, Object>();
     private transient String variableIdPrefix = null;
@@ -52,6 +63,10 @@ public class VariableScopeInstance extends AbstractContextInstance {
                 
         Object value = variables.get(name);
         if (value != null) {
+            if (!IMMUTABLE_TYPES.contains(value.getClass()) && !(value instanceof Enum)) {
+                // caller might change the value in place so it needs to be persisted again
+                markProcessInstanceDirty();
+            }
             return value;
         }
 
@@ -87,6 +102,7 @@ public class VariableScopeInstance extends AbstractContextInstance {
     }
 
     public Map<String, Object> getVariables() {
+        markProcessInstanceDirty();
         return Collections.unmodifiableMap(variables);
     }
 
@@ -134,6 +150,13 @@ public class VariableScopeInstance extends AbstractContextInstance {
         }
         // not a case, store it in normal variables
     	variables.put(name, value);
+    	markProcessInstanceDirty();
+    }
+
+    protected void markProcessInstanceDirty() {
+        if (getProcessInstance() instanceof WorkflowProcessInstanceImpl) {
+            ((WorkflowProcessInstanceImpl) getProcessInstance()).markDirty();
+        }
     }
     
     public VariableScope getVariableScope() {
@@ -31,6 +31,7 @@ import org.kie.api.runtime.process.ProcessInstance;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -78,6 +79,19 @@ public class DefaultSignalManager implements SignalManager {
 		}
 	}
 	
+	/**
+	 * Returns event listeners currently registered for given event type
+	 * @param type event type
+	 * @return registered listeners, never null
+	 */
+	public List<EventListener> getEventListeners(String type) {
+		List<EventListener> eventListeners = processEventListeners.get(type);
+		if (eventListeners == null) {
+			return Collections.emptyList();
+		}
+		return eventListeners;
+	}
+	
 	public void signalEvent(String type, Object event) {
 	    ((DefaultSignalManager) ((InternalProcessRuntime) kruntime.getProcessRuntime()).getSignalManager()).internalSignalEvent(type, event);
 	}
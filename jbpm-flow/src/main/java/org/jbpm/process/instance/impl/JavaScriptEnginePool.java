@@ -0,0 +1,361 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.impl;
+
+import java.lang.ref.SoftReference;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.jbpm.process.core.context.variable.VariableScope;
+import org.jbpm.process.instance.context.variable.VariableScopeInstance;
+import org.jbpm.workflow.instance.WorkflowProcessInstance;
+import org.kie.api.runtime.Globals;
+import org.kie.api.runtime.process.ProcessContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of JavaScript engines used by {@link JavaScriptAction} and {@link JavaScriptReturnValueEvaluator}.
+ * There is one pool per class loader (of the kie base the process belongs to) so scripts of a deployment
+ * never run in an engine created for, and holding on to classes of, another deployment.
+ * <br/>
+ * Engines are created lazily up to the pool size (org.jbpm.script.javascript.pool.size system property,
+ * defaults to number of available processors) and each of them keeps compiled form of the scripts it has
+ * evaluated so every script is compiled only once per engine. Compiled scripts are kept in LRU cache of
+ * org.jbpm.script.javascript.cache.size entries (1000 by default) per engine.
+ * <br/>
+ * When all engines are in use the caller waits up to org.jbpm.script.javascript.pool.timeout milliseconds
+ * (1000 by default) for one to be returned and then evaluates with a one-off engine that is not pooled. A nested
+ * evaluation (script that triggers another script on the same thread) never waits as the engine it would wait for
+ * might be the one its own thread holds.
+ * <br/>
+ * Process variables, globals and kcontext are not copied into the engine but are exposed lazily through
+ * {@link ProcessContextBindings} set as global scope of the script context. Engine bindings are reset to their
+ * initial state whenever the engine is returned to the pool so nothing a script declared or changed leaks
+ * to other evaluations.
+ */
+public class JavaScriptEnginePool {
+
+    private static final Logger logger = LoggerFactory.getLogger(JavaScriptEnginePool.class);
+
+    private static final int POOL_SIZE = Integer.parseInt(System.getProperty("org.jbpm.script.javascript.pool.size",
+                                                                             String.valueOf(Runtime.getRuntime().availableProcessors())));
+    private static final int CACHE_SIZE = Integer.parseInt(System.getProperty("org.jbpm.script.javascript.cache.size", "1000"));
+    private static final long BORROW_TIMEOUT = Long.parseLong(System.getProperty("org.jbpm.script.javascript.pool.timeout", "1000"));
+
+    // engines hold on to their class loader, softly referenced pools let the class loader of an undeployed
+    // kie base be collected
+    private static final Map<ClassLoader, SoftReference<JavaScriptEnginePool>> pools = new WeakHashMap<ClassLoader, SoftReference<JavaScriptEnginePool>>();
+
+    private final int poolSize;
+    private final int cacheSize;
+    private final ClassLoader classLoader;
+    private final BlockingQueue<PooledEngine> available;
+    private final AtomicInteger created = new AtomicInteger();
+    // number of engines borrowed by current thread - more than one only for nested evaluations
+    private final ThreadLocal<Integer> borrowed = new ThreadLocal<Integer>();
+
+    public JavaScriptEnginePool(int poolSize) {
+        this(poolSize,
+             CACHE_SIZE,
+             null);
+    }
+
+    public JavaScriptEnginePool(int poolSize, int cacheSize, ClassLoader classLoader) {
+        this.poolSize = Math.max(poolSize, 1);
+        this.cacheSize = Math.max(cacheSize, 1);
+        this.classLoader = classLoader;
+        this.available = new ArrayBlockingQueue<PooledEngine>(this.poolSize);
+    }
+
+    /**
+     * Returns pool of the class loader of kie base given process context belongs to.
+     */
+    public static JavaScriptEnginePool get(ProcessContext context) {
+        ClassLoader classLoader = null;
+        if (context.getKieRuntime() != null && context.getKieRuntime().getKieBase() instanceof InternalKnowledgeBase) {
+            classLoader = ((InternalKnowledgeBase) context.getKieRuntime().getKieBase()).getRootClassLoader();
+        }
+        return get(classLoader);
+    }
+
+    /**
+     * Returns pool of given class loader, when null the thread context class loader is used.
+     */
+    public static JavaScriptEnginePool get(ClassLoader classLoader) {
+        if (classLoader == null) {
+            classLoader = Thread.currentThread().getContextClassLoader();
+        }
+        synchronized (pools) {
+            SoftReference<JavaScriptEnginePool> reference = pools.get(classLoader);
+            JavaScriptEnginePool pool = reference != null ? reference.get() : null;
+            if (pool == null) {
+                pool = new JavaScriptEnginePool(POOL_SIZE,
+                                                CACHE_SIZE,
+                                                classLoader);
+                pools.put(classLoader,
+                          new SoftReference<JavaScriptEnginePool>(pool));
+            }
+            return pool;
+        }
+    }
+
+    public Object evaluate(String script, ProcessContext context) throws ScriptException {
+        return evaluate(script, new ProcessContextBindings(context));
+    }
+
+    public Object evaluate(String script, Bindings bindings) throws ScriptException {
+        PooledEngine engine = borrow();
+        try {
+            return engine.evaluate(script, bindings);
+        } finally {
+            release(engine);
+        }
+    }
+
+    protected PooledEngine borrow() {
+        PooledEngine engine = available.poll();
+        if (engine == null) {
+            if (created.incrementAndGet() <= poolSize) {
+                engine = createEngine(true);
+            } else {
+                created.decrementAndGet();
+                engine = awaitEngine();
+            }
+        }
+        Integer count = borrowed.get();
+        borrowed.set(count == null ? 1 : count + 1);
+        return engine;
+    }
+
+    protected void release(PooledEngine engine) {
+        Integer count = borrowed.get();
+        if (count == null || count <= 1) {
+            borrowed.remove();
+        } else {
+            borrowed.set(count - 1);
+        }
+        if (!engine.isPooled()) {
+            return;
+        }
+        try {
+            engine.reset();
+        } catch (RuntimeException e) {
+            // engine in unknown state is dropped, a new one is created when needed
+            logger.warn("Unable to reset JavaScript engine, discarding it", e);
+            created.decrementAndGet();
+            return;
+        }
+        available.offer(engine);
+    }
+
+    private PooledEngine awaitEngine() {
+        PooledEngine engine = null;
+        if (borrowed.get() == null) {
+            try {
+                engine = available.poll(BORROW_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (engine == null) {
+            logger.debug("No pooled JavaScript engine available, evaluating with one-off engine");
+            engine = createEngine(false);
+        }
+        return engine;
+    }
+
+    private PooledEngine createEngine(boolean pooled) {
+        ScriptEngineManager manager = classLoader != null ? new ScriptEngineManager(classLoader) : new ScriptEngineManager();
+        return new PooledEngine(manager.getEngineByName("JavaScript"), cacheSize, pooled);
+    }
+
+    protected static class PooledEngine {
+
+        private final ScriptEngine engine;
+        private final boolean pooled;
+        private final Map<String, CompiledScript> compiledScripts;
+        private final Map<String, Object> initialBindings;
+
+        PooledEngine(ScriptEngine engine, final int cacheSize, boolean pooled) {
+            this.engine = engine;
+            this.pooled = pooled;
+            this.initialBindings = new HashMap<String, Object>(engine.getBindings(ScriptContext.ENGINE_SCOPE));
+            this.compiledScripts = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        }
+
+        Object evaluate(String script, Bindings bindings) throws ScriptException {
+            ScriptContext scriptContext = new SimpleScriptContext();
+            scriptContext.setBindings(engine.getBindings(ScriptContext.ENGINE_SCOPE), ScriptContext.ENGINE_SCOPE);
+            scriptContext.setBindings(bindings, ScriptContext.GLOBAL_SCOPE);
+            CompiledScript compiled = compile(script);
+            if (compiled != null) {
+                return compiled.eval(scriptContext);
+            }
+            return engine.eval(script, scriptContext);
+        }
+
+        /*
+         * restores engine bindings to the state right after the engine was created - drops anything scripts
+         * declared and puts back values they replaced
+         */
+        void reset() {
+            Bindings engineBindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+            for (String key : new HashSet<String>(engineBindings.keySet())) {
+                if (!initialBindings.containsKey(key)) {
+                    engineBindings.remove(key);
+                }
+            }
+            for (Map.Entry<String, Object> initial : initialBindings.entrySet()) {
+                if (engineBindings.get(initial.getKey()) != initial.getValue()) {
+                    engineBindings.put(initial.getKey(), initial.getValue());
+                }
+            }
+        }
+
+        CompiledScript compile(String script) throws ScriptException {
+            if (!(engine instanceof Compilable)) {
+                return null;
+            }
+            CompiledScript compiled = compiledScripts.get(script);
+            if (compiled == null) {
+                logger.debug("Compiling script {} with engine {}", script, engine);
+                compiled = ((Compilable) engine).compile(script);
+                compiledScripts.put(script, compiled);
+            }
+            return compiled;
+        }
+
+        boolean isPooled() {
+            return pooled;
+        }
+
+        int getCompiledScriptsCount() {
+            return compiledScripts.size();
+        }
+    }
+
+    /**
+     * Read only (with local overrides) view of process variables, kcontext and globals - values are
+     * resolved only when they are accessed by the script. Process variables take precedence over
+     * kcontext that takes precedence over globals.
+     */
+    public static class ProcessContextBindings extends AbstractMap<String, Object> implements Bindings {
+
+        private final ProcessContext context;
+        private final Map<String, Object> variables;
+        private final Globals globals;
+        private final Map<String, Object> overrides = new HashMap<String, Object>();
+
+        public ProcessContextBindings(ProcessContext context) {
+            this.context = context;
+            this.globals = context.getKieRuntime().getGlobals();
+
+            Map<String, Object> processVariables = null;
+            if (context.getProcessInstance() != null && context.getProcessInstance().getProcess() != null) {
+                VariableScopeInstance variableScope = (VariableScopeInstance) ((WorkflowProcessInstance)context.getProcessInstance())
+                        .getContextInstance(VariableScope.VARIABLE_SCOPE);
+                if (variableScope != null) {
+                    processVariables = variableScope.getVariables();
+                }
+            }
+            this.variables = processVariables != null ? processVariables : Collections.<String, Object>emptyMap();
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (overrides.containsKey(key)) {
+                return overrides.get(key);
+            }
+            if (variables.containsKey(key)) {
+                return variables.get(key);
+            }
+            if ("kcontext".equals(key)) {
+                return context;
+            }
+            if (globals != null && key instanceof String) {
+                return globals.get((String) key);
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return overrides.containsKey(key) || variables.containsKey(key) || "kcontext".equals(key)
+                    || (globals != null && key instanceof String && globals.get((String) key) != null);
+        }
+
+        @Override
+        public Object put(String name, Object value) {
+            // changes are only visible to the script, same as when values were copied into the engine
+            Object previous = get(name);
+            overrides.put(name, value);
+            return previous;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return overrides.remove(key);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Set<String> keys = new LinkedHashSet<String>();
+            if (globals != null && globals.getGlobalKeys() != null) {
+                keys.addAll(globals.getGlobalKeys());
+            }
+            keys.add("kcontext");
+            keys.addAll(variables.keySet());
+            keys.addAll(overrides.keySet());
+
+            Set<Entry<String, Object>> entries = new LinkedHashSet<Entry<String, Object>>();
+            for (String key : keys) {
+                entries.add(new SimpleImmutableEntry<String, Object>(key, get(key)));
+            }
+            return entries;
+        }
+    }
+}
@@ -35,6 +35,7 @@ import org.drools.core.time.impl.CronTrigger;
 import org.drools.core.time.impl.IntervalTrigger;
 import org.jbpm.marshalling.impl.JBPMMessages;
 import org.jbpm.marshalling.impl.ProtobufProcessMarshaller;
+import org.jbpm.process.core.timer.impl.GlobalTimerService;
 import org.jbpm.process.core.timer.impl.RegisteredTimerServiceDelegate;
 import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.ProcessInstance;
@@ -244,14 +245,20 @@ public class TimerManager {
 
             long processInstanceId = ptimer.getTimer().getProcessInstanceId();
 
-            Trigger trigger = ProtobufInputMarshaller.readTrigger(inCtx, ptimer.getTrigger());
-
             TimerInstance timerInstance = ProtobufProcessMarshaller.readTimer(inCtx, ptimer.getTimer());
 
             TimerManager tm = ((InternalProcessRuntime) inCtx.wm.getProcessRuntime()).getTimerManager();
 
             // check if the timer instance is not already registered to avoid duplicated timers
             if (!tm.getTimerMap().containsKey(timerInstance.getId())) {
+                JobHandle registered = getRegisteredJobHandle(ts, timerInstance);
+                if (registered != null) {
+                    // timer is already scheduled (or deferred) by global timer service, no need to read its trigger again
+                    timerInstance.setJobHandle(registered);
+                    tm.getTimerMap().put(timerInstance.getId(), timerInstance);
+                    return;
+                }
+                Trigger trigger = ProtobufInputMarshaller.readTrigger(inCtx, ptimer.getTrigger());
                 ProcessJobContext pctx = new ProcessJobContext(timerInstance, trigger, processInstanceId,
                         inCtx.wm.getKnowledgeRuntime(), false);
                 Date date = trigger.hasNextFireTime();
@@ -271,6 +278,16 @@ public class TimerManager {
                 tm.getTimerMap().put(timerInstance.getId(), timerInstance);
             }
         }
+
+        protected JobHandle getRegisteredJobHandle(TimerService ts, TimerInstance timerInstance) {
+            if (ts instanceof RegisteredTimerServiceDelegate) {
+                ts = ((RegisteredTimerServiceDelegate) ts).getTimerService();
+            }
+            if (ts instanceof GlobalTimerService) {
+                return ((GlobalTimerService) ts).getRegisteredJobHandle(timerInstance.getSessionId(), timerInstance.getId());
+            }
+            return null;
+        }
     }
 
     public static class ProcessJob implements Job, Serializable {
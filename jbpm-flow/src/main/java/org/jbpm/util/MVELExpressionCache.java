@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.util;
+
+import java.io.Serializable;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.drools.core.util.MVELSafeHelper;
+import org.jbpm.process.core.impl.ProcessImpl;
+import org.kie.api.definition.process.Process;
+import org.kie.internal.security.KiePolicyHelper;
+import org.mvel2.MVEL;
+import org.mvel2.integration.VariableResolverFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of compiled MVEL expressions (data input/output mappings and #{} parameters) kept per process
+ * definition so node instances do not need to parse the expression text every time they are triggered.
+ * <br/>
+ * Number of cached expressions per process definition is limited by org.jbpm.mvel.expression.cache.size
+ * system property (defaults to 1000), expressions that do not fit are evaluated without caching.
+ * <br/>
+ * Compiled expressions are executed by {@link MVELSafeHelper} evaluator like any other expression and, as MVEL
+ * may already run parts of the expression when compiling it, compilation is done with the same restricted
+ * access context that the safe evaluator uses when kie security policy is enabled.
+ */
+public class MVELExpressionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MVELExpressionCache.class);
+
+    private static final int MAX_SIZE = Integer.parseInt(System.getProperty("org.jbpm.mvel.expression.cache.size", "1000"));
+
+    private final ConcurrentMap<String, Serializable> compiledExpressions = new ConcurrentHashMap<String, Serializable>();
+
+    /**
+     * Evaluates given expression with cache of given process definition if there is one,
+     * otherwise expression is evaluated directly.
+     * @param process process definition the expression belongs to
+     * @param expression MVEL expression
+     * @param factory variable resolver factory to be used for evaluation
+     * @return result of the expression
+     */
+    public static Object eval(Process process, String expression, VariableResolverFactory factory) {
+        if (process instanceof ProcessImpl) {
+            return ((ProcessImpl) process).getExpressionCache().evaluate(expression, factory);
+        }
+        return MVELSafeHelper.getEvaluator().eval(expression, factory);
+    }
+
+    public Object evaluate(String expression, VariableResolverFactory factory) {
+        Serializable compiled = compile(expression);
+        if (compiled == null) {
+            return MVELSafeHelper.getEvaluator().eval(expression, factory);
+        }
+        return MVELSafeHelper.getEvaluator().executeExpression(compiled, null, factory);
+    }
+
+    /**
+     * Returns compiled form of given expression, compiling and caching it on first use.
+     * @param expression MVEL expression
+     * @return compiled expression or null if the expression cannot be cached
+     */
+    public Serializable compile(String expression) {
+        Serializable compiled = compiledExpressions.get(expression);
+        if (compiled != null) {
+            return compiled;
+        }
+        if (compiledExpressions.size() >= MAX_SIZE) {
+            return null;
+        }
+        try {
+            compiled = safeCompile(expression);
+        } catch (RuntimeException e) {
+            // let the interpreted evaluation report the problem in its usual way
+            logger.debug("Unable to compile expression '{}' due to {}", expression, e.getMessage());
+            return null;
+        }
+        Serializable existing = compiledExpressions.putIfAbsent(expression, compiled);
+        return existing != null ? existing : compiled;
+    }
+
+    private static Serializable safeCompile(final String expression) {
+        if (KiePolicyHelper.isPolicyEnabled()) {
+            return AccessController.doPrivileged(new PrivilegedAction<Serializable>() {
+                @Override
+                public Serializable run() {
+                    return MVEL.compileExpression(expression);
+                }
+            }, KiePolicyHelper.getAccessContext());
+        }
+        return MVEL.compileExpression(expression);
+    }
+
+    public int size() {
+        return compiledExpressions.size();
+    }
+
+    public void clear() {
+        compiledExpressions.clear();
+    }
+}
@@ -52,4 +52,16 @@ public interface NodeInstanceContainer extends org.kie.api.runtime.process.NodeI
     
     NodeInstance getNodeInstance(long nodeInstanceId, boolean recursive);
 
+    /**
+     * Notifies this container that node id of given node instance has been changed.
+     */
+    default void nodeInstanceNodeIdChanged(NodeInstance nodeInstance, long previousNodeId) {
+    }
+
+    /**
+     * Notifies this container that id of given node instance has been changed.
+     */
+    default void nodeInstanceIdChanged(NodeInstance nodeInstance, long previousId) {
+    }
+
 }
@@ -75,7 +75,12 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     protected transient Map<String, Object> dynamicParameters;
 
     public void setId(final long id) {
+        long previousId = this.id;
         this.id = id;
+        if (previousId != id && nodeInstanceContainer != null) {
+            // container indexes node instances by id
+            nodeInstanceContainer.nodeInstanceIdChanged(this, previousId);
+        }
     }
 
     public long getId() {
@@ -83,7 +88,12 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     }
 
     public void setNodeId(final long nodeId) {
+        long previousNodeId = this.nodeId;
         this.nodeId = nodeId;
+        if (previousNodeId != nodeId && nodeInstanceContainer != null) {
+            // node instance was moved to another node (e.g. migration), container indexes node instances by node id
+            nodeInstanceContainer.nodeInstanceNodeIdChanged(this, previousNodeId);
+        }
     }
 
     public long getNodeId() {
@@ -185,8 +195,15 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
             throw new WorkflowRuntimeException(this, getProcessInstance(), e);
         }
         if (!hidden) {
-        	((InternalProcessRuntime) kruntime.getProcessRuntime())
-        		.getProcessEventSupport().fireAfterNodeTriggered(this, kruntime);
+            WorkflowProcessInstanceImpl workflowProcessInstance = (WorkflowProcessInstanceImpl) getProcessInstance();
+            if (workflowProcessInstance.isAgendaExecution()) {
+                // fired once node instances triggered by this one are done, same as in recursive execution
+                workflowProcessInstance.executeOnAgenda(() -> ((InternalProcessRuntime) kruntime.getProcessRuntime())
+                        .getProcessEventSupport().fireAfterNodeTriggered(this, kruntime));
+            } else {
+                ((InternalProcessRuntime) kruntime.getProcessRuntime())
+                        .getProcessEventSupport().fireAfterNodeTriggered(this, kruntime);
+            }
         }
     }
     
@@ -359,18 +376,35 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
             	.getNodeInstance(connection.getTo());
     }
     
-    protected void triggerNodeInstance(org.jbpm.workflow.instance.NodeInstance nodeInstance, String type) {
-    	boolean hidden = false;
-    	if (getNode().getMetaData().get("hidden") != null) {
-    		hidden = true;
-    	}
-    	InternalKnowledgeRuntime kruntime = getProcessInstance().getKnowledgeRuntime();
+    protected void triggerNodeInstance(final org.jbpm.workflow.instance.NodeInstance nodeInstance, final String type) {
+    	WorkflowProcessInstanceImpl workflowProcessInstance = (WorkflowProcessInstanceImpl) getProcessInstance();
+        if (workflowProcessInstance.isAgendaExecution()) {
+            // node is left when the trigger is taken from the agenda, so it is skipped together with its
+            // events when this node instance's container is no longer active, same as in recursive execution
+            workflowProcessInstance.executeOnAgenda(new NodeInstanceTrigger(nodeInstance, type));
+        } else {
+            leaveNode(nodeInstance, type, false);
+        }
+    }
+
+    private void leaveNode(final org.jbpm.workflow.instance.NodeInstance nodeInstance, final String type, boolean agendaExecution) {
+    	final boolean hidden = getNode().getMetaData().get("hidden") != null;
+    	final InternalKnowledgeRuntime kruntime = getProcessInstance().getKnowledgeRuntime();
     	if (!hidden) {
     		((InternalProcessRuntime) kruntime.getProcessRuntime())
     			.getProcessEventSupport().fireBeforeNodeLeft(this, kruntime);
     	}
     	// trigger next node
-        nodeInstance.trigger(this, type);
+    	nodeInstance.trigger(this, type);
+        if (agendaExecution) {
+            // node is left once the next node and everything it triggers is done, same as in recursive execution
+            ((WorkflowProcessInstanceImpl) getProcessInstance()).executeOnAgenda(() -> nodeInstanceLeft(nodeInstance, type, hidden, kruntime));
+        } else {
+            nodeInstanceLeft(nodeInstance, type, hidden, kruntime);
+        }
+    }
+
+    private void nodeInstanceLeft(org.jbpm.workflow.instance.NodeInstance nodeInstance, String type, boolean hidden, InternalKnowledgeRuntime kruntime) {
         Collection<Connection> outgoing = getNode().getOutgoingConnections(type);
         for (Connection conn : outgoing) {
             if (conn.getTo().getId() == nodeInstance.getNodeId()) {
@@ -505,7 +539,7 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
         this.metaData.put(name, data);
     }
     
-    protected class NodeInstanceTrigger {
+    protected class NodeInstanceTrigger implements Runnable {
     	private org.jbpm.workflow.instance.NodeInstance nodeInstance;
     	private String toType;
     	public NodeInstanceTrigger(org.jbpm.workflow.instance.NodeInstance nodeInstance, String toType) {
@@ -518,6 +552,12 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     	public String getToType() {
     		return toType;
     	}
+    	boolean isActive() {
+    	    return ((org.jbpm.workflow.instance.NodeInstanceContainer) getNodeInstanceContainer()).getState() == ProcessInstance.STATE_ACTIVE;
+    	}
+    	public void run() {
+    	    leaveNode(nodeInstance, toType, true);
+    	}
     }
     
     public void setDynamicParameters(Map<String, Object> dynamicParameters) {
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jbpm.workflow.instance.NodeInstance;
+
+/**
+ * Active node instances of a node instance container (process instance or composite node instance) kept in
+ * insertion order and indexed by node instance id and by node id, so lookups used by event handling, joins and
+ * multi instance activities do not need to scan all node instances of the container.
+ * <br/>
+ * Like the list it replaces, node instances are compared by identity regardless of their equals method.
+ */
+public class NodeInstanceList extends AbstractCollection<NodeInstance> implements Serializable {
+
+    private static final long serialVersionUID = 510l;
+
+    private final Map<Key, NodeInstance> nodeInstances = new LinkedHashMap<Key, NodeInstance>();
+    private final Map<Long, NodeInstance> nodeInstancesById = new HashMap<Long, NodeInstance>();
+    private final Map<Long, Map<Key, NodeInstance>> nodeInstancesByNodeId = new HashMap<Long, Map<Key, NodeInstance>>();
+
+    public NodeInstanceList() {
+    }
+
+    /**
+     * Creates a snapshot of given node instances.
+     */
+    public NodeInstanceList(Collection<NodeInstance> nodeInstances) {
+        addAll(nodeInstances);
+    }
+
+    @Override
+    public boolean add(NodeInstance nodeInstance) {
+        Key key = new Key(nodeInstance);
+        if (nodeInstances.containsKey(key)) {
+            return false;
+        }
+        nodeInstances.put(key, nodeInstance);
+        nodeInstancesById.put(nodeInstance.getId(), nodeInstance);
+        addToNodeIndex(nodeInstance);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        if (!(object instanceof NodeInstance) || nodeInstances.remove(new Key((NodeInstance) object)) == null) {
+            return false;
+        }
+        removeFromIndex((NodeInstance) object);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return object instanceof NodeInstance && nodeInstances.containsKey(new Key((NodeInstance) object));
+    }
+
+    @Override
+    public int size() {
+        return nodeInstances.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return nodeInstances.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        nodeInstances.clear();
+        nodeInstancesById.clear();
+        nodeInstancesByNodeId.clear();
+    }
+
+    @Override
+    public Iterator<NodeInstance> iterator() {
+        final Iterator<NodeInstance> iterator = nodeInstances.values().iterator();
+        return new Iterator<NodeInstance>() {
+
+            private NodeInstance current;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public NodeInstance next() {
+                current = iterator.next();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                removeFromIndex(current);
+            }
+        };
+    }
+
+    /**
+     * Returns the node instance that was added first or null if there are no node instances.
+     */
+    public NodeInstance getFirst() {
+        return nodeInstances.isEmpty() ? null : nodeInstances.values().iterator().next();
+    }
+
+    public NodeInstance getNodeInstance(long nodeInstanceId) {
+        return nodeInstancesById.get(nodeInstanceId);
+    }
+
+    /**
+     * Returns node instances of given node in the order they were added.
+     */
+    public List<NodeInstance> getNodeInstances(long nodeId) {
+        Map<Key, NodeInstance> sameNode = nodeInstancesByNodeId.get(nodeId);
+        if (sameNode == null) {
+            return new ArrayList<NodeInstance>();
+        }
+        return new ArrayList<NodeInstance>(sameNode.values());
+    }
+
+    /**
+     * Returns node instances of given node without copying them, the collection must not be modified.
+     */
+    public Collection<NodeInstance> getNodeInstancesView(long nodeId) {
+        Map<Key, NodeInstance> sameNode = nodeInstancesByNodeId.get(nodeId);
+        if (sameNode == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableCollection(sameNode.values());
+    }
+
+    /**
+     * Moves given node instance in node id index from previous node id to its current one.
+     */
+    public void nodeIdChanged(NodeInstance nodeInstance, long previousNodeId) {
+        if (!contains(nodeInstance)) {
+            return;
+        }
+        removeFromNodeIndex(nodeInstance, previousNodeId);
+        addToNodeIndex(nodeInstance);
+    }
+
+    /**
+     * Moves given node instance in node instance id index from previous id to its current one.
+     */
+    public void idChanged(NodeInstance nodeInstance, long previousId) {
+        if (!contains(nodeInstance)) {
+            return;
+        }
+        if (nodeInstancesById.get(previousId) == nodeInstance) {
+            nodeInstancesById.remove(previousId);
+        }
+        nodeInstancesById.put(nodeInstance.getId(), nodeInstance);
+    }
+
+    private void removeFromIndex(NodeInstance nodeInstance) {
+        // another node instance might be registered with the same id (e.g. when restored), keep it in such case
+        if (nodeInstancesById.get(nodeInstance.getId()) == nodeInstance) {
+            nodeInstancesById.remove(nodeInstance.getId());
+        }
+        removeFromNodeIndex(nodeInstance, nodeInstance.getNodeId());
+    }
+
+    private void addToNodeIndex(NodeInstance nodeInstance) {
+        Map<Key, NodeInstance> sameNode = nodeInstancesByNodeId.get(nodeInstance.getNodeId());
+        if (sameNode == null) {
+            sameNode = new LinkedHashMap<Key, NodeInstance>();
+            nodeInstancesByNodeId.put(nodeInstance.getNodeId(), sameNode);
+        }
+        sameNode.put(new Key(nodeInstance), nodeInstance);
+    }
+
+    private void removeFromNodeIndex(NodeInstance nodeInstance, long nodeId) {
+        Map<Key, NodeInstance> sameNode = nodeInstancesByNodeId.get(nodeId);
+        if (sameNode != null) {
+            sameNode.remove(new Key(nodeInstance));
+            if (sameNode.isEmpty()) {
+                nodeInstancesByNodeId.remove(nodeId);
+            }
+        }
+    }
+
+    /*
+     * identity based key of a node instance
+     */
+    private static final class Key implements Serializable {
+
+        private static final long serialVersionUID = 510l;
+
+        private final NodeInstance nodeInstance;
+
+        Key(NodeInstance nodeInstance) {
+            this.nodeInstance = nodeInstance;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(nodeInstance);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).nodeInstance == nodeInstance;
+        }
+    }
+}
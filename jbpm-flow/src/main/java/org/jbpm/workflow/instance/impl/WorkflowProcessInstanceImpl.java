@@ -16,9 +16,11 @@
 
 package org.jbpm.workflow.instance.impl;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -29,15 +31,16 @@ import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 
 import org.drools.core.common.InternalKnowledgeRuntime;
-import org.drools.core.util.MVELSafeHelper;
 import org.jbpm.process.core.ContextContainer;
 import org.jbpm.process.core.context.variable.VariableScope;
 import org.jbpm.process.core.timer.Timer;
 import org.jbpm.process.instance.ContextInstance;
 import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.ProcessInstance;
+import org.jbpm.process.instance.ProcessRuntimeImpl;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.impl.ProcessInstanceImpl;
+import org.jbpm.util.MVELExpressionCache;
 import org.jbpm.util.PatternConstants;
 import org.jbpm.workflow.core.DroolsAction;
 import org.jbpm.workflow.core.impl.NodeImpl;
@@ -84,7 +87,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 	private static final long serialVersionUID = 510l;
 	private static final Logger logger = LoggerFactory.getLogger(WorkflowProcessInstanceImpl.class);
 
-	private final List<NodeInstance> nodeInstances = new ArrayList<NodeInstance>();;
+	private final NodeInstanceList nodeInstances = new NodeInstanceList();
 
 	private AtomicLong singleNodeInstanceCounter = new AtomicLong(0);
 
@@ -96,6 +99,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 	private Map<String, Integer> iterationLevels = new HashMap<String, Integer>();
 	private int currentLevel;
 	private boolean persisted = false;
+	private boolean dirty = true;
 	private Object faultData;
 
 	private boolean signalCompletion = true;
@@ -103,6 +107,11 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 	private String deploymentId;
 	private String correlationKey;
 
+	// set explicitly for this process instance, otherwise execution mode of the process runtime applies
+	private transient Boolean agendaExecution;
+	private transient Deque<Runnable> agenda;
+	private transient List<Runnable> scheduledEntries;
+
     public NodeContainer getNodeContainer() {
 		return getWorkflowProcess();
 	}
@@ -115,6 +124,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
     		((NodeInstanceImpl) nodeInstance).setId(id);
 	    }
 		this.nodeInstances.add(nodeInstance);
+		markDirty();
 	}
 
     @Override
@@ -136,12 +146,23 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
         return value;
     }
 
+	@Override
+	public void nodeInstanceNodeIdChanged(NodeInstance nodeInstance, long previousNodeId) {
+		this.nodeInstances.nodeIdChanged(nodeInstance, previousNodeId);
+	}
+
+	@Override
+	public void nodeInstanceIdChanged(NodeInstance nodeInstance, long previousId) {
+		this.nodeInstances.idChanged(nodeInstance, previousId);
+	}
+
 	public void removeNodeInstance(final NodeInstance nodeInstance) {
 		if (((NodeInstanceImpl) nodeInstance).isInversionOfControl()) {
 			getKnowledgeRuntime().delete(
 					getKnowledgeRuntime().getFactHandle(nodeInstance));
 		}
 		this.nodeInstances.remove(nodeInstance);
+		markDirty();
 	}
 
 	public Collection<org.kie.api.runtime.process.NodeInstance> getNodeInstances() {
@@ -166,12 +187,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 	}
 
 	public NodeInstance getNodeInstance(long nodeInstanceId) {
-		for (NodeInstance nodeInstance: nodeInstances) {
-			if (nodeInstance.getId() == nodeInstanceId) {
-				return nodeInstance;
-			}
-		}
-		return null;
+		return nodeInstances.getNodeInstance(nodeInstanceId);
 	}
 
 	public NodeInstance getNodeInstance(long nodeInstanceId, boolean recursive) {
@@ -199,10 +215,8 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 	}
 
 	public NodeInstance getFirstNodeInstance(final long nodeId) {
-		for (final Iterator<NodeInstance> iterator = this.nodeInstances
-				.iterator(); iterator.hasNext();) {
-			final NodeInstance nodeInstance = iterator.next();
-			if (nodeInstance.getNodeId() == nodeId && nodeInstance.getLevel() == getCurrentLevel()) {
+		for (NodeInstance nodeInstance : this.nodeInstances.getNodeInstancesView(nodeId)) {
+			if (nodeInstance.getLevel() == getCurrentLevel()) {
 				return nodeInstance;
 			}
 		}
@@ -210,15 +224,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 	}
 
 	public List<NodeInstance> getNodeInstances(final long nodeId) {
-		List<NodeInstance> result = new ArrayList<NodeInstance>();
-		for (final Iterator<NodeInstance> iterator = this.nodeInstances
-				.iterator(); iterator.hasNext();) {
-			final NodeInstance nodeInstance = iterator.next();
-			if (nodeInstance.getNodeId() == nodeId) {
-				result.add(nodeInstance);
-			}
-		}
-		return result;
+		return this.nodeInstances.getNodeInstances(nodeId);
 	}
 
 	public List<NodeInstance> getNodeInstances(final long nodeId, final List<NodeInstance> currentView) {
@@ -337,6 +343,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 		}
 		variableScope.validateVariable(getProcessName(), name, value);
 		variableScopeInstance.setVariable(name, value);
+		markDirty();
 	}
 
 	public void setState(final int state, String outcome, Object faultData) {
@@ -346,6 +353,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 
 	public void setState(final int state, String outcome) {
 	    super.setState(state, outcome);
+	    markDirty();
         // TODO move most of this to ProcessInstanceImpl
         if (state == ProcessInstance.STATE_COMPLETED
                 || state == ProcessInstance.STATE_ABORTED) {
@@ -354,7 +362,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
             processRuntime.getProcessEventSupport().fireBeforeProcessCompleted(this, kruntime);
             // deactivate all node instances of this process instance
             while (!nodeInstances.isEmpty()) {
-                NodeInstance nodeInstance = nodeInstances.get(0);
+                NodeInstance nodeInstance = nodeInstances.getFirst();
                 ((org.jbpm.workflow.instance.NodeInstance) nodeInstance)
                         .cancel();
             }
@@ -430,6 +438,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 
 	public void start(String trigger) {
 		synchronized (this) {
+			markDirty();
 			registerExternalEventNodeListeners();
 			// activate timer event sub processes
 	        Node[] nodes = getNodeContainer().getNodes();
@@ -480,6 +489,8 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 			if (getState() != ProcessInstance.STATE_ACTIVE) {
 				return;
 			}
+			// signals drive node instances that are not tracked individually
+			markDirty();
 			InternalRuntimeManager manager = (InternalRuntimeManager) getKnowledgeRuntime().getEnvironment().get("RuntimeManager");
 	        if (manager != null) {
 	            // check if process instance is owned by the same manager as the one owning ksession
@@ -489,7 +500,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 	                return;
 	            }
 	        }
-			List<NodeInstance> currentView = new ArrayList<NodeInstance>(this.nodeInstances);
+			NodeInstanceList currentView = new NodeInstanceList(this.nodeInstances);
 
 			try {
 				this.activatingNodeIds = new ArrayList<String>();
@@ -516,7 +527,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
     			                    EventSubProcessNodeInstance eventNodeInstance = (EventSubProcessNodeInstance) getNodeInstance(node);
     			                    eventNodeInstance.signalEvent(type, event);
 			                    } else {
-    								List<NodeInstance> nodeInstances = getNodeInstances(node.getId(), currentView);
+    								List<NodeInstance> nodeInstances = currentView.getNodeInstances(node.getId());
     			                    if (nodeInstances != null && !nodeInstances.isEmpty()) {
     			                        for (NodeInstance nodeInstance : nodeInstances) {
     										((EventNodeInstanceInterface) nodeInstance).signalEvent(type, event);
@@ -571,7 +582,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
                     replacements.put(paramName, variableValueString);
                 } else {
                     try {
-                        variableValue = MVELSafeHelper.getEvaluator().eval(paramName, new ProcessInstanceResolverFactory(this));
+                        variableValue = MVELExpressionCache.eval(getProcess(), paramName, new ProcessInstanceResolverFactory(this));
                         String variableValueString = variableValue == null ? "" : variableValue.toString();
                         replacements.put(paramName, variableValueString);
                     } catch (Throwable t) {
@@ -691,6 +702,63 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
         return iterationLevels;
     }
 
+	public boolean isAgendaExecution() {
+		if (agendaExecution != null) {
+			return agendaExecution;
+		}
+		InternalKnowledgeRuntime kruntime = getKnowledgeRuntime();
+		if (kruntime != null && kruntime.getProcessRuntime() instanceof ProcessRuntimeImpl) {
+			return ((ProcessRuntimeImpl) kruntime.getProcessRuntime()).isAgendaExecution();
+		}
+		return false;
+	}
+
+	/**
+	 * Enables execution mode in which node instances triggered when a node completes are not triggered
+	 * recursively but put on agenda of this process instance and triggered one after another, so the
+	 * stack depth does not grow with the length of the process (defaults to execution mode of the process runtime,
+	 * that is org.jbpm.process.execution.agenda system property).
+	 */
+	public void setAgendaExecution(boolean agendaExecution) {
+		this.agendaExecution = agendaExecution;
+	}
+
+	/**
+	 * Executes given agenda entry - trigger of a node instance or continuation of the node instance that
+	 * scheduled it (e.g. firing of its after events). If another entry is being executed at the moment, given
+	 * entry is scheduled and executed once the current one returns. Entries scheduled by a single entry are put
+	 * in front of the agenda in the order they were scheduled, so node instances are triggered and events are
+	 * fired in the same (depth first) order as in recursive execution.
+	 */
+	void executeOnAgenda(Runnable entry) {
+		if (agenda != null) {
+			scheduledEntries.add(entry);
+			return;
+		}
+		agenda = new ArrayDeque<Runnable>();
+		scheduledEntries = new ArrayList<Runnable>();
+		try {
+			entry.run();
+			while (true) {
+				for (int i = scheduledEntries.size() - 1; i >= 0; i--) {
+					agenda.push(scheduledEntries.get(i));
+				}
+				scheduledEntries.clear();
+				Runnable next = agenda.poll();
+				if (next == null) {
+					break;
+				}
+				// stop if container of the node instance that scheduled the trigger has been aborted / completed
+				if (!(next instanceof NodeInstanceImpl.NodeInstanceTrigger) || ((NodeInstanceImpl.NodeInstanceTrigger) next).isActive()) {
+					next.run();
+				}
+			}
+		} finally {
+			agenda = null;
+			scheduledEntries = null;
+		}
+	}
+
 	public boolean isPersisted() {
 		return persisted;
 	}
@@ -699,6 +767,26 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 		this.persisted = persisted;
 	}
 
+	/**
+	 * Returns true if the state of this process instance might have changed since it was last
+	 * marshalled or unmarshalled (see {@link #markClean()}) and thus must be written again.
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Marks this process instance as changed so it is marshalled on next flush. Code that modifies
+	 * node instances directly (outside of signals, node triggering or variable updates) must call it.
+	 */
+	public void markDirty() {
+		this.dirty = true;
+	}
+
+	public void markClean() {
+		this.dirty = false;
+	}
+
 	public void addActivatingNodeId(String uniqueId) {
 		if (this.activatingNodeIds == null) {
 			return;
@@ -731,6 +819,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 
     public void setDeploymentId(String deploymentId) {
         this.deploymentId = deploymentId;
+        markDirty();
     }
     
     public String getCorrelationKey() {
@@ -742,6 +831,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 
     public void setCorrelationKey(String correlationKey) {
         this.correlationKey = correlationKey;
+        markDirty();
     }
 
     protected boolean hasDeploymentId() {
@@ -40,6 +40,7 @@ import org.jbpm.workflow.instance.WorkflowProcessInstance;
 import org.jbpm.workflow.instance.impl.NodeInstanceFactory;
 import org.jbpm.workflow.instance.impl.NodeInstanceFactoryRegistry;
 import org.jbpm.workflow.instance.impl.NodeInstanceImpl;
+import org.jbpm.workflow.instance.impl.NodeInstanceList;
 import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
 import org.kie.api.definition.process.Connection;
 import org.kie.api.definition.process.Node;
@@ -53,7 +54,7 @@ public class CompositeNodeInstance extends StateBasedNodeInstance implements Nod
 
     private static final long serialVersionUID = 510l;
 
-    private final List<NodeInstance> nodeInstances = new ArrayList<NodeInstance>();
+    private final NodeInstanceList nodeInstances = new NodeInstanceList();
 
     private AtomicLong singleNodeInstanceCounter = null; // set during NodeInstance creation (*NodeFactory)
     private int state = ProcessInstance.STATE_ACTIVE;
@@ -165,7 +166,7 @@ public class CompositeNodeInstance extends StateBasedNodeInstance implements Nod
         triggerCompleted(outType, cancelRemainingInstances);
         if (cancelRemainingInstances) {
 	        while (!nodeInstances.isEmpty()) {
-	            NodeInstance nodeInstance = (NodeInstance) nodeInstances.get(0);
+	            NodeInstance nodeInstance = nodeInstances.getFirst();
 	            ((org.jbpm.workflow.instance.NodeInstance) nodeInstance).cancel();
 	        }
         }
@@ -173,7 +174,7 @@ public class CompositeNodeInstance extends StateBasedNodeInstance implements Nod
 
     public void cancel() {
         while (!nodeInstances.isEmpty()) {
-            NodeInstance nodeInstance = (NodeInstance) nodeInstances.get(0);
+            NodeInstance nodeInstance = nodeInstances.getFirst();
             ((org.jbpm.workflow.instance.NodeInstance) nodeInstance).cancel();
         }
         super.cancel();
@@ -187,10 +188,28 @@ public class CompositeNodeInstance extends StateBasedNodeInstance implements Nod
             ((NodeInstanceImpl) nodeInstance).setId(id);
         }
         this.nodeInstances.add(nodeInstance);
+        markProcessInstanceDirty();
+    }
+
+    @Override
+    public void nodeInstanceNodeIdChanged(NodeInstance nodeInstance, long previousNodeId) {
+        this.nodeInstances.nodeIdChanged(nodeInstance, previousNodeId);
+    }
+
+    @Override
+    public void nodeInstanceIdChanged(NodeInstance nodeInstance, long previousId) {
+        this.nodeInstances.idChanged(nodeInstance, previousId);
     }
 
     public void removeNodeInstance(final NodeInstance nodeInstance) {
         this.nodeInstances.remove(nodeInstance);
+        markProcessInstanceDirty();
+    }
+
+    private void markProcessInstanceDirty() {
+        if (getProcessInstance() instanceof WorkflowProcessInstanceImpl) {
+            ((WorkflowProcessInstanceImpl) getProcessInstance()).markDirty();
+        }
     }
 
     public Collection<org.kie.api.runtime.process.NodeInstance> getNodeInstances() {
@@ -213,12 +232,7 @@ public class CompositeNodeInstance extends StateBasedNodeInstance implements Nod
     }
 
 	public NodeInstance getNodeInstance(long nodeInstanceId) {
-		for (NodeInstance nodeInstance: nodeInstances) {
-			if (nodeInstance.getId() == nodeInstanceId) {
-				return nodeInstance;
-			}
-		}
-		return null;
+		return nodeInstances.getNodeInstance(nodeInstanceId);
 	}
 
 	public NodeInstance getNodeInstance(long nodeInstanceId, boolean recursive) {
@@ -231,9 +245,8 @@ public class CompositeNodeInstance extends StateBasedNodeInstance implements Nod
 	}
 
     public NodeInstance getFirstNodeInstance(final long nodeId) {
-        for ( final Iterator<NodeInstance> iterator = this.nodeInstances.iterator(); iterator.hasNext(); ) {
-            final NodeInstance nodeInstance = iterator.next();
-            if ( nodeInstance.getNodeId() == nodeId && nodeInstance.getLevel() == getCurrentLevel()) {
+        for (NodeInstance nodeInstance : this.nodeInstances.getNodeInstancesView(nodeId)) {
+            if (nodeInstance.getLevel() == getCurrentLevel()) {
                 return nodeInstance;
             }
         }
@@ -276,7 +289,7 @@ public class CompositeNodeInstance extends StateBasedNodeInstance implements Nod
 
     @Override
 	public void signalEvent(String type, Object event) {
-		List<NodeInstance> currentView = new ArrayList<NodeInstance>(this.nodeInstances);
+		NodeInstanceList currentView = new NodeInstanceList(this.nodeInstances);
 		super.signalEvent(type, event);
 		for (Node node: getCompositeNode().internalGetNodes()) {
 			if (node instanceof EventNodeInterface) {
@@ -288,7 +301,7 @@ public class CompositeNodeInstance extends StateBasedNodeInstance implements Nod
 					    EventNodeInstanceInterface eventNodeInstance = (EventNodeInstanceInterface) getNodeInstance(node);
 					    eventNodeInstance.signalEvent(type, event);
 					} else {
-						List<NodeInstance> nodeInstances = getNodeInstances(node.getId(), currentView);
+						List<NodeInstance> nodeInstances = currentView.getNodeInstances(node.getId());
 						if (nodeInstances != null && !nodeInstances.isEmpty()) {
 							for (NodeInstance nodeInstance : nodeInstances) {
 								((EventNodeInstanceInterface) nodeInstance)
@@ -302,15 +315,7 @@ public class CompositeNodeInstance extends StateBasedNodeInstance implements Nod
 	}
 
 	public List<NodeInstance> getNodeInstances(final long nodeId) {
-		List<NodeInstance> result = new ArrayList<NodeInstance>();
-		for (final Iterator<NodeInstance> iterator = this.nodeInstances
-				.iterator(); iterator.hasNext();) {
-			final NodeInstance nodeInstance = iterator.next();
-			if (nodeInstance.getNodeId() == nodeId) {
-				result.add(nodeInstance);
-			}
-		}
-		return result;
+		return this.nodeInstances.getNodeInstances(nodeId);
 	}
 
 	public List<NodeInstance> getNodeInstances(final long nodeId, List<NodeInstance> currentView) {
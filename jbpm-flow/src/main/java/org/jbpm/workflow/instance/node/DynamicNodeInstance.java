@@ -19,7 +19,7 @@ package org.jbpm.workflow.instance.node;
 import org.drools.core.common.InternalAgenda;
 import org.drools.core.definitions.rule.impl.RuleImpl;
 import org.drools.core.spi.Activation;
-import org.drools.core.util.MVELSafeHelper;
+import org.jbpm.util.MVELExpressionCache;
 import org.jbpm.workflow.core.impl.ExtendedNodeImpl;
 import org.jbpm.workflow.core.impl.NodeImpl;
 import org.jbpm.workflow.core.node.DynamicNode;
@@ -120,7 +120,7 @@ public class DynamicNodeInstance extends CompositeContextNodeInstance implements
 		} else if (getDynamicNode().isAutoComplete() && getNodeInstances(false).isEmpty()) {
     		triggerCompleted(NodeImpl.CONNECTION_DEFAULT_TYPE);
     	} else if (completionCondition != null && "mvel".equals(getDynamicNode().getLanguage())) {
-    		Object value = MVELSafeHelper.getEvaluator().eval(completionCondition, new NodeInstanceResolverFactory(this));
+    		Object value = MVELExpressionCache.eval(getProcessInstance().getProcess(), completionCondition, new NodeInstanceResolverFactory(this));
     		if ( !(value instanceof Boolean) ) {
                 throw new RuntimeException( "Completion condition expression must return boolean values: " + value
                 		+ " for expression " + completionCondition);
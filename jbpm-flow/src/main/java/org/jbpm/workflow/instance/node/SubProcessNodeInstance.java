@@ -24,7 +24,6 @@ import java.util.Map;
 import java.util.regex.Matcher;
 
 import org.drools.core.common.InternalKnowledgeRuntime;
-import org.drools.core.util.MVELSafeHelper;
 import org.jbpm.process.core.Context;
 import org.jbpm.process.core.ContextContainer;
 import org.jbpm.process.core.context.exception.ExceptionScope;
@@ -40,6 +39,7 @@ import org.jbpm.process.instance.impl.ContextInstanceFactory;
 import org.jbpm.process.instance.impl.ContextInstanceFactoryRegistry;
 import org.jbpm.process.instance.impl.ProcessInstanceImpl;
 import org.jbpm.process.instance.impl.util.VariableUtil;
+import org.jbpm.util.MVELExpressionCache;
 import org.jbpm.util.PatternConstants;
 import org.jbpm.workflow.core.node.DataAssociation;
 import org.jbpm.workflow.core.node.SubProcessNode;
@@ -115,7 +115,7 @@ public class SubProcessNodeInstance extends StateBasedNodeInstance implements Ev
 	                parameterValue = variableScopeInstance.getVariable(mapping.getSources().get(0));
 	            } else {
 	            	try {
-	            		parameterValue = MVELSafeHelper.getEvaluator().eval(mapping.getSources().get(0), new NodeInstanceResolverFactory(this));
+	            		parameterValue = MVELExpressionCache.eval(getProcessInstance().getProcess(), mapping.getSources().get(0), new NodeInstanceResolverFactory(this));
 	            	} catch (Throwable t) {
 	            	    parameterValue = VariableUtil.resolveVariable(mapping.getSources().get(0), this);
 	                    if (parameterValue != null) {
@@ -151,7 +151,7 @@ public class SubProcessNodeInstance extends StateBasedNodeInstance implements Ev
 	                replacements.put(paramName, variableValueString);
                 } else {
                 	try {
-                		Object variableValue = MVELSafeHelper.getEvaluator().eval(paramName, new NodeInstanceResolverFactory(this));
+                		Object variableValue = MVELExpressionCache.eval(getProcessInstance().getProcess(), paramName, new NodeInstanceResolverFactory(this));
 	                	String variableValueString = variableValue == null ? "" : variableValue.toString();
 	                	replacements.put(paramName, variableValueString);
                 	} catch (Throwable t) {
@@ -363,7 +363,7 @@ public class SubProcessNodeInstance extends StateBasedNodeInstance implements Ev
 			        	Object value = subProcessVariableScopeInstance.getVariable(mapping.getSources().get(0));
 			        	if (value == null) {
 			        		try {
-			            		value = MVELSafeHelper.getEvaluator().eval(mapping.getSources().get(0), new VariableScopeResolverFactory(subProcessVariableScopeInstance));
+			            		value = MVELExpressionCache.eval(getProcessInstance().getProcess(), mapping.getSources().get(0), new VariableScopeResolverFactory(subProcessVariableScopeInstance));
 			            	} catch (Throwable t) {
 			            		// do nothing
 			            	}
@@ -452,7 +452,7 @@ public class SubProcessNodeInstance extends StateBasedNodeInstance implements Ev
 	            parameterValue = variableScopeInstance.getVariable(sourceParam);
 	        } else {
 	            try {
-	                parameterValue = MVELSafeHelper.getEvaluator().eval(sourceParam, new NodeInstanceResolverFactory(this));
+	                parameterValue = MVELExpressionCache.eval(getProcessInstance().getProcess(), sourceParam, new NodeInstanceResolverFactory(this));
 	            } catch (Throwable t) {
 	                logger.warn("Could not find variable scope for variable {}", sourceParam);
 	            }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.marshalling.impl;
+
+import java.util.Arrays;
+
+import org.jbpm.test.util.AbstractBaseTest;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ByteArrayCompressionTest extends AbstractBaseTest {
+
+    public void addLogger() {
+        logger = org.slf4j.LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void testCompressAndDecompress() {
+        ByteArrayCompression compression = new ByteArrayCompression("deflate", 16);
+        byte[] data = repeated(10000);
+
+        byte[] compressed = compression.compress(data);
+        assertTrue(ByteArrayCompression.isCompressed(compressed));
+        assertTrue(compressed.length < data.length);
+        assertArrayEquals(data, compression.decompress(compressed));
+    }
+
+    @Test
+    public void testSmallDataNotCompressed() {
+        ByteArrayCompression compression = new ByteArrayCompression("deflate", 1024);
+        byte[] data = repeated(100);
+
+        assertSame(data, compression.compress(data));
+    }
+
+    @Test
+    public void testCompressionDisabled() {
+        ByteArrayCompression compression = new ByteArrayCompression("none", 0);
+        byte[] data = repeated(10000);
+
+        assertSame(data, compression.compress(data));
+    }
+
+    @Test
+    public void testUncompressedDataReadable() {
+        ByteArrayCompression compression = new ByteArrayCompression("deflate", 16);
+        // data written by object output stream before compression was enabled
+        byte[] data = new byte[]{(byte) 0xAC, (byte) 0xED, 0, 5, 1, 2, 3, 4};
+
+        assertSame(data, compression.decompress(data));
+    }
+
+    @Test
+    public void testDecompressWithCompressionDisabled() {
+        byte[] compressed = new ByteArrayCompression("deflate", 16).compress(repeated(5000));
+
+        ByteArrayCompression compression = new ByteArrayCompression("none", 0);
+        assertTrue(Arrays.equals(repeated(5000), compression.decompress(compressed)));
+    }
+
+    private byte[] repeated(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + (i % 7));
+        }
+        return data;
+    }
+}
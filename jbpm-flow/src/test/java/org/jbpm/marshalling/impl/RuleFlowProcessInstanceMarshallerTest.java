@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.marshalling.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drools.core.common.InternalWorkingMemory;
+import org.drools.core.impl.EnvironmentFactory;
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.drools.core.impl.StatefulKnowledgeSessionImpl;
+import org.drools.core.marshalling.impl.MarshallerReaderContext;
+import org.drools.core.marshalling.impl.MarshallerWriteContext;
+import org.drools.core.marshalling.impl.MarshallingConfigurationImpl;
+import org.drools.core.marshalling.impl.ProtobufMarshaller;
+import org.drools.core.marshalling.impl.RuleBaseNodes;
+import org.jbpm.process.instance.impl.demo.DoNothingWorkItemHandler;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.ruleflow.core.RuleFlowProcessFactory;
+import org.jbpm.test.util.AbstractBaseTest;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
+import org.junit.Test;
+import org.kie.api.marshalling.ObjectMarshallingStrategy;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.process.NodeInstance;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.api.runtime.process.WorkItem;
+import org.kie.api.runtime.process.WorkItemManager;
+import org.kie.internal.marshalling.MarshallerFactory;
+
+public class RuleFlowProcessInstanceMarshallerTest extends AbstractBaseTest {
+
+    public void addLogger() {
+        logger = org.slf4j.LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void testNodeInstancesKeepIdsAfterRoundTrip() throws Exception {
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess("org.jbpm.marshalling");
+        factory.name("Marshalling").packageName("org.jbpm")
+            .startNode(1).name("Start").done()
+            .workItemNode(2).name("First").workName("Task").done()
+            .workItemNode(3).name("Second").workName("Task").done()
+            .endNode(4).name("End").done()
+            .connection(1, 2)
+            .connection(2, 3)
+            .connection(3, 4);
+        RuleFlowProcess process = factory.validate().getProcess();
+
+        KieSession ksession = createKieSession(process);
+        final List<WorkItem> workItems = new ArrayList<WorkItem>();
+        ksession.getWorkItemManager().registerWorkItemHandler("Task", new DoNothingWorkItemHandler() {
+
+            @Override
+            public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+                workItems.add(workItem);
+            }
+        });
+        ProcessInstance processInstance = ksession.startProcess("org.jbpm.marshalling");
+        ksession.getWorkItemManager().completeWorkItem(workItems.get(0).getId(), null);
+
+        // active node instance does not have the first id so it must not be assigned a new one on read
+        NodeInstance active = ((WorkflowProcessInstanceImpl) processInstance).getNodeInstances().iterator().next();
+        assertEquals(3, active.getId());
+
+        WorkflowProcessInstanceImpl restored = roundTrip(ksession, processInstance);
+
+        assertEquals(1, restored.getNodeInstances().size());
+        NodeInstance restoredActive = restored.getNodeInstances().iterator().next();
+        assertEquals(active.getId(), restoredActive.getId());
+        assertEquals(active.getNodeId(), restoredActive.getNodeId());
+        assertSame(restoredActive, restored.getNodeInstance(active.getId()));
+        assertSame(restoredActive, restored.getNodeInstances(active.getNodeId()).get(0));
+        assertEquals(((WorkflowProcessInstanceImpl) processInstance).getNodeInstanceCounter(), restored.getNodeInstanceCounter());
+
+        ksession.dispose();
+    }
+
+    private WorkflowProcessInstanceImpl roundTrip(KieSession ksession, ProcessInstance processInstance) throws Exception {
+        InternalKnowledgeBase kbase = (InternalKnowledgeBase) ksession.getKieBase();
+        InternalWorkingMemory wm = ((StatefulKnowledgeSessionImpl) ksession).getInternalWorkingMemory();
+        MarshallingConfigurationImpl marshallingConfig = new MarshallingConfigurationImpl(
+                new ObjectMarshallingStrategy[] { MarshallerFactory.newSerializeMarshallingStrategy() }, true, true);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        MarshallerWriteContext writerContext = new MarshallerWriteContext(baos, kbase, wm, RuleBaseNodes.getNodeMap(kbase),
+                marshallingConfig.getObjectMarshallingStrategyStore(), true, true, ksession.getEnvironment());
+        RuleFlowProcessInstanceMarshaller.INSTANCE.writeProcessInstance(writerContext, processInstance);
+        writerContext.close();
+
+        MarshallerReaderContext readerContext = new MarshallerReaderContext(new ByteArrayInputStream(baos.toByteArray()), kbase,
+                RuleBaseNodes.getNodeMap(kbase), marshallingConfig.getObjectMarshallingStrategyStore(), ProtobufMarshaller.TIMER_READERS,
+                true, true, EnvironmentFactory.newEnvironment());
+        readerContext.wm = wm;
+        WorkflowProcessInstanceImpl restored = (WorkflowProcessInstanceImpl) RuleFlowProcessInstanceMarshaller.INSTANCE.readProcessInstance(readerContext);
+        assertNotNull(restored);
+        return restored;
+    }
+}
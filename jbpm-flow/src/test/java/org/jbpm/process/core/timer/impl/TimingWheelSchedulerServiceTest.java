@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.core.timer.impl;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jbpm.process.core.timer.impl.TimingWheelSchedulerService.TimerEntry;
+import org.jbpm.test.util.AbstractBaseTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+public class TimingWheelSchedulerServiceTest extends AbstractBaseTest {
+
+    private TimingWheelSchedulerService schedulerService;
+
+    public void addLogger() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Before
+    public void setup() {
+        schedulerService = new TimingWheelSchedulerService(2, 10, 64);
+        schedulerService.initScheduler(null);
+    }
+
+    @After
+    public void cleanup() {
+        schedulerService.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void testExpiredTimersOfSameTickFireIndependently() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fired = new CountDownLatch(1);
+
+        long now = System.currentTimeMillis();
+        TimerEntry slow = new TimerEntry(now, () -> {
+            blocked.countDown();
+            release.await();
+            return null;
+        });
+        TimerEntry fast = new TimerEntry(now, () -> {
+            fired.countDown();
+            return null;
+        });
+
+        try {
+            schedulerService.fire(Arrays.asList(slow, fast));
+
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            // second timer of the tick must not wait for the first one
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+}
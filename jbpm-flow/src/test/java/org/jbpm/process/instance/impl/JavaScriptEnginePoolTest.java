@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.impl;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import javax.script.SimpleBindings;
+
+import org.jbpm.test.util.AbstractBaseTest;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JavaScriptEnginePoolTest extends AbstractBaseTest {
+
+    public void addLogger() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void testPoolPerClassLoader() throws Exception {
+        ClassLoader first = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        ClassLoader second = new URLClassLoader(new URL[0], getClass().getClassLoader());
+
+        assertSame(JavaScriptEnginePool.get(first), JavaScriptEnginePool.get(first));
+        assertNotSame(JavaScriptEnginePool.get(first), JavaScriptEnginePool.get(second));
+    }
+
+    @Test
+    public void testBindingsResetWhenEngineReturned() throws Exception {
+        JavaScriptEnginePool pool = new JavaScriptEnginePool(1);
+
+        SimpleBindings bindings = new SimpleBindings();
+        bindings.put("x", 2);
+        assertEquals(4, ((Number) pool.evaluate("var leaked = x * 2; leaked", bindings)).intValue());
+
+        // single engine is reused so anything declared by previous script would be visible here
+        assertEquals("undefined", pool.evaluate("typeof leaked", new SimpleBindings()));
+        assertEquals("undefined", pool.evaluate("typeof x", new SimpleBindings()));
+    }
+
+    @Test
+    public void testCompiledScriptsCacheIsBounded() throws Exception {
+        JavaScriptEnginePool pool = new JavaScriptEnginePool(1, 2, null);
+
+        JavaScriptEnginePool.PooledEngine engine = pool.borrow();
+        try {
+            for (int i = 0; i < 5; i++) {
+                engine.evaluate("1 + " + i, new SimpleBindings());
+            }
+            assertEquals(2, engine.getCompiledScriptsCount());
+        } finally {
+            pool.release(engine);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testNestedEvaluationDoesNotWaitForEngineHeldByItsThread() throws Exception {
+        JavaScriptEnginePool pool = new JavaScriptEnginePool(1);
+
+        JavaScriptEnginePool.PooledEngine engine = pool.borrow();
+        try {
+            // the only engine is held by this thread, nested evaluation gets a one-off engine
+            assertEquals(2, ((Number) pool.evaluate("1 + 1", new SimpleBindings())).intValue());
+
+            JavaScriptEnginePool.PooledEngine nested = pool.borrow();
+            assertFalse(nested.isPooled());
+            pool.release(nested);
+        } finally {
+            pool.release(engine);
+        }
+        assertTrue(engine.isPooled());
+        assertSame(engine, pool.borrow());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.test.util.AbstractBaseTest;
+import org.junit.Test;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
+
+import static org.junit.Assert.*;
+
+public class MVELExpressionCacheTest extends AbstractBaseTest {
+
+    public void addLogger() {
+        logger = org.slf4j.LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void testExpressionCompiledOncePerProcess() {
+        RuleFlowProcess process = new RuleFlowProcess();
+        process.setId("org.jbpm.cache");
+
+        Map<String, Object> variables = new HashMap<String, Object>();
+        variables.put("person", new HashMap<String, Object>());
+        ((Map<String, Object>) variables.get("person")).put("name", "john");
+
+        assertEquals("john", MVELExpressionCache.eval(process, "person.name", new MapVariableResolverFactory(variables)));
+        assertEquals(1, process.getExpressionCache().size());
+
+        ((Map<String, Object>) variables.get("person")).put("name", "mary");
+        assertEquals("mary", MVELExpressionCache.eval(process, "person.name", new MapVariableResolverFactory(variables)));
+        assertEquals(1, process.getExpressionCache().size());
+
+        assertEquals(5, MVELExpressionCache.eval(process, "2 + 3", new MapVariableResolverFactory(variables)));
+        assertEquals(2, process.getExpressionCache().size());
+    }
+
+    @Test
+    public void testSameCompiledExpressionReturned() {
+        MVELExpressionCache cache = new MVELExpressionCache();
+
+        assertSame(cache.compile("a + b"), cache.compile("a + b"));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+}
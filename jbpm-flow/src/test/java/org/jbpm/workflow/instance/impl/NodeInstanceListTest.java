@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.ruleflow.instance.RuleFlowProcessInstance;
+import org.jbpm.workflow.instance.NodeInstance;
+import org.jbpm.workflow.instance.node.ActionNodeInstance;
+import org.junit.Test;
+
+public class NodeInstanceListTest {
+
+    @Test
+    public void testIndexedByIdAndNodeId() {
+        NodeInstanceList list = new NodeInstanceList();
+        NodeInstance first = createNodeInstance(1, 10);
+        NodeInstance second = createNodeInstance(2, 20);
+        NodeInstance third = createNodeInstance(3, 10);
+        list.add(first);
+        list.add(second);
+        list.add(third);
+
+        assertEquals(3, list.size());
+        assertSame(first, list.getFirst());
+        assertEquals(Arrays.asList(first, second, third), Arrays.asList(list.toArray()));
+        assertSame(second, list.getNodeInstance(2));
+        assertEquals(Arrays.asList(first, third), list.getNodeInstances(10));
+        assertTrue(list.getNodeInstances(30).isEmpty());
+
+        list.remove(first);
+        assertSame(second, list.getFirst());
+        assertNull(list.getNodeInstance(1));
+        assertEquals(Arrays.asList(third), list.getNodeInstances(10));
+
+        Iterator<NodeInstance> iterator = list.iterator();
+        iterator.next();
+        iterator.remove();
+        assertNull(list.getNodeInstance(2));
+        assertTrue(list.getNodeInstances(20).isEmpty());
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public void testNodeInstancesComparedByIdentity() {
+        NodeInstanceList list = new NodeInstanceList();
+        NodeInstance nodeInstance = createNodeInstance(1, 10);
+        assertTrue(list.add(nodeInstance));
+        assertFalse(list.add(nodeInstance));
+        assertFalse(list.remove(createNodeInstance(1, 10)));
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public void testNodeIdChangeUpdatesContainerIndex() {
+        RuleFlowProcessInstance processInstance = new RuleFlowProcessInstance();
+        processInstance.setProcess(new RuleFlowProcess());
+
+        ActionNodeInstance nodeInstance = new ActionNodeInstance();
+        nodeInstance.setNodeId(10);
+        nodeInstance.setProcessInstance(processInstance);
+        nodeInstance.setNodeInstanceContainer(processInstance);
+        assertEquals(1, processInstance.getNodeInstances(10).size());
+
+        // e.g. process instance migration
+        nodeInstance.setNodeId(20);
+        assertTrue(processInstance.getNodeInstances(10).isEmpty());
+        assertSame(nodeInstance, processInstance.getNodeInstances(20).get(0));
+        assertSame(nodeInstance, processInstance.getNodeInstance(nodeInstance.getId()));
+    }
+
+    private NodeInstance createNodeInstance(long id, long nodeId) {
+        ActionNodeInstance nodeInstance = new ActionNodeInstance();
+        nodeInstance.setId(id);
+        nodeInstance.setNodeId(nodeId);
+        return nodeInstance;
+    }
+}
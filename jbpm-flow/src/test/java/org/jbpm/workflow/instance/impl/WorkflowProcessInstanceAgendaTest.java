@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jbpm.process.instance.impl.Action;
+import org.jbpm.process.instance.impl.ReturnValueConstraintEvaluator;
+import org.jbpm.process.instance.impl.ReturnValueEvaluator;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.test.util.AbstractBaseTest;
+import org.jbpm.workflow.core.DroolsAction;
+import org.jbpm.workflow.core.Node;
+import org.jbpm.workflow.core.impl.ConnectionImpl;
+import org.jbpm.workflow.core.impl.DroolsConsequenceAction;
+import org.jbpm.workflow.core.node.ActionNode;
+import org.jbpm.workflow.core.node.EndNode;
+import org.jbpm.workflow.core.node.Join;
+import org.jbpm.workflow.core.node.Split;
+import org.jbpm.workflow.core.node.StartNode;
+import org.junit.After;
+import org.junit.Test;
+import org.kie.api.event.process.DefaultProcessEventListener;
+import org.kie.api.event.process.ProcessNodeLeftEvent;
+import org.kie.api.event.process.ProcessNodeTriggeredEvent;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.process.ProcessContext;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.slf4j.LoggerFactory;
+
+public class WorkflowProcessInstanceAgendaTest extends AbstractBaseTest {
+
+    private long nodeId;
+
+    public void addLogger() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @After
+    public void cleanup() {
+        System.clearProperty("org.jbpm.process.execution.agenda");
+    }
+
+    @Test
+    public void testLongChainWithAgendaExecution() {
+        System.setProperty("org.jbpm.process.execution.agenda", "true");
+        List<String> executed = new ArrayList<String>();
+
+        RuleFlowProcess process = createProcess("org.jbpm.process.agenda.chain");
+        StartNode start = addNode(process, new StartNode());
+        Node last = start;
+        for (int i = 0; i < 5000; i++) {
+            last = connect(last, addNode(process, createAction("action-" + i, executed)));
+        }
+        connect(last, addNode(process, new EndNode()));
+
+        KieSession ksession = createKieSession(process);
+        ProcessInstance processInstance = ksession.startProcess(process.getId());
+
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+        assertEquals(5000, executed.size());
+        assertEquals("action-4999", executed.get(4999));
+    }
+
+    @Test
+    public void testAgendaExecutionKeepsOrder() {
+        List<String> recursive = executeSplitProcess(false);
+        List<String> agenda = executeSplitProcess(true);
+
+        // branches are taken in order of constraint priorities, each one runs to the join before the other
+        assertEquals(Arrays.asList("a1", "a2", "b1", "b2"), executed(recursive));
+        // after events of a node are fired once the nodes it triggered are done, in both modes
+        assertEquals(Arrays.asList("before-left:a1", "before-triggered:a2", "a2", "before-left:a2",
+                "before-triggered:Node 3", "after-triggered:Node 3", "after-left:a2", "after-triggered:a2", "after-left:a1"),
+                recursive.subList(recursive.indexOf("before-left:a1"), recursive.indexOf("after-left:a1") + 1));
+        assertEquals(recursive, agenda);
+    }
+
+    @Test
+    public void testAgendaExecutionSkipsBranchesAfterProcessCompleted() {
+        List<String> recursive = executeTerminatingSplitProcess(false);
+        List<String> agenda = executeTerminatingSplitProcess(true);
+
+        // first branch terminates the process so the second one is neither taken nor left to
+        assertEquals(Arrays.asList("a1"), executed(recursive));
+        assertEquals(1, recursive.stream().filter(e -> e.equals("before-left:split")).count());
+        assertEquals(recursive, agenda);
+    }
+
+    private List<String> executed(List<String> events) {
+        List<String> executed = new ArrayList<String>();
+        for (String event : events) {
+            // events are prefixed by their type, executed actions are recorded by name
+            if (!event.contains(":")) {
+                executed.add(event);
+            }
+        }
+        return executed;
+    }
+
+    private List<String> executeSplitProcess(boolean agendaExecution) {
+        System.setProperty("org.jbpm.process.execution.agenda", Boolean.toString(agendaExecution));
+        final List<String> events = new ArrayList<String>();
+
+        RuleFlowProcess process = createProcess("org.jbpm.process.agenda.split");
+        StartNode start = addNode(process, new StartNode());
+        Split split = addNode(process, new Split(Split.TYPE_OR));
+        connect(start, split);
+        Join join = addNode(process, new Join());
+        join.setType(Join.TYPE_AND);
+        ActionNode a1 = addNode(process, createAction("a1", events));
+        ActionNode b1 = addNode(process, createAction("b1", events));
+        connect(connect(connect(split, a1), addNode(process, createAction("a2", events))), join);
+        connect(connect(connect(split, b1), addNode(process, createAction("b2", events))), join);
+        // branch with lower priority is taken first
+        split.setConstraint(a1.getIncomingConnections(Node.CONNECTION_DEFAULT_TYPE).get(0), createConstraint(1));
+        split.setConstraint(b1.getIncomingConnections(Node.CONNECTION_DEFAULT_TYPE).get(0), createConstraint(2));
+        connect(join, addNode(process, new EndNode()));
+
+        KieSession ksession = createKieSession(process);
+        ksession.addEventListener(new DefaultProcessEventListener() {
+
+            @Override
+            public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+                events.add("before-triggered:" + event.getNodeInstance().getNodeName());
+            }
+
+            @Override
+            public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+                events.add("after-triggered:" + event.getNodeInstance().getNodeName());
+            }
+
+            @Override
+            public void beforeNodeLeft(ProcessNodeLeftEvent event) {
+                events.add("before-left:" + event.getNodeInstance().getNodeName());
+            }
+
+            @Override
+            public void afterNodeLeft(ProcessNodeLeftEvent event) {
+                events.add("after-left:" + event.getNodeInstance().getNodeName());
+            }
+        });
+        ProcessInstance processInstance = ksession.startProcess(process.getId());
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+        ksession.dispose();
+        return events;
+    }
+
+    private List<String> executeTerminatingSplitProcess(boolean agendaExecution) {
+        System.setProperty("org.jbpm.process.execution.agenda", Boolean.toString(agendaExecution));
+        final List<String> events = new ArrayList<String>();
+
+        RuleFlowProcess process = createProcess("org.jbpm.process.agenda.terminate");
+        StartNode start = addNode(process, new StartNode());
+        Split split = new Split(Split.TYPE_OR);
+        split.setName("split");
+        connect(start, addNode(process, split));
+        ActionNode a1 = addNode(process, createAction("a1", events));
+        ActionNode b1 = addNode(process, createAction("b1", events));
+        EndNode terminate = new EndNode();
+        terminate.setTerminate(true);
+        connect(connect(split, a1), addNode(process, terminate));
+        connect(connect(split, b1), addNode(process, new EndNode()));
+        split.setConstraint(a1.getIncomingConnections(Node.CONNECTION_DEFAULT_TYPE).get(0), createConstraint(1));
+        split.setConstraint(b1.getIncomingConnections(Node.CONNECTION_DEFAULT_TYPE).get(0), createConstraint(2));
+
+        KieSession ksession = createKieSession(process);
+        ksession.addEventListener(new DefaultProcessEventListener() {
+
+            @Override
+            public void beforeNodeLeft(ProcessNodeLeftEvent event) {
+                events.add("before-left:" + event.getNodeInstance().getNodeName());
+            }
+
+            @Override
+            public void afterNodeLeft(ProcessNodeLeftEvent event) {
+                events.add("after-left:" + event.getNodeInstance().getNodeName());
+            }
+        });
+        ProcessInstance processInstance = ksession.startProcess(process.getId());
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+        ksession.dispose();
+        return events;
+    }
+
+    private ReturnValueConstraintEvaluator createConstraint(int priority) {
+        ReturnValueConstraintEvaluator constraint = new ReturnValueConstraintEvaluator();
+        constraint.setPriority(priority);
+        constraint.setType("code");
+        constraint.setDialect("java");
+        constraint.setEvaluator(new ReturnValueEvaluator() {
+            public Object evaluate(ProcessContext processContext) throws Exception {
+                return true;
+            }
+        });
+        return constraint;
+    }
+
+    private RuleFlowProcess createProcess(String id) {
+        nodeId = 1;
+        RuleFlowProcess process = new RuleFlowProcess();
+        process.setId(id);
+        process.setName("Agenda Process");
+        process.setPackageName("org.jbpm");
+        return process;
+    }
+
+    private <T extends org.jbpm.workflow.core.impl.NodeImpl> T addNode(RuleFlowProcess process, T node) {
+        node.setId(nodeId++);
+        if (node.getName() == null) {
+            node.setName("Node " + node.getId());
+        }
+        process.addNode(node);
+        return node;
+    }
+
+    private Node connect(Node from, Node to) {
+        new ConnectionImpl(from, Node.CONNECTION_DEFAULT_TYPE, to, Node.CONNECTION_DEFAULT_TYPE);
+        return to;
+    }
+
+    private ActionNode createAction(final String name, final List<String> executed) {
+        ActionNode actionNode = new ActionNode();
+        actionNode.setName(name);
+        DroolsAction action = new DroolsConsequenceAction("java", null);
+        action.setMetaData("Action", new Action() {
+            public void execute(ProcessContext context) throws Exception {
+                executed.add(name);
+            }
+        });
+        actionNode.setAction(action);
+        return actionNode;
+    }
+}
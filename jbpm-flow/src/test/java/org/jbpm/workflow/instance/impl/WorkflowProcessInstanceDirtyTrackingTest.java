@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drools.core.common.InternalKnowledgeRuntime;
+import org.drools.core.impl.KnowledgeBaseFactory;
+import org.jbpm.process.core.context.variable.Variable;
+import org.jbpm.process.core.datatype.impl.type.ObjectDataType;
+import org.jbpm.process.core.datatype.impl.type.StringDataType;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.ruleflow.instance.RuleFlowProcessInstance;
+import org.jbpm.test.util.AbstractBaseTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.LoggerFactory;
+
+public class WorkflowProcessInstanceDirtyTrackingTest extends AbstractBaseTest {
+
+    private RuleFlowProcessInstance processInstance;
+
+    public void addLogger() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Before
+    public void setup() {
+        RuleFlowProcess process = new RuleFlowProcess();
+        process.setId("org.jbpm.process.dirty");
+        process.setName("Dirty Tracking Process");
+
+        List<Variable> variables = new ArrayList<Variable>();
+        Variable name = new Variable();
+        name.setName("name");
+        name.setType(new StringDataType());
+        variables.add(name);
+        Variable list = new Variable();
+        list.setName("list");
+        list.setType(new ObjectDataType("java.util.List"));
+        variables.add(list);
+        process.getVariableScope().setVariables(variables);
+
+        KieSession ksession = KnowledgeBaseFactory.newKnowledgeBase().newKieSession();
+        processInstance = new RuleFlowProcessInstance();
+        processInstance.setProcess(process);
+        processInstance.setKnowledgeRuntime((InternalKnowledgeRuntime) ksession);
+    }
+
+    @Test
+    public void testNewProcessInstanceIsDirty() {
+        assertTrue(processInstance.isDirty());
+        processInstance.markClean();
+        assertFalse(processInstance.isDirty());
+    }
+
+    @Test
+    public void testSetVariableMarksDirty() {
+        processInstance.markClean();
+        processInstance.setVariable("name", "john");
+        assertTrue(processInstance.isDirty());
+    }
+
+    @Test
+    public void testReadingImmutableVariableKeepsClean() {
+        processInstance.setVariable("name", "john");
+        processInstance.markClean();
+
+        processInstance.getVariable("name");
+        processInstance.getVariable("unknown");
+        assertFalse(processInstance.isDirty());
+    }
+
+    @Test
+    public void testReadingMutableVariableMarksDirty() {
+        processInstance.setVariable("list", new ArrayList<String>());
+        processInstance.markClean();
+
+        // value can be modified in place by the caller
+        processInstance.getVariable("list");
+        assertTrue(processInstance.isDirty());
+    }
+}
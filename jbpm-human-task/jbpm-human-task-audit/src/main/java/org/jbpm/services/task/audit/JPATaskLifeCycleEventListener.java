@@ -28,6 +28,8 @@ import java.util.Map;
 
 import javax.persistence.EntityManagerFactory;
 
+import org.drools.persistence.api.TransactionManager;
+import org.drools.persistence.api.TransactionSynchronization;
 import org.jbpm.services.task.audit.impl.model.AuditTaskImpl;
 import org.jbpm.services.task.audit.impl.model.TaskEventImpl;
 import org.jbpm.services.task.audit.variable.TaskIndexerManager;
@@ -35,6 +37,7 @@ import org.jbpm.services.task.lifecycle.listeners.TaskLifeCycleEventListener;
 import org.jbpm.services.task.persistence.PersistableEventListener;
 import org.jbpm.services.task.utils.ClassUtil;
 import org.kie.api.task.TaskEvent;
+import org.kie.api.runtime.EnvironmentName;
 import org.kie.api.task.model.Task;
 import org.kie.internal.task.api.TaskContext;
 import org.kie.internal.task.api.TaskPersistenceContext;
@@ -44,7 +47,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *
+ * Task lifecycle listener that maintains task audit log - audit tasks, task events and task variables.
+ * <br/>
+ * When coalescing is enabled (org.jbpm.task.audit.coalesce system property) audit tasks and task events are not
+ * written on every lifecycle event but collected per transaction in {@link TaskAuditBatch} and written right before
+ * the transaction completes, so for instance claim, start and complete of a task within one transaction results
+ * in single audit task write.
  */
 public class JPATaskLifeCycleEventListener extends PersistableEventListener implements TaskLifeCycleEventListener {
     
@@ -52,6 +60,8 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
     
     private static final List<String> SKIPPED_TASK_VARIABLES = Arrays.asList(new String[]{"ActorId", "TaskName", "NodeName"});  
 
+    private boolean coalesce = Boolean.parseBoolean(System.getProperty("org.jbpm.task.audit.coalesce", "false"));
+
     public JPATaskLifeCycleEventListener(boolean flag) {
         super(null);
     }
@@ -60,6 +70,14 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
         super(emf);
     }
 
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    public void setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
     @Override
     public void afterTaskStartedEvent(TaskEvent event) {
         String userId = "";
@@ -69,7 +87,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.STARTED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId ));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.STARTED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId ));
                  
     
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
@@ -80,7 +98,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -95,7 +113,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.ACTIVATED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.ACTIVATED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
                   
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
             if (auditTaskImpl == null) {
@@ -106,7 +124,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setActualOwner(userId);
             auditTaskImpl.setDescription(ti.getDescription());    
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -121,7 +139,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.CLAIMED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.CLAIMED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
             
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
             if (auditTaskImpl == null) {
@@ -132,7 +150,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setActualOwner(userId);
             auditTaskImpl.setDescription(ti.getDescription());
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -147,7 +165,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.SKIPPED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.SKIPPED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
            
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
             if (auditTaskImpl == null) {
@@ -158,7 +176,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setActualOwner(userId);
             auditTaskImpl.setDescription(ti.getDescription());
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
             
         } finally {
             cleanup(persistenceContext);
@@ -175,7 +193,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.STOPPED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.STOPPED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
             
           
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
@@ -187,7 +205,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -203,7 +221,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.COMPLETED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.COMPLETED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
     
             
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
@@ -214,7 +232,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -229,7 +247,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.FAILED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.FAILED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
             
             
             
@@ -241,7 +259,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -276,8 +294,8 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
                 ti.getTaskData().getParentId(),
                 ti.getTaskData().getWorkItemId()
             );
-            persistenceContext.persist(auditTaskImpl);
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.ADDED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistAuditTask(event, persistenceContext, auditTaskImpl);
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.ADDED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
         } finally {
             cleanup(persistenceContext);
         }
@@ -292,7 +310,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.EXITED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.EXITED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
             
            
     
@@ -310,7 +328,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -342,7 +360,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -358,7 +376,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.RESUMED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.RESUMED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
     
             
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
@@ -374,7 +392,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -389,7 +407,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.SUSPENDED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.SUSPENDED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
     
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
             if (auditTaskImpl == null) {
@@ -404,7 +422,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -419,7 +437,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.FORWARDED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.FORWARDED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
     
     
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
@@ -435,7 +453,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -450,7 +468,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.DELEGATED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.DELEGATED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
             
     
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
@@ -466,7 +484,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -481,7 +499,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.NOMINATED, userId, new Date()));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.NOMINATED, userId, new Date()));
     
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
             if (auditTaskImpl == null) {
@@ -496,7 +514,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -507,13 +525,94 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
      */
     
     protected AuditTaskImpl getAuditTask(TaskEvent event, TaskPersistenceContext persistenceContext, Task ti) {
+        TaskAuditBatch batch = getAuditBatch(event, persistenceContext);
+        if (batch != null) {
+            AuditTaskImpl auditTaskImpl = batch.getAuditTask(ti.getId());
+            if (auditTaskImpl != null) {
+                return auditTaskImpl;
+            }
+        }
         AuditTaskImpl auditTaskImpl = persistenceContext.queryWithParametersInTransaction("getAuditTaskById", true, 
                 persistenceContext.addParametersToMap("taskId", ti.getId()),
                 ClassUtil.<AuditTaskImpl>castClass(AuditTaskImpl.class));
-        
+        if (batch != null && auditTaskImpl != null) {
+            batch.addAuditTask(auditTaskImpl);
+        }
         return auditTaskImpl;
     }
 
+    protected void persistTaskEvent(TaskEvent event, TaskPersistenceContext persistenceContext, TaskEventImpl taskEvent) {
+        TaskAuditBatch batch = getAuditBatch(event, persistenceContext);
+        if (batch != null) {
+            batch.addTaskEvent(taskEvent);
+        } else {
+            persistenceContext.persist(taskEvent);
+        }
+    }
+
+    protected void persistAuditTask(TaskEvent event, TaskPersistenceContext persistenceContext, AuditTaskImpl auditTaskImpl) {
+        TaskAuditBatch batch = getAuditBatch(event, persistenceContext);
+        if (batch != null) {
+            batch.addNewAuditTask(auditTaskImpl);
+        } else {
+            persistenceContext.persist(auditTaskImpl);
+        }
+    }
+
+    protected void updateAuditTask(TaskEvent event, TaskPersistenceContext persistenceContext, AuditTaskImpl auditTaskImpl) {
+        // audit task taken from the batch is written when transaction completes
+        if (getAuditBatch(event, persistenceContext) == null) {
+            persistenceContext.merge(auditTaskImpl);
+        }
+    }
+
+    /**
+     * Returns audit batch of the current transaction or null when writes should not be coalesced
+     * (disabled or no active transaction).
+     */
+    protected TaskAuditBatch getAuditBatch(TaskEvent event, TaskPersistenceContext persistenceContext) {
+        if (!coalesce || event.getTaskContext() == null) {
+            return null;
+        }
+        Object tm = ((TaskContext) event.getTaskContext()).get(EnvironmentName.TRANSACTION_MANAGER);
+        if (!(tm instanceof TransactionManager) || ((TransactionManager) tm).getStatus() != TransactionManager.STATUS_ACTIVE) {
+            return null;
+        }
+        TransactionManager txm = (TransactionManager) tm;
+        // batch is kept per listener, other listeners write their own audit log with their own persistence context
+        TaskAuditBatch batch = (TaskAuditBatch) txm.getResource(this);
+        if (batch == null) {
+            final TaskAuditBatch transactionBatch = new TaskAuditBatch();
+            // shared persistence context stays open until transaction completes, own one is created when writing
+            final TaskPersistenceContext sharedPersistenceContext = isSharedPersistenceContext() ? persistenceContext : null;
+            txm.putResource(this, transactionBatch);
+            txm.registerTransactionSynchronization(new TransactionSynchronization() {
+
+                @Override
+                public void beforeCompletion() {
+                    if (transactionBatch.isEmpty()) {
+                        return;
+                    }
+                    logger.debug("Writing {}", transactionBatch);
+                    TaskPersistenceContext writeContext = sharedPersistenceContext != null ? sharedPersistenceContext : getPersistenceContext(null);
+                    try {
+                        transactionBatch.write(writeContext);
+                    } finally {
+                        if (sharedPersistenceContext == null) {
+                            cleanup(writeContext);
+                        }
+                    }
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                }
+            });
+            batch = transactionBatch;
+        }
+        return batch;
+    }
+
     /*
      * helper methods - end
      */
@@ -572,7 +671,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.RELEASED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.RELEASED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
           
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
             if (auditTaskImpl == null) {
@@ -587,7 +686,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -667,7 +766,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
                     || (ti.getDescription() == null && auditTaskImpl.getDescription() != null)){
                 String message ="Updated Description {From: "+auditTaskImpl.getDescription()+
                                                                     ", to: "+ti.getDescription()+"}";
-                persistenceContext.persist(new TaskEventImpl(ti.getId(),
+                persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(),
                             org.kie.internal.task.api.model.TaskEvent.TaskEventType.UPDATED,
                             ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId, message));
             }
@@ -675,14 +774,14 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
                     || (ti.getName() == null && auditTaskImpl.getName() != null)){
                 String message ="Updated Name {From: "+auditTaskImpl.getName()+
                                                                     ", to: "+ti.getName()+"}";
-                persistenceContext.persist(new TaskEventImpl(ti.getId(),
+                persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(),
                             org.kie.internal.task.api.model.TaskEvent.TaskEventType.UPDATED,
                             ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId, message));
             }
             if( auditTaskImpl.getPriority() != ti.getPriority()){
                 String message ="Updated Priority {From: "+auditTaskImpl.getPriority()+
                                                                     ", to: "+ti.getPriority()+"}";
-                persistenceContext.persist(new TaskEventImpl(ti.getId(),
+                persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(),
                             org.kie.internal.task.api.model.TaskEvent.TaskEventType.UPDATED,
                             ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId, message));
             }
@@ -693,7 +792,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
                     || (auditTaskImpl.getDueDate() != null && ti.getTaskData().getExpirationTime() == null)){
                 String message ="Updated DueDate {From: "+auditTaskImpl.getDueDate()+
                                                                     ", to: "+ti.getTaskData().getExpirationTime()+"}";
-                persistenceContext.persist(new TaskEventImpl(ti.getId(),
+                persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(),
                             org.kie.internal.task.api.model.TaskEvent.TaskEventType.UPDATED,
                             ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId, message));
             }
@@ -703,7 +802,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setPriority(ti.getPriority());
             auditTaskImpl.setDueDate(ti.getTaskData().getExpirationTime());
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
             
         } catch(Exception e){
             e.printStackTrace();
@@ -729,7 +828,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             if (ti.getTaskData().getActualOwner() != null) {
                 userId = ti.getTaskData().getActualOwner().getId();
             }
-            persistenceContext.persist(new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.DELEGATED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
+            persistTaskEvent(event, persistenceContext, new TaskEventImpl(ti.getId(), org.kie.internal.task.api.model.TaskEvent.TaskEventType.DELEGATED, ti.getTaskData().getProcessInstanceId(), ti.getTaskData().getWorkItemId(), userId));
             
     
             AuditTaskImpl auditTaskImpl = getAuditTask(event, persistenceContext, ti);
@@ -745,7 +844,7 @@ public class JPATaskLifeCycleEventListener extends PersistableEventListener impl
             auditTaskImpl.setStatus(ti.getTaskData().getStatus().name());
             auditTaskImpl.setActualOwner(userId);
             updateLastModifiedDate(auditTaskImpl);
-            persistenceContext.merge(auditTaskImpl);
+            updateAuditTask(event, persistenceContext, auditTaskImpl);
         } finally {
             cleanup(persistenceContext);
         }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.services.task.audit;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jbpm.services.task.audit.impl.model.AuditTaskImpl;
+import org.jbpm.services.task.audit.impl.model.TaskEventImpl;
+import org.kie.internal.task.api.TaskPersistenceContext;
+
+/**
+ * Task audit writes collected by {@link JPATaskLifeCycleEventListener} within single transaction.
+ * Every audit task is loaded (or created) only once per transaction and all changes made to it are written
+ * with single insert or update, task events are inserted together right before the transaction completes.
+ */
+public class TaskAuditBatch {
+
+    private final Map<Long, AuditTaskImpl> auditTasks = new LinkedHashMap<Long, AuditTaskImpl>();
+    private final Set<Long> newAuditTasks = new HashSet<Long>();
+    private final List<TaskEventImpl> taskEvents = new ArrayList<TaskEventImpl>();
+
+    public AuditTaskImpl getAuditTask(Long taskId) {
+        return auditTasks.get(taskId);
+    }
+
+    public void addAuditTask(AuditTaskImpl auditTask) {
+        auditTasks.put(auditTask.getTaskId(), auditTask);
+    }
+
+    public void addNewAuditTask(AuditTaskImpl auditTask) {
+        addAuditTask(auditTask);
+        newAuditTasks.add(auditTask.getTaskId());
+    }
+
+    public void addTaskEvent(TaskEventImpl taskEvent) {
+        taskEvents.add(taskEvent);
+    }
+
+    public boolean isEmpty() {
+        return auditTasks.isEmpty() && taskEvents.isEmpty();
+    }
+
+    /**
+     * Writes collected audit tasks and task events with given persistence context.
+     */
+    public void write(TaskPersistenceContext persistenceContext) {
+        for (AuditTaskImpl auditTask : auditTasks.values()) {
+            if (newAuditTasks.contains(auditTask.getTaskId())) {
+                persistenceContext.persist(auditTask);
+            } else {
+                persistenceContext.merge(auditTask);
+            }
+        }
+        for (TaskEventImpl taskEvent : taskEvents) {
+            persistenceContext.persist(taskEvent);
+        }
+        auditTasks.clear();
+        newAuditTasks.clear();
+        taskEvents.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "TaskAuditBatch [auditTasks=" + auditTasks.size() + ", taskEvents=" + taskEvents.size() + "]";
+    }
+}
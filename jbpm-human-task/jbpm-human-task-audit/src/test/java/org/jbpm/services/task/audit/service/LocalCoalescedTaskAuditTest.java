@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.services.task.audit.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.InitialContext;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.transaction.UserTransaction;
+
+import org.jbpm.services.task.HumanTaskServiceFactory;
+import org.jbpm.services.task.audit.JPATaskLifeCycleEventListener;
+import org.jbpm.services.task.audit.impl.model.AuditTaskImpl;
+import org.jbpm.services.task.lifecycle.listeners.BAMTaskEventListener;
+import org.jbpm.services.task.utils.TaskFluent;
+import org.jbpm.test.util.PoolingDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.task.model.Task;
+import org.kie.internal.query.QueryFilter;
+import org.kie.internal.task.api.InternalTaskService;
+import org.kie.internal.task.api.TaskPersistenceContext;
+import org.jbpm.services.task.audit.TaskAuditServiceFactory;
+
+public class LocalCoalescedTaskAuditTest extends TaskAuditBaseTest {
+
+	private PoolingDataSource pds;
+	private EntityManagerFactory emf;
+	// number of audit task inserts and updates issued by the audit listener
+	private final AtomicInteger auditTaskWrites = new AtomicInteger();
+	
+	@Before
+	public void setup() {
+		pds = setupPoolingDataSource();
+		emf = Persistence.createEntityManagerFactory( "org.jbpm.services.task" );
+
+		JPATaskLifeCycleEventListener auditListener = new JPATaskLifeCycleEventListener(true) {
+
+			@Override
+			protected TaskPersistenceContext getPersistenceContext(TaskPersistenceContext persistenceContext) {
+				return countAuditTaskWrites(super.getPersistenceContext(persistenceContext));
+			}
+		};
+		auditListener.setCoalesce(true);
+
+		this.taskService = (InternalTaskService) HumanTaskServiceFactory.newTaskServiceConfigurator()
+												.entityManagerFactory(emf)
+												.listener(auditListener)
+												.listener(new BAMTaskEventListener(true))
+												.getTaskService();
+                
+        this.taskAuditService = TaskAuditServiceFactory.newTaskAuditServiceConfigurator().setTaskService(taskService).getTaskAuditService();
+	}
+	
+	@After
+	public void clean() {
+		if (emf != null) {
+			emf.close();
+		}
+		if (pds != null) {
+			pds.close();
+		}
+	}
+
+    @Override
+    protected EntityManager getEntityManager() {
+        return emf.createEntityManager();
+    }
+
+    @Test
+    public void testAuditTaskWrittenOncePerTransaction() throws Exception {
+        Task task = new TaskFluent().setName("This is my task name")
+                .addPotentialGroup("Knights Templer")
+                .setAdminUser("Administrator")
+                .getTask();
+        taskService.addTask(task, new HashMap<String, Object>());
+        long taskId = task.getId();
+        assertEquals(1, auditTaskWrites.get());
+
+        auditTaskWrites.set(0);
+        UserTransaction ut = InitialContext.doLookup("java:comp/UserTransaction");
+        ut.begin();
+        taskService.claim(taskId, "Darth Vader");
+        taskService.start(taskId, "Darth Vader");
+        taskService.complete(taskId, "Darth Vader", null);
+        ut.commit();
+
+        // three lifecycle changes of the task end up in single update of its audit task
+        assertEquals(1, auditTaskWrites.get());
+        AuditTaskImpl auditTask = (AuditTaskImpl) taskAuditService.getAllAuditTasks(new QueryFilter(0, 0)).get(0);
+        assertEquals("Completed", auditTask.getStatus());
+        assertEquals("Darth Vader", auditTask.getActualOwner());
+    }
+
+    private TaskPersistenceContext countAuditTaskWrites(final TaskPersistenceContext persistenceContext) {
+        if (persistenceContext == null) {
+            return null;
+        }
+        return (TaskPersistenceContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{TaskPersistenceContext.class}, (proxy, method, args) -> {
+            if (("persist".equals(method.getName()) || "merge".equals(method.getName()))
+                    && args != null && args.length == 1 && args[0] instanceof AuditTaskImpl) {
+                auditTaskWrites.incrementAndGet();
+            }
+            try {
+                return method.invoke(persistenceContext, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+}
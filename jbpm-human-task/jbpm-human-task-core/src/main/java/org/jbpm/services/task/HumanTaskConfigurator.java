@@ -31,6 +31,7 @@ import org.jbpm.services.task.commands.TaskCommandExecutorImpl;
 import org.jbpm.services.task.events.TaskEventSupport;
 import org.jbpm.services.task.identity.DefaultUserInfo;
 import org.jbpm.services.task.identity.MvelUserGroupCallbackImpl;
+import org.jbpm.services.task.identity.OrganizationalEntityCache;
 import org.jbpm.services.task.impl.TaskDeadlinesServiceImpl;
 import org.jbpm.services.task.impl.command.CommandBasedTaskService;
 import org.kie.api.runtime.Environment;
@@ -143,6 +144,13 @@ public class HumanTaskConfigurator {
         		userInfo = new DefaultUserInfo(true);
         	}
         	environment.set(EnvironmentName.TASK_USER_INFO, userInfo);        	
+        	if (environment.get(OrganizationalEntityCache.ENVIRONMENT_KEY) == null) {
+        	    // opt in, scoped to this task service
+        	    OrganizationalEntityCache knownEntities = OrganizationalEntityCache.newDefaultCache();
+        	    if (knownEntities != null) {
+        	        environment.set(OrganizationalEntityCache.ENVIRONMENT_KEY, knownEntities);
+        	    }
+        	}
         	addDefaultInterceptor();        	
         	addTransactionLockInterceptor();
         	addOptimisticLockInterceptor();
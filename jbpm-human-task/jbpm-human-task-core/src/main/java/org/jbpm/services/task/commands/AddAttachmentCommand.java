@@ -92,7 +92,7 @@ public class AddAttachmentCommand extends UserGroupCallbackTaskCommand<Long> {
             ContentMarshallerContext ctx = TaskContentRegistry.get().getMarshallerContext(task.getTaskData().getDeploymentId());
             
             ((InternalContent)contentImpl).setContent(ContentMarshallerHelper.marshallContent(task, rawContent, ctx.getEnvironment()));
-            ((InternalAttachment)attachmentImpl).setSize(contentImpl.getContent().length);
+            ((InternalAttachment)attachmentImpl).setSize(ContentMarshallerHelper.getRawContent(contentImpl.getContent()).length);
         }
         
         doCallbackOperationForAttachment(attachmentImpl, context);
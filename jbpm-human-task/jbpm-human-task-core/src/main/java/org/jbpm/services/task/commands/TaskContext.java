@@ -16,6 +16,7 @@
 package org.jbpm.services.task.commands;
 
 import org.jbpm.services.task.events.TaskEventSupport;
+import org.jbpm.services.task.identity.OrganizationalEntityCache;
 import org.jbpm.services.task.impl.TaskAdminServiceImpl;
 import org.jbpm.services.task.impl.TaskAttachmentServiceImpl;
 import org.jbpm.services.task.impl.TaskCommentServiceImpl;
@@ -98,7 +99,7 @@ public class TaskContext implements org.kie.internal.task.api.TaskContext, Reque
     }
 
     public TaskIdentityService getTaskIdentityService() {
-        return new TaskIdentityServiceImpl(persistenceContext);
+        return new TaskIdentityServiceImpl(persistenceContext, OrganizationalEntityCache.get(this));
     }
     
     public TaskAdminService getTaskAdminService() {
@@ -128,6 +129,9 @@ public class TaskContext implements org.kie.internal.task.api.TaskContext, Reque
     	if (string.startsWith("local:")) {
     		return delegate.get(string);
     	}
+    	if (this.environment == null) {
+    	    return null;
+    	}
         return this.environment.get(string);
     }
 
@@ -18,6 +18,7 @@ package org.jbpm.services.task.commands;
 
 import org.drools.core.util.StringUtils;
 import org.jbpm.services.task.exception.CannotAddTaskException;
+import org.jbpm.services.task.identity.OrganizationalEntityCache;
 import org.kie.api.runtime.Context;
 import org.kie.api.task.model.Attachment;
 import org.kie.api.task.model.Comment;
@@ -95,7 +96,10 @@ public class UserGroupCallbackTaskCommand<T> extends TaskCommand<T> {
     protected boolean doCallbackUserOperation(String userId, TaskContext context) {
 
         if (userId != null && context.getUserGroupCallback().existsUser(userId)) {
-            addUserFromCallbackOperation(userId, context);
+            OrganizationalEntityCache knownEntities = OrganizationalEntityCache.get(context);
+            if (knownEntities == null || !knownEntities.isKnownUser(userId)) {
+                addUserFromCallbackOperation(userId, context);
+            }
             return true;
         }
         return false;
@@ -125,6 +129,12 @@ public class UserGroupCallbackTaskCommand<T> extends TaskCommand<T> {
     protected User addUserFromCallbackOperation(String userId, TaskContext context) {
     	User user = context.getPersistenceContext().findUser(userId);
         boolean userExists = user != null;
+        if (userExists) {
+            OrganizationalEntityCache knownEntities = OrganizationalEntityCache.get(context);
+            if (knownEntities != null) {
+                knownEntities.knownUser(userId);
+            }
+        }
         if (!StringUtils.isEmpty(userId) && !userExists) {
             user = TaskModelProvider.getFactory().newUser();
             ((InternalOrganizationalEntity) user).setId(userId);
@@ -183,8 +193,15 @@ public class UserGroupCallbackTaskCommand<T> extends TaskCommand<T> {
     }
 
     protected void addGroupFromCallbackOperation(String groupId, TaskContext context) {
+        OrganizationalEntityCache knownEntities = OrganizationalEntityCache.get(context);
+        if (groupId != null && knownEntities != null && knownEntities.isKnownGroup(groupId)) {
+            return;
+        }
     	Group group = context.getPersistenceContext().findGroup(groupId);
     	boolean groupExists = group != null;
+    	if (groupExists && knownEntities != null) {
+    	    knownEntities.knownGroup(groupId);
+    	}
         if (!StringUtils.isEmpty(groupId) && !groupExists) {
         	group = TaskModelProvider.getFactory().newGroup();
             ((InternalOrganizationalEntity) group).setId(groupId);
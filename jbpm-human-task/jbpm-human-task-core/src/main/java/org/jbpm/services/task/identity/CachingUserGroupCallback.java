@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.services.task.identity;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kie.api.task.UserGroupCallback;
+
+/**
+ * Decorator of any {@link UserGroupCallback} that caches results of the delegate for configured time so
+ * repeated lookups of the same users and groups (that happen for almost every task operation) do not
+ * reach the identity store (LDAP, data base) every time.
+ * <br/>
+ * Negative results (user or group does not exist, user without groups) are cached as well but usually
+ * for shorter time so newly created users become visible quickly. Each of the caches is bounded and evicts
+ * least recently used entries. Configuration (unless given explicitly) is taken from system properties:
+ * <ul>
+ *  <li>org.jbpm.ht.callback.cache.ttl - time in milliseconds positive results are kept, defaults to 60000</li>
+ *  <li>org.jbpm.ht.callback.cache.negative.ttl - time in milliseconds negative results are kept, defaults to 10000</li>
+ *  <li>org.jbpm.ht.callback.cache.size - maximum number of entries in each cache, defaults to 1000</li>
+ * </ul>
+ */
+public class CachingUserGroupCallback implements UserGroupCallback {
+
+    private final UserGroupCallback delegate;
+    private final long ttl;
+    private final long negativeTtl;
+
+    private final ExpiringCache<Boolean> users;
+    private final ExpiringCache<Boolean> groups;
+    private final ExpiringCache<List<String>> groupsForUser;
+
+    public CachingUserGroupCallback(UserGroupCallback delegate) {
+        this(delegate,
+             Long.parseLong(System.getProperty("org.jbpm.ht.callback.cache.ttl", "60000")),
+             Long.parseLong(System.getProperty("org.jbpm.ht.callback.cache.negative.ttl", "10000")),
+             Integer.parseInt(System.getProperty("org.jbpm.ht.callback.cache.size", "1000")));
+    }
+
+    public CachingUserGroupCallback(UserGroupCallback delegate, long ttl, long negativeTtl, int maxSize) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("User group callback to be cached must be given");
+        }
+        this.delegate = delegate;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.users = new ExpiringCache<Boolean>(maxSize);
+        this.groups = new ExpiringCache<Boolean>(maxSize);
+        this.groupsForUser = new ExpiringCache<List<String>>(maxSize);
+    }
+
+    public UserGroupCallback getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public boolean existsUser(String userId) {
+        Boolean exists = users.get(userId);
+        if (exists == null) {
+            exists = delegate.existsUser(userId);
+            users.put(userId, exists, exists ? ttl : negativeTtl);
+        }
+        return exists;
+    }
+
+    @Override
+    public boolean existsGroup(String groupId) {
+        Boolean exists = groups.get(groupId);
+        if (exists == null) {
+            exists = delegate.existsGroup(groupId);
+            groups.put(groupId, exists, exists ? ttl : negativeTtl);
+        }
+        return exists;
+    }
+
+    @Override
+    public List<String> getGroupsForUser(String userId) {
+        List<String> userGroups = groupsForUser.get(userId);
+        if (userGroups == null) {
+            List<String> loaded = delegate.getGroupsForUser(userId);
+            userGroups = loaded == null ? new ArrayList<String>() : new ArrayList<String>(loaded);
+            groupsForUser.put(userId, userGroups, userGroups.isEmpty() ? negativeTtl : ttl);
+        }
+        // callers are allowed to modify returned list
+        return new ArrayList<String>(userGroups);
+    }
+
+    /**
+     * Removes all cached information about given user or group.
+     */
+    public void invalidate(String id) {
+        users.remove(id);
+        groups.remove(id);
+        groupsForUser.remove(id);
+    }
+
+    public void clear() {
+        users.clear();
+        groups.clear();
+        groupsForUser.clear();
+    }
+
+    private static class ExpiringCache<V> {
+
+        private final Map<String, Entry<V>> entries;
+
+        ExpiringCache(final int maxSize) {
+            this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized V get(String key) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized void put(String key, V value, long ttl) {
+            if (ttl <= 0) {
+                return;
+            }
+            entries.put(key, new Entry<V>(value, System.currentTimeMillis() + ttl));
+        }
+
+        synchronized void remove(String key) {
+            entries.remove(key);
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
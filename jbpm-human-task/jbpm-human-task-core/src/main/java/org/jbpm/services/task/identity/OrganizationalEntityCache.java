@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.services.task.identity;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.kie.internal.task.api.TaskContext;
+
+/**
+ * Bounded (least recently used entries are evicted) set of ids of users and groups that are known to be stored
+ * in the data base so they do not need to be looked up every time they are referenced by a task.
+ * Entries are only added once the organizational entity was found in the data base, never when it is
+ * being persisted as the transaction could still be rolled back.
+ * <br/>
+ * The cache is disabled by default. It is enabled per task service (and so per entity manager factory) by
+ * setting org.jbpm.ht.known.entities.size system property to a positive size, in which case
+ * {@link org.jbpm.services.task.HumanTaskConfigurator} puts new cache into the task service environment,
+ * or by putting the cache into the environment under {@link #ENVIRONMENT_KEY} directly.
+ */
+public class OrganizationalEntityCache {
+
+    public static final String ENVIRONMENT_KEY = "org.jbpm.ht.KnownOrganizationalEntities";
+
+    private static final int DEFAULT_SIZE = Integer.parseInt(System.getProperty("org.jbpm.ht.known.entities.size", "0"));
+
+    private static final String USER_PREFIX = "U:";
+    private static final String GROUP_PREFIX = "G:";
+
+    private final int maxSize;
+    private final Map<String, Boolean> known;
+
+    public OrganizationalEntityCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.known = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Creates new cache when enabled via system property, returns null otherwise.
+     */
+    public static OrganizationalEntityCache newDefaultCache() {
+        if (DEFAULT_SIZE <= 0) {
+            return null;
+        }
+        return new OrganizationalEntityCache(DEFAULT_SIZE);
+    }
+
+    /**
+     * Returns cache of the task service given context belongs to, or null when the cache is not enabled.
+     */
+    public static OrganizationalEntityCache get(TaskContext context) {
+        if (context == null) {
+            return null;
+        }
+        return (OrganizationalEntityCache) context.get(ENVIRONMENT_KEY);
+    }
+
+    public boolean isKnownUser(String userId) {
+        return isKnown(USER_PREFIX + userId);
+    }
+
+    public boolean isKnownGroup(String groupId) {
+        return isKnown(GROUP_PREFIX + groupId);
+    }
+
+    public void knownUser(String userId) {
+        add(USER_PREFIX + userId);
+    }
+
+    public void knownGroup(String groupId) {
+        add(GROUP_PREFIX + groupId);
+    }
+
+    /**
+     * Removes given id (both as user and group) - must be invoked when organizational entity is removed.
+     */
+    public synchronized void forget(String id) {
+        known.remove(USER_PREFIX + id);
+        known.remove(GROUP_PREFIX + id);
+    }
+
+    public synchronized void clear() {
+        known.clear();
+    }
+
+    private synchronized boolean isKnown(String key) {
+        if (maxSize <= 0) {
+            return false;
+        }
+        return known.containsKey(key);
+    }
+
+    private synchronized void add(String key) {
+        if (maxSize <= 0) {
+            return;
+        }
+        known.put(key, Boolean.TRUE);
+    }
+}
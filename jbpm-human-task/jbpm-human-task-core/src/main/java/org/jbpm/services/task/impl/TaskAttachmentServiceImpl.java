@@ -17,6 +17,7 @@ package org.jbpm.services.task.impl;
 
 import java.util.List;
 import org.jbpm.services.task.utils.ClassUtil;
+import org.jbpm.services.task.utils.ContentMarshallerHelper;
 
 import org.kie.api.task.model.Attachment;
 import org.kie.api.task.model.Content;
@@ -48,6 +49,8 @@ public class TaskAttachmentServiceImpl implements TaskAttachmentService {
         persistenceContext.persistAttachment(attachment);
         persistenceContext.persistContent(content);
         ((InternalAttachment) attachment).setContent(content);
+        // size of the attachment is the size of its content regardless of how it is stored
+        ((InternalAttachment) attachment).setSize(ContentMarshallerHelper.getRawContent(content.getContent()).length);
         persistenceContext.addAttachmentToTask(attachment, task);
         return attachment.getId();
     }
@@ -22,6 +22,7 @@ package org.jbpm.services.task.impl;
 
 import java.util.List;
 
+import org.jbpm.services.task.identity.OrganizationalEntityCache;
 import org.jbpm.services.task.utils.ClassUtil;
 import org.kie.api.task.model.Group;
 import org.kie.api.task.model.OrganizationalEntity;
@@ -36,6 +37,7 @@ import org.kie.internal.task.api.TaskPersistenceContext;
 public class TaskIdentityServiceImpl implements TaskIdentityService {
 
     private TaskPersistenceContext persistenceContext;
+    private OrganizationalEntityCache knownEntities;
 
     public TaskIdentityServiceImpl() {
     }
@@ -44,6 +46,11 @@ public class TaskIdentityServiceImpl implements TaskIdentityService {
     	this.persistenceContext = persistenceContext;
     }
 
+    public TaskIdentityServiceImpl(TaskPersistenceContext persistenceContext, OrganizationalEntityCache knownEntities) {
+        this.persistenceContext = persistenceContext;
+        this.knownEntities = knownEntities;
+    }
+
     public void setPersistenceContext(TaskPersistenceContext persistenceContext) {
         this.persistenceContext = persistenceContext;
     }
@@ -60,11 +67,17 @@ public class TaskIdentityServiceImpl implements TaskIdentityService {
     public void removeGroup(String groupId) {
         Group group = persistenceContext.findGroup(groupId);
         persistenceContext.remove(group);
+        if (knownEntities != null) {
+            knownEntities.forget(groupId);
+        }
     }
     
     public void removeUser(String userId) {
         User user = persistenceContext.findUser(userId);
         persistenceContext.remove(user);
+        if (knownEntities != null) {
+            knownEntities.forget(userId);
+        }
     }
 
     public List<User> getUsers() {
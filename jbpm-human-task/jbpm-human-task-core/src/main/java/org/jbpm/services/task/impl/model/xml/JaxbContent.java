@@ -65,7 +65,7 @@ public class JaxbContent implements Content {
             return; 
         }
         this.id = content.getId();
-        this.content = content.getContent();
+        this.content = ContentMarshallerHelper.getRawContent(content.getContent());
         if( content instanceof JaxbContent ) { 
             this.contentMap = ((JaxbContent) content).getContentMap();
         } else { 
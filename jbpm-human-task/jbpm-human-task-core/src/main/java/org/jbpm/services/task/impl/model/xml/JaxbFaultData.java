@@ -28,6 +28,7 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlSchemaType;
 
+import org.jbpm.services.task.utils.ContentMarshallerHelper;
 import org.kie.internal.task.api.model.AccessType;
 import org.kie.internal.task.api.model.FaultData;
 
@@ -61,7 +62,7 @@ public class JaxbFaultData implements FaultData {
     
     public JaxbFaultData(FaultData faultData) { 
         this.accessType = faultData.getAccessType();
-        this.content = faultData.getContent();
+        this.content = ContentMarshallerHelper.getRawContent(faultData.getContent());
         this.faultName = faultData.getFaultName();
         this.type = faultData.getType();
     }
@@ -28,6 +28,7 @@ import org.drools.core.marshalling.impl.PersisterHelper;
 import org.drools.core.marshalling.impl.ProcessMarshallerWriteContext;
 import org.drools.core.marshalling.impl.ProtobufMessages.Header;
 import org.drools.core.marshalling.impl.SerializablePlaceholderResolverStrategy;
+import org.jbpm.marshalling.impl.ByteArrayCompression;
 import org.jbpm.marshalling.impl.JBPMMessages;
 import org.jbpm.marshalling.impl.JBPMMessages.Variable;
 import org.jbpm.marshalling.impl.JBPMMessages.VariableContainer;
@@ -90,6 +91,14 @@ public class ContentMarshallerHelper {
     }
     
 
+    /**
+     * Returns marshalled content as produced by marshalling, i.e. decompressed in case it was compressed when stored.
+     * Content that was not compressed is returned as is.
+     */
+    public static byte[] getRawContent(byte[] content) {
+        return ByteArrayCompression.get().decompress(content);
+    }
+
     public static Object unmarshall(byte[] content, Environment env) {
         return unmarshall(content, env, null);
     }   
@@ -97,7 +106,7 @@ public class ContentMarshallerHelper {
     public static Object unmarshall(byte[] content, Environment env, ClassLoader classloader) {
         MarshallerReaderContext context = null;
         try {
-            ByteArrayInputStream stream = new ByteArrayInputStream(content);
+            ByteArrayInputStream stream = new ByteArrayInputStream(ByteArrayCompression.get().decompress(content));
             MarshallingConfigurationImpl marshallingConfigurationImpl = null;
             if (env != null) {
                 marshallingConfigurationImpl = new MarshallingConfigurationImpl((ObjectMarshallingStrategy[]) env.get(EnvironmentName.OBJECT_MARSHALLING_STRATEGIES), false, false);
@@ -179,7 +188,7 @@ public class ContentMarshallerHelper {
 
             context.close();
 
-            return stream.toByteArray();
+            return ByteArrayCompression.get().compress(stream.toByteArray());
         } catch (IOException ex) {
             ex.printStackTrace();
         }
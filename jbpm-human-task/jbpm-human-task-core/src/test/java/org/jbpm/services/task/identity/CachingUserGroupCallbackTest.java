@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.services.task.identity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.kie.api.task.UserGroupCallback;
+
+public class CachingUserGroupCallbackTest {
+
+    @Test
+    public void testPositiveResultsCached() {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate, 60000, 60000, 100);
+
+        assertTrue(callback.existsUser("john"));
+        assertTrue(callback.existsUser("john"));
+        assertTrue(callback.existsGroup("HR"));
+        assertTrue(callback.existsGroup("HR"));
+        assertEquals(Arrays.asList("HR"), callback.getGroupsForUser("john"));
+        assertEquals(Arrays.asList("HR"), callback.getGroupsForUser("john"));
+
+        assertEquals(3, delegate.calls);
+    }
+
+    @Test
+    public void testNegativeResultsCached() {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate, 60000, 60000, 100);
+
+        assertFalse(callback.existsUser("mary"));
+        assertFalse(callback.existsUser("mary"));
+
+        assertEquals(1, delegate.calls);
+    }
+
+    @Test
+    public void testNegativeResultsNotCachedWithZeroTtl() {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate, 60000, 0, 100);
+
+        assertFalse(callback.existsUser("mary"));
+        assertFalse(callback.existsUser("mary"));
+
+        assertEquals(2, delegate.calls);
+    }
+
+    @Test
+    public void testExpiredEntriesReloaded() throws Exception {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate, 10, 10, 100);
+
+        assertTrue(callback.existsUser("john"));
+        Thread.sleep(50);
+        assertTrue(callback.existsUser("john"));
+
+        assertEquals(2, delegate.calls);
+    }
+
+    @Test
+    public void testReturnedGroupsCanBeModified() {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate, 60000, 60000, 100);
+
+        callback.getGroupsForUser("john").add("john");
+        assertEquals(Arrays.asList("HR"), callback.getGroupsForUser("john"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate, 60000, 60000, 100);
+
+        callback.existsUser("john");
+        callback.invalidate("john");
+        callback.existsUser("john");
+
+        assertEquals(2, delegate.calls);
+    }
+
+    private static class CountingCallback implements UserGroupCallback {
+
+        private int calls;
+
+        @Override
+        public boolean existsUser(String userId) {
+            calls++;
+            return "john".equals(userId);
+        }
+
+        @Override
+        public boolean existsGroup(String groupId) {
+            calls++;
+            return "HR".equals(groupId);
+        }
+
+        @Override
+        public List<String> getGroupsForUser(String userId) {
+            calls++;
+            return new ArrayList<String>(Arrays.asList("HR"));
+        }
+    }
+}
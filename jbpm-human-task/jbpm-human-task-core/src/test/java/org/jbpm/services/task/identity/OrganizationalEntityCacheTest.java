@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.services.task.identity;
+
+import java.io.StringReader;
+import java.util.HashMap;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.drools.core.impl.EnvironmentFactory;
+import org.jbpm.services.task.HumanTaskServiceFactory;
+import org.jbpm.services.task.HumanTaskServicesBaseTest;
+import org.jbpm.services.task.impl.factories.TaskFactory;
+import org.jbpm.test.util.PoolingDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.runtime.Environment;
+import org.kie.api.task.model.Task;
+import org.kie.internal.task.api.InternalTaskService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OrganizationalEntityCacheTest extends HumanTaskServicesBaseTest {
+
+    private PoolingDataSource pds;
+    private EntityManagerFactory emf;
+    private OrganizationalEntityCache knownEntities;
+
+    @Before
+    public void setup() {
+        pds = setupPoolingDataSource();
+        emf = Persistence.createEntityManagerFactory("org.jbpm.services.task");
+
+        knownEntities = new OrganizationalEntityCache(100);
+        Environment environment = EnvironmentFactory.newEnvironment();
+        environment.set(OrganizationalEntityCache.ENVIRONMENT_KEY, knownEntities);
+
+        this.taskService = (InternalTaskService) HumanTaskServiceFactory.newTaskServiceConfigurator()
+                .environment(environment)
+                .entityManagerFactory(emf)
+                .getTaskService();
+    }
+
+    @After
+    public void clean() {
+        super.tearDown();
+        if (emf != null) {
+            emf.close();
+        }
+        if (pds != null) {
+            pds.close();
+        }
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertNull(OrganizationalEntityCache.newDefaultCache());
+    }
+
+    @Test
+    public void testEntitiesKnownOnceFoundInDataBase() {
+        addTask("Darth Vader", "Crusaders");
+        // first reference might have persisted them, those are only known once found in the data base
+        addTask("Darth Vader", "Crusaders");
+
+        assertTrue(knownEntities.isKnownUser("Darth Vader"));
+        assertTrue(knownEntities.isKnownGroup("Crusaders"));
+        assertFalse(knownEntities.isKnownUser("Crusaders"));
+
+        // next references are served from the cache and still work
+        addTask("Darth Vader", "Crusaders");
+        assertEquals(3, taskService.getTasksAssignedAsPotentialOwner("Darth Vader", "en-UK").size());
+    }
+
+    @Test
+    public void testCacheIsScopedToTaskService() {
+        addTask("Darth Vader", "Crusaders");
+        addTask("Darth Vader", "Crusaders");
+        assertTrue(knownEntities.isKnownUser("Darth Vader"));
+
+        OrganizationalEntityCache otherKnownEntities = new OrganizationalEntityCache(100);
+        Environment environment = EnvironmentFactory.newEnvironment();
+        environment.set(OrganizationalEntityCache.ENVIRONMENT_KEY, otherKnownEntities);
+        InternalTaskService otherTaskService = (InternalTaskService) HumanTaskServiceFactory.newTaskServiceConfigurator()
+                .environment(environment)
+                .entityManagerFactory(emf)
+                .getTaskService();
+
+        assertFalse(otherKnownEntities.isKnownUser("Darth Vader"));
+        otherTaskService.addTask(newTask("Darth Vader", "Crusaders"), new HashMap<String, Object>());
+        assertTrue(otherKnownEntities.isKnownUser("Darth Vader"));
+    }
+
+    @Test
+    public void testRemovedUserIsForgotten() {
+        addTask("Darth Vader", "Crusaders");
+        addTask("Darth Vader", "Crusaders");
+        assertTrue(knownEntities.isKnownUser("Darth Vader"));
+
+        taskService.removeAllTasks();
+        taskService.removeUser("Darth Vader");
+        assertFalse(knownEntities.isKnownUser("Darth Vader"));
+
+        // user is persisted again when referenced
+        addTask("Darth Vader", "Crusaders");
+        assertNotNull(taskService.getUserById("Darth Vader"));
+    }
+
+    private void addTask(String user, String group) {
+        taskService.addTask(newTask(user, group), new HashMap<String, Object>());
+    }
+
+    private Task newTask(String user, String group) {
+        String str = "(with (new Task()) { priority = 55, taskData = (with( new TaskData()) { } ), ";
+        str += "peopleAssignments = (with ( new PeopleAssignments() ) { potentialOwners = [new User('" + user + "'), new Group('" + group + "')], businessAdministrators = [new User('Administrator')], }),";
+        str += "name =  'This is my task name' })";
+        return TaskFactory.evalTask(new StringReader(str));
+    }
+}
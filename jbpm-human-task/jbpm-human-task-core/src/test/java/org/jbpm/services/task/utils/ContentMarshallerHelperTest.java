@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.services.task.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.jbpm.marshalling.impl.ByteArrayCompression;
+import org.jbpm.services.task.impl.model.ContentImpl;
+import org.jbpm.services.task.impl.model.xml.JaxbContent;
+import org.junit.Test;
+
+public class ContentMarshallerHelperTest {
+
+    @Test
+    public void testCompressedContentIsExposedRaw() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            value.append("content ");
+        }
+        Map<String, Object> data = Collections.<String, Object>singletonMap("name", value.toString());
+        byte[] raw = ContentMarshallerHelper.marshallContent(data, null);
+        byte[] compressed = new ByteArrayCompression("deflate", 16).compress(raw);
+        assertTrue(ByteArrayCompression.isCompressed(compressed));
+
+        assertArrayEquals(raw, ContentMarshallerHelper.getRawContent(compressed));
+        assertArrayEquals(raw, ContentMarshallerHelper.getRawContent(raw));
+        assertNull(ContentMarshallerHelper.getRawContent(null));
+
+        // content sent to remote clients must not depend on how it is stored
+        ContentImpl content = new ContentImpl();
+        content.setId(1);
+        content.setContent(compressed);
+        JaxbContent jaxbContent = new JaxbContent(content);
+        assertArrayEquals(raw, jaxbContent.getContent());
+        assertEquals(value.toString(), jaxbContent.getContentMap().get("name"));
+    }
+}
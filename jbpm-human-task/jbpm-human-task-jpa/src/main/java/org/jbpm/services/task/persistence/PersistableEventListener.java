@@ -45,6 +45,14 @@ public abstract class PersistableEventListener implements TaskLifeCycleEventList
 		return persistenceContext;
 	}
 
+	/**
+	 * Returns true if listener uses persistence context of the task service (shared with the task operation)
+	 * instead of creating its own.
+	 */
+	protected boolean isSharedPersistenceContext() {
+		return emf == null;
+	}
+
 	protected void cleanup(TaskPersistenceContext persistenceContext) {
 		if (emf != null) {
 			persistenceContext.close();
@@ -16,6 +16,8 @@
 
 package org.jbpm.persistence.api;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.drools.persistence.api.PersistenceContext;
@@ -35,5 +37,29 @@ public interface ProcessPersistenceContext
 
     List<Long> getProcessInstancesWaitingForEvent(String type);
     
+    /**
+     * Returns ids of process instances waiting for given event type in ascending order, starting after
+     * given process instance id. Meant to be used to iterate over large number of waiting process instances
+     * in chunks. Default implementation filters result of {@link #getProcessInstancesWaitingForEvent(String)},
+     * implementations backed by data base should limit the query instead.
+     * @param type event type
+     * @param afterProcessInstanceId id of last process instance of previous chunk, -1 for the first chunk
+     * @param maxResults maximum number of process instance ids to be returned
+     * @return ids of waiting process instances
+     */
+    default List<Long> getProcessInstancesWaitingForEvent(String type, long afterProcessInstanceId, int maxResults) {
+        List<Long> waiting = new ArrayList<Long>();
+        for (Long processInstanceId : getProcessInstancesWaitingForEvent(type)) {
+            if (processInstanceId > afterProcessInstanceId) {
+                waiting.add(processInstanceId);
+            }
+        }
+        Collections.sort(waiting);
+        if (waiting.size() > maxResults) {
+            return new ArrayList<Long>(waiting.subList(0, maxResults));
+        }
+        return waiting;
+    }
+    
     Long getProcessInstanceByCorrelationKey(CorrelationKey correlationKey);
 }
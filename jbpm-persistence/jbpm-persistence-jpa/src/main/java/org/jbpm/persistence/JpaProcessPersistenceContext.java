@@ -114,6 +114,24 @@ public class JpaProcessPersistenceContext extends JpaPersistenceContext
     	}
     }
 
+    /**
+     * Chunked variant of {@link #getProcessInstancesWaitingForEvent(String)} that uses process instance id
+     * as a key to move over the result set so already signalled (and possibly no longer waiting) instances
+     * do not shift the following chunks.
+     */
+    public List<Long> getProcessInstancesWaitingForEvent(String type, long afterProcessInstanceId, int maxResults) {
+        EntityManager entityManager = getEntityManager();
+        if (entityManager != null) {
+            Query processInstancesForEvent = entityManager.createNamedQuery( "ProcessInstancesWaitingForEventAfter" );
+            processInstancesForEvent.setParameter( "type", type );
+            processInstancesForEvent.setParameter( "afterId", afterProcessInstanceId );
+            processInstancesForEvent.setMaxResults( maxResults );
+            return (List<Long>) processInstancesForEvent.getResultList();
+        } else {
+            return new ArrayList<Long>();
+        }
+    }
+
     public PersistentCorrelationKey persist(PersistentCorrelationKey correlationKeyInfo) {
         Long processInstanceId = getProcessInstanceByCorrelationKey(correlationKeyInfo);
         if (processInstanceId != null) {
@@ -38,6 +38,7 @@ import org.jbpm.process.instance.timer.TimerManager;
 import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
 import org.jbpm.workflow.instance.node.StateBasedNodeInstance;
 import org.jbpm.workflow.instance.node.TimerNodeInstance;
+import org.jbpm.workflow.instance.node.WorkItemNodeInstance;
 import org.kie.api.definition.process.Process;
 import org.kie.api.runtime.EnvironmentName;
 import org.kie.api.runtime.KieSession;
@@ -64,6 +65,9 @@ public class JPAProcessInstanceManager
     //   lazy initialization is more costly than eager initialization
     // Added volatile so that if something happens, we can figure out what
     private volatile transient Map<Long, ProcessInstance> processInstances = new ConcurrentHashMap<Long, ProcessInstance>();
+    // versions of process instances as known to this manager, used to put them into process instance cache
+    private transient Map<Long, ProcessInstanceInfo> processInstanceInfos = new ConcurrentHashMap<Long, ProcessInstanceInfo>();
+    private transient ProcessInstanceCache processInstanceCache = ProcessInstanceCache.get();
 
     
     public void setKnowledgeRuntime(InternalKnowledgeRuntime kruntime) {
@@ -90,6 +94,13 @@ public class JPAProcessInstanceManager
         correlationKeyInfo.setProcessInstanceId(processInstanceInfo.getId());
         context.persist(correlationKeyInfo);
         internalAddProcessInstance(processInstance);
+        if (processInstanceCache.isEnabled()) {
+            processInstanceInfos.put(processInstanceInfo.getId(), processInstanceInfo);
+        }
+    }
+
+    public void setProcessInstanceCache(ProcessInstanceCache processInstanceCache) {
+        this.processInstanceCache = processInstanceCache;
     }
     
     public void internalAddProcessInstance(ProcessInstance processInstance) {
@@ -141,6 +152,13 @@ public class JPAProcessInstanceManager
         if ( processInstanceInfo == null ) {
             return null;
         }
+        if (processInstanceCache.isEnabled()) {
+            ProcessInstance cached = processInstanceCache.take(id, processInstanceInfo.getVersion(), kruntime.getKieBase());
+            if (cached != null && processInstanceInfo.useProcessInstance(cached)) {
+                processInstanceInfo.setEnv(this.kruntime.getEnvironment());
+            }
+            processInstanceInfos.put(id, processInstanceInfo);
+        }
         processInstance = (org.jbpm.process.instance.ProcessInstance)
         	processInstanceInfo.getProcessInstance(kruntime, this.kruntime.getEnvironment());
         if (!readOnly) {
@@ -177,6 +195,8 @@ public class JPAProcessInstanceManager
             context.remove( processInstanceInfo );
         }
         internalRemoveProcessInstance(processInstance);
+        processInstanceInfos.remove(processInstance.getId());
+        processInstanceCache.evict(processInstance.getId());
     }
 
     public void internalRemoveProcessInstance(ProcessInstance processInstance) {
@@ -185,11 +205,37 @@ public class JPAProcessInstanceManager
     
     public void clearProcessInstances() {
         for (ProcessInstance processInstance: new ArrayList<ProcessInstance>(processInstances.values())) {
+            ProcessInstanceInfo processInstanceInfo = processInstanceInfos.remove(processInstance.getId());
             ((ProcessInstanceImpl) processInstance).disconnect();
+            if (processInstanceInfo != null) {
+                cacheProcessInstance(processInstance, processInstanceInfo);
+            }
         }
     }
 
+    protected void cacheProcessInstance(ProcessInstance processInstance, ProcessInstanceInfo processInstanceInfo) {
+        WorkflowProcessInstanceImpl workflowProcessInstance = (WorkflowProcessInstanceImpl) processInstance;
+        // only instances that are in sync with what was stored can be reused
+        if (workflowProcessInstance.getState() != ProcessInstance.STATE_ACTIVE
+                || !workflowProcessInstance.isPersisted() || workflowProcessInstance.isDirty()) {
+            processInstanceCache.evict(processInstance.getId());
+            return;
+        }
+        // work items might be changed without changing the process instance so they are always reloaded
+        for (org.jbpm.workflow.instance.NodeInstance nodeInstance : workflowProcessInstance.getNodeInstances(true)) {
+            if (nodeInstance instanceof WorkItemNodeInstance) {
+                ((WorkItemNodeInstance) nodeInstance).internalSetWorkItem(null);
+            }
+        }
+        processInstanceCache.put(processInstance.getId(), processInstanceInfo.getVersion(), kruntime.getKieBase(), processInstance);
+    }
+
     public void clearProcessInstancesState() {
+        // transaction was rolled back so none of the process instances can be cached
+        for (ProcessInstance processInstance: new ArrayList<ProcessInstance>(processInstances.values())) {
+            processInstanceInfos.remove(processInstance.getId());
+            processInstanceCache.evict(processInstance.getId());
+        }
         try {
             // at this point only timers are considered as state that needs to be cleared
             TimerManager timerManager = ((InternalProcessRuntime)kruntime.getProcessRuntime()).getTimerManager();
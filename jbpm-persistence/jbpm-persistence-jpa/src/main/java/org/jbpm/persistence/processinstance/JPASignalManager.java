@@ -16,34 +16,60 @@
 
 package org.jbpm.persistence.processinstance;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.drools.core.common.InternalKnowledgeRuntime;
 import org.jbpm.persistence.api.ProcessPersistenceContext;
 import org.jbpm.persistence.api.ProcessPersistenceContextManager;
 import org.jbpm.process.core.async.AsyncSignalEventCommand;
+import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.event.DefaultSignalManager;
 import org.kie.api.executor.CommandContext;
 import org.kie.api.executor.ExecutorService;
 import org.kie.api.runtime.EnvironmentName;
 import org.kie.api.runtime.manager.RuntimeManager;
+import org.kie.api.runtime.process.EventListener;
+import org.kie.api.runtime.process.ProcessInstance;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Signal manager that makes sure all persisted process instances waiting for given event type are
+ * loaded before the signal is broadcast.
+ * <br/>
+ * When batch size is set (org.jbpm.signal.batch.size system property) waiting process instances are
+ * processed in chunks of given size. When executor service is available single job is scheduled for each
+ * chunk so the chunks are not signalled in the transaction of the caller - for synchronous signals only
+ * process instances already loaded by the session are signalled right away. Without executor service each
+ * chunk is loaded and signalled before next one is fetched, all within the current transaction.
+ */
 public class JPASignalManager extends DefaultSignalManager {
     private static final String ASYNC_SIGNAL_PREFIX = "ASYNC-";
     private static final Logger logger = LoggerFactory.getLogger(JPASignalManager.class);
+    
+    private int batchSize = Integer.parseInt(System.getProperty("org.jbpm.signal.batch.size", "0"));
 
     public JPASignalManager(InternalKnowledgeRuntime kruntime) {
         super(kruntime);
     }
     
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+    
     public void signalEvent(String type, Object event) {
         String actualSignalType = type.replaceFirst(ASYNC_SIGNAL_PREFIX, "");
         
         ProcessPersistenceContextManager contextManager 
             = (ProcessPersistenceContextManager) getKnowledgeRuntime().getEnvironment().get( EnvironmentName.PERSISTENCE_CONTEXT_MANAGER );
         ProcessPersistenceContext context = contextManager.getProcessPersistenceContext();
+        if (batchSize > 0) {
+            signalEventInBatches(context, type, actualSignalType, event);
+            return;
+        }
         List<Long> processInstancesToSignalList = context.getProcessInstancesWaitingForEvent(actualSignalType);
         // handle signal asynchronously
         if (type.startsWith(ASYNC_SIGNAL_PREFIX)) {
@@ -82,5 +108,103 @@ public class JPASignalManager extends DefaultSignalManager {
         super.signalEvent( actualSignalType,
                            event );
     }
+    
+    protected void signalEventInBatches(ProcessPersistenceContext context, String type, String actualSignalType, Object event) {
+        boolean async = type.startsWith(ASYNC_SIGNAL_PREFIX);
+        RuntimeManager runtimeManager = ((RuntimeManager)getKnowledgeRuntime().getEnvironment().get("RuntimeManager"));
+        ExecutorService executorService = (ExecutorService) getKnowledgeRuntime().getEnvironment().get("ExecutorService");
+        boolean scheduleChunks = runtimeManager != null && executorService != null;
+        if (!scheduleChunks) {
+            if (async) {
+                logger.warn("Signal should be sent asynchronously but there is no executor service available, continuing sync...");
+            } else {
+                logger.debug("No executor service available, signal '{}' is delivered to all chunks in current transaction", actualSignalType);
+            }
+        }
+        // process instances already loaded by this session belong to current unit of work so they are signalled here
+        Set<Long> loadedInstances = new HashSet<Long>();
+        if (scheduleChunks && !async) {
+            for (EventListener eventListener : getRuntimeEventListeners(actualSignalType)) {
+                if (eventListener instanceof ProcessInstance) {
+                    loadedInstances.add(((ProcessInstance) eventListener).getId());
+                }
+            }
+        }
+        
+        Set<Long> signalled = new HashSet<Long>();
+        long lastId = -1;
+        List<Long> chunk = context.getProcessInstancesWaitingForEvent(actualSignalType, lastId, batchSize);
+        while (!chunk.isEmpty()) {
+            if (scheduleChunks) {
+                List<Long> toSchedule = new ArrayList<Long>(chunk);
+                toSchedule.removeAll(loadedInstances);
+                if (!toSchedule.isEmpty()) {
+                    scheduleChunk(runtimeManager, executorService, toSchedule, actualSignalType, event);
+                }
+            } else {
+                signalChunk(chunk, actualSignalType, event, signalled);
+            }
+            logger.debug("Signal '{}' delivered to chunk of {} process instances", actualSignalType, chunk.size());
+            lastId = chunk.get(chunk.size() - 1);
+            if (chunk.size() < batchSize) {
+                break;
+            }
+            chunk = context.getProcessInstancesWaitingForEvent(actualSignalType, lastId, batchSize);
+        }
+        if (async && scheduleChunks) {
+            return;
+        }
+        // remaining listeners - process instances that are not yet persisted or already loaded and other (e.g. start event) listeners
+        for (EventListener eventListener : getRuntimeEventListeners(actualSignalType)) {
+            if (eventListener instanceof ProcessInstance && signalled.contains(((ProcessInstance) eventListener).getId())) {
+                continue;
+            }
+            eventListener.signalEvent(actualSignalType, event);
+        }
+    }
+    
+    /*
+     * single job per chunk, the job signals every process instance in its own transaction
+     */
+    protected void scheduleChunk(RuntimeManager runtimeManager, ExecutorService executorService, List<Long> chunk, String type, Object event) {
+        CommandContext ctx = new CommandContext();
+        ctx.setData("deploymentId", runtimeManager.getIdentifier());
+        ctx.setData("processInstanceIds", new ArrayList<Long>(chunk));
+        ctx.setData("Signal", type);
+        ctx.setData("Event", event);
+        
+        executorService.scheduleRequest(AsyncSignalEventCommand.class.getName(), ctx);
+    }
+    
+    protected List<EventListener> getRuntimeEventListeners(String type) {
+        // listeners are kept by signal manager of the process runtime, same as in DefaultSignalManager.signalEvent
+        return ((DefaultSignalManager) ((InternalProcessRuntime) getKnowledgeRuntime().getProcessRuntime()).getSignalManager()).getEventListeners(type);
+    }
+    
+    protected void signalChunk(List<Long> chunk, String type, Object event, Set<Long> signalled) {
+        List<ProcessInstance> loaded = new ArrayList<ProcessInstance>(chunk.size());
+        for ( long id : chunk ) {
+            try {
+                ProcessInstance processInstance = getKnowledgeRuntime().getProcessInstance( id );
+                if (processInstance != null) {
+                    loaded.add(processInstance);
+                }
+            } catch (IllegalStateException e) {
+                // IllegalStateException can be thrown when using RuntimeManager
+                // and invalid ksession was used for given context
+            } catch (RuntimeException e) {
+                logger.warn("Exception when loading process instance for signal '{}', instance with id {} will not be signaled",
+                        e.getMessage(), id);
+            }
+        }
+        List<EventListener> eventListeners = getRuntimeEventListeners(type);
+        for (ProcessInstance processInstance : loaded) {
+            // signal only instances that are actually listening for the event type
+            if (eventListeners.contains(processInstance)) {
+                signalled.add(processInstance.getId());
+                ((EventListener) processInstance).signalEvent(type, event);
+            }
+        }
+    }
 
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.persistence.processinstance;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.kie.api.KieBase;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional cache of unmarshalled (and disconnected) process instances shared by all process instance managers,
+ * so repeated access to the same process instance in subsequent transactions does not need to unmarshal it again.
+ * <br/>
+ * Entries are kept together with the version (OPTLOCK) of the process instance info they were
+ * last stored or loaded as and the kie base they were created from. Cached instance is only used when both
+ * match - otherwise the process instance was changed by someone else (or the deployment was replaced) and
+ * it is unmarshalled from the data base as usual. Instances are taken out of the cache when used so
+ * single instance is never used by two transactions at the same time and only instances of successfully
+ * completed transactions are put back.
+ * <br/>
+ * Size of the cache is set with org.jbpm.persistence.pi.cache.size system property, 0 (default) disables it.
+ * Least recently used entries are evicted when the cache is full. Note that cached instances keep values
+ * of their variables as of last use, so it should not be enabled when variables are modified outside
+ * of the process engine (e.g. JPA entities stored as process variables).
+ * <br/>
+ * Whether an instance is in sync with its stored state is decided by dirty tracking of
+ * {@link org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl}, so the cache is only as reliable as that is:
+ * changes that do not mark the instance as dirty (e.g. variable values modified in place without setting
+ * them again) are neither stored nor detected, and the cached instance keeps them until it is evicted.
+ */
+public class ProcessInstanceCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessInstanceCache.class);
+
+    private static final ProcessInstanceCache INSTANCE = new ProcessInstanceCache(Integer.parseInt(System.getProperty("org.jbpm.persistence.pi.cache.size", "0")));
+
+    private final int maxSize;
+    private final Map<Long, CachedProcessInstance> entries;
+
+    public ProcessInstanceCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<Long, CachedProcessInstance>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedProcessInstance> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static ProcessInstanceCache get() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Removes process instance from the cache and returns it if it was cached for given version and kie base.
+     * @return cached process instance or null if there is no valid entry
+     */
+    public ProcessInstance take(long processInstanceId, int version, KieBase kieBase) {
+        if (!isEnabled()) {
+            return null;
+        }
+        CachedProcessInstance cached;
+        synchronized (entries) {
+            cached = entries.remove(processInstanceId);
+        }
+        if (cached == null) {
+            return null;
+        }
+        if (cached.version != version || cached.kieBase != kieBase) {
+            logger.debug("Cached process instance {} is stale (version {}, current version {})", processInstanceId, cached.version, version);
+            return null;
+        }
+        logger.debug("Process instance {} with version {} found in cache", processInstanceId, version);
+        return cached.processInstance;
+    }
+
+    public void put(long processInstanceId, int version, KieBase kieBase, ProcessInstance processInstance) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(processInstanceId, new CachedProcessInstance(version, kieBase, processInstance));
+        }
+    }
+
+    public void evict(long processInstanceId) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (entries) {
+            entries.remove(processInstanceId);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static class CachedProcessInstance {
+
+        private final int version;
+        private final KieBase kieBase;
+        private final ProcessInstance processInstance;
+
+        CachedProcessInstance(int version, KieBase kieBase, ProcessInstance processInstance) {
+            this.version = version;
+            this.kieBase = kieBase;
+            this.processInstance = processInstance;
+        }
+    }
+}
@@ -48,6 +48,7 @@ import org.drools.core.marshalling.impl.PersisterHelper;
 import org.drools.core.marshalling.impl.ProcessMarshallerWriteContext;
 import org.drools.core.marshalling.impl.ProtobufMarshaller;
 import org.drools.persistence.api.Transformable;
+import org.jbpm.marshalling.impl.ByteArrayCompression;
 import org.jbpm.marshalling.impl.JBPMMessages;
 import org.jbpm.marshalling.impl.ProcessInstanceMarshaller;
 import org.jbpm.marshalling.impl.ProcessMarshallerRegistry;
@@ -62,6 +63,9 @@ import org.kie.api.runtime.process.ProcessInstance;
 @SequenceGenerator(name="processInstanceInfoIdSeq", sequenceName="PROCESS_INSTANCE_INFO_ID_SEQ")
 public class ProcessInstanceInfo implements PersistentProcessInstance {
 
+    // when enabled process instances that were not changed since they were loaded are not marshalled again
+    private static final boolean DIRTY_TRACKING = Boolean.parseBoolean(System.getProperty("org.jbpm.persistence.dirty.tracking", "true"));
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO, generator="processInstanceInfoIdSeq")
     @Column(name = "InstanceId")
@@ -92,6 +96,10 @@ public class ProcessInstanceInfo implements PersistentProcessInstance {
     @Transient
     Environment                               env;
 
+    // true when processInstanceByteArray holds the state of processInstance as it was when last (un)marshalled
+    @Transient
+    boolean                                   stored;
+
     protected ProcessInstanceInfo() {
     }
 
@@ -174,7 +182,7 @@ public class ProcessInstanceInfo implements PersistentProcessInstance {
         this.env = env;
         if ( processInstance == null ) {        	
             try {
-                ByteArrayInputStream bais = new ByteArrayInputStream( processInstanceByteArray );
+                ByteArrayInputStream bais = new ByteArrayInputStream( ByteArrayCompression.get().decompress( processInstanceByteArray ) );
                 MarshallerReaderContext context = new MarshallerReaderContext( bais,
                                                                                (InternalKnowledgeBase) kruntime.getKieBase(),
                                                                                null,
@@ -186,6 +194,8 @@ public class ProcessInstanceInfo implements PersistentProcessInstance {
             	context.wm = ((StatefulKnowledgeSessionImpl) kruntime).getInternalWorkingMemory();
                 processInstance = marshaller.readProcessInstance(context);
                 ((WorkflowProcessInstanceImpl) processInstance).setPersisted(false);
+                ((WorkflowProcessInstanceImpl) processInstance).markClean();
+                stored = true;
                 if (readOnly) {
                     ((WorkflowProcessInstanceImpl) processInstance).disconnect();
                 }
@@ -217,6 +227,14 @@ public class ProcessInstanceInfo implements PersistentProcessInstance {
 //    	if (processInstance == null) {
 //    		return;
 //    	}
+        WorkflowProcessInstanceImpl workflowProcessInstance = (WorkflowProcessInstanceImpl) processInstance;
+        if (DIRTY_TRACKING && stored && !workflowProcessInstance.isDirty() && processInstanceByteArray != null) {
+            // nothing has changed since last marshalling so stored state is still valid
+            if (!processInstance.getProcessId().equals(this.processId)) {
+                this.processId = processInstance.getProcessId();
+            }
+            return;
+        }
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         boolean variablesChanged = false;
         try {
@@ -248,7 +266,8 @@ public class ProcessInstanceInfo implements PersistentProcessInstance {
             throw new IllegalArgumentException( "IOException while storing process instance "
         		+ processInstance.getId() + ": " + e.getMessage(), e );
         }
-        byte[] newByteArray = baos.toByteArray();
+        // compression is deterministic so compressed form can be compared with the stored one
+        byte[] newByteArray = ByteArrayCompression.get().compress( baos.toByteArray() );
         if ( variablesChanged || !Arrays.equals( newByteArray,
                                                  processInstanceByteArray ) ) {
             this.state = processInstance.getState();
@@ -262,7 +281,9 @@ public class ProcessInstanceInfo implements PersistentProcessInstance {
         if (!processInstance.getProcessId().equals(this.processId)) {
     		this.processId = processInstance.getProcessId();
     	}
-        ((WorkflowProcessInstanceImpl) processInstance).setPersisted(true);
+        workflowProcessInstance.setPersisted(true);
+        workflowProcessInstance.markClean();
+        stored = true;
     }
 
 
@@ -344,6 +365,22 @@ public class ProcessInstanceInfo implements PersistentProcessInstance {
     
     public void clearProcessInstance(){
         processInstance = null;
+        stored = false;
+    }
+
+    /**
+     * Uses given (already unmarshalled) process instance instead of unmarshalling it from the byte array,
+     * unless process instance has already been loaded. Given instance must match the stored state
+     * (same version) and must not have been changed since it was marshalled.
+     * @return true if given process instance is used
+     */
+    boolean useProcessInstance(ProcessInstance processInstance) {
+        if (this.processInstance != null) {
+            return false;
+        }
+        this.processInstance = processInstance;
+        this.stored = !((WorkflowProcessInstanceImpl) processInstance).isDirty();
+        return true;
     }
     
     public Environment getEnv() { 
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.persistence.processinstance;
+
+import static org.jbpm.persistence.util.PersistenceUtil.JBPM_PERSISTENCE_UNIT_NAME;
+import static org.jbpm.persistence.util.PersistenceUtil.cleanUp;
+import static org.jbpm.persistence.util.PersistenceUtil.createEnvironment;
+import static org.jbpm.persistence.util.PersistenceUtil.setupWithPoolingDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.drools.core.command.impl.ExecutableCommand;
+import org.drools.core.command.impl.RegistryContext;
+import org.drools.core.command.runtime.process.SetProcessInstanceVariablesCommand;
+import org.drools.core.common.InternalKnowledgeRuntime;
+import org.jbpm.persistence.map.impl.ProcessCreatorForHelp;
+import org.jbpm.process.instance.InternalProcessRuntime;
+import org.jbpm.test.util.AbstractBaseTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.Context;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.api.runtime.process.WorkflowProcessInstance;
+import org.kie.internal.persistence.jpa.JPAKnowledgeService;
+
+public class JPAProcessInstanceManagerCacheTest extends AbstractBaseTest {
+
+    private static final String PROCESS_ID = "processInstanceCache";
+
+    private HashMap<String, Object> context;
+    private KieBase kbase;
+    private KieSession ksession;
+    private ProcessInstanceCache cache;
+
+    @Before
+    public void setup() {
+        context = setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+        kbase = createKieBase(ProcessCreatorForHelp.newSimpleEventProcess(PROCESS_ID, "myEvent"));
+        ksession = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, null, createEnvironment(context));
+        cache = new ProcessInstanceCache(10);
+        processInstanceManager(ksession).setProcessInstanceCache(cache);
+    }
+
+    @After
+    public void cleanup() {
+        if (ksession != null) {
+            ksession.dispose();
+        }
+        cleanUp(context);
+    }
+
+    @Test
+    public void testCommittedInstanceIsReused() {
+        ProcessInstance processInstance = ksession.startProcess(PROCESS_ID);
+        assertEquals(1, cache.size());
+
+        // loaded without unmarshalling as nothing changed since it was stored
+        assertSame(processInstance, ksession.getProcessInstance(processInstance.getId()));
+
+        ksession.execute(new SetProcessInstanceVariablesCommand(processInstance.getId(),
+                Collections.<String, Object>singletonMap("name", "john")));
+        // changed instance was stored with a new version and cached again with it
+        assertEquals(1, cache.size());
+        WorkflowProcessInstance loaded = (WorkflowProcessInstance) ksession.getProcessInstance(processInstance.getId());
+        assertSame(processInstance, loaded);
+        assertEquals("john", loaded.getVariable("name"));
+    }
+
+    @Test
+    public void testRolledBackInstanceIsEvicted() {
+        final ProcessInstance processInstance = ksession.startProcess(PROCESS_ID);
+        assertEquals(1, cache.size());
+
+        try {
+            ksession.execute(new ExecutableCommand<Void>() {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public Void execute(Context context) {
+                    KieSession kieSession = ((RegistryContext) context).lookup(KieSession.class);
+                    ((WorkflowProcessInstance) kieSession.getProcessInstance(processInstance.getId())).setVariable("name", "john");
+                    throw new IllegalStateException("test failure");
+                }
+            });
+            fail("Command should fail");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        // instance holds state of rolled back transaction so it must not be put back
+        assertEquals(0, cache.size());
+
+        WorkflowProcessInstance loaded = (WorkflowProcessInstance) ksession.getProcessInstance(processInstance.getId());
+        assertNotNull(loaded);
+        assertNotSame(processInstance, loaded);
+        assertNull(loaded.getVariable("name"));
+    }
+
+    @Test
+    public void testInstanceChangedByOtherSessionIsNotReused() {
+        ProcessInstance processInstance = ksession.startProcess(PROCESS_ID);
+        assertEquals(1, cache.size());
+
+        // other session (e.g. other node of the cluster) has its own cache
+        KieSession otherSession = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, null, createEnvironment(context));
+        try {
+            processInstanceManager(otherSession).setProcessInstanceCache(new ProcessInstanceCache(10));
+            otherSession.execute(new SetProcessInstanceVariablesCommand(processInstance.getId(),
+                    Collections.<String, Object>singletonMap("name", "john")));
+        } finally {
+            otherSession.dispose();
+        }
+
+        // cached entry is still there but its version no longer matches the stored one
+        assertEquals(1, cache.size());
+        WorkflowProcessInstance loaded = (WorkflowProcessInstance) ksession.getProcessInstance(processInstance.getId());
+        assertNotSame(processInstance, loaded);
+        assertEquals("john", loaded.getVariable("name"));
+    }
+
+    private JPAProcessInstanceManager processInstanceManager(KieSession kieSession) {
+        return kieSession.execute(new ExecutableCommand<JPAProcessInstanceManager>() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public JPAProcessInstanceManager execute(Context context) {
+                InternalKnowledgeRuntime kruntime = (InternalKnowledgeRuntime) ((RegistryContext) context).lookup(KieSession.class);
+                return (JPAProcessInstanceManager) ((InternalProcessRuntime) kruntime.getProcessRuntime()).getProcessInstanceManager();
+            }
+        });
+    }
+}
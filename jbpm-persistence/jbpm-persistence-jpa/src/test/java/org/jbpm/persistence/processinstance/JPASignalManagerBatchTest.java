@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.persistence.processinstance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.drools.core.common.InternalKnowledgeRuntime;
+import org.drools.core.impl.EnvironmentFactory;
+import org.jbpm.persistence.api.ProcessPersistenceContext;
+import org.jbpm.persistence.api.ProcessPersistenceContextManager;
+import org.jbpm.process.core.async.AsyncSignalEventCommand;
+import org.jbpm.process.instance.InternalProcessRuntime;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.executor.CommandContext;
+import org.kie.api.executor.ExecutionResults;
+import org.kie.api.executor.ExecutorService;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.manager.Context;
+import org.kie.api.runtime.manager.RuntimeEngine;
+import org.kie.api.runtime.manager.RuntimeEnvironment;
+import org.kie.api.runtime.manager.RuntimeManager;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.internal.runtime.manager.InternalRuntimeManager;
+import org.kie.internal.runtime.manager.RuntimeManagerRegistry;
+import org.mockito.ArgumentCaptor;
+
+public class JPASignalManagerBatchTest {
+
+    private InternalKnowledgeRuntime kruntime;
+    private Environment env;
+    private JPASignalManager signalManager;
+    private ProcessInstance loadedInstance;
+
+    @Before
+    public void setup() {
+        kruntime = mock(InternalKnowledgeRuntime.class);
+        env = EnvironmentFactory.newEnvironment();
+        when(kruntime.getEnvironment()).thenReturn(env);
+
+        ProcessPersistenceContext context = mock(ProcessPersistenceContext.class);
+        when(context.getProcessInstancesWaitingForEvent("myEvent", -1L, 2)).thenReturn(Arrays.asList(1L, 2L));
+        when(context.getProcessInstancesWaitingForEvent("myEvent", 2L, 2)).thenReturn(Arrays.asList(3L));
+        ProcessPersistenceContextManager contextManager = mock(ProcessPersistenceContextManager.class);
+        when(contextManager.getProcessPersistenceContext()).thenReturn(context);
+        env.set(EnvironmentName.PERSISTENCE_CONTEXT_MANAGER, contextManager);
+
+        signalManager = new JPASignalManager(kruntime);
+        signalManager.setBatchSize(2);
+        InternalProcessRuntime processRuntime = mock(InternalProcessRuntime.class);
+        when(processRuntime.getSignalManager()).thenReturn(signalManager);
+        when(kruntime.getProcessRuntime()).thenReturn(processRuntime);
+
+        // process instance 2 is already loaded by the session and listens for the event
+        loadedInstance = mock(ProcessInstance.class);
+        when(loadedInstance.getId()).thenReturn(2L);
+        signalManager.addEventListener("myEvent", loadedInstance);
+    }
+
+    @Test
+    public void testSyncSignalSchedulesChunksOfNotLoadedInstances() {
+        ExecutorService executorService = withExecutor();
+
+        signalManager.signalEvent("myEvent", "data");
+
+        List<CommandContext> jobs = scheduledJobs(executorService, 2);
+        assertEquals(Arrays.asList(1L), jobs.get(0).getData("processInstanceIds"));
+        assertEquals(Arrays.asList(3L), jobs.get(1).getData("processInstanceIds"));
+        assertEquals("myEvent", jobs.get(0).getData("Signal"));
+        // loaded instance is part of current unit of work so it is signalled right away and only once
+        verify(loadedInstance, times(1)).signalEvent("myEvent", "data");
+        verify(kruntime, never()).getProcessInstance(anyLong());
+    }
+
+    @Test
+    public void testAsyncSignalSchedulesAllChunks() {
+        ExecutorService executorService = withExecutor();
+
+        signalManager.signalEvent("ASYNC-myEvent", "data");
+
+        List<CommandContext> jobs = scheduledJobs(executorService, 2);
+        assertEquals(Arrays.asList(1L, 2L), jobs.get(0).getData("processInstanceIds"));
+        assertEquals(Arrays.asList(3L), jobs.get(1).getData("processInstanceIds"));
+        verify(loadedInstance, never()).signalEvent(anyString(), any());
+    }
+
+    @Test
+    public void testSyncSignalWithoutExecutorSignalsChunksInCurrentTransaction() {
+        when(kruntime.getProcessInstance(2L)).thenReturn(loadedInstance);
+
+        signalManager.signalEvent("myEvent", "data");
+
+        verify(kruntime).getProcessInstance(1L);
+        verify(kruntime).getProcessInstance(2L);
+        verify(kruntime).getProcessInstance(3L);
+        verify(loadedInstance, times(1)).signalEvent("myEvent", "data");
+    }
+
+    @Test
+    public void testChunkCommandReschedulesFailedInstances() throws Exception {
+        RuntimeManager manager = registerManager("signal-partial", 2L);
+        ExecutorService executorService = mock(ExecutorService.class);
+        withManagerExecutor(manager, executorService);
+        try {
+            ExecutionResults results = new AsyncSignalEventCommand().execute(chunkContext(manager, 1L, 2L, 3L));
+
+            assertEquals(Arrays.asList(2L), results.getData("FailedProcessInstanceIds"));
+            verify(manager, times(3)).disposeRuntimeEngine(any(RuntimeEngine.class));
+            // only the failed instance is signalled again
+            List<CommandContext> jobs = scheduledJobs(executorService, 1);
+            assertEquals(Arrays.asList(2L), jobs.get(0).getData("processInstanceIds"));
+            assertEquals("signal-partial", jobs.get(0).getData("deploymentId"));
+            assertEquals("myEvent", jobs.get(0).getData("Signal"));
+            assertEquals("data", jobs.get(0).getData("Event"));
+        } finally {
+            RuntimeManagerRegistry.get().remove(manager.getIdentifier());
+        }
+    }
+
+    @Test
+    public void testChunkCommandFailsWhenFailedInstancesCannotBeRescheduled() throws Exception {
+        RuntimeManager manager = registerManager("signal-partial-no-executor", 2L);
+        try {
+            new AsyncSignalEventCommand().execute(chunkContext(manager, 1L, 2L));
+            fail("Command should fail when failed instances cannot be scheduled again");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            RuntimeManagerRegistry.get().remove(manager.getIdentifier());
+        }
+    }
+
+    @Test
+    public void testChunkCommandFailsWhenNothingDelivered() throws Exception {
+        RuntimeManager manager = registerManager("signal-failed", 2L);
+        try {
+            new AsyncSignalEventCommand().execute(chunkContext(manager, 2L));
+            fail("Command should fail so it is retried by the executor");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            RuntimeManagerRegistry.get().remove(manager.getIdentifier());
+        }
+    }
+
+    private ExecutorService withExecutor() {
+        RuntimeManager runtimeManager = mock(RuntimeManager.class);
+        when(runtimeManager.getIdentifier()).thenReturn("test");
+        ExecutorService executorService = mock(ExecutorService.class);
+        env.set("RuntimeManager", runtimeManager);
+        env.set("ExecutorService", executorService);
+        return executorService;
+    }
+
+    private List<CommandContext> scheduledJobs(ExecutorService executorService, int expected) {
+        ArgumentCaptor<CommandContext> captor = ArgumentCaptor.forClass(CommandContext.class);
+        verify(executorService, times(expected)).scheduleRequest(eq(AsyncSignalEventCommand.class.getName()), captor.capture());
+        return captor.getAllValues();
+    }
+
+    private RuntimeManager registerManager(String identifier, long failingProcessInstanceId) {
+        KieSession ksession = mock(KieSession.class);
+        doThrow(new IllegalStateException("test failure")).when(ksession).signalEvent("myEvent", "data", failingProcessInstanceId);
+        RuntimeEngine engine = mock(RuntimeEngine.class);
+        when(engine.getKieSession()).thenReturn(ksession);
+        RuntimeManager manager = mock(InternalRuntimeManager.class);
+        when(manager.getIdentifier()).thenReturn(identifier);
+        when(manager.getRuntimeEngine(any(Context.class))).thenReturn(engine);
+        RuntimeManagerRegistry.get().register(manager);
+        return manager;
+    }
+
+    private void withManagerExecutor(RuntimeManager manager, ExecutorService executorService) {
+        Environment managerEnv = EnvironmentFactory.newEnvironment();
+        managerEnv.set("ExecutorService", executorService);
+        RuntimeEnvironment environment = mock(RuntimeEnvironment.class);
+        when(environment.getEnvironment()).thenReturn(managerEnv);
+        when(((InternalRuntimeManager) manager).getEnvironment()).thenReturn(environment);
+    }
+
+    private CommandContext chunkContext(RuntimeManager manager, Long... processInstanceIds) {
+        CommandContext ctx = new CommandContext();
+        ctx.setData("deploymentId", manager.getIdentifier());
+        ctx.setData("processInstanceIds", Arrays.asList(processInstanceIds));
+        ctx.setData("Signal", "myEvent");
+        ctx.setData("Event", "data");
+        return ctx;
+    }
+}
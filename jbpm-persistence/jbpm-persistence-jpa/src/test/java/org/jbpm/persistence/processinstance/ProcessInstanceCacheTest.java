@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.persistence.processinstance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.drools.core.impl.KnowledgeBaseFactory;
+import org.jbpm.ruleflow.instance.RuleFlowProcessInstance;
+import org.junit.Test;
+import org.kie.api.KieBase;
+
+public class ProcessInstanceCacheTest {
+
+    private KieBase kieBase = KnowledgeBaseFactory.newKnowledgeBase();
+
+    @Test
+    public void testTakeWithMatchingVersion() {
+        ProcessInstanceCache cache = new ProcessInstanceCache(10);
+        RuleFlowProcessInstance processInstance = new RuleFlowProcessInstance();
+        cache.put(1L, 3, kieBase, processInstance);
+
+        assertSame(processInstance, cache.take(1L, 3, kieBase));
+        // taken instances are no longer in the cache
+        assertNull(cache.take(1L, 3, kieBase));
+    }
+
+    @Test
+    public void testStaleVersionIsNotReturned() {
+        ProcessInstanceCache cache = new ProcessInstanceCache(10);
+        cache.put(1L, 3, kieBase, new RuleFlowProcessInstance());
+
+        assertNull(cache.take(1L, 4, kieBase));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testOtherKieBaseIsNotReturned() {
+        ProcessInstanceCache cache = new ProcessInstanceCache(10);
+        cache.put(1L, 3, kieBase, new RuleFlowProcessInstance());
+
+        assertNull(cache.take(1L, 3, KnowledgeBaseFactory.newKnowledgeBase()));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        ProcessInstanceCache cache = new ProcessInstanceCache(2);
+        RuleFlowProcessInstance first = new RuleFlowProcessInstance();
+        RuleFlowProcessInstance third = new RuleFlowProcessInstance();
+        cache.put(1L, 0, kieBase, first);
+        cache.put(2L, 0, kieBase, new RuleFlowProcessInstance());
+        cache.put(3L, 0, kieBase, third);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.take(1L, 0, kieBase));
+        assertSame(third, cache.take(3L, 0, kieBase));
+    }
+
+    @Test
+    public void testDisabledCache() {
+        ProcessInstanceCache cache = new ProcessInstanceCache(0);
+        cache.put(1L, 0, kieBase, new RuleFlowProcessInstance());
+
+        assertEquals(0, cache.size());
+        assertNull(cache.take(1L, 0, kieBase));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.persistence.processinstance;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.drools.core.common.InternalKnowledgeRuntime;
+import org.drools.core.impl.EnvironmentFactory;
+import org.drools.core.marshalling.impl.ClassObjectMarshallingStrategyAcceptor;
+import org.drools.core.marshalling.impl.SerializablePlaceholderResolverStrategy;
+import org.jbpm.persistence.map.impl.ProcessCreatorForHelp;
+import org.jbpm.test.util.AbstractBaseTest;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.marshalling.ObjectMarshallingStrategy;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.process.ProcessInstance;
+
+public class ProcessInstanceInfoDirtyTrackingTest extends AbstractBaseTest {
+
+    private KieSession ksession;
+    private Environment env;
+    private byte[] storedState;
+
+    @Before
+    public void setup() {
+        KieBase kbase = createKieBase(ProcessCreatorForHelp.newSimpleEventProcess("dirtyTracking", "myEvent"));
+        ksession = kbase.newKieSession();
+        env = EnvironmentFactory.newEnvironment();
+        env.set(EnvironmentName.OBJECT_MARSHALLING_STRATEGIES, new ObjectMarshallingStrategy[] {
+                new SerializablePlaceholderResolverStrategy(ClassObjectMarshallingStrategyAcceptor.DEFAULT) });
+
+        ProcessInstance processInstance = ksession.startProcess("dirtyTracking");
+        ProcessInstanceInfo info = new ProcessInstanceInfo(processInstance, env);
+        info.transform();
+        storedState = info.getProcessInstanceByteArray();
+        assertNotNull(storedState);
+    }
+
+    @After
+    public void cleanup() {
+        ksession.dispose();
+    }
+
+    @Test
+    public void testUnchangedLoadedInstanceIsNotMarshalled() {
+        ProcessInstanceInfo info = load();
+        WorkflowProcessInstanceImpl processInstance = (WorkflowProcessInstanceImpl) info.getProcessInstance(
+                (InternalKnowledgeRuntime) ksession, env);
+        assertFalse(processInstance.isDirty());
+
+        // replace stored state so that any marshalling would be detected by the stored state being overwritten
+        byte[] marker = new byte[] { 1, 2, 3 };
+        info.processInstanceByteArray = marker;
+        info.transform();
+
+        assertSame(marker, info.getProcessInstanceByteArray());
+        assertNull(info.getLastModificationDate());
+    }
+
+    @Test
+    public void testChangedLoadedInstanceIsMarshalled() {
+        ProcessInstanceInfo info = load();
+        WorkflowProcessInstanceImpl processInstance = (WorkflowProcessInstanceImpl) info.getProcessInstance(
+                (InternalKnowledgeRuntime) ksession, env);
+        processInstance.markDirty();
+
+        byte[] marker = new byte[] { 1, 2, 3 };
+        info.processInstanceByteArray = marker;
+        info.transform();
+
+        assertNotSame(marker, info.getProcessInstanceByteArray());
+        assertNotNull(info.getLastModificationDate());
+        assertFalse(processInstance.isDirty());
+    }
+
+    @Test
+    public void testReloadedInstanceIsNotMarshalled() {
+        ProcessInstanceInfo info = load();
+        info.getProcessInstance((InternalKnowledgeRuntime) ksession, env);
+        info.clearProcessInstance();
+        info.getProcessInstance((InternalKnowledgeRuntime) ksession, env);
+
+        // reloaded from the stored state so it is in sync with it again
+        byte[] marker = new byte[] { 1, 2, 3 };
+        info.processInstanceByteArray = marker;
+        info.transform();
+
+        assertSame(marker, info.getProcessInstanceByteArray());
+    }
+
+    private ProcessInstanceInfo load() {
+        ProcessInstanceInfo info = new ProcessInstanceInfo();
+        info.processInstanceByteArray = storedState;
+        return info;
+    }
+}
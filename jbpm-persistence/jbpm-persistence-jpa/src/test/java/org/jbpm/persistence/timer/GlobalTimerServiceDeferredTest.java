@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.persistence.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.drools.core.time.JobContext;
+import org.drools.core.time.JobHandle;
+import org.drools.core.time.SelfRemovalJobContext;
+import org.drools.core.time.impl.IntervalTrigger;
+import org.drools.core.time.impl.TimerJobInstance;
+import org.jbpm.process.core.timer.impl.GlobalTimerService;
+import org.jbpm.process.core.timer.impl.GlobalTimerService.DeferredJobHandle;
+import org.jbpm.process.core.timer.impl.GlobalTimerService.GlobalJobHandle;
+import org.jbpm.process.core.timer.impl.ThreadPoolSchedulerService;
+import org.jbpm.process.instance.timer.TimerInstance;
+import org.jbpm.process.instance.timer.TimerManager.ProcessJob;
+import org.jbpm.process.instance.timer.TimerManager.ProcessJobContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GlobalTimerServiceDeferredTest {
+
+    private static final long SESSION_ID = 1;
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private ThreadPoolSchedulerService schedulerService;
+    private GlobalTimerService timerService;
+
+    @Before
+    public void setup() {
+        schedulerService = new ThreadPoolSchedulerService(1);
+        timerService = new GlobalTimerService(null, schedulerService);
+        timerService.setLazyHorizon(HOUR);
+    }
+
+    @After
+    public void cleanup() {
+        timerService.destroy();
+        schedulerService.shutdown();
+    }
+
+    @Test
+    public void testFarTimerIsDeferred() {
+        JobHandle near = schedule(1, HOUR / 2);
+        JobHandle far = schedule(2, 2 * HOUR);
+
+        assertFalse(near instanceof DeferredJobHandle);
+        assertTrue(far instanceof DeferredJobHandle);
+        assertEquals(1, timerService.getDeferredJobsCount());
+        assertEquals(2, timerService.getTimerJobInstances(SESSION_ID).size());
+        assertSame(far, timerService.getRegisteredJobHandle(SESSION_ID, 2));
+    }
+
+    @Test
+    public void testDeferredHandleDoesNotCollideWithScheduledOnes() {
+        JobHandle first = schedule(1, HOUR / 2);
+        JobHandle second = schedule(2, HOUR / 2);
+        JobHandle deferred = schedule(3, 2 * HOUR);
+        JobHandle third = schedule(4, HOUR / 2);
+
+        assertTrue(deferred.getId() != first.getId());
+        assertTrue(deferred.getId() != second.getId());
+        assertTrue(deferred.getId() != third.getId());
+
+        assertTrue(timerService.removeJob(deferred));
+        // cancelling deferred timer must not drop any of the scheduled ones
+        assertEquals(3, ((GlobalJPATimerJobFactoryManager) timerService.getTimerJobFactoryManager())
+                .getTimerJobInstances(SESSION_ID).size());
+        assertEquals(0, timerService.getDeferredJobsCount());
+    }
+
+    @Test
+    public void testSweepMovesDueTimerIntoScheduler() {
+        DeferredJobHandle deferred = (DeferredJobHandle) schedule(1, 2 * HOUR);
+
+        timerService.setLazyHorizon(3 * HOUR);
+        timerService.sweep();
+
+        assertEquals(0, timerService.getDeferredJobsCount());
+        JobHandle delegate = deferred.getDelegate();
+        assertNotNull(delegate);
+        List<GlobalJobHandle> handles = timerService.getTimerJobsPerSession().get(SESSION_ID);
+        assertEquals(1, handles.size());
+        assertSame(delegate, handles.get(0));
+
+        // cancelling through the original handle removes the scheduled job
+        assertTrue(timerService.removeJob(deferred));
+        assertNull(timerService.getTimerJobsPerSession().get(SESSION_ID));
+    }
+
+    @Test
+    public void testDeferredTimerJobContextIsRebuilt() {
+        TimerInstance timer = new TimerInstance();
+        IntervalTrigger trigger = new IntervalTrigger(timerService.getCurrentTime(), null, null, -1, 2 * HOUR, 0, null, null);
+        ProcessJobContext ctx = new ProcessJobContext(timer, trigger, 1L, null);
+        DeferredJobHandle deferred = (DeferredJobHandle) schedule(timer, 1, 2 * HOUR, trigger, ctx);
+
+        TimerJobInstance instance = deferred.getTimerJobInstance();
+        JobContext jobContext = instance.getJobContext();
+        assertTrue(jobContext instanceof SelfRemovalJobContext);
+        ProcessJobContext rebuilt = (ProcessJobContext) ((SelfRemovalJobContext) jobContext).getJobContext();
+
+        assertNotSame(ctx, rebuilt);
+        assertSame(timer, rebuilt.getTimer());
+        assertEquals(1L, rebuilt.getProcessInstanceId().longValue());
+        assertNull(rebuilt.getKnowledgeRuntime());
+        assertSame(deferred, rebuilt.getJobHandle());
+        assertEquals(deferred.getFireTime(), instance.getTrigger().hasNextFireTime().getTime());
+        assertEquals(1, deferred.getTimerId());
+        assertEquals(SESSION_ID, deferred.getSessionId());
+    }
+
+    @Test
+    public void testRepeatingTimerWithLimitIsNotDeferred() {
+        TimerInstance timer = new TimerInstance();
+        timer.setPeriod(HOUR);
+        timer.setRepeatLimit(3);
+        IntervalTrigger trigger = new IntervalTrigger(timerService.getCurrentTime(), null, null, 3, 2 * HOUR, HOUR, null, null);
+        ProcessJobContext ctx = new ProcessJobContext(timer, trigger, 1L, null);
+
+        JobHandle handle = schedule(timer, 1, 2 * HOUR, trigger, ctx);
+
+        assertFalse(handle instanceof DeferredJobHandle);
+        assertEquals(0, timerService.getDeferredJobsCount());
+    }
+
+    @Test
+    public void testCancelledTimerIsNotSwept() {
+        DeferredJobHandle deferred = (DeferredJobHandle) schedule(1, 2 * HOUR);
+        assertTrue(timerService.removeJob(deferred));
+
+        timerService.setLazyHorizon(3 * HOUR);
+        timerService.sweep();
+
+        assertNull(deferred.getDelegate());
+        assertTrue(timerService.getTimerJobInstances(SESSION_ID).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentSweepAndCancel() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            final DeferredJobHandle deferred = (DeferredJobHandle) schedule(i, 2 * HOUR);
+            timerService.setLazyHorizon(3 * HOUR);
+
+            Thread sweeper = new Thread(timerService::sweep);
+            sweeper.start();
+            timerService.removeJob(deferred);
+            sweeper.join();
+
+            // timer is either never scheduled or scheduled and removed again
+            assertTrue(timerService.getTimerJobInstances(SESSION_ID).isEmpty());
+            timerService.setLazyHorizon(HOUR);
+        }
+    }
+
+    private JobHandle schedule(long timerId, long delay) {
+        TimerInstance timer = new TimerInstance();
+        IntervalTrigger trigger = new IntervalTrigger(timerService.getCurrentTime(), null, null, -1, delay, 0, null, null);
+        ProcessJobContext ctx = new ProcessJobContext(timer, trigger, timerId, null);
+        return schedule(timer, timerId, delay, trigger, ctx);
+    }
+
+    private JobHandle schedule(TimerInstance timer, long timerId, long delay, IntervalTrigger trigger, ProcessJobContext ctx) {
+        timer.setId(timerId);
+        timer.setSessionId(SESSION_ID);
+        timer.setProcessInstanceId(timerId);
+        timer.setDelay(delay);
+        JobHandle handle = timerService.scheduleJob(new ProcessJob(), ctx, trigger);
+        timer.setJobHandle(handle);
+        return handle;
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.jbpm.runtime.manager.impl.identity;
 
+import org.jbpm.services.task.identity.CachingUserGroupCallback;
 import org.jbpm.services.task.identity.DBUserGroupCallbackImpl;
 import org.jbpm.services.task.identity.DBUserInfoImpl;
 import org.jbpm.services.task.identity.DefaultUserInfo;
@@ -48,6 +49,9 @@ import org.kie.internal.task.api.UserInfo;
  * </ul>
  * </li>
  * 	<li>
+ * org.jbpm.ht.callback.cache - when set to true selected user group callback is wrapped with {@link CachingUserGroupCallback}
+ * </li>
+ * 	<li>
  * org.jbpm.ht.userinfo - specify what implementation of UserInfo shall be used, one of:
  * <ul>
  * 	<li>ldap - backed by ldap - requires configuration via jbpm-user.info.properties file</li>
@@ -66,6 +70,8 @@ public class UserDataServiceProvider {
 	
 	private static final String CUSTOM_USER_CALLBACK_IMPL = System.getProperty("org.jbpm.ht.custom.callback");
 	private static final String CUSTOM_USER_INFO_IMPL = System.getProperty("org.jbpm.ht.custom.userinfo");
+
+	private static final boolean USER_CALLBACK_CACHE = Boolean.parseBoolean(System.getProperty("org.jbpm.ht.callback.cache", "false"));
 	
 
 	public static UserGroupCallback getUserGroupCallback() {
@@ -88,6 +94,9 @@ public class UserDataServiceProvider {
 				throw new RuntimeException("Unable to create instance of custom user group callback impl", e);
 			}
 		}
+		if (USER_CALLBACK_CACHE) {
+			callback = new CachingUserGroupCallback(callback);
+		}
 		
 		return callback;
 	}
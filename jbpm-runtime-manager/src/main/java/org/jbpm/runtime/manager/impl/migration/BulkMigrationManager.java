@@ -0,0 +1,466 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.runtime.manager.impl.migration;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.drools.persistence.api.SessionNotFoundException;
+import org.drools.persistence.api.TransactionManager;
+import org.drools.persistence.api.TransactionManagerFactory;
+import org.jbpm.runtime.manager.impl.jpa.EntityManagerFactoryManager;
+import org.jbpm.runtime.manager.impl.migration.MigrationEntry.Type;
+import org.jbpm.workflow.core.NodeContainer;
+import org.kie.api.definition.process.Node;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.internal.persistence.jpa.JPAKnowledgeService;
+import org.kie.internal.runtime.manager.InternalRuntimeManager;
+import org.kie.internal.runtime.manager.RuntimeManagerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Migrates number of process instances of the same source deployment to the same target process.
+ * Process instances are split into batches (org.jbpm.migration.bulk.batch.size system property, defaults to 100)
+ * that are migrated in parallel by a pool of workers (org.jbpm.migration.bulk.threads system property, defaults
+ * to number of available processors). Each batch is migrated in its own transaction with single pair of sessions and
+ * entity manager, in case the batch fails its process instances are migrated one by one with {@link MigrationManager}
+ * so single broken process instance does not fail the complete batch. Workers can be throttled by a delay
+ * (in milliseconds) between batches - org.jbpm.migration.bulk.batch.delay system property, defaults to 0.
+ * <br/>
+ * Deployments, target process and node mapping are validated once for the complete migration and state of
+ * process instances is checked with single query per batch.
+ * <br/>
+ * Progress is recorded in {@link BulkMigrationReport} - when given to the manager, process instances that were
+ * already successfully migrated are skipped so interrupted migration can be resumed. To resume migration after
+ * restart, progress file can be set - ids of successfully migrated process instances are appended to it (one per line)
+ * as soon as they are committed and are skipped when migration runs again.
+ * <br/>
+ * Batches are executed by a pool created for every migration, unless executor service (e.g. managed one) is given.
+ */
+public class BulkMigrationManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkMigrationManager.class);
+
+    private int threads = Integer.parseInt(System.getProperty("org.jbpm.migration.bulk.threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    private int batchSize = Integer.parseInt(System.getProperty("org.jbpm.migration.bulk.batch.size", "100"));
+    private long batchDelay = Long.parseLong(System.getProperty("org.jbpm.migration.bulk.batch.delay", "0"));
+
+    private final String deploymentId;
+    private final List<Long> processInstanceIds;
+    private final String toDeploymentId;
+    private final String toProcessId;
+
+    private final BulkMigrationReport report;
+
+    private ExecutorService executorService;
+    private File progressFile;
+
+    /**
+     * Creates new instance of BulkMigrationManager for given process instances.
+     * @param deploymentId source deployment id - one that process instances belong to
+     * @param processInstanceIds process instance ids to be migrated - must be active process instances
+     * @param toDeploymentId target deployment id where process instances should be migrated to
+     * @param toProcessId target process id within the target deployment id
+     */
+    public BulkMigrationManager(String deploymentId, List<Long> processInstanceIds, String toDeploymentId, String toProcessId) {
+        this(deploymentId, processInstanceIds, toDeploymentId, toProcessId, new BulkMigrationReport());
+    }
+
+    /**
+     * Creates new instance of BulkMigrationManager that resumes migration recorded in given report - process instances
+     * that are already successfully migrated according to the report are skipped.
+     */
+    public BulkMigrationManager(String deploymentId, List<Long> processInstanceIds, String toDeploymentId, String toProcessId, BulkMigrationReport report) {
+        this.deploymentId = deploymentId;
+        this.processInstanceIds = processInstanceIds;
+        this.toDeploymentId = toDeploymentId;
+        this.toProcessId = toProcessId;
+        this.report = report;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setBatchDelay(long batchDelay) {
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * Sets executor service used to migrate batches, it is not shut down by this manager.
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Sets file that keeps ids of already migrated process instances so migration can be resumed after restart.
+     */
+    public void setProgressFile(File progressFile) {
+        this.progressFile = progressFile;
+    }
+
+    public BulkMigrationReport getReport() {
+        return report;
+    }
+
+    /**
+     * Performs migration without node instance mapping
+     * @return returns aggregated report of all process instances
+     */
+    public BulkMigrationReport migrate() {
+        return migrate(null);
+    }
+
+    /**
+     * Performs migration with node mapping (if non null).
+     * @param nodeMapping node instance mapping that is composed of unique ids of source node mapped to target node
+     * @return returns aggregated report of all process instances
+     */
+    public BulkMigrationReport migrate(final Map<String, String> nodeMapping) {
+        loadProgress();
+        List<Long> pending = new ArrayList<Long>();
+        for (Long processInstanceId : processInstanceIds) {
+            if (!report.isMigrated(processInstanceId)) {
+                pending.add(processInstanceId);
+            }
+        }
+        logger.info("Migrating {} process instances ({} already migrated) from {} to process {} in {}",
+                pending.size(), processInstanceIds.size() - pending.size(), deploymentId, toProcessId, toDeploymentId);
+        if (pending.isEmpty()) {
+            return complete(pending);
+        }
+
+        final Map<String, Node> targetNodes;
+        try {
+            targetNodes = validate(nodeMapping);
+        } catch (MigrationException e) {
+            // nothing can be migrated, record the reason for all process instances
+            for (Long processInstanceId : pending) {
+                report.addReport(processInstanceId, failed(processInstanceId, e.getMessage()));
+            }
+            return complete(pending);
+        }
+
+        List<List<Long>> batches = new ArrayList<List<Long>>();
+        int size = Math.max(batchSize, 1);
+        for (int i = 0; i < pending.size(); i += size) {
+            batches.add(new ArrayList<Long>(pending.subList(i, Math.min(i + size, pending.size()))));
+        }
+
+        final AtomicInteger processed = new AtomicInteger();
+        final int total = pending.size();
+        ExecutorService workers = executorService;
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(Math.max(Math.min(threads, batches.size()), 1));
+        }
+        Map<Future<?>, List<Long>> futures = new LinkedHashMap<Future<?>, List<Long>>();
+        try {
+            for (final List<Long> batch : batches) {
+                futures.put(workers.submit(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        migrateBatch(batch, nodeMapping, targetNodes);
+                        logger.info("Bulk migration to process {} in {} progress {}/{}", toProcessId, toDeploymentId, processed.addAndGet(batch.size()), total);
+                        throttle();
+                    }
+                }), batch);
+            }
+            for (Map.Entry<Future<?>, List<Long>> future : futures.entrySet()) {
+                try {
+                    future.getKey().get();
+                } catch (ExecutionException e) {
+                    logger.error("Unexpected error during bulk migration of batch {}", future.getValue(), e.getCause());
+                    failUnreported(future.getValue(), "Migration of batch failed due to " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Bulk migration interrupted, {} of {} process instances processed", processed.get(), total);
+            for (Future<?> future : futures.keySet()) {
+                future.cancel(true);
+            }
+        } finally {
+            if (workers != executorService) {
+                workers.shutdownNow();
+            }
+        }
+        return complete(pending);
+    }
+
+    /*
+     * makes sure every requested process instance has a report and finishes the progress file
+     */
+    protected BulkMigrationReport complete(List<Long> pending) {
+        failUnreported(pending, "Process instance was not migrated as bulk migration did not complete");
+        report.setEndDate(new Date());
+        if (progressFile != null && allMigrated()) {
+            // nothing left to resume
+            if (!progressFile.delete() && progressFile.exists()) {
+                logger.warn("Unable to remove migration progress file {}", progressFile);
+            }
+        }
+        return report;
+    }
+
+    private boolean allMigrated() {
+        for (Long processInstanceId : processInstanceIds) {
+            if (!report.isMigrated(processInstanceId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected void failUnreported(List<Long> processInstanceIds, String message) {
+        for (Long processInstanceId : processInstanceIds) {
+            if (report.getReport(processInstanceId) == null) {
+                report.addReport(processInstanceId, failed(processInstanceId, message));
+            }
+        }
+    }
+
+    protected void loadProgress() {
+        if (progressFile == null || !progressFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(progressFile), StandardCharsets.UTF_8))) {
+            String line = null;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Long processInstanceId = Long.valueOf(line);
+                if (!report.isMigrated(processInstanceId)) {
+                    MigrationReport migrationReport = new MigrationReport(spec(processInstanceId));
+                    migrationReport.addEntry(Type.INFO, "Process instance (" + processInstanceId + ") already migrated according to " + progressFile);
+                    migrationReport.setSuccessful(true);
+                    migrationReport.setEndDate(new Date());
+                    report.addReport(processInstanceId, migrationReport);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Unable to read migration progress file " + progressFile, e);
+        }
+    }
+
+    protected synchronized void recordProgress(List<Long> migrated) {
+        if (progressFile == null || migrated.isEmpty()) {
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(progressFile, true), StandardCharsets.UTF_8)) {
+            for (Long processInstanceId : migrated) {
+                writer.write(processInstanceId + "\n");
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to record migrated process instances {} in progress file {}", migrated, progressFile, e);
+        }
+    }
+
+    protected Map<String, Node> validate(Map<String, String> nodeMapping) {
+        MigrationManager migrationManager = new MigrationManager(new MigrationSpec(deploymentId, null, toDeploymentId, toProcessId));
+        migrationManager.validateDefinitions();
+
+        InternalRuntimeManager toBeManager = (InternalRuntimeManager) RuntimeManagerRegistry.get().getManager(toDeploymentId);
+        Map<String, Node> targetNodes = MigrationManager.indexNodes((NodeContainer) toBeManager.getEnvironment().getKieBase().getProcess(toProcessId));
+        if (nodeMapping != null) {
+            for (Map.Entry<String, String> mapping : nodeMapping.entrySet()) {
+                if (!targetNodes.containsKey(mapping.getValue()) && !isNumber(mapping.getValue())) {
+                    migrationManager.getReport().addEntry(Type.ERROR, "Node " + mapping.getKey() + " is mapped to " + mapping.getValue() + " that does not exist in process " + toProcessId);
+                }
+            }
+        }
+        return targetNodes;
+    }
+
+    protected void migrateBatch(List<Long> batch, Map<String, String> nodeMapping, Map<String, Node> targetNodes) {
+        InternalRuntimeManager currentManager = (InternalRuntimeManager) RuntimeManagerRegistry.get().getManager(deploymentId);
+        InternalRuntimeManager toBeManager = (InternalRuntimeManager) RuntimeManagerRegistry.get().getManager(toDeploymentId);
+        EntityManagerFactory emf = EntityManagerFactoryManager.get().getOrCreate(currentManager.getDeploymentDescriptor().getAuditPersistenceUnit());
+
+        List<Long> active = findActive(emf, batch);
+        if (active.isEmpty()) {
+            return;
+        }
+
+        List<MigrationManager> migrationManagers = new ArrayList<MigrationManager>();
+        KieSession current = null;
+        KieSession tobe = null;
+        TransactionManager txm = null;
+        boolean transactionOwner = false;
+        boolean batchFailed = false;
+        try {
+            txm = TransactionManagerFactory.get().newTransactionManager(currentManager.getEnvironment().getEnvironment());
+            transactionOwner = txm.begin();
+
+            org.kie.api.definition.process.Process toBeProcess = toBeManager.getEnvironment().getKieBase().getProcess(toProcessId);
+            EntityManager em = emf.createEntityManager();
+            try {
+                current = JPAKnowledgeService.newStatefulKnowledgeSession(currentManager.getEnvironment().getKieBase(), null, currentManager.getEnvironment().getEnvironment());
+                tobe = JPAKnowledgeService.newStatefulKnowledgeSession(toBeManager.getEnvironment().getKieBase(), null, toBeManager.getEnvironment().getEnvironment());
+
+                for (Long processInstanceId : active) {
+                    MigrationManager migrationManager = new MigrationManager(spec(processInstanceId));
+                    migrationManager.setTargetNodes(targetNodes);
+                    migrationManager.migrate(current, tobe, em, toBeProcess, nodeMapping, toBeManager.getIdentifier());
+                    migrationManagers.add(migrationManager);
+                }
+                em.flush();
+            } finally {
+                em.clear();
+                em.close();
+            }
+
+            txm.commit(transactionOwner);
+            recordProgress(active);
+            for (MigrationManager migrationManager : migrationManagers) {
+                MigrationReport migrationReport = migrationManager.getReport();
+                migrationReport.addEntry(Type.INFO, "Migration of process instance (" + migrationReport.getMigrationSpec().getProcessInstanceId() + ") completed successfully to process " + toProcessId);
+                migrationReport.setSuccessful(true);
+                migrationReport.setEndDate(new Date());
+                report.addReport(migrationReport.getMigrationSpec().getProcessInstanceId(), migrationReport);
+            }
+        } catch (Throwable e) {
+            if (txm != null) {
+                txm.rollback(transactionOwner);
+            }
+            logger.warn("Migration of batch {} failed due to {}, migrating process instances one by one", active, e.getMessage());
+            batchFailed = true;
+        } finally {
+            destroy(current);
+            destroy(tobe);
+        }
+
+        if (batchFailed) {
+            for (Long processInstanceId : active) {
+                MigrationReport migrationReport = null;
+                try {
+                    migrationReport = new MigrationManager(spec(processInstanceId)).migrate(nodeMapping);
+                } catch (MigrationException e) {
+                    migrationReport = e.getReport();
+                } catch (RuntimeException e) {
+                    migrationReport = failed(processInstanceId, "Migration failed due to " + e);
+                }
+                if (migrationReport.isSuccessful()) {
+                    recordProgress(Collections.singletonList(processInstanceId));
+                }
+                report.addReport(processInstanceId, migrationReport);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<Long> findActive(EntityManagerFactory emf, List<Long> batch) {
+        Map<Long, Integer> states = new HashMap<Long, Integer>();
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<Object[]> result = em.createQuery("select log.processInstanceId, log.status from ProcessInstanceLog log where log.processInstanceId in (:ids)")
+                    .setParameter("ids", batch)
+                    .getResultList();
+            for (Object[] row : result) {
+                states.put((Long) row[0], (Integer) row[1]);
+            }
+        } finally {
+            em.close();
+        }
+
+        List<Long> active = new ArrayList<Long>();
+        for (Long processInstanceId : batch) {
+            Integer status = states.get(processInstanceId);
+            if (status == null || status != ProcessInstance.STATE_ACTIVE) {
+                report.addReport(processInstanceId, failed(processInstanceId, "No process instance found or it is not active (id " + processInstanceId + " in status " + (status == null ? "-1" : status)));
+            } else {
+                active.add(processInstanceId);
+            }
+        }
+        return active;
+    }
+
+    protected void throttle() {
+        if (batchDelay > 0) {
+            try {
+                Thread.sleep(batchDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private MigrationSpec spec(Long processInstanceId) {
+        return new MigrationSpec(deploymentId, processInstanceId, toDeploymentId, toProcessId);
+    }
+
+    private MigrationReport failed(Long processInstanceId, String message) {
+        MigrationReport migrationReport = new MigrationReport(spec(processInstanceId));
+        try {
+            migrationReport.addEntry(Type.ERROR, message);
+        } catch (MigrationException e) {
+            // expected as error entries always terminate migration
+        }
+        return migrationReport;
+    }
+
+    private void destroy(KieSession ksession) {
+        if (ksession != null) {
+            try {
+                ksession.destroy();
+            } catch (SessionNotFoundException e) {
+                // in case of rollback session might not exist
+            }
+        }
+    }
+
+    private boolean isNumber(String value) {
+        try {
+            Long.parseLong(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
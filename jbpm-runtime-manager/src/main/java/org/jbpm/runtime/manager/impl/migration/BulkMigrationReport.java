@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.runtime.manager.impl.migration;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregated report of bulk process instance migration performed by {@link BulkMigrationManager}.
+ * It keeps individual {@link MigrationReport} of every process instance that was processed so far
+ * and thus can be given back to {@link BulkMigrationManager} to resume migration - process instances
+ * that were already successfully migrated are then skipped.
+ */
+public class BulkMigrationReport implements Serializable {
+
+    private static final long serialVersionUID = 2915530582178946301L;
+
+    private Date startDate;
+    private Date endDate;
+
+    private Map<Long, MigrationReport> reports = new LinkedHashMap<Long, MigrationReport>();
+
+    public BulkMigrationReport() {
+        this.startDate = new Date();
+    }
+
+    public synchronized void addReport(Long processInstanceId, MigrationReport report) {
+        this.reports.put(processInstanceId, report);
+    }
+
+    public synchronized MigrationReport getReport(Long processInstanceId) {
+        return reports.get(processInstanceId);
+    }
+
+    public synchronized List<MigrationReport> getReports() {
+        return new ArrayList<MigrationReport>(reports.values());
+    }
+
+    public synchronized boolean isMigrated(Long processInstanceId) {
+        MigrationReport report = reports.get(processInstanceId);
+        return report != null && report.isSuccessful();
+    }
+
+    public synchronized List<Long> getMigratedProcessInstanceIds() {
+        List<Long> migrated = new ArrayList<Long>();
+        for (Map.Entry<Long, MigrationReport> entry : reports.entrySet()) {
+            if (entry.getValue().isSuccessful()) {
+                migrated.add(entry.getKey());
+            }
+        }
+        return migrated;
+    }
+
+    public synchronized List<Long> getFailedProcessInstanceIds() {
+        List<Long> failed = new ArrayList<Long>();
+        for (Map.Entry<Long, MigrationReport> entry : reports.entrySet()) {
+            if (!entry.getValue().isSuccessful()) {
+                failed.add(entry.getKey());
+            }
+        }
+        return failed;
+    }
+
+    public synchronized int getSuccessfulCount() {
+        return getMigratedProcessInstanceIds().size();
+    }
+
+    public synchronized int getFailedCount() {
+        return getFailedProcessInstanceIds().size();
+    }
+
+    public synchronized int getTotalCount() {
+        return reports.size();
+    }
+
+    public synchronized boolean isSuccessful() {
+        return getFailedCount() == 0;
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(Date startDate) {
+        this.startDate = startDate;
+    }
+
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(Date endDate) {
+        this.endDate = endDate;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkMigrationReport [total=" + getTotalCount() + ", successful=" + getSuccessfulCount() + ", failed=" + getFailedCount() + "]";
+    }
+}
@@ -82,6 +82,7 @@ public class MigrationManager {
 	
 	private MigrationReport report;
 	private MigrationSpec migrationSpec;
+	private Map<String, Node> targetNodes;
 
 	/**
 	 * Creates new instance of MigrationManager with given migration specification.
@@ -128,87 +129,7 @@ public class MigrationManager {
 			EntityManager em = emf.createEntityManager();			
             
 			try {
-    	         // update variable instance log information with new deployment id and process id
-                Query varLogQuery = em.createQuery("update VariableInstanceLog set externalId = :depId, processId = :procId where processInstanceId = :procInstanceId");
-                varLogQuery
-                    .setParameter("depId", migrationSpec.getToDeploymentId())
-                    .setParameter("procId", migrationSpec.getToProcessId())
-                    .setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
-                
-                int varsUpdated = varLogQuery.executeUpdate();
-                report.addEntry(Type.INFO, "Variable instances updated = " + varsUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());            
-    			
-    			// update node instance log information with new deployment id and process id
-    			Query nodeLogQuery = em.createQuery("update NodeInstanceLog set externalId = :depId, processId = :procId where processInstanceId = :procInstanceId");
-    			nodeLogQuery
-    				.setParameter("depId", migrationSpec.getToDeploymentId())
-    				.setParameter("procId", migrationSpec.getToProcessId())
-    				.setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
-    			
-    			int nodesUpdated = nodeLogQuery.executeUpdate();
-    			report.addEntry(Type.INFO, "Node instances updated = " + nodesUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());
-    			
-    			// update process instance log with new deployment and process id
-    			Query pInstanceLogQuery = em.createQuery("update ProcessInstanceLog set externalId = :depId, processId = :procId, processName = :procName, processVersion= :procVersion where processInstanceId = :procInstanceId");
-    			pInstanceLogQuery
-    				.setParameter("depId", migrationSpec.getToDeploymentId())
-    				.setParameter("procId", migrationSpec.getToProcessId())
-    				.setParameter("procName", toBeProcess.getName())
-    				.setParameter("procVersion", toBeProcess.getVersion())
-    				.setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
-    			
-    			int pInstancesUpdated = pInstanceLogQuery.executeUpdate();
-    			report.addEntry(Type.INFO, "Process instances updated = " + pInstancesUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());
-    
-    			try {
-        	         // update task audit instance log with new deployment and process id
-                    Query taskVarLogQuery = em.createQuery("update TaskVariableImpl set processId = :procId where processInstanceId = :procInstanceId");
-                    taskVarLogQuery
-                        .setParameter("procId", migrationSpec.getToProcessId())
-                        .setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
-                    
-                    int taskVarUpdated = taskVarLogQuery.executeUpdate();
-                    report.addEntry(Type.INFO, "Task variables updated = " + taskVarUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());
-    			} catch (Throwable e) {
-    			    logger.warn("Unexpected error during migration", e);
-    			    report.addEntry(Type.WARN, "Cannot update task variables (added in version 6.3) due to " + e.getMessage());
-                }
-    
-    			
-    			// update task audit instance log with new deployment and process id
-    			Query auditTaskLogQuery = em.createQuery("update AuditTaskImpl set deploymentId = :depId, processId = :procId where processInstanceId = :procInstanceId");
-    			auditTaskLogQuery
-    				.setParameter("depId", migrationSpec.getToDeploymentId())
-    				.setParameter("procId", migrationSpec.getToProcessId())
-    				.setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
-    			
-    			int auditTaskUpdated = auditTaskLogQuery.executeUpdate();
-    			report.addEntry(Type.INFO, "Task audit updated = " + auditTaskUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());
-    			
-    			// update task  instance log with new deployment and process id
-    			Query taskLogQuery = em.createQuery("update TaskImpl set deploymentId = :depId, processId = :procId where processInstanceId = :procInstanceId");
-    			taskLogQuery
-    				.setParameter("depId", migrationSpec.getToDeploymentId())
-    				.setParameter("procId", migrationSpec.getToProcessId())
-    				.setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
-    			
-    			int taskUpdated = taskLogQuery.executeUpdate();
-    			report.addEntry(Type.INFO, "Tasks updated = " + taskUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());
-    			
-    			
-    			try {
-    				// update context mapping info with new deployment
-    				Query contextInfoQuery = em.createQuery("update ContextMappingInfo set ownerId = :depId where contextId = :procInstanceId");
-    				contextInfoQuery
-    					.setParameter("depId", migrationSpec.getToDeploymentId())
-    					.setParameter("procInstanceId", migrationSpec.getProcessInstanceId().toString());
-    				
-    				int contextInfoUpdated = contextInfoQuery.executeUpdate();
-    				report.addEntry(Type.INFO, "Context info updated = " + contextInfoUpdated+ " for process instance id " + migrationSpec.getProcessInstanceId());
-    			} catch (Throwable e) {
-    			    logger.warn("Unexpected error during migration", e);
-    			    report.addEntry(Type.WARN, "Cannot update context mapping owner (added in version 6.2) due to " + e.getMessage());
-    			}
+                updateLogs(em, toBeProcess);
     		
     			current = JPAKnowledgeService.newStatefulKnowledgeSession(currentManager.getEnvironment().getKieBase(), null, currentManager.getEnvironment().getEnvironment());
     			tobe = JPAKnowledgeService.newStatefulKnowledgeSession(toBeManager.getEnvironment().getKieBase(), null, toBeManager.getEnvironment().getEnvironment());
@@ -251,7 +172,114 @@ public class MigrationManager {
 		return report;
 	}
 	
+    /**
+     * Migrates process instance within already started transaction using given sessions and entity manager - used by
+     * {@link BulkMigrationManager} to migrate number of process instances in single transaction. Validation is expected
+     * to be done by the caller.
+     */
+    void migrate(KieSession current, KieSession tobe, EntityManager em, org.kie.api.definition.process.Process toBeProcess, Map<String, String> nodeMapping, String deploymentId) {
+        updateLogs(em, toBeProcess);
+        upgradeProcessInstance(current, tobe, migrationSpec.getProcessInstanceId(), migrationSpec.getToProcessId(), nodeMapping, em, deploymentId);
+    }
+
+    MigrationReport getReport() {
+        return report;
+    }
+
+    void setTargetNodes(Map<String, Node> targetNodes) {
+        this.targetNodes = targetNodes;
+    }
+
+    private void updateLogs(EntityManager em, org.kie.api.definition.process.Process toBeProcess) {
+        // update variable instance log information with new deployment id and process id
+        Query varLogQuery = em.createQuery("update VariableInstanceLog set externalId = :depId, processId = :procId where processInstanceId = :procInstanceId");
+        varLogQuery
+            .setParameter("depId", migrationSpec.getToDeploymentId())
+            .setParameter("procId", migrationSpec.getToProcessId())
+            .setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
+
+        int varsUpdated = varLogQuery.executeUpdate();
+        report.addEntry(Type.INFO, "Variable instances updated = " + varsUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());
+
+        // update node instance log information with new deployment id and process id
+        Query nodeLogQuery = em.createQuery("update NodeInstanceLog set externalId = :depId, processId = :procId where processInstanceId = :procInstanceId");
+        nodeLogQuery
+            .setParameter("depId", migrationSpec.getToDeploymentId())
+            .setParameter("procId", migrationSpec.getToProcessId())
+            .setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
+
+        int nodesUpdated = nodeLogQuery.executeUpdate();
+        report.addEntry(Type.INFO, "Node instances updated = " + nodesUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());
+
+        // update process instance log with new deployment and process id
+        Query pInstanceLogQuery = em.createQuery("update ProcessInstanceLog set externalId = :depId, processId = :procId, processName = :procName, processVersion= :procVersion where processInstanceId = :procInstanceId");
+        pInstanceLogQuery
+            .setParameter("depId", migrationSpec.getToDeploymentId())
+            .setParameter("procId", migrationSpec.getToProcessId())
+            .setParameter("procName", toBeProcess.getName())
+            .setParameter("procVersion", toBeProcess.getVersion())
+            .setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
+
+        int pInstancesUpdated = pInstanceLogQuery.executeUpdate();
+        report.addEntry(Type.INFO, "Process instances updated = " + pInstancesUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());
+
+        try {
+            // update task audit instance log with new deployment and process id
+            Query taskVarLogQuery = em.createQuery("update TaskVariableImpl set processId = :procId where processInstanceId = :procInstanceId");
+            taskVarLogQuery
+                .setParameter("procId", migrationSpec.getToProcessId())
+                .setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
+
+            int taskVarUpdated = taskVarLogQuery.executeUpdate();
+            report.addEntry(Type.INFO, "Task variables updated = " + taskVarUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());
+        } catch (Throwable e) {
+            logger.warn("Unexpected error during migration", e);
+            report.addEntry(Type.WARN, "Cannot update task variables (added in version 6.3) due to " + e.getMessage());
+        }
+
+
+        // update task audit instance log with new deployment and process id
+        Query auditTaskLogQuery = em.createQuery("update AuditTaskImpl set deploymentId = :depId, processId = :procId where processInstanceId = :procInstanceId");
+        auditTaskLogQuery
+            .setParameter("depId", migrationSpec.getToDeploymentId())
+            .setParameter("procId", migrationSpec.getToProcessId())
+            .setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
+
+        int auditTaskUpdated = auditTaskLogQuery.executeUpdate();
+        report.addEntry(Type.INFO, "Task audit updated = " + auditTaskUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());
+
+        // update task  instance log with new deployment and process id
+        Query taskLogQuery = em.createQuery("update TaskImpl set deploymentId = :depId, processId = :procId where processInstanceId = :procInstanceId");
+        taskLogQuery
+            .setParameter("depId", migrationSpec.getToDeploymentId())
+            .setParameter("procId", migrationSpec.getToProcessId())
+            .setParameter("procInstanceId", migrationSpec.getProcessInstanceId());
+
+        int taskUpdated = taskLogQuery.executeUpdate();
+        report.addEntry(Type.INFO, "Tasks updated = " + taskUpdated + " for process instance id " + migrationSpec.getProcessInstanceId());
+
+
+        try {
+            // update context mapping info with new deployment
+            Query contextInfoQuery = em.createQuery("update ContextMappingInfo set ownerId = :depId where contextId = :procInstanceId");
+            contextInfoQuery
+                .setParameter("depId", migrationSpec.getToDeploymentId())
+                .setParameter("procInstanceId", migrationSpec.getProcessInstanceId().toString());
+
+            int contextInfoUpdated = contextInfoQuery.executeUpdate();
+            report.addEntry(Type.INFO, "Context info updated = " + contextInfoUpdated+ " for process instance id " + migrationSpec.getProcessInstanceId());
+        } catch (Throwable e) {
+            logger.warn("Unexpected error during migration", e);
+            report.addEntry(Type.WARN, "Cannot update context mapping owner (added in version 6.2) due to " + e.getMessage());
+        }
+    }
+
     private void validate() {
+        validateDefinitions();
+        validateProcessInstance();
+    }
+
+    void validateDefinitions() {
         if (migrationSpec == null) {
             report.addEntry(Type.ERROR, "no process data given for migration");
             return;
@@ -260,9 +288,6 @@ public class MigrationManager {
         if (isEmpty(migrationSpec.getDeploymentId())) {
             report.addEntry(Type.ERROR, "No deployment id set");
         }
-        if (migrationSpec.getProcessInstanceId() == null) {
-            report.addEntry(Type.ERROR, "No process instance id set");
-        }
         // target process information
         if (isEmpty(migrationSpec.getToDeploymentId())) {
             report.addEntry(Type.ERROR, "No target deployment id set");
@@ -285,7 +310,13 @@ public class MigrationManager {
         if (manager.getEnvironment().getKieBase().getProcess(migrationSpec.getToProcessId()) == null) {
             report.addEntry(Type.ERROR, "No process found for " + migrationSpec.getToProcessId() + " in deployment " + migrationSpec.getToDeploymentId());          
         }
-        
+    }
+
+    private void validateProcessInstance() {
+        if (migrationSpec.getProcessInstanceId() == null) {
+            report.addEntry(Type.ERROR, "No process instance id set");
+        }
+        InternalRuntimeManager manager = (InternalRuntimeManager) RuntimeManagerRegistry.get().getManager(migrationSpec.getToDeploymentId());
         String auditPu = manager.getDeploymentDescriptor().getAuditPersistenceUnit();
         
         EntityManagerFactory emf = EntityManagerFactoryManager.get().getOrCreate(auditPu);
@@ -332,6 +363,7 @@ public class MigrationManager {
 	        processInstance.setDeploymentId(deploymentId);
 	        processInstance.setProcess(process);
 	        processInstance.reconnect();
+	        processInstance.markDirty();
 		}
     }
     
@@ -345,7 +377,7 @@ public class MigrationManager {
             if (newNodeId == null) {
                 newNodeId = oldNodeId;
             }
-            Node upgradedNode = findNodeByUniqueId(newNodeId, nodeContainer);
+            Node upgradedNode = targetNodes != null ? targetNodes.get(newNodeId) : findNodeByUniqueId(newNodeId, nodeContainer);
             if (upgradedNode == null) {
             	try {
             		upgradedNodeId = Long.parseLong(newNodeId);
@@ -423,6 +455,28 @@ public class MigrationManager {
 
     }
     
+    /**
+     * Builds index of all nodes (including nodes of embedded containers) of given container by their unique id
+     * so nodes can be looked up without traversing the whole process definition for every node instance.
+     */
+    static Map<String, Node> indexNodes(NodeContainer nodeContainer) {
+        Map<String, Node> index = new HashMap<String, Node>();
+        indexNodes(nodeContainer, index);
+        return index;
+    }
+
+    private static void indexNodes(NodeContainer nodeContainer, Map<String, Node> index) {
+        for (Node node : nodeContainer.getNodes()) {
+            String uniqueId = (String) node.getMetaData().get("UniqueId");
+            if (uniqueId != null && !index.containsKey(uniqueId)) {
+                index.put(uniqueId, node);
+            }
+            if (node instanceof NodeContainer) {
+                indexNodes((NodeContainer) node, index);
+            }
+        }
+    }
+
     private Node findNodeByUniqueId(String uniqueId, NodeContainer nodeContainer) {
     	Node result = null;
     	
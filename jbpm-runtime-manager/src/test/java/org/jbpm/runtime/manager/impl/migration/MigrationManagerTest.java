@@ -21,11 +21,14 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.persistence.EntityManagerFactory;
 
@@ -38,6 +41,7 @@ import org.jbpm.test.util.PoolingDataSource;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.kie.api.definition.process.Node;
 import org.kie.api.io.ResourceType;
 import org.kie.api.runtime.KieSession;
 import org.kie.api.runtime.manager.RuntimeEngine;
@@ -546,6 +550,121 @@ public class MigrationManagerTest extends AbstractBaseTest {
         assertEquals(status, instance.getStatus().intValue());
     }
     
+    @Test
+    public void testBulkMigrateUserTaskProcessInstances() {
+        createRuntimeManagers("migration/v1/BPMN2-UserTask-v1.bpmn2", "migration/v2/BPMN2-UserTask-v2.bpmn2");
+        assertNotNull(managerV1);
+        assertNotNull(managerV2);
+        
+        RuntimeEngine runtime = managerV1.getRuntimeEngine(EmptyContext.get());
+        KieSession ksession = runtime.getKieSession();
+        assertNotNull(ksession); 
+        
+        ProcessInstance pi1 = ksession.startProcess(PROCESS_ID_V1);
+        ProcessInstance pi2 = ksession.startProcess(PROCESS_ID_V1);
+        ProcessInstance pi3 = ksession.startProcess(PROCESS_ID_V1);
+        ksession.abortProcessInstance(pi3.getId());
+        managerV1.disposeRuntimeEngine(runtime);
+        
+        BulkMigrationManager migrationManager = new BulkMigrationManager(DEPLOYMENT_ID_V1, Arrays.asList(pi1.getId(), pi2.getId(), pi3.getId()), DEPLOYMENT_ID_V2, PROCESS_ID_V2);
+        migrationManager.setBatchSize(2);
+        migrationManager.setThreads(2);
+        BulkMigrationReport report = migrationManager.migrate();
+        
+        assertNotNull(report);
+        assertEquals(3, report.getTotalCount());
+        assertEquals(Arrays.asList(pi3.getId()), report.getFailedProcessInstanceIds());
+        assertTrue(report.isMigrated(pi1.getId()));
+        assertTrue(report.isMigrated(pi2.getId()));
+        
+        JPAAuditLogService auditService = new JPAAuditLogService(emf);
+        ProcessInstanceLog log = auditService.findProcessInstance(pi1.getId());
+        assertEquals(PROCESS_ID_V2, log.getProcessId());
+        assertEquals(DEPLOYMENT_ID_V2, log.getExternalId());
+        log = auditService.findProcessInstance(pi2.getId());
+        assertEquals(PROCESS_ID_V2, log.getProcessId());
+        assertEquals(DEPLOYMENT_ID_V2, log.getExternalId());
+        auditService.dispose();
+        
+        runtime = managerV2.getRuntimeEngine(EmptyContext.get());
+        TaskService taskService = runtime.getTaskService();
+        List<TaskSummary> tasks = taskService.getTasksAssignedAsPotentialOwner(USER_JOHN, "en-UK");
+        assertEquals(2, tasks.size());
+        for (TaskSummary task : tasks) {
+            assertEquals(PROCESS_ID_V2, task.getProcessId());
+            assertEquals(DEPLOYMENT_ID_V2, task.getDeploymentId());
+        }
+        managerV2.disposeRuntimeEngine(runtime);
+        
+        // resumed migration skips already migrated process instances
+        report = new BulkMigrationManager(DEPLOYMENT_ID_V1, Arrays.asList(pi1.getId(), pi2.getId()), DEPLOYMENT_ID_V2, PROCESS_ID_V2, report).migrate();
+        assertEquals(3, report.getTotalCount());
+        assertEquals(2, report.getSuccessfulCount());
+    }
+    
+    @Test
+    public void testBulkMigrationResumedFromProgressFile() throws Exception {
+        createRuntimeManagers("migration/v1/BPMN2-UserTask-v1.bpmn2", "migration/v2/BPMN2-UserTask-v2.bpmn2");
+        
+        RuntimeEngine runtime = managerV1.getRuntimeEngine(EmptyContext.get());
+        KieSession ksession = runtime.getKieSession();
+        ProcessInstance pi1 = ksession.startProcess(PROCESS_ID_V1);
+        ProcessInstance pi2 = ksession.startProcess(PROCESS_ID_V1);
+        ProcessInstance pi3 = ksession.startProcess(PROCESS_ID_V1);
+        ksession.abortProcessInstance(pi3.getId());
+        managerV1.disposeRuntimeEngine(runtime);
+        
+        File progressFile = File.createTempFile("migration", ".progress");
+        progressFile.delete();
+        try {
+            BulkMigrationManager migrationManager = new BulkMigrationManager(DEPLOYMENT_ID_V1, Arrays.asList(pi1.getId(), pi2.getId(), pi3.getId()), DEPLOYMENT_ID_V2, PROCESS_ID_V2);
+            migrationManager.setProgressFile(progressFile);
+            migrationManager.setBatchSize(1);
+            BulkMigrationReport report = migrationManager.migrate();
+            assertEquals(Arrays.asList(pi3.getId()), report.getFailedProcessInstanceIds());
+            // aborted process instance is not migrated so progress is kept
+            assertTrue(progressFile.exists());
+            
+            // new run (e.g. after restart) without the report skips migrated instances recorded in the file
+            migrationManager = new BulkMigrationManager(DEPLOYMENT_ID_V1, Arrays.asList(pi1.getId(), pi2.getId()), DEPLOYMENT_ID_V2, PROCESS_ID_V2);
+            migrationManager.setProgressFile(progressFile);
+            report = migrationManager.migrate();
+            assertEquals(2, report.getSuccessfulCount());
+            assertTrue(report.getReport(pi1.getId()).getEntries().get(0).getMessage().contains("already migrated"));
+            assertFalse(progressFile.exists());
+        } finally {
+            progressFile.delete();
+        }
+    }
+    
+    @Test
+    public void testBulkMigrationFailedBatchIsReported() {
+        createRuntimeManagers("migration/v1/BPMN2-UserTask-v1.bpmn2", "migration/v2/BPMN2-UserTask-v2.bpmn2");
+        
+        List<Long> processInstanceIds = Arrays.asList(101L, 102L, 103L);
+        BulkMigrationManager migrationManager = new BulkMigrationManager(DEPLOYMENT_ID_V1, processInstanceIds, DEPLOYMENT_ID_V2, PROCESS_ID_V2) {
+            @Override
+            protected void migrateBatch(List<Long> batch, Map<String, String> nodeMapping, Map<String, Node> targetNodes) {
+                throw new IllegalStateException("broken batch");
+            }
+        };
+        migrationManager.setBatchSize(2);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            migrationManager.setExecutorService(executorService);
+            BulkMigrationReport report = migrationManager.migrate();
+            
+            assertEquals(processInstanceIds, report.getFailedProcessInstanceIds());
+            for (Long processInstanceId : processInstanceIds) {
+                assertFalse(report.getReport(processInstanceId).isSuccessful());
+            }
+            // given executor service is managed by the caller
+            assertFalse(executorService.isShutdown());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+    
     protected void createRuntimeManagers(String processV1, String processV2) {
         RuntimeEnvironment environment = RuntimeEnvironmentBuilder.Factory.get()
                 .newDefaultBuilder()
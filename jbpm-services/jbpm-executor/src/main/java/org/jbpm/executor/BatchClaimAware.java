@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.executor;
+
+import java.util.List;
+
+import org.kie.api.executor.RequestInfo;
+
+/**
+ * Query service that is able to claim number of requests at once.
+ * <br/>
+ * Claimed requests are usually not executed right away but wait in a local queue of the executor that claimed
+ * them. To not lose them when that executor goes down, claims may be given a lease - executor that holds claimed
+ * requests renews it until they are executed and claims that were not renewed in time are given back
+ * (requeued) so they can be claimed by other executors.
+ */
+public interface BatchClaimAware {
+
+	/**
+	 * Claims (marks as running) up to given number of requests that are ready for execution
+	 * within single round trip to the store. Requests that are already claimed by others are skipped.
+	 * @param batchSize maximum number of requests to be claimed
+	 * @return list of claimed requests, never null
+	 */
+	List<RequestInfo> getRequestsForProcessing(int batchSize);
+
+	/**
+	 * Claims up to given number of requests that are ready for execution and belong to one of given
+	 * deployments (or to no deployment at all).
+	 * @param batchSize maximum number of requests to be claimed
+	 * @param deploymentIds deployments that requests must belong to
+	 * @return list of claimed requests, never null
+	 */
+	List<RequestInfo> getRequestsForProcessing(int batchSize, List<String> deploymentIds);
+
+	/**
+	 * Extends the lease of given requests that are still claimed (claimed but not yet completed)
+	 * by this executor so they are not requeued.
+	 * @param requestIds ids of claimed requests
+	 */
+	void renewClaims(List<Long> requestIds);
+
+	/**
+	 * Returns how long (in milliseconds) claim of requests lasts unless it is renewed.
+	 * @return lease of claimed requests or -1 when claims do not expire
+	 */
+	long getClaimLease();
+}
@@ -16,7 +16,17 @@
 
 package org.jbpm.executor.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import org.jbpm.executor.BatchClaimAware;
 import org.jbpm.executor.entities.RequestInfo;
+import org.kie.internal.runtime.manager.RuntimeManagerRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,23 +34,242 @@ import org.slf4j.LoggerFactory;
  * Heart of the executor component - executes the actual tasks.
  * Handles retries and error management. Based on results of execution notifies
  * defined callbacks about the execution results.
- *
+ * <br/>
+ * By default single request is claimed on every execution, though when batch size
+ * (org.kie.executor.batch.size system property) is greater than one and the query service supports it,
+ * number of requests is claimed at once and put into local queue that is drained
+ * by all threads that are using this instance.
+ * <br/>
+ * When job execution pool is set, claimed requests are handed over to the pool instead of being
+ * executed by the polling thread. Requests are claimed only up to available capacity of the pool
+ * so saturated pool stops pollers from claiming more. Claimed request that the pool rejects (another poller
+ * took the last free slot) is never executed by the polling thread, it is kept in the local queue and
+ * submitted again before anything else is claimed.
+ * <br/>
+ * With fair scheduling enabled (org.kie.executor.fair.scheduling system property) requests are claimed
+ * per deployment and executed in round robin fashion across deployments and commands, see <code>FairJobScheduler</code>.
+ * The scheduler is shared by all instances of given executor.
+ * <br/>
+ * Requests claimed in batches are kept (as claimed) in the store until they are executed. To not lose them
+ * when this executor goes down before executing them, their claim has a lease (see <code>BatchClaimAware</code>)
+ * that is renewed by {@link #renewClaims()} as long as they are queued or being executed here. Requests
+ * with expired lease are requeued by the store on next batch claim of any executor.
  */
 public class AvailableJobsExecutor extends AbstractAvailableJobsExecutor {
 
     private static final Logger logger = LoggerFactory.getLogger(AvailableJobsExecutor.class);
     
+    protected int batchSize = Integer.parseInt(System.getProperty("org.kie.executor.batch.size", "1"));
+    
+    protected Deque<RequestInfo> claimedRequests = new ConcurrentLinkedDeque<RequestInfo>();
+    
+    protected JobExecutionPool executionPool;
+    
+    protected boolean fairScheduling = Boolean.parseBoolean(System.getProperty("org.kie.executor.fair.scheduling", "false"));
+    
+    protected FairJobScheduler fairJobScheduler = new FairJobScheduler();
+    
+    protected Set<Long> claimedRequestIds = ConcurrentHashMap.newKeySet();
+    
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+    
+    public void setExecutionPool(JobExecutionPool executionPool) {
+        this.executionPool = executionPool;
+    }
+    
+    public void setFairScheduling(boolean fairScheduling) {
+        this.fairScheduling = fairScheduling;
+    }
+    
+    public void setFairJobScheduler(FairJobScheduler fairJobScheduler) {
+        this.fairJobScheduler = fairJobScheduler;
+    }
+    
+    /**
+     * Returns true if this executor claims requests in batches with claims that expire unless renewed.
+     */
+    public boolean isClaimLeased() {
+        return (batchSize > 1 || fairScheduling) && queryService instanceof BatchClaimAware
+                && ((BatchClaimAware) queryService).getClaimLease() > 0;
+    }
+    
+    /**
+     * Returns lease of batch claimed requests in milliseconds, see <code>BatchClaimAware.getClaimLease()</code>.
+     */
+    public long getClaimLease() {
+        if (queryService instanceof BatchClaimAware) {
+            return ((BatchClaimAware) queryService).getClaimLease();
+        }
+        return -1;
+    }
+    
+    /**
+     * Renews lease of requests that were claimed in batches by this executor and are not completed yet.
+     */
+    public void renewClaims() {
+        if (claimedRequestIds.isEmpty() || !(queryService instanceof BatchClaimAware)) {
+            return;
+        }
+        try {
+            ((BatchClaimAware) queryService).renewClaims(new ArrayList<Long>(claimedRequestIds));
+        } catch (Exception e) {
+            logger.warn("Unexpected error while renewing claim of executor's jobs {}", e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public void executeGivenJob(RequestInfo request) {
+        try {
+            super.executeGivenJob(request);
+        } finally {
+            if (request != null) {
+                claimedRequestIds.remove(request.getId());
+            }
+        }
+    }
+    
     public void executeJob() {
         logger.debug("Executor Thread {} Waking Up!!!", this.toString());
         try {
+            int claimSize = batchSize;
+            if (executionPool != null) {
+                claimSize = Math.min(batchSize, executionPool.availableCapacity());
+                if (claimSize <= 0) {
+                    logger.debug("Job execution pool is saturated, no new requests claimed");
+                    return;
+                }
+            }
+            if (fairScheduling && queryService instanceof BatchClaimAware) {
+                executeFairlyScheduledJobs(claimSize);
+                return;
+            }
+            // requests that were claimed but not accepted by the execution pool go first
+            if (!submitClaimedJobs()) {
+                return;
+            }
+            if (claimSize > 1 && queryService instanceof BatchClaimAware) {
+                executeClaimedJobs(claimSize);
+                return;
+            }
             RequestInfo request = (RequestInfo) queryService.getRequestForProcessing();
             if (request != null) {
-            	executeGivenJob(request);
+            	submitGivenJob(request);
             }
         } catch (Exception e) {
             logger.warn("Unexpected error while processin executor's job {}", e.getMessage(), e);
         }
     }
+    
+    protected void executeClaimedJobs(int claimSize) {
+        if (claimedRequests.isEmpty()) {
+            List<?> claimed = ((BatchClaimAware) queryService).getRequestsForProcessing(claimSize);
+            logger.debug("Claimed {} requests for processing", claimed.size());
+            for (Object request : claimed) {
+                claimedRequestIds.add(((RequestInfo) request).getId());
+                claimedRequests.offer((RequestInfo) request);
+            }
+        }
+        submitClaimedJobs();
+    }
+    
+    /*
+     * submits locally queued requests, returns false if the pool did not accept all of them
+     */
+    protected boolean submitClaimedJobs() {
+        RequestInfo request = claimedRequests.poll();
+        while (request != null) {
+            if (!submitGivenJob(request)) {
+                return false;
+            }
+            request = claimedRequests.poll();
+        }
+        return true;
+    }
+    
+    protected void executeFairlyScheduledJobs(int claimSize) {
+        List<String> deploymentIds = new ArrayList<String>(RuntimeManagerRegistry.get().getRegisteredIdentifiers());
+        if (deploymentIds.isEmpty()) {
+            deploymentIds.add("");
+        }
+        // claim separately for every deployment so jobs of one deployment cannot occupy whole batch
+        int perDeployment = Math.max(1, claimSize / deploymentIds.size());
+        for (String deploymentId : deploymentIds) {
+            // scheduler is shared by all pollers so slots are reserved to not claim over deployment's limit
+            int reserved = fairJobScheduler.reserve(deploymentId, perDeployment);
+            if (reserved <= 0) {
+                continue;
+            }
+            List<?> claimed = Collections.emptyList();
+            try {
+                claimed = ((BatchClaimAware) queryService).getRequestsForProcessing(reserved, Collections.singletonList(deploymentId));
+                logger.debug("Claimed {} requests of deployment {} for processing", claimed.size(), deploymentId);
+                for (Object request : claimed) {
+                    claimedRequestIds.add(((RequestInfo) request).getId());
+                    // requests without deployment are returned as well, they still consume this deployment's reservation
+                    fairJobScheduler.add((RequestInfo) request, deploymentId);
+                }
+            } finally {
+                fairJobScheduler.unreserve(deploymentId, reserved - claimed.size());
+            }
+        }
+        
+        RequestInfo request = fairJobScheduler.next();
+        while (request != null) {
+            final RequestInfo scheduled = request;
+            Runnable job = () -> {
+                try {
+                    executeGivenJob(scheduled);
+                } finally {
+                    fairJobScheduler.completed(scheduled);
+                }
+            };
+            if (executionPool == null) {
+                job.run();
+            } else if (!executionPool.submit(job)) {
+                // pool is saturated, request stays with the scheduler until there is capacity again
+                fairJobScheduler.requeue(scheduled);
+                logger.debug("Job execution pool is saturated, request {} returned to the scheduler", scheduled.getId());
+                return;
+            }
+            request = fairJobScheduler.next();
+        }
+    }
+    
+    /**
+     * Executes given request in the execution pool or, when there is no pool, in current thread.
+     * @param request claimed request to be executed
+     * @return false if the pool is saturated - the request is then kept in the local queue to be submitted later
+     */
+    protected boolean submitGivenJob(final RequestInfo request) {
+        if (executionPool == null) {
+            executeGivenJob(request);
+            return true;
+        }
+        if (executionPool.submit(() -> executeGivenJob(request))) {
+            return true;
+        }
+        logger.debug("Job execution pool is saturated, request {} kept for later execution", request.getId());
+        claimedRequests.offerFirst(request);
+        return false;
+    }
 
+    /**
+     * Executes request with given id if it is still waiting for execution. Used when
+     * job requests are pushed directly to the executor instead of being polled.
+     * @param requestId id of the request to be executed
+     */
+    public void executeJob(Long requestId) {
+        logger.debug("Executor Thread {} received request {}", this.toString(), requestId);
+        try {
+            RequestInfo request = (RequestInfo) queryService.getRequestForProcessing(requestId);
+            if (request != null) {
+                submitGivenJob(request);
+            }
+        } catch (Exception e) {
+            logger.warn("Unexpected error while processin executor's job {}", e.getMessage(), e);
+        }
+    }
 
 }
@@ -16,31 +16,56 @@
 
 package org.jbpm.executor.impl;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.kie.api.executor.Command;
 import org.kie.api.executor.CommandCallback;
 import org.kie.api.executor.CommandContext;
+import org.kie.api.runtime.manager.RuntimeManager;
 import org.kie.internal.runtime.Cacheable;
 import org.kie.internal.runtime.Closeable;
+import org.kie.internal.runtime.manager.CacheManager;
+import org.kie.internal.runtime.manager.InternalRuntimeManager;
+import org.kie.internal.runtime.manager.RuntimeManagerRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Simple cache to keep classes of commands and callback to not attempt to load them every time.
- *
+ * Classes are cached per class loader so same class names coming from different deployments (kjars) do not
+ * collide, command instances are kept per command class.
+ * <br/>
+ * Class loaders are referenced weakly and cached command instances are attached to their classes, so the cache never
+ * keeps a class loader alive. Entries of a deployment class loader are evicted (and cached commands closed) when runtime
+ * manager of that deployment is closed, entries of other class loaders once the class loader is garbage collected.
  */
 
 public class ClassCacheManager {
     
     private static final Logger logger = LoggerFactory.getLogger(ClassCacheManager.class);
     
-    private final Map<String, Command> commandCache = new HashMap<String, Command>();
-    private final Map<String, CommandCallback> callbackCache = new HashMap<String, CommandCallback>();  
+    private final ConcurrentMap<LoaderKey, ClassLoaderCache> caches = new ConcurrentHashMap<LoaderKey, ClassLoaderCache>();
+    private final ReferenceQueue<ClassLoader> collectedLoaders = new ReferenceQueue<ClassLoader>();
+    
+    private final ClassValue<Command> commands = new ClassValue<Command>() {
+
+        @Override
+        protected Command computeValue(Class<?> type) {
+            try {
+                return (Command) type.newInstance();
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Unable to create command of type " + type.getName(), e);
+            }
+        }
+    };
 
     /**
      * Finds command by FQCN and if not found loads the class and store the instance in
@@ -49,68 +74,116 @@ public class ClassCacheManager {
      * @return initialized class instance
      */
     public Command findCommand(String name, ClassLoader cl) {
-        synchronized (commandCache) {
-            
-            if (!commandCache.containsKey(name)) {
-                
-                try {
-                    Command commandInstance = (Command) Class.forName(name, true, cl).newInstance();
-                    commandCache.put(name, commandInstance);
-                } catch (Exception ex) {
-                    throw new IllegalArgumentException("Unknown Command implementation with name '" + name + "'");
-                }
-    
-            } else {
-                Command cmd = commandCache.get(name);
-                if (!cmd.getClass().getClassLoader().equals(cl)) {
-                    commandCache.remove(name);
-                    try {
-                        Command commandInstance = (Command) Class.forName(name, true, cl).newInstance();
-                        commandCache.put(name, commandInstance);
-                    } catch (Exception ex) {
-                        throw new IllegalArgumentException("Unknown Command implementation with name '" + name + "'");
-                    } 
-                }
-            }
-
-       
+        ClassLoader loader = resolve(cl);
+        ClassLoaderCache cache = getCache(loader);
+        try {
+            Class<?> commandClass = loadClass(cache, name, loader);
+            Command command = commands.get(commandClass);
+            cache.commandNames.add(name);
+            return command;
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Unknown Command implementation with name '" + name + "'");
         }
-        return commandCache.get(name);
     }
 
     /**
-     * Finds command callback by FQCN and if not found loads the class and store the instance in
-     * the cache.
+     * Finds command callback by FQCN and creates new instance of it. Only loaded class is cached
+     * as callbacks might keep state.
      * @param name - fully qualified class name of the command callback
      * @return initialized class instance
      */
     public CommandCallback findCommandCallback(String name, ClassLoader cl) {
-        synchronized (callbackCache) {
-            
-            if (!callbackCache.containsKey(name)) {
-                try {
-                    CommandCallback commandCallbackInstance = (CommandCallback) Class.forName(name, true, cl).newInstance();
-                    return commandCallbackInstance;
-                    //                            callbackCache.put(name, commandCallbackInstance);
-                } catch (Exception ex) {
-                    throw new IllegalArgumentException("Unknown Command implementation with name '" + name + "'");
+        ClassLoader loader = resolve(cl);
+        ClassLoaderCache cache = getCache(loader);
+        try {
+            return (CommandCallback) loadClass(cache, name, loader).newInstance();
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Unknown Command implementation with name '" + name + "'");
+        }
+    }
+    
+    /**
+     * Removes all cached entries for given class loader, closing cached commands defined by that class loader.
+     * @param cl class loader to be evicted
+     */
+    public void evict(ClassLoader cl) {
+        ClassLoader loader = resolve(cl);
+        ClassLoaderCache cache = caches.remove(new LoaderKey(loader, null));
+        if (cache != null) {
+            logger.debug("Evicting cached commands of class loader {}", loader);
+            for (String name : cache.commandNames) {
+                Reference<Class<?>> classRef = cache.classes.get(name);
+                Class<?> commandClass = classRef == null ? null : classRef.get();
+                // commands of classes that come from parent class loaders are shared with other class loaders
+                if (commandClass != null && commandClass.getClassLoader() == loader) {
+                    closeInstance(commands.get(commandClass));
+                    commands.remove(commandClass);
                 }
-
+            }
+        }
+    }
+    
+    protected ClassLoader resolve(ClassLoader cl) {
+        return cl == null ? ClassCacheManager.class.getClassLoader() : cl;
+    }
+    
+    protected ClassLoaderCache getCache(ClassLoader loader) {
+        expungeCollected();
+        ClassLoaderCache cache = caches.get(new LoaderKey(loader, null));
+        if (cache == null) {
+            cache = new ClassLoaderCache();
+            ClassLoaderCache existing = caches.putIfAbsent(new LoaderKey(loader, collectedLoaders), cache);
+            if (existing != null) {
+                cache = existing;
             } else {
-                CommandCallback cmdCallback = callbackCache.get(name);
-                if (!cmdCallback.getClass().getClassLoader().equals(cl)) {
-                    callbackCache.remove(name);
-                    try {
-                        CommandCallback commandCallbackInstance = (CommandCallback) Class.forName(name, true, cl).newInstance();
-                        callbackCache.put(name, commandCallbackInstance);
-                    } catch (Exception ex) {
-                        throw new IllegalArgumentException("Unknown Command implementation with name '" + name + "'");
-                    }
-                }
+                registerEviction(loader);
             }
+        }
+        return cache;
+    }
+    
+    /*
+     * evicts entries of given class loader once runtime manager of its deployment is closed
+     */
+    protected void registerEviction(final ClassLoader loader) {
+        CacheManager deploymentCache = findDeploymentCacheManager(loader);
+        if (deploymentCache != null) {
+            deploymentCache.add(ClassCacheManager.class.getName() + "@" + System.identityHashCode(this), new Cacheable() {
 
+                @Override
+                public void close() {
+                    evict(loader);
+                }
+            });
         }
-        return callbackCache.get(name);
+    }
+    
+    protected CacheManager findDeploymentCacheManager(ClassLoader loader) {
+        for (String deploymentId : RuntimeManagerRegistry.get().getRegisteredIdentifiers()) {
+            RuntimeManager manager = RuntimeManagerRegistry.get().getManager(deploymentId);
+            if (manager instanceof InternalRuntimeManager
+                    && loader == ((InternalRuntimeManager) manager).getEnvironment().getClassLoader()) {
+                return ((InternalRuntimeManager) manager).getCacheManager();
+            }
+        }
+        return null;
+    }
+    
+    protected void expungeCollected() {
+        Reference<? extends ClassLoader> collected;
+        while ((collected = collectedLoaders.poll()) != null) {
+            caches.remove(collected);
+        }
+    }
+    
+    protected Class<?> loadClass(ClassLoaderCache cache, String name, ClassLoader loader) throws ClassNotFoundException {
+        Reference<Class<?>> classRef = cache.classes.get(name);
+        Class<?> clazz = classRef == null ? null : classRef.get();
+        if (clazz == null) {
+            clazz = Class.forName(name, true, loader);
+            cache.classes.put(name, new WeakReference<Class<?>>(clazz));
+        }
+        return clazz;
     }
 
     /**
@@ -145,17 +218,50 @@ public class ClassCacheManager {
     }
         
     public void dispose() {
-    	if (commandCache != null) {
-    		for (Object command : commandCache.values()) {
-    			closeInstance(command);
-    		}
-    	}
-    	
-    	if (callbackCache != null) {
-    		for (Object callback : callbackCache.values()) {
-    			closeInstance(callback);
-    		}
-    	}
+        for (LoaderKey key : new ArrayList<LoaderKey>(caches.keySet())) {
+            ClassLoader loader = key.get();
+            if (loader != null) {
+                evict(loader);
+            }
+        }
+        caches.clear();
+    }
+    
+    protected static class ClassLoaderCache {
+        
+        // classes are referenced weakly as they keep their class loader alive, class loader itself keeps them loaded
+        private final ConcurrentMap<String, Reference<Class<?>>> classes = new ConcurrentHashMap<String, Reference<Class<?>>>();
+        private final Set<String> commandNames = ConcurrentHashMap.newKeySet();
+    }
+    
+    /*
+     * weak, identity based key of a class loader
+     */
+    private static final class LoaderKey extends WeakReference<ClassLoader> {
+        
+        private final int hash;
+        
+        LoaderKey(ClassLoader loader, ReferenceQueue<ClassLoader> queue) {
+            super(loader, queue);
+            this.hash = System.identityHashCode(loader);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof LoaderKey)) {
+                return false;
+            }
+            ClassLoader loader = get();
+            return loader != null && loader == ((LoaderKey) obj).get();
+        }
     }
 
 }
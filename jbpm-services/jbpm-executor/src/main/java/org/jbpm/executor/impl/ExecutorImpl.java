@@ -77,6 +77,24 @@ import org.slf4j.LoggerFactory;
  *  <li>org.kie.executor.jms.cf - JNDI name of connection factory to be used for sending messages</li>
  *  <li>org.kie.executor.jms.queue - JNDI name for destination (usually a queue) to be used to send messages to</li>
  * </ul>
+ * Executor can also dispatch jobs scheduled on this node directly (in JVM) to its threads as soon as they are
+ * scheduled (or when transaction that scheduled them is committed). In such case polling is used only to
+ * recover jobs that were not dispatched and to pick up jobs that are scheduled in the future, so it can be
+ * done at much lower rate.
+ * Configuration parameters for push dispatch:
+ * <ul>
+ *  <li>org.kie.executor.dispatch.push - allows to enable push dispatch - default set to false</li>
+ *  <li>org.kie.executor.dispatch.recovery.interval - interval of polling when push dispatch is enabled - default 10 times execution interval</li>
+ * </ul>
+ * By default jobs are executed by the same threads that poll for them. Separate, bounded execution pool can be
+ * configured so long running jobs do not block polling, in such case pollers claim only as many jobs as
+ * the execution pool can accept.
+ * Configuration parameters for execution pool:
+ * <ul>
+ *  <li>org.kie.executor.execution.pool.size - number of threads (or concurrent jobs for virtual threads) - default 0 (disabled)</li>
+ *  <li>org.kie.executor.execution.queue.size - number of jobs that can wait for a free thread - default 100</li>
+ *  <li>org.kie.executor.execution.virtual - use virtual threads if supported by the JVM - default set to false</li>
+ * </ul>
  */
 public class ExecutorImpl implements Executor {
 
@@ -99,6 +117,20 @@ public class ExecutorImpl implements Executor {
     private boolean transacted = Boolean.parseBoolean(System.getProperty("org.kie.executor.jms.transacted", "false"));
     private ConnectionFactory connectionFactory;
     private Queue queue;
+    
+    // push dispatch related instances
+    private boolean usePushDispatch = Boolean.parseBoolean(System.getProperty("org.kie.executor.dispatch.push", "false"));
+    private int recoveryInterval = Integer.parseInt(System.getProperty("org.kie.executor.dispatch.recovery.interval", "-1"));
+    private JobDispatcher jobDispatcher;
+    
+    // execution pool related instances
+    private int executionPoolSize = Integer.parseInt(System.getProperty("org.kie.executor.execution.pool.size", "0"));
+    private int executionQueueSize = Integer.parseInt(System.getProperty("org.kie.executor.execution.queue.size", "100"));
+    private boolean useVirtualThreads = Boolean.parseBoolean(System.getProperty("org.kie.executor.execution.virtual", "false"));
+    private JobExecutionPool executionPool;
+    
+    // renews lease of requests claimed in batches, runs on its own thread so busy pollers cannot delay it
+    private ScheduledExecutorService claimRenewal;
 
 	private ScheduledExecutorService scheduler;
 	
@@ -159,6 +191,56 @@ public class ExecutorImpl implements Executor {
         this.queue = queue;
     }
 
+    
+    public boolean isUsePushDispatch() {
+        return usePushDispatch;
+    }
+
+    
+    public void setUsePushDispatch(boolean usePushDispatch) {
+        this.usePushDispatch = usePushDispatch;
+    }
+
+    
+    public int getRecoveryInterval() {
+        return recoveryInterval;
+    }
+
+    
+    public void setRecoveryInterval(int recoveryInterval) {
+        this.recoveryInterval = recoveryInterval;
+    }
+
+    
+    public int getExecutionPoolSize() {
+        return executionPoolSize;
+    }
+
+    
+    public void setExecutionPoolSize(int executionPoolSize) {
+        this.executionPoolSize = executionPoolSize;
+    }
+
+    
+    public int getExecutionQueueSize() {
+        return executionQueueSize;
+    }
+
+    
+    public void setExecutionQueueSize(int executionQueueSize) {
+        this.executionQueueSize = executionQueueSize;
+    }
+
+    
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -226,16 +308,23 @@ public class ExecutorImpl implements Executor {
             
             int delayIncremental = 0;
             
+            List<AvailableJobsExecutor> jobExecutors = new ArrayList<AvailableJobsExecutor>();
             scheduler = Executors.newScheduledThreadPool(threadPoolSize);
             for (int i = 0; i < threadPoolSize; i++) {
                 long delay = 2000 + delayIncremental;
-                long interval = TimeUnit.MILLISECONDS.convert(this.interval, timeunit);
+                long interval = getPollInterval();
                 logger.debug("Starting executor thread with initial delay {} interval {} and time unit {}", delay, interval, TimeUnit.MILLISECONDS);
-                handle.add(scheduler.scheduleAtFixedRate(executorStoreService.buildExecutorRunnable(), delay, interval, TimeUnit.MILLISECONDS));
+                Runnable executorRunnable = executorStoreService.buildExecutorRunnable();
+                handle.add(scheduler.scheduleAtFixedRate(executorRunnable, delay, interval, TimeUnit.MILLISECONDS));
+                collectJobExecutor(executorRunnable, jobExecutors);
                                
                 delayIncremental += this.initialDelay;
                 
             }
+            startExecutionPool(jobExecutors, null);
+            shareFairJobScheduler(jobExecutors);
+            startJobDispatcher(jobExecutors, null);
+            startClaimRenewal(jobExecutors, null);
             
             if (useJMS) {
                 try {
@@ -267,26 +356,111 @@ public class ExecutorImpl implements Executor {
             
             int delayIncremental = 0;
             
+            List<AvailableJobsExecutor> jobExecutors = new ArrayList<AvailableJobsExecutor>();
             scheduler = Executors.newScheduledThreadPool(threadPoolSize, threadFactory);
             for (int i = 0; i < threadPoolSize; i++) {
                 
                 long delay = 2000 + delayIncremental;
-                long interval = TimeUnit.MILLISECONDS.convert(this.interval, timeunit);
+                long interval = getPollInterval();
                 logger.debug("Starting executor thread with initial delay {} interval {} and time unit {}", delay, interval, TimeUnit.MILLISECONDS);
-                handle.add(scheduler.scheduleAtFixedRate(executorStoreService.buildExecutorRunnable(), delay, interval, TimeUnit.MILLISECONDS));
+                Runnable executorRunnable = executorStoreService.buildExecutorRunnable();
+                handle.add(scheduler.scheduleAtFixedRate(executorRunnable, delay, interval, TimeUnit.MILLISECONDS));
+                collectJobExecutor(executorRunnable, jobExecutors);
                 
                 delayIncremental += this.initialDelay;
             }
+            startExecutionPool(jobExecutors, threadFactory);
+            shareFairJobScheduler(jobExecutors);
+            startJobDispatcher(jobExecutors, threadFactory);
+            startClaimRenewal(jobExecutors, threadFactory);
         } else {
         	throw new ExecutorNotStartedException();
         }
     }
     
+    protected long getPollInterval() {
+        if (usePushDispatch) {
+            int pollInterval = recoveryInterval > 0 ? recoveryInterval : this.interval * 10;
+            return TimeUnit.MILLISECONDS.convert(pollInterval, timeunit);
+        }
+        return TimeUnit.MILLISECONDS.convert(this.interval, timeunit);
+    }
+    
+    protected void collectJobExecutor(Runnable executorRunnable, List<AvailableJobsExecutor> jobExecutors) {
+        if (executorRunnable instanceof ExecutorRunnable) {
+            AvailableJobsExecutor jobExecutor = ((ExecutorRunnable) executorRunnable).getAvailableJobsExecutor();
+            if (jobExecutor != null) {
+                jobExecutors.add(jobExecutor);
+            }
+        }
+    }
+    
+    protected void startExecutionPool(List<AvailableJobsExecutor> jobExecutors, ThreadFactory threadFactory) {
+        if (executionPoolSize <= 0) {
+            return;
+        }
+        if (jobExecutors.isEmpty()) {
+            logger.warn("Execution pool not started because executor store service {} does not provide job executors", executorStoreService);
+            return;
+        }
+        executionPool = new JobExecutionPool(executionPoolSize, executionQueueSize, useVirtualThreads, threadFactory);
+        for (AvailableJobsExecutor jobExecutor : jobExecutors) {
+            jobExecutor.setExecutionPool(executionPool);
+        }
+    }
+    
+    protected void shareFairJobScheduler(List<AvailableJobsExecutor> jobExecutors) {
+        // one scheduler per executor so round robin and concurrency limits apply across all pollers
+        FairJobScheduler fairJobScheduler = new FairJobScheduler();
+        for (AvailableJobsExecutor jobExecutor : jobExecutors) {
+            jobExecutor.setFairJobScheduler(fairJobScheduler);
+        }
+    }
+    
+    protected void startJobDispatcher(List<AvailableJobsExecutor> jobExecutors, ThreadFactory threadFactory) {
+        if (!usePushDispatch) {
+            return;
+        }
+        if (jobExecutors.isEmpty()) {
+            logger.warn("Disabling push dispatch in executor because executor store service {} does not provide job executors", executorStoreService);
+            usePushDispatch = false;
+            return;
+        }
+        jobDispatcher = new JobDispatcher(jobExecutors);
+        jobDispatcher.start(threadFactory);
+    }
+    
+    protected void startClaimRenewal(final List<AvailableJobsExecutor> jobExecutors, ThreadFactory threadFactory) {
+        long claimLease = -1;
+        for (AvailableJobsExecutor jobExecutor : jobExecutors) {
+            if (jobExecutor.isClaimLeased()) {
+                claimLease = jobExecutor.getClaimLease();
+                break;
+            }
+        }
+        if (claimLease <= 0) {
+            return;
+        }
+        // renew well before the lease expires so single delayed renewal does not give claimed requests away
+        long renewalInterval = Math.max(1, claimLease / 3);
+        logger.debug("Starting renewal of claimed requests every {} ms", renewalInterval);
+        claimRenewal = threadFactory == null ? Executors.newSingleThreadScheduledExecutor() : Executors.newSingleThreadScheduledExecutor(threadFactory);
+        claimRenewal.scheduleWithFixedDelay(() -> {
+            for (AvailableJobsExecutor jobExecutor : jobExecutors) {
+                jobExecutor.renewClaims();
+            }
+        }, renewalInterval, renewalInterval, TimeUnit.MILLISECONDS);
+    }
+    
     /**
      * {@inheritDoc}
      */
     public void destroy() {
         logger.info(" >>>>> Destroying Executor !!!");
+        if (jobDispatcher != null) {
+            jobDispatcher.stop();
+            jobDispatcher = null;
+        }
         if (handle != null) {
         	for (ScheduledFuture<?> h : handle) {
         		h.cancel(false);
@@ -307,6 +481,15 @@ public class ExecutorImpl implements Executor {
                 
             }            
         }
+        if (executionPool != null) {
+            executionPool.shutdown();
+            executionPool = null;
+        }
+        if (claimRenewal != null) {
+            // requests that were not executed keep their claim until it expires and they are requeued
+            claimRenewal.shutdownNow();
+            claimRenewal = null;
+        }
     }
 
     /**
@@ -396,6 +579,13 @@ public class ExecutorImpl implements Executor {
                 }
             }
             
+            if (usePushDispatch && jobDispatcher != null) {
+                // dispatch directly only immediate job requests, future ones are picked up by polling
+                if (System.currentTimeMillis() >= date.getTime()) {
+                    jobDispatcher.dispatch(requestInfo.getId());
+                }
+            }
+            
             logger.debug("Scheduled request for Command: {} - requestId: {} with {} retries", commandId, requestInfo.getId(), requestInfo.getRetries());
             eventSupport.fireAfterJobScheduled(requestInfo, null);
         } catch (Throwable e) {
@@ -35,6 +35,10 @@ public class ExecutorRunnable implements Runnable {
 		this.availableJobsExecutor = availableJobsExecutor;
 	}
 
+    public AvailableJobsExecutor getAvailableJobsExecutor() {
+        return availableJobsExecutor;
+    }
+
     public void run() {
     	try {
     		logger.debug("About to execute jobs...");
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.executor.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jbpm.executor.entities.RequestInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps claimed requests in separate queues per deployment and within deployment per command
+ * and hands them out in round robin fashion so single deployment (or command) that schedules large
+ * number of jobs does not starve others.
+ * <br/>
+ * Number of concurrently executed requests per deployment can be limited - globally for all deployments
+ * with org.kie.executor.fair.max.concurrent system property or for selected deployment with
+ * org.kie.executor.fair.max.concurrent.DEPLOYMENT_ID system property. Zero (default) means no limit.
+ * Requests that do not belong to any deployment are never limited.
+ * <br/>
+ * Limit is applied already when requests are claimed - pollers reserve slots ({@link #reserve(String, int)})
+ * before claiming so claimed requests do not wait in the scheduler, marked as being processed, for the
+ * deployment's running requests to complete. Single instance is shared by all pollers of an executor.
+ */
+public class FairJobScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FairJobScheduler.class);
+
+    private static final String NO_DEPLOYMENT = "";
+
+    private int defaultMaxConcurrent = Integer.parseInt(System.getProperty("org.kie.executor.fair.max.concurrent", "0"));
+    private Map<String, Integer> maxConcurrent = new ConcurrentHashMap<String, Integer>();
+
+    // deployment id -> command name -> requests, both in order of first appearance to rotate over them
+    private final LinkedHashMap<String, LinkedHashMap<String, Deque<RequestInfo>>> pending = new LinkedHashMap<String, LinkedHashMap<String, Deque<RequestInfo>>>();
+    private final Map<String, Integer> running = new HashMap<String, Integer>();
+    private final Map<String, Integer> reserved = new HashMap<String, Integer>();
+    private int size = 0;
+
+    public void setDefaultMaxConcurrent(int defaultMaxConcurrent) {
+        this.defaultMaxConcurrent = defaultMaxConcurrent;
+    }
+
+    public void setMaxConcurrent(String deploymentId, int limit) {
+        this.maxConcurrent.put(deploymentId, limit);
+    }
+
+    public synchronized void add(RequestInfo request) {
+        add(request, request.getDeploymentId());
+    }
+
+    /**
+     * Adds request that was claimed with slot reserved for given deployment. Claims for a deployment also return
+     * requests that do not belong to any deployment - these are scheduled (and limited) as requests without
+     * deployment but the slot they used is taken from the deployment that reserved it.
+     * @param request claimed request
+     * @param reservedFor deployment the slot was reserved for
+     */
+    public synchronized void add(RequestInfo request, String reservedFor) {
+        queue(key(request.getDeploymentId()), request).add(request);
+        size++;
+        decrement(reserved, key(reservedFor), 1);
+    }
+
+    /**
+     * Reserves slots for up to given number of requests of given deployment that are about to be claimed.
+     * Requests of the deployment that are already waiting, running or reserved are taken into account so
+     * the deployment's concurrency limit is never exceeded by claimed requests. Every added request of the
+     * deployment consumes one slot, slots that were not used must be given back with {@link #unreserve(String, int)}.
+     * @param deploymentId deployment requests are going to be claimed for
+     * @param requested maximum number of requests to claim
+     * @return number of requests that can be claimed, might be zero
+     */
+    public synchronized int reserve(String deploymentId, int requested) {
+        String key = key(deploymentId);
+        int pendingCount = size(key) + count(reserved, key);
+        int available = requested - pendingCount;
+        int limit = NO_DEPLOYMENT.equals(key) ? 0 : getMaxConcurrent(key);
+        if (limit > 0) {
+            available = Math.min(available, limit - count(running, key) - pendingCount);
+        }
+        if (available <= 0) {
+            return 0;
+        }
+        reserved.put(key, count(reserved, key) + available);
+        return available;
+    }
+
+    public synchronized void unreserve(String deploymentId, int count) {
+        decrement(reserved, key(deploymentId), count);
+    }
+
+    /**
+     * Returns next request to be executed, taking it from the next deployment (and command within the deployment)
+     * in turn that did not reach its concurrency limit. Returned request is considered running until
+     * {@link #completed(RequestInfo)} is invoked for it.
+     * @return next request or null if there is none that can be executed at the moment
+     */
+    public synchronized RequestInfo next() {
+        Iterator<Map.Entry<String, LinkedHashMap<String, Deque<RequestInfo>>>> deployments = pending.entrySet().iterator();
+        while (deployments.hasNext()) {
+            Map.Entry<String, LinkedHashMap<String, Deque<RequestInfo>>> deployment = deployments.next();
+            if (!canRun(deployment.getKey())) {
+                continue;
+            }
+            LinkedHashMap<String, Deque<RequestInfo>> commands = deployment.getValue();
+            Map.Entry<String, Deque<RequestInfo>> command = commands.entrySet().iterator().next();
+            RequestInfo request = command.getValue().poll();
+
+            // rotate - move served command and deployment to the end of their queues
+            commands.remove(command.getKey());
+            if (!command.getValue().isEmpty()) {
+                commands.put(command.getKey(), command.getValue());
+            }
+            deployments.remove();
+            if (!commands.isEmpty()) {
+                pending.put(deployment.getKey(), commands);
+            }
+
+            size--;
+            Integer count = running.get(deployment.getKey());
+            running.put(deployment.getKey(), count == null ? 1 : count + 1);
+            logger.debug("Request {} of deployment '{}' selected for execution", request.getId(), deployment.getKey());
+            return request;
+        }
+        return null;
+    }
+
+    /**
+     * Returns request obtained from {@link #next()} that could not be executed back to the scheduler, it will be handed
+     * out again before other requests of the same command.
+     */
+    public synchronized void requeue(RequestInfo request) {
+        String deploymentId = key(request.getDeploymentId());
+        queue(deploymentId, request).addFirst(request);
+        size++;
+        decrement(running, deploymentId, 1);
+    }
+
+    public synchronized void completed(RequestInfo request) {
+        decrement(running, key(request.getDeploymentId()), 1);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int size(String deploymentId) {
+        LinkedHashMap<String, Deque<RequestInfo>> commands = pending.get(key(deploymentId));
+        if (commands == null) {
+            return 0;
+        }
+        int count = 0;
+        for (Deque<RequestInfo> requests : commands.values()) {
+            count += requests.size();
+        }
+        return count;
+    }
+
+    protected boolean canRun(String deploymentId) {
+        if (NO_DEPLOYMENT.equals(deploymentId)) {
+            return true;
+        }
+        int limit = getMaxConcurrent(deploymentId);
+        if (limit <= 0) {
+            return true;
+        }
+        Integer count = running.get(deploymentId);
+        return count == null || count < limit;
+    }
+
+    protected int getMaxConcurrent(String deploymentId) {
+        Integer limit = maxConcurrent.get(deploymentId);
+        if (limit == null) {
+            limit = Integer.parseInt(System.getProperty("org.kie.executor.fair.max.concurrent." + deploymentId, String.valueOf(defaultMaxConcurrent)));
+            maxConcurrent.put(deploymentId, limit);
+        }
+        return limit;
+    }
+
+    private Deque<RequestInfo> queue(String deploymentId, RequestInfo request) {
+        LinkedHashMap<String, Deque<RequestInfo>> commands = pending.get(deploymentId);
+        if (commands == null) {
+            commands = new LinkedHashMap<String, Deque<RequestInfo>>();
+            pending.put(deploymentId, commands);
+        }
+        String commandName = key(request.getCommandName());
+        Deque<RequestInfo> requests = commands.get(commandName);
+        if (requests == null) {
+            requests = new ArrayDeque<RequestInfo>();
+            commands.put(commandName, requests);
+        }
+        return requests;
+    }
+
+    private int count(Map<String, Integer> counts, String deploymentId) {
+        Integer count = counts.get(deploymentId);
+        return count == null ? 0 : count;
+    }
+
+    private void decrement(Map<String, Integer> counts, String deploymentId, int by) {
+        int count = count(counts, deploymentId) - by;
+        if (count <= 0) {
+            counts.remove(deploymentId);
+        } else {
+            counts.put(deploymentId, count);
+        }
+    }
+
+    private String key(String value) {
+        return value == null ? NO_DEPLOYMENT : value;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.executor.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.persistence.api.OrderedTransactionSynchronization;
+import org.drools.persistence.api.TransactionManager;
+import org.drools.persistence.api.TransactionManagerFactory;
+import org.drools.persistence.api.TransactionManagerHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In JVM dispatcher of job requests that were scheduled on this node. Instead of waiting for
+ * the next poll of the data base, ids of newly scheduled requests are handed over directly to
+ * dispatcher threads that fetch (and lock) given request by id and execute it.
+ * <br/>
+ * When the request is scheduled within an active transaction the dispatch is delayed until the
+ * transaction is successfully committed, to make sure the request is visible to the dispatcher
+ * threads. In all other cases request is dispatched right away.
+ * <br/>
+ * Requests that are lost by dispatcher (e.g. node restart) or that are scheduled in the future
+ * are still picked up by regular (though less frequent) polling.
+ */
+public class JobDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobDispatcher.class);
+
+    private final BlockingQueue<Long> pendingRequests = new LinkedBlockingQueue<Long>();
+    private final List<AvailableJobsExecutor> jobExecutors;
+
+    private ExecutorService dispatchers;
+    private volatile boolean active = false;
+
+    public JobDispatcher(List<AvailableJobsExecutor> jobExecutors) {
+        this.jobExecutors = new ArrayList<AvailableJobsExecutor>(jobExecutors);
+    }
+
+    public void start(ThreadFactory threadFactory) {
+        if (jobExecutors.isEmpty()) {
+            logger.warn("No job executors available, job dispatcher will not be started");
+            return;
+        }
+        active = true;
+        if (threadFactory != null) {
+            dispatchers = Executors.newFixedThreadPool(jobExecutors.size(), threadFactory);
+        } else {
+            dispatchers = Executors.newFixedThreadPool(jobExecutors.size());
+        }
+        for (AvailableJobsExecutor jobExecutor : jobExecutors) {
+            dispatchers.execute(new DispatcherRunnable(jobExecutor));
+        }
+        logger.info("Job dispatcher started with {} dispatcher threads", jobExecutors.size());
+    }
+
+    public void stop() {
+        active = false;
+        if (dispatchers != null) {
+            dispatchers.shutdown();
+            try {
+                if (!dispatchers.awaitTermination(60, TimeUnit.SECONDS)) {
+                    logger.warn("Timeout occured while waiting on job dispatcher to be terminated");
+                    dispatchers.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pendingRequests.clear();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Dispatches given request directly to dispatcher threads or, when there is active transaction,
+     * registers transaction synchronization to dispatch it after successful commit.
+     * @param requestId id of the request to be dispatched
+     */
+    public void dispatch(Long requestId) {
+        if (!active || requestId == null) {
+            return;
+        }
+        try {
+            TransactionManager tm = TransactionManagerFactory.get().newTransactionManager();
+            if (tm.getStatus() != TransactionManager.STATUS_NO_TRANSACTION
+                    && tm.getStatus() != TransactionManager.STATUS_ROLLEDBACK
+                    && tm.getStatus() != TransactionManager.STATUS_COMMITTED) {
+                TransactionManagerHelper.registerTransactionSyncInContainer(tm, new DispatchTransactionSynchronization(requestId));
+                logger.debug("Dispatch of request {} delayed until transaction is committed", requestId);
+                return;
+            }
+        } catch (Throwable e) {
+            logger.debug("Unable to determine transaction status ({}), dispatching request {} directly", e.getMessage(), requestId);
+        }
+        enqueue(requestId);
+    }
+
+    protected void enqueue(Long requestId) {
+        logger.debug("Dispatching request {} for execution", requestId);
+        pendingRequests.offer(requestId);
+    }
+
+    private class DispatcherRunnable implements Runnable {
+
+        private AvailableJobsExecutor jobExecutor;
+
+        DispatcherRunnable(AvailableJobsExecutor jobExecutor) {
+            this.jobExecutor = jobExecutor;
+        }
+
+        @Override
+        public void run() {
+            while (active) {
+                Long requestId = null;
+                try {
+                    requestId = pendingRequests.poll(1, TimeUnit.SECONDS);
+                    if (requestId != null) {
+                        jobExecutor.executeJob(requestId);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Throwable e) {
+                    logger.warn("Error while dispatching request {} due to {}", requestId, e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private class DispatchTransactionSynchronization extends OrderedTransactionSynchronization {
+
+        private Long requestId;
+
+        DispatchTransactionSynchronization(Long requestId) {
+            super(10, "JobDispatcher-" + requestId);
+            this.requestId = requestId;
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == TransactionManager.STATUS_COMMITTED) {
+                enqueue(requestId);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.executor.impl;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of threads that execute jobs claimed by executor's pollers so long running commands
+ * do not block polling. Number of jobs that can be accepted (running and waiting) is limited and pollers
+ * are expected to check available capacity before claiming more jobs - that provides backpressure
+ * when the pool is saturated.
+ * <br/>
+ * When virtual threads are requested and are supported by the JVM, every job is executed in its own virtual
+ * thread and the pool size limits number of concurrently executed jobs. Otherwise (or when virtual threads
+ * are not available) fixed size pool of platform threads is used.
+ */
+public class JobExecutionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobExecutionPool.class);
+
+    private final Semaphore permits;
+    private final ExecutorService workers;
+    private final boolean virtual;
+
+    public JobExecutionPool(int poolSize, int queueSize, boolean useVirtualThreads, ThreadFactory threadFactory) {
+        ExecutorService virtualWorkers = null;
+        if (useVirtualThreads) {
+            virtualWorkers = buildVirtualThreadExecutor();
+        }
+        if (virtualWorkers != null) {
+            this.workers = virtualWorkers;
+            this.virtual = true;
+            this.permits = new Semaphore(poolSize);
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            if (threadFactory != null) {
+                pool.setThreadFactory(threadFactory);
+            }
+            this.workers = pool;
+            this.virtual = false;
+            this.permits = new Semaphore(poolSize + queueSize);
+        }
+        logger.info("Job execution pool started with size {} (virtual threads {}) and capacity {}", poolSize, virtual, permits.availablePermits());
+    }
+
+    /**
+     * Returns number of jobs that can be accepted by this pool without blocking.
+     */
+    public int availableCapacity() {
+        return permits.availablePermits();
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Submits given job for execution if there is capacity for it.
+     * @param job job to be executed
+     * @return true if job was accepted, false if pool is saturated and job was not accepted
+     */
+    public boolean submit(final Runnable job) {
+        if (!permits.tryAcquire()) {
+            return false;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    job.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            return false;
+        }
+        return true;
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+                logger.warn("Timeout occured while waiting on all jobs in execution pool to be terminated");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected ExecutorService buildVirtualThreadExecutor() {
+        // virtual threads are accessed reflectively to keep compatibility with JVMs that do not provide them
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factoryMethod = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            ThreadFactory virtualFactory = (ThreadFactory) factoryMethod.invoke(builder);
+
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, virtualFactory);
+        } catch (Exception e) {
+            logger.warn("Virtual threads are not supported by the JVM ({}), using platform threads instead", e.toString());
+            return null;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.util.Map;
 import javax.persistence.NoResultException;
 
 import org.drools.core.command.impl.ExecutableCommand;
+import org.jbpm.executor.BatchClaimAware;
 import org.jbpm.shared.services.impl.JpaPersistenceContext;
 import org.jbpm.shared.services.impl.QueryManager;
 import org.kie.api.executor.ErrorInfo;
@@ -37,6 +38,8 @@ import org.kie.api.runtime.Context;
 import org.kie.api.runtime.query.QueryContext;
 import org.kie.internal.executor.api.ExecutorQueryService;
 import org.kie.internal.runtime.manager.RuntimeManagerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 
@@ -45,11 +48,20 @@ import org.kie.internal.runtime.manager.RuntimeManagerRegistry;
  * IMPORTANT: please keep all classes from package org.jbpm.shared.services.impl as FQCN
  * inside method body to avoid exception logged by CDI when used with in memory mode
  */
-public class ExecutorQueryServiceImpl implements ExecutorQueryService {
+public class ExecutorQueryServiceImpl implements ExecutorQueryService, BatchClaimAware {
 
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorQueryServiceImpl.class);
+    
+    /**
+     * Message of requests that were claimed in a batch and are covered by claim lease.
+     */
+    public static final String CLAIMED_MESSAGE = "Claimed for execution";
+    
     private CommandExecutor commandService;
     
     private List<STATUS> waitingForExecutionOnly = Arrays.asList(STATUS.QUEUED, STATUS.RETRYING);
+    
+    private long claimLease = Long.parseLong(System.getProperty("org.kie.executor.claim.lease", "120000"));
    
     public ExecutorQueryServiceImpl(boolean active) {
         QueryManager.get().addNamedQueries("META-INF/Executor-orm.xml");
@@ -58,6 +70,10 @@ public class ExecutorQueryServiceImpl implements ExecutorQueryService {
     public void setCommandService(CommandExecutor commandService) {
         this.commandService = commandService;
     }
+    
+    public void setClaimLease(long claimLease) {
+        this.claimLease = claimLease;
+    }
 
     /**
      * {@inheritDoc}
@@ -226,6 +242,50 @@ public class ExecutorQueryServiceImpl implements ExecutorQueryService {
         return request;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<RequestInfo> getRequestsForProcessing(int batchSize) {
+        
+        // lock all claimed requests at once, skipping these that are being claimed by other executors
+        LockAndUpdateRequestInfosCommand command = new LockAndUpdateRequestInfosCommand(batchSize, getDeploymentIds());
+        List<RequestInfo> requests = commandService.execute(command);
+        
+        return command.restoreMessages(requests);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<RequestInfo> getRequestsForProcessing(int batchSize, List<String> deploymentIds) {
+        
+        LockAndUpdateRequestInfosCommand command = new LockAndUpdateRequestInfosCommand(batchSize, deploymentIds);
+        List<RequestInfo> requests = commandService.execute(command);
+        
+        return command.restoreMessages(requests);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void renewClaims(List<Long> requestIds) {
+        if (claimLease <= 0 || requestIds.isEmpty()) {
+            return;
+        }
+        commandService.execute(new RenewClaimsCommand(requestIds));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getClaimLease() {
+        return claimLease > 0 ? claimLease : -1;
+    }
+
     private class LockAndUpdateRequestInfoCommand implements ExecutableCommand<RequestInfo> {
 
 		private static final long serialVersionUID = 8670412133363766161L;
@@ -293,6 +353,109 @@ public class ExecutorQueryServiceImpl implements ExecutorQueryService {
         
     }
 
+    private class LockAndUpdateRequestInfosCommand implements ExecutableCommand<List<RequestInfo>> {
+
+        private static final long serialVersionUID = -3581227512536467429L;
+        
+        private int batchSize;
+        private List<String> deploymentIds;
+        private Map<Long, String> messages = new HashMap<Long, String>();
+        
+        LockAndUpdateRequestInfosCommand(int batchSize, List<String> deploymentIds) {
+            this.batchSize = batchSize;
+            this.deploymentIds = deploymentIds;
+        }
+
+        @Override
+        public List<RequestInfo> execute(Context context) {
+            org.jbpm.shared.services.impl.JpaPersistenceContext ctx = (org.jbpm.shared.services.impl.JpaPersistenceContext) context;
+            Date now = new Date();
+            if (claimLease > 0) {
+                requeueExpiredClaims(ctx, now);
+            }
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("now", now);
+            params.put("firstResult", 0);
+            params.put("maxResults", batchSize);
+            params.put("owner", ExecutorService.EXECUTOR_ID);
+            params.put("deploymentId", deploymentIds);
+            List<RequestInfo> requests = ctx.queryAndLockWithParametersInTransaction("PendingRequestsForProcessing",params, false, true, List.class);
+            if (requests == null) {
+                return new ArrayList<RequestInfo>();
+            }
+            for (RequestInfo request : requests) {
+                org.jbpm.executor.entities.RequestInfo requestInfo = (org.jbpm.executor.entities.RequestInfo) request;
+                requestInfo.setStatus(STATUS.RUNNING);
+                // update date on when it was started to be executed, it is also start of the claim lease
+                requestInfo.setTime(now);
+                if (claimLease > 0) {
+                    messages.put(requestInfo.getId(), requestInfo.getMessage());
+                    requestInfo.setMessage(CLAIMED_MESSAGE);
+                }
+                ctx.merge(requestInfo);
+            }
+            
+            return requests;
+        }
+        
+        /*
+         * claim marker is only kept in the data base, claimed requests get their message back
+         * once claim is stored so it is not written again when they are completed
+         */
+        List<RequestInfo> restoreMessages(List<RequestInfo> requests) {
+            for (RequestInfo request : requests) {
+                if (messages.containsKey(request.getId())) {
+                    ((org.jbpm.executor.entities.RequestInfo) request).setMessage(messages.get(request.getId()));
+                }
+            }
+            return requests;
+        }
+        
+        /*
+         * requests claimed by executors that did not renew their lease in time (e.g. crashed) are given back
+         */
+        private void requeueExpiredClaims(org.jbpm.shared.services.impl.JpaPersistenceContext ctx, Date now) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("queued", STATUS.QUEUED);
+            params.put("running", STATUS.RUNNING);
+            params.put("claimed", CLAIMED_MESSAGE);
+            params.put("expired", "Claim expired, requeued");
+            params.put("expiredAt", new Date(now.getTime() - claimLease));
+            int requeued = ctx.executeUpdateString("update RequestInfo r set r.status = :queued, r.message = :expired "
+                    + "where r.status = :running and r.message = :claimed and r.time < :expiredAt", params);
+            if (requeued > 0) {
+                logger.info("Requeued {} claimed requests with expired lease", requeued);
+            }
+        }
+        
+    }
+    
+    private class RenewClaimsCommand implements ExecutableCommand<Void> {
+
+        private static final long serialVersionUID = 2178314556294437650L;
+        
+        private List<Long> requestIds;
+        
+        RenewClaimsCommand(List<Long> requestIds) {
+            this.requestIds = requestIds;
+        }
+
+        @Override
+        public Void execute(Context context) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("now", new Date());
+            params.put("running", STATUS.RUNNING);
+            params.put("claimed", CLAIMED_MESSAGE);
+            params.put("ids", requestIds);
+            org.jbpm.shared.services.impl.JpaPersistenceContext ctx = (org.jbpm.shared.services.impl.JpaPersistenceContext) context;
+            int renewed = ctx.executeUpdateString("update RequestInfo r set r.time = :now "
+                    + "where r.id in (:ids) and r.status = :running and r.message = :claimed", params);
+            logger.debug("Renewed claim of {} out of {} requests", renewed, requestIds.size());
+            return null;
+        }
+        
+    }
+
     @Override
     public List<RequestInfo> getQueuedRequests(QueryContext queryContext) {
         Map<String, Object> params = new HashMap<String, Object>();
@@ -25,6 +25,7 @@ import java.util.Map;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.Predicate;
+import org.jbpm.executor.BatchClaimAware;
 import org.kie.api.executor.ErrorInfo;
 import org.kie.api.executor.RequestInfo;
 import org.kie.api.executor.STATUS;
@@ -33,7 +34,7 @@ import org.kie.internal.executor.api.ExecutorQueryService;
 
 
 @SuppressWarnings("unchecked")
-public class InMemoryExecutorQueryServiceImpl implements ExecutorQueryService {
+public class InMemoryExecutorQueryServiceImpl implements ExecutorQueryService, BatchClaimAware {
 
 	private InMemoryExecutorStoreService storeService;
 	
@@ -152,6 +153,35 @@ public class InMemoryExecutorQueryServiceImpl implements ExecutorQueryService {
 		
 		return storeService.getAndLockFirst();
 	}
+
+	@Override
+	public List<RequestInfo> getRequestsForProcessing(int batchSize) {
+		List<RequestInfo> claimed = new ArrayList<RequestInfo>();
+		for (int i = 0; i < batchSize; i++) {
+			RequestInfo request = storeService.getAndLockFirst();
+			if (request == null) {
+				break;
+			}
+			claimed.add(request);
+		}
+		return claimed;
+	}
+
+	@Override
+	public List<RequestInfo> getRequestsForProcessing(int batchSize, List<String> deploymentIds) {
+		// in memory store does not distinguish deployments
+		return getRequestsForProcessing(batchSize);
+	}
+
+	@Override
+	public void renewClaims(List<Long> requestIds) {
+		// claims do not expire as claimed requests do not outlive the executor that holds them
+	}
+
+	@Override
+	public long getClaimLease() {
+		return -1;
+	}
 	
 	private class GetRequestsByStatus implements Predicate {
 		
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.executor.impl;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.jbpm.executor.commands.PrintOutCommand;
+import org.jbpm.runtime.manager.impl.CacheManagerImpl;
+import org.junit.Test;
+import org.kie.api.executor.Command;
+import org.kie.api.executor.CommandCallback;
+import org.kie.internal.runtime.manager.CacheManager;
+
+public class ClassCacheManagerTest {
+
+    @Test
+    public void testCommandCachedPerClass() throws Exception {
+        ClassCacheManager cacheManager = new ClassCacheManager();
+        ClassLoader cl = getClass().getClassLoader();
+        URLClassLoader otherCl = new URLClassLoader(new URL[0], cl);
+        try {
+            Command command = cacheManager.findCommand(PrintOutCommand.class.getName(), cl);
+            assertNotNull(command);
+            assertSame(command, cacheManager.findCommand(PrintOutCommand.class.getName(), cl));
+
+            // class comes from parent class loader so it is the same command
+            assertSame(command, cacheManager.findCommand(PrintOutCommand.class.getName(), otherCl));
+
+            // evicting child class loader must not drop commands defined by its parent
+            cacheManager.evict(otherCl);
+            assertSame(command, cacheManager.findCommand(PrintOutCommand.class.getName(), otherCl));
+
+            cacheManager.evict(cl);
+            assertNotSame(command, cacheManager.findCommand(PrintOutCommand.class.getName(), cl));
+        } finally {
+            otherCl.close();
+            cacheManager.dispose();
+        }
+    }
+
+    @Test
+    public void testNullClassLoaderResolvedOnce() {
+        ClassCacheManager cacheManager = new ClassCacheManager();
+        try {
+            // class must be loaded with the same class loader that is used as the cache key
+            Command command = cacheManager.findCommand(PrintOutCommand.class.getName(), null);
+            assertSame(command, cacheManager.findCommand(PrintOutCommand.class.getName(), ClassCacheManager.class.getClassLoader()));
+        } finally {
+            cacheManager.dispose();
+        }
+    }
+
+    @Test
+    public void testEvictedWhenDeploymentIsClosed() throws Exception {
+        final CacheManagerImpl deploymentCache = new CacheManagerImpl();
+        final ClassLoader deploymentCl = getClass().getClassLoader();
+        ClassCacheManager cacheManager = new ClassCacheManager() {
+
+            @Override
+            protected CacheManager findDeploymentCacheManager(ClassLoader loader) {
+                return loader == deploymentCl ? deploymentCache : null;
+            }
+        };
+        try {
+            Command command = cacheManager.findCommand(PrintOutCommand.class.getName(), deploymentCl);
+
+            // runtime manager disposes its cache when deployment is undeployed
+            deploymentCache.dispose();
+
+            assertNotSame(command, cacheManager.findCommand(PrintOutCommand.class.getName(), deploymentCl));
+        } finally {
+            cacheManager.dispose();
+        }
+    }
+
+    @Test
+    public void testCallbackNotShared() {
+        ClassCacheManager cacheManager = new ClassCacheManager();
+        ClassLoader cl = getClass().getClassLoader();
+
+        CommandCallback callback = cacheManager.findCommandCallback("org.jbpm.executor.SimpleIncrementCallback", cl);
+        assertNotNull(callback);
+        assertNotSame(callback, cacheManager.findCommandCallback("org.jbpm.executor.SimpleIncrementCallback", cl));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCommand() {
+        new ClassCacheManager().findCommand("org.jbpm.executor.commands.NotExistingCommand", getClass().getClassLoader());
+    }
+}
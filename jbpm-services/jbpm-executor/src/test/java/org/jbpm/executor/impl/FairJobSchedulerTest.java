@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.executor.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.jbpm.executor.entities.RequestInfo;
+import org.junit.Test;
+
+public class FairJobSchedulerTest {
+
+    private RequestInfo request(String deploymentId, String command) {
+        RequestInfo request = new RequestInfo();
+        request.setDeploymentId(deploymentId);
+        request.setCommandName(command);
+        return request;
+    }
+
+    @Test
+    public void testRoundRobinAcrossDeployments() {
+        FairJobScheduler scheduler = new FairJobScheduler();
+        for (int i = 0; i < 5; i++) {
+            scheduler.add(request("big", "cmd"));
+        }
+        scheduler.add(request("small", "cmd"));
+        scheduler.add(request("other", "cmd"));
+        assertEquals(7, scheduler.size());
+        assertEquals(5, scheduler.size("big"));
+
+        assertEquals("big", scheduler.next().getDeploymentId());
+        assertEquals("small", scheduler.next().getDeploymentId());
+        assertEquals("other", scheduler.next().getDeploymentId());
+        assertEquals("big", scheduler.next().getDeploymentId());
+        assertEquals("big", scheduler.next().getDeploymentId());
+        assertEquals(2, scheduler.size());
+    }
+
+    @Test
+    public void testRoundRobinAcrossCommands() {
+        FairJobScheduler scheduler = new FairJobScheduler();
+        scheduler.add(request("dep", "a"));
+        scheduler.add(request("dep", "a"));
+        scheduler.add(request("dep", "b"));
+
+        assertEquals("a", scheduler.next().getCommandName());
+        assertEquals("b", scheduler.next().getCommandName());
+        assertEquals("a", scheduler.next().getCommandName());
+        assertNull(scheduler.next());
+    }
+
+    @Test
+    public void testConcurrencyLimit() {
+        FairJobScheduler scheduler = new FairJobScheduler();
+        scheduler.setMaxConcurrent("limited", 1);
+        scheduler.add(request("limited", "cmd"));
+        scheduler.add(request("limited", "cmd"));
+        scheduler.add(request(null, "cmd"));
+
+        RequestInfo first = scheduler.next();
+        assertEquals("limited", first.getDeploymentId());
+        assertNull(scheduler.next().getDeploymentId());
+        // limit reached for deployment
+        assertNull(scheduler.next());
+
+        scheduler.completed(first);
+        assertEquals("limited", scheduler.next().getDeploymentId());
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testReserveRespectsConcurrencyLimit() {
+        FairJobScheduler scheduler = new FairJobScheduler();
+        scheduler.setMaxConcurrent("limited", 2);
+
+        assertEquals(2, scheduler.reserve("limited", 5));
+        // other poller cannot claim until reserved slots are used or given back
+        assertEquals(0, scheduler.reserve("limited", 5));
+
+        // only one request was claimed, second slot is given back
+        scheduler.add(request("limited", "cmd"));
+        scheduler.unreserve("limited", 1);
+
+        RequestInfo running = scheduler.next();
+        assertEquals(1, scheduler.reserve("limited", 5));
+        scheduler.add(request("limited", "cmd"));
+        // one running and one waiting
+        assertEquals(0, scheduler.reserve("limited", 5));
+
+        scheduler.completed(running);
+        assertEquals(1, scheduler.reserve("limited", 5));
+    }
+
+    @Test
+    public void testReserveWithoutLimit() {
+        FairJobScheduler scheduler = new FairJobScheduler();
+
+        assertEquals(3, scheduler.reserve("dep", 3));
+        scheduler.add(request("dep", "cmd"));
+        scheduler.unreserve("dep", 2);
+        // one still waiting in the scheduler
+        assertEquals(2, scheduler.reserve("dep", 3));
+        scheduler.unreserve("dep", 2);
+        scheduler.next();
+        assertEquals(3, scheduler.reserve(null, 3));
+    }
+
+    @Test
+    public void testRequestsWithoutDeploymentDoNotExhaustDeploymentSlots() {
+        FairJobScheduler scheduler = new FairJobScheduler();
+        scheduler.setMaxConcurrent("x", 1);
+
+        // claims for deployment x return jobs of x as well as jobs without deployment
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, scheduler.reserve("x", 1));
+            RequestInfo claimed = request(i % 2 == 0 ? null : "x", "cmd");
+            scheduler.add(claimed, "x");
+
+            RequestInfo running = scheduler.next();
+            assertSame(claimed, running);
+            scheduler.completed(running);
+        }
+        // x keeps being scheduled
+        assertEquals(1, scheduler.reserve("x", 1));
+        scheduler.add(request("x", "cmd"), "x");
+        assertEquals("x", scheduler.next().getDeploymentId());
+    }
+
+    @Test
+    public void testRequeuedRequestIsNextAgain() {
+        FairJobScheduler scheduler = new FairJobScheduler();
+        scheduler.setMaxConcurrent("dep", 1);
+        RequestInfo first = request("dep", "cmd");
+        scheduler.add(first);
+        scheduler.add(request("dep", "cmd"));
+
+        RequestInfo request = scheduler.next();
+        assertSame(first, request);
+        // limit is reached so nothing else can run
+        assertNull(scheduler.next());
+
+        // request could not be executed, it does not count as running anymore
+        scheduler.requeue(request);
+        assertEquals(2, scheduler.size());
+        assertSame(first, scheduler.next());
+    }
+}
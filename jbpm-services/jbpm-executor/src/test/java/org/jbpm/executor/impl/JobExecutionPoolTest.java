@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.executor.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jbpm.executor.entities.RequestInfo;
+import org.junit.After;
+import org.junit.Test;
+
+public class JobExecutionPoolTest {
+
+    private JobExecutionPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPoolRejectsJobsWhenSaturated() throws Exception {
+        pool = new JobExecutionPool(1, 1, false, null);
+        assertEquals(2, pool.availableCapacity());
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable blocking = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+
+        assertTrue(pool.submit(blocking));
+        assertTrue(pool.submit(blocking));
+        assertEquals(0, pool.availableCapacity());
+        assertFalse(pool.submit(blocking));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // permits are released after job completes
+        for (int i = 0; i < 50 && pool.availableCapacity() < 2; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(2, pool.availableCapacity());
+    }
+
+    @Test
+    public void testVirtualThreadsFallback() throws Exception {
+        pool = new JobExecutionPool(2, 10, true, null);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        assertTrue(pool.submit(() -> done.countDown()));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSaturatedPoolDoesNotRunJobInPollingThread() throws Exception {
+        pool = new JobExecutionPool(1, 0, false, null);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Thread> executedBy = new CopyOnWriteArrayList<Thread>();
+        AvailableJobsExecutor executor = new AvailableJobsExecutor() {
+
+            @Override
+            public void executeGivenJob(RequestInfo request) {
+                executedBy.add(Thread.currentThread());
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        executor.setExecutionPool(pool);
+
+        RequestInfo running = new RequestInfo();
+        running.setId(1L);
+        RequestInfo rejected = new RequestInfo();
+        rejected.setId(2L);
+        assertTrue(executor.submitGivenJob(running));
+        assertFalse(executor.submitGivenJob(rejected));
+
+        // rejected request stays claimed in local queue instead of being executed by the poller
+        assertSame(rejected, executor.claimedRequests.peek());
+        assertFalse(executedBy.contains(Thread.currentThread()));
+
+        release.countDown();
+        for (int i = 0; i < 50 && pool.availableCapacity() < 1; i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(executor.submitClaimedJobs());
+        assertTrue(executor.claimedRequests.isEmpty());
+    }
+}
@@ -16,11 +16,15 @@
 
 package org.jbpm.kie.services.impl.admin;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import org.jbpm.runtime.manager.impl.migration.BulkMigrationManager;
+import org.jbpm.runtime.manager.impl.migration.BulkMigrationReport;
 import org.jbpm.runtime.manager.impl.migration.MigrationException;
 import org.jbpm.runtime.manager.impl.migration.MigrationManager;
 import org.jbpm.runtime.manager.impl.migration.MigrationSpec;
@@ -37,6 +41,10 @@ import org.jbpm.services.api.service.ServiceRegistry;
 public class ProcessInstanceMigrationServiceImpl implements ProcessInstanceMigrationService {
 
     
+    // bulk (batched and parallel) migration of list of process instances is opt-in
+    private static final boolean BULK_MIGRATION = Boolean.parseBoolean(System.getProperty("org.jbpm.migration.bulk.enabled", "false"));
+    private static final String PROGRESS_DIR = System.getProperty("org.jbpm.migration.bulk.progress.dir");
+    
     public ProcessInstanceMigrationServiceImpl() {
         ServiceRegistry.get().register(ProcessInstanceMigrationService.class.getSimpleName(), this);
     }
@@ -81,10 +89,33 @@ public class ProcessInstanceMigrationServiceImpl implements ProcessInstanceMigra
     @Override
     public List<MigrationReport> migrate(String sourceDeploymentId, List<Long> processInstanceIds, String targetDeploymentId, String targetProcessId, Map<String, String> nodeMapping) {
         List<MigrationReport> reports = new ArrayList<MigrationReport>();
+        if (!BULK_MIGRATION) {
+            for (Long pId : processInstanceIds) {
+                MigrationReport report = migrate(sourceDeploymentId, pId, targetDeploymentId, targetProcessId, nodeMapping);  
+                reports.add(report);
+            }
+            return reports;
+        }
         
+        BulkMigrationManager migrationManager = new BulkMigrationManager(sourceDeploymentId, processInstanceIds, targetDeploymentId, targetProcessId);
+        if (PROGRESS_DIR != null) {
+            String name = (sourceDeploymentId + "-" + targetDeploymentId + "-" + targetProcessId).replaceAll("[^A-Za-z0-9._-]", "_");
+            migrationManager.setProgressFile(new File(PROGRESS_DIR, name + ".progress"));
+        }
+        BulkMigrationReport bulkReport = migrationManager.migrate(nodeMapping);
         for (Long pId : processInstanceIds) {
-            MigrationReport report = migrate(sourceDeploymentId, pId, targetDeploymentId, targetProcessId, nodeMapping);  
-            reports.add(report);
+            org.jbpm.runtime.manager.impl.migration.MigrationReport report = bulkReport.getReport(pId);
+            if (report == null) {
+                // should not happen as bulk migration reports every requested process instance, but never return null
+                report = new org.jbpm.runtime.manager.impl.migration.MigrationReport(new MigrationSpec(sourceDeploymentId, pId, targetDeploymentId, targetProcessId));
+                try {
+                    report.addEntry(org.jbpm.runtime.manager.impl.migration.MigrationEntry.Type.ERROR, "No migration report found for process instance " + pId);
+                } catch (MigrationException e) {
+                    // expected as error entries always terminate migration
+                }
+                report.setEndDate(new Date());
+            }
+            reports.add(convert(report));
         }
         
         return reports;
@@ -28,6 +28,10 @@ public class JpaPersistenceContext implements Context {
 
 	public final static String FIRST_RESULT = "firstResult";
     public final static String MAX_RESULTS = "maxResults";
+
+    // lock timeout value that is recognized as SKIP LOCKED by the persistence provider (hibernate)
+    private final static String LOCK_TIMEOUT_HINT = "javax.persistence.lock.timeout";
+    private final static Integer SKIP_LOCKED = -2;
 	
 	private EntityManager em;
 	
@@ -64,6 +68,21 @@ public class JpaPersistenceContext implements Context {
 		return queryStringWithParameters(params, singleResult, LockModeType.PESSIMISTIC_WRITE, clazz, query);
 	}
 
+	/**
+	 * Same as {@link #queryAndLockWithParametersInTransaction(String, Map, boolean, Class)} but allows to
+	 * skip rows that are already locked by other transactions instead of waiting for them to be released.
+	 * Skipping locked rows is used only when supported by the data base, otherwise regular lock is acquired.
+	 */
+	public <T> T queryAndLockWithParametersInTransaction(String queryName,
+			Map<String, Object> params, boolean singleResult, boolean skipLocked, Class<T> clazz) {
+		check();
+		Query query = getQueryByName(queryName, params);
+		if (skipLocked) {
+			query.setHint(LOCK_TIMEOUT_HINT, SKIP_LOCKED);
+		}
+		return queryStringWithParameters(params, singleResult, LockModeType.PESSIMISTIC_WRITE, clazz, query);
+	}
+
 	
 	@SuppressWarnings("unchecked")
 	public <T> T queryInTransaction(String queryName, Class<T> clazz) {
@@ -0,0 +1,655 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.workitem.rest;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.drools.core.command.impl.ExecutableCommand;
+import org.drools.core.command.impl.RegistryContext;
+import org.drools.core.process.instance.impl.WorkItemImpl;
+import org.drools.persistence.api.TransactionManager;
+import org.drools.persistence.api.TransactionSynchronization;
+import org.jbpm.bpmn2.handler.WorkItemHandlerRuntimeException;
+import org.jbpm.process.core.context.exception.ExceptionScope;
+import org.jbpm.process.instance.context.exception.ExceptionScopeInstance;
+import org.jbpm.workflow.instance.WorkflowProcessInstance;
+import org.jbpm.workflow.instance.node.WorkItemNodeInstance;
+import org.kie.api.runtime.Context;
+import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.manager.RuntimeEngine;
+import org.kie.api.runtime.manager.RuntimeManager;
+import org.kie.api.runtime.process.WorkItem;
+import org.kie.api.runtime.process.WorkItemManager;
+import org.kie.internal.runtime.manager.RuntimeManagerRegistry;
+import org.kie.internal.runtime.manager.context.ProcessInstanceIdContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Variant of {@link RESTWorkItemHandler} that executes requests with non blocking http client. The handler
+ * returns as soon as the request is scheduled and the work item is completed from the response callback, so no
+ * thread is occupied while waiting for the REST service.
+ * <br/>
+ * When the work item is executed within a transaction the request is sent only after that transaction commits,
+ * so the work item is already stored when the response arrives and no request is sent for work items that
+ * were rolled back.
+ * <br/>
+ * Work item is completed via runtime engine of the owning process instance (found by deployment id of the
+ * work item) so it is properly locked and persisted, same as any other external completion. When there is no
+ * runtime manager the session given on handler initialization is used.
+ * <br/>
+ * Requests that fail without a response are retried (3 times by default, see <code>org.jbpm.rest.async.retries</code>
+ * and <code>org.jbpm.rest.async.retry.delay</code>) when the failure is a connection error - the request did not
+ * reach the service - or the method is idempotent (GET, HEAD, OPTIONS). Other requests (e.g. POST with read time out)
+ * might have been processed already by the service so they are not sent again. Failures that
+ * remain (including unsuccessful responses when HandleResponseErrors is set) are delivered to the process
+ * as <code>WorkItemHandlerRuntimeException</code> when the work item node has matching error handling,
+ * otherwise the work item is aborted.
+ * <br/>
+ * Connection and read time outs are taken from ConnectTimeout and ReadTimeout parameters of the work item,
+ * defaulting to the values given on handler initialization, same as for {@link RESTWorkItemHandler}.
+ * <br/>
+ * Http clients and the completion thread pool are shared by all handlers, {@link #shutdown()} releases them.
+ * <br/>
+ * Form based authentication is not supported in non blocking mode, such work items are executed synchronously.
+ */
+public class AsyncRESTWorkItemHandler extends RESTWorkItemHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncRESTWorkItemHandler.class);
+
+    private static final int COMPLETION_THREADS = Integer.parseInt(System.getProperty("org.jbpm.rest.async.completion.threads",
+                                                                                      String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<String>(Arrays.asList("GET",
+                                                                                            "HEAD",
+                                                                                            "OPTIONS"));
+
+    private static final ConcurrentMap<String, CloseableHttpAsyncClient> clients = new ConcurrentHashMap<String, CloseableHttpAsyncClient>();
+
+    // completion runs in the engine (with persistence) so it is kept off the http client's I/O threads,
+    // it also schedules retries
+    private static ScheduledExecutorService completionExecutor;
+
+    private KieSession ksession;
+    private int maxTotalConnections = 200;
+    private int maxConnectionsPerRoute = 20;
+    private int retries = Integer.parseInt(System.getProperty("org.jbpm.rest.async.retries", "3"));
+    private long retryDelay = Long.parseLong(System.getProperty("org.jbpm.rest.async.retry.delay", "1000"));
+
+    public AsyncRESTWorkItemHandler(KieSession ksession) {
+        super();
+        this.ksession = ksession;
+    }
+
+    public AsyncRESTWorkItemHandler(KieSession ksession,
+                                    ClassLoader classLoader) {
+        super(classLoader);
+        this.ksession = ksession;
+    }
+
+    public AsyncRESTWorkItemHandler(KieSession ksession,
+                                    String username,
+                                    String password) {
+        super(username,
+              password);
+        this.ksession = ksession;
+    }
+
+    /**
+     * @param ksession - session used to complete work items when there is no runtime manager
+     * @param maxTotalConnections - maximum number of connections of the async client
+     * @param maxConnectionsPerRoute - maximum number of connections per target host
+     */
+    public AsyncRESTWorkItemHandler(KieSession ksession,
+                                    int maxTotalConnections,
+                                    int maxConnectionsPerRoute) {
+        this(ksession);
+        this.maxTotalConnections = maxTotalConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * @param ksession - session used to complete work items when there is no runtime manager
+     * @param maxTotalConnections - maximum number of connections of the async client
+     * @param maxConnectionsPerRoute - maximum number of connections per target host
+     * @param connectTimeout - default connection time out (ms) used when not given as work item parameter
+     * @param readTimeout - default read time out (ms) used when not given as work item parameter
+     */
+    public AsyncRESTWorkItemHandler(KieSession ksession,
+                                    int maxTotalConnections,
+                                    int maxConnectionsPerRoute,
+                                    int connectTimeout,
+                                    int readTimeout) {
+        this(ksession,
+             maxTotalConnections,
+             maxConnectionsPerRoute);
+        setDefaultTimeouts(connectTimeout,
+                           readTimeout);
+    }
+
+    /**
+     * Closes shared http clients and stops the completion thread pool, responses that are still pending are
+     * not processed and their work items remain active. Both are created again when the handler is used afterwards.
+     */
+    public static void shutdown() {
+        ScheduledExecutorService executor;
+        synchronized (clients) {
+            for (CloseableHttpAsyncClient client : clients.values()) {
+                try {
+                    client.close();
+                } catch (Exception e) {
+                    logger.debug("Error when closing async http client", e);
+                }
+            }
+            clients.clear();
+            executor = completionExecutor;
+            completionExecutor = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(10,
+                                          TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    @Override
+    public void executeWorkItem(final WorkItem workItem,
+                                final WorkItemManager manager) {
+        Map<String, Object> params = workItem.getParameters();
+        AuthenticationType authType = getAuthenticationType();
+        if (params.get("AuthType") != null) {
+            authType = AuthenticationType.valueOf((String) params.get("AuthType"));
+        }
+        if (!HTTP_CLIENT_API_43 || authType == AuthenticationType.FORM_BASED) {
+            logger.debug("Non blocking execution not supported for work item {}, executing it synchronously",
+                         workItem.getId());
+            super.executeWorkItem(workItem,
+                                  manager);
+            return;
+        }
+
+        String urlStr = (String) workItem.getParameter("Url");
+        String method = (String) workItem.getParameter("Method");
+        String resultClass = (String) workItem.getParameter("ResultClass");
+        String acceptHeader = (String) workItem.getParameter("AcceptHeader");
+        boolean handleException = Boolean.parseBoolean((String) workItem.getParameter("HandleResponseErrors"));
+
+        if (urlStr == null) {
+            throw new IllegalArgumentException("Url is a required parameter");
+        }
+        if (method == null || method.trim().length() == 0) {
+            method = "GET";
+        }
+        Integer connectTimeout = getParamAsInt(params.get("ConnectTimeout"));
+        if (connectTimeout == null) {
+            connectTimeout = getDefaultConnectTimeout();
+        }
+        Integer readTimeout = getParamAsInt(params.get("ReadTimeout"));
+        if (readTimeout == null) {
+            readTimeout = getDefaultReadTimeout();
+        }
+
+        try {
+            RequestBuilder requestBuilder = (RequestBuilder) configureRequest(method,
+                                                                              urlStr,
+                                                                              params,
+                                                                              acceptHeader);
+            requestBuilder.setConfig(RequestConfig.custom()
+                                             .setSocketTimeout(readTimeout)
+                                             .setConnectTimeout(connectTimeout)
+                                             .setConnectionRequestTimeout(connectTimeout)
+                                             .build());
+            HttpUriRequest request = requestBuilder.build();
+            HttpClientContext clientContext = HttpClientContext.create();
+            if (authType == AuthenticationType.BASIC) {
+                configureBasicAuthentication(clientContext,
+                                             request.getURI(),
+                                             params);
+            }
+
+            final AsyncRequest asyncRequest = new AsyncRequest(request,
+                                                               clientContext,
+                                                               urlStr,
+                                                               resultClass,
+                                                               handleException,
+                                                               ((WorkItemImpl) workItem).getDeploymentId(),
+                                                               workItem.getProcessInstanceId(),
+                                                               workItem.getId());
+            TransactionManager txm = getTransactionManager();
+            if (txm != null && txm.getStatus() == TransactionManager.STATUS_ACTIVE) {
+                txm.registerTransactionSynchronization(new TransactionSynchronization() {
+
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == TransactionManager.STATUS_COMMITTED) {
+                            asyncRequest.send();
+                        } else {
+                            logger.debug("Transaction of work item {} did not commit, request to {} is not sent",
+                                         asyncRequest.workItemId,
+                                         asyncRequest.url);
+                        }
+                    }
+                });
+            } else {
+                asyncRequest.send();
+            }
+        } catch (Exception e) {
+            handleException(e);
+        }
+    }
+
+    protected void configureBasicAuthentication(HttpClientContext clientContext,
+                                                URI requestUri,
+                                                Map<String, Object> params) {
+        String u = (String) params.get("Username");
+        String p = (String) params.get("Password");
+        if (u == null || p == null) {
+            u = getUsername();
+            p = getPassword();
+        }
+        if (u == null) {
+            throw new IllegalArgumentException("Could not find username");
+        }
+        if (p == null) {
+            throw new IllegalArgumentException("Could not find password");
+        }
+        HttpHost targetHost = new HttpHost(requestUri.getHost(),
+                                           requestUri.getPort(),
+                                           requestUri.getScheme());
+        AuthCache authCache = new BasicAuthCache();
+        authCache.put(targetHost,
+                      new BasicScheme());
+
+        CredentialsProvider credsProvider = new BasicCredentialsProvider();
+        credsProvider.setCredentials(new AuthScope(requestUri.getHost(),
+                                                   requestUri.getPort(),
+                                                   AuthScope.ANY_REALM),
+                                     new UsernamePasswordCredentials(u,
+                                                                     p));
+        clientContext.setCredentialsProvider(credsProvider);
+        clientContext.setAuthCache(authCache);
+    }
+
+    /**
+     * Completes work item with given results, failures are propagated so the completion can be retried.
+     */
+    protected void completeWorkItem(String deploymentId,
+                                    long processInstanceId,
+                                    final long workItemId,
+                                    final Map<String, Object> results) {
+        executeInSession(deploymentId,
+                         processInstanceId,
+                         session -> {
+                             session.getWorkItemManager().completeWorkItem(workItemId,
+                                                                           results);
+                             return null;
+                         });
+    }
+
+    /**
+     * Aborts work item whose request failed and the failure could not be handled by the process.
+     */
+    protected void abortWorkItem(String deploymentId,
+                                 long processInstanceId,
+                                 final long workItemId) {
+        executeInSession(deploymentId,
+                         processInstanceId,
+                         session -> {
+                             session.getWorkItemManager().abortWorkItem(workItemId);
+                             return null;
+                         });
+    }
+
+    protected void handleAsyncException(String deploymentId,
+                                        final long processInstanceId,
+                                        final long workItemId,
+                                        Throwable cause) {
+        final WorkItemHandlerRuntimeException exception = cause instanceof WorkItemHandlerRuntimeException ?
+                (WorkItemHandlerRuntimeException) cause : new WorkItemHandlerRuntimeException(cause);
+        exception.setInformation(WorkItemHandlerRuntimeException.WORKITEMHANDLERTYPE,
+                                 this.getClass().getSimpleName());
+        final ExecutableCommand<Boolean> handleCommand = new ExecutableCommand<Boolean>() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Boolean execute(Context context) {
+                KieSession session = ((RegistryContext) context).lookup(KieSession.class);
+                WorkflowProcessInstance processInstance = (WorkflowProcessInstance) session.getProcessInstance(processInstanceId);
+                if (processInstance == null) {
+                    return false;
+                }
+                WorkItemNodeInstance nodeInstance = findNodeInstance(workItemId,
+                                                                     processInstance);
+                if (nodeInstance == null) {
+                    return false;
+                }
+                String exceptionName = exception.getClass().getName();
+                ExceptionScopeInstance exceptionScopeInstance = (ExceptionScopeInstance)
+                        nodeInstance.resolveContextInstance(ExceptionScope.EXCEPTION_SCOPE,
+                                                            exceptionName);
+                if (exceptionScopeInstance == null) {
+                    return false;
+                }
+                exceptionScopeInstance.handleException(exceptionName,
+                                                       exception);
+                return true;
+            }
+        };
+        try {
+            Boolean handled = executeInSession(deploymentId,
+                                               processInstanceId,
+                                               session -> session.execute(handleCommand));
+            if (Boolean.TRUE.equals(handled)) {
+                return;
+            }
+        } catch (Exception e) {
+            logger.debug("Unable to deliver error of work item {} to process instance {}",
+                         workItemId,
+                         processInstanceId,
+                         e);
+        }
+        logger.error("REST call of work item {} (process instance {}) failed, aborting work item",
+                     workItemId,
+                     processInstanceId,
+                     cause);
+        try {
+            abortWorkItem(deploymentId,
+                          processInstanceId,
+                          workItemId);
+        } catch (Exception e) {
+            logger.error("Unable to abort work item {} of process instance {}, it remains active",
+                         workItemId,
+                         processInstanceId,
+                         e);
+        }
+    }
+
+    /**
+     * Returns true if request that failed without a response can be sent again - either it did not reach the
+     * service at all or sending it again has no additional effect.
+     */
+    protected boolean isRetryable(HttpUriRequest request,
+                                  Exception failure) {
+        if (failure instanceof ConnectException || failure instanceof ConnectTimeoutException
+                || failure instanceof UnknownHostException) {
+            return true;
+        }
+        return IDEMPOTENT_METHODS.contains(request.getMethod().toUpperCase());
+    }
+
+    protected <T> T executeInSession(String deploymentId,
+                                     long processInstanceId,
+                                     Function<KieSession, T> operation) {
+        RuntimeManager manager = getRuntimeManager(deploymentId);
+        if (manager != null) {
+            RuntimeEngine engine = manager.getRuntimeEngine(ProcessInstanceIdContext.get(processInstanceId));
+            try {
+                return operation.apply(engine.getKieSession());
+            } finally {
+                manager.disposeRuntimeEngine(engine);
+            }
+        }
+        if (ksession == null) {
+            throw new IllegalStateException("No runtime manager found for deployment " + deploymentId + " and no session given");
+        }
+        // in case there is no RuntimeManager available use available ksession,
+        // as it might be used without runtime manager at all
+        return operation.apply(ksession);
+    }
+
+    protected RuntimeManager getRuntimeManager(String deploymentId) {
+        if (deploymentId == null) {
+            return null;
+        }
+        return RuntimeManagerRegistry.get().getManager(deploymentId);
+    }
+
+    /**
+     * Returns transaction manager of the session or null when the session does not use transactions.
+     */
+    protected TransactionManager getTransactionManager() {
+        if (ksession == null) {
+            return null;
+        }
+        Object txm = ksession.getEnvironment().get(EnvironmentName.TRANSACTION_MANAGER);
+        if (txm instanceof TransactionManager) {
+            return (TransactionManager) txm;
+        }
+        return null;
+    }
+
+    protected CloseableHttpAsyncClient getAsyncClient() {
+        String key = maxTotalConnections + ":" + maxConnectionsPerRoute;
+        CloseableHttpAsyncClient client = clients.get(key);
+        if (client == null) {
+            synchronized (clients) {
+                client = clients.get(key);
+                if (client == null) {
+                    client = HttpAsyncClients.custom()
+                            .setMaxConnTotal(maxTotalConnections)
+                            .setMaxConnPerRoute(maxConnectionsPerRoute)
+                            .disableCookieManagement()
+                            .build();
+                    client.start();
+                    clients.put(key,
+                                client);
+                }
+            }
+        }
+        return client;
+    }
+
+    protected static ScheduledExecutorService getCompletionExecutor() {
+        synchronized (clients) {
+            if (completionExecutor == null) {
+                completionExecutor = Executors.newScheduledThreadPool(COMPLETION_THREADS,
+                                                                      r -> {
+                                                                          Thread thread = new Thread(r, "jbpm-rest-async-completion");
+                                                                          thread.setDaemon(true);
+                                                                          return thread;
+                                                                      });
+            }
+            return completionExecutor;
+        }
+    }
+
+    /*
+     * Single request of a work item, sent again when it fails without a response and can be retried until
+     * retries are exhausted
+     */
+    private class AsyncRequest implements FutureCallback<HttpResponse> {
+
+        private final HttpUriRequest request;
+        private final HttpClientContext clientContext;
+        private final String url;
+        private final String resultClass;
+        private final boolean handleException;
+        private final String deploymentId;
+        private final long processInstanceId;
+        private final long workItemId;
+        private int attempt;
+
+        AsyncRequest(HttpUriRequest request,
+                     HttpClientContext clientContext,
+                     String url,
+                     String resultClass,
+                     boolean handleException,
+                     String deploymentId,
+                     long processInstanceId,
+                     long workItemId) {
+            this.request = request;
+            this.clientContext = clientContext;
+            this.url = url;
+            this.resultClass = resultClass;
+            this.handleException = handleException;
+            this.deploymentId = deploymentId;
+            this.processInstanceId = processInstanceId;
+            this.workItemId = workItemId;
+        }
+
+        void send() {
+            attempt++;
+            HttpClientContext context = HttpClientContext.create();
+            context.setCredentialsProvider(clientContext.getCredentialsProvider());
+            context.setAuthCache(clientContext.getAuthCache());
+            try {
+                getAsyncClient().execute(request,
+                                         context,
+                                         this);
+            } catch (Exception e) {
+                failed(e);
+                return;
+            }
+            logger.debug("Request to {} for work item {} sent (attempt {}), waiting for response asynchronously",
+                         url,
+                         workItemId,
+                         attempt);
+        }
+
+        @Override
+        public void completed(final HttpResponse response) {
+            getCompletionExecutor().execute(() -> complete(response));
+        }
+
+        @Override
+        public void failed(final Exception e) {
+            getCompletionExecutor().execute(() -> {
+                if (attempt <= retries && isRetryable(request,
+                                                      e)) {
+                    logger.warn("Request to {} for work item {} failed (attempt {}), retrying in {} ms",
+                                url,
+                                workItemId,
+                                attempt,
+                                retryDelay * attempt,
+                                e);
+                    getCompletionExecutor().schedule(this::send,
+                                                     retryDelay * attempt,
+                                                     TimeUnit.MILLISECONDS);
+                } else {
+                    handleAsyncException(deploymentId,
+                                         processInstanceId,
+                                         workItemId,
+                                         e);
+                }
+            });
+        }
+
+        @Override
+        public void cancelled() {
+            // only happens when clients are shut down, work item stays active
+            logger.warn("Request to {} for work item {} was cancelled",
+                        url,
+                        workItemId);
+        }
+
+        private void complete(HttpResponse response) {
+            Map<String, Object> results;
+            try {
+                results = processResponse(response,
+                                          url,
+                                          resultClass,
+                                          handleException);
+            } catch (Throwable e) {
+                handleAsyncException(deploymentId,
+                                     processInstanceId,
+                                     workItemId,
+                                     e);
+                return;
+            }
+            logger.debug("Received async response from {} completing work item {}",
+                         url,
+                         workItemId);
+            completeWorkItem(results,
+                             1);
+        }
+
+        private void completeWorkItem(Map<String, Object> results,
+                                      int completionAttempt) {
+            try {
+                AsyncRESTWorkItemHandler.this.completeWorkItem(deploymentId,
+                                                               processInstanceId,
+                                                               workItemId,
+                                                               results);
+            } catch (Exception e) {
+                if (completionAttempt <= retries) {
+                    logger.warn("Unable to complete work item {} of process instance {} (attempt {}), retrying",
+                                workItemId,
+                                processInstanceId,
+                                completionAttempt,
+                                e);
+                    getCompletionExecutor().schedule(() -> completeWorkItem(results,
+                                                                            completionAttempt + 1),
+                                                     retryDelay * completionAttempt,
+                                                     TimeUnit.MILLISECONDS);
+                } else {
+                    logger.error("Unable to complete work item {} of process instance {} after {} attempts",
+                                 workItemId,
+                                 processInstanceId,
+                                 completionAttempt,
+                                 e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.workitem.rest;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared, pooled http client used by {@link RESTWorkItemHandler} when configured with connection pool settings.
+ * Pools are shared among all handlers that use the same settings so connections (including their TLS sessions)
+ * are kept alive and reused across work items.
+ * <br/>
+ * Cookie management is disabled on pooled clients to make sure no state leaks between work items.
+ */
+public class HttpClientPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientPool.class);
+
+    private static final ConcurrentMap<String, HttpClientPool> pools = new ConcurrentHashMap<String, HttpClientPool>();
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    protected HttpClientPool(int maxTotal,
+                             int maxPerRoute,
+                             int idleTimeout) {
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(maxTotal);
+        this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        this.httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout,
+                                      TimeUnit.SECONDS)
+                .disableCookieManagement()
+                .build();
+        logger.debug("Created http client pool with max total {}, max per route {} and idle timeout {} seconds",
+                     maxTotal,
+                     maxPerRoute,
+                     idleTimeout);
+    }
+
+    /**
+     * Returns pool for given settings, creating it if it does not exist yet.
+     * @param maxTotal maximum number of connections in the pool
+     * @param maxPerRoute maximum number of connections per route (target host)
+     * @param idleTimeout time in seconds after which idle connections are evicted from the pool
+     * @return http client pool
+     */
+    public static HttpClientPool get(int maxTotal,
+                                     int maxPerRoute,
+                                     int idleTimeout) {
+        String key = maxTotal + ":" + maxPerRoute + ":" + idleTimeout;
+        HttpClientPool pool = pools.get(key);
+        if (pool == null) {
+            pool = new HttpClientPool(maxTotal,
+                                      maxPerRoute,
+                                      idleTimeout);
+            HttpClientPool existing = pools.putIfAbsent(key,
+                                                        pool);
+            if (existing != null) {
+                pool.close();
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Closes all pools and their connections.
+     */
+    public static void closeAll() {
+        for (HttpClientPool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    protected void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.debug("Error when closing pooled http client", e);
+        }
+    }
+}
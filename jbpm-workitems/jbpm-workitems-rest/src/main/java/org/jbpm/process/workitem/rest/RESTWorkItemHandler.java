@@ -44,6 +44,7 @@ import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
@@ -98,6 +99,10 @@ import org.slf4j.LoggerFactory;
  * if not given string format will be returned</li>
  * <li>AcceptHeader - accept header value</li>
  * </ul>
+ * Handler can be configured to use shared pool of connections (see {@link HttpClientPool}) that are kept alive
+ * and reused among work items, instead of creating new http client for every work item. Pool settings and default
+ * timeouts are then given on handler initialization. Form based authentication always uses dedicated client
+ * as it relies on session cookies.
  */
 public class RESTWorkItemHandler extends AbstractLogOrThrowWorkItemHandler {
 
@@ -110,6 +115,10 @@ public class RESTWorkItemHandler extends AbstractLogOrThrowWorkItemHandler {
 
     private ClassLoader classLoader;
 
+    private HttpClientPool clientPool;
+    private int defaultConnectTimeout = 60000;
+    private int defaultReadTimeout = 60000;
+
     // protected for test purpose
     protected static boolean HTTP_CLIENT_API_43 = true;
 
@@ -204,10 +213,126 @@ public class RESTWorkItemHandler extends AbstractLogOrThrowWorkItemHandler {
         this.classLoader = classLoader;
     }
 
+    /**
+     * Dedicated constructor when connection pool shall be used and no authentication is required
+     * @param maxTotalConnections - maximum number of pooled connections
+     * @param maxConnectionsPerRoute - maximum number of pooled connections per target host
+     * @param connectTimeout - default connection time out (ms) used when not given as work item parameter
+     * @param readTimeout - default read time out (ms) used when not given as work item parameter
+     * @param idleTimeout - time (seconds) after which idle connections are evicted from the pool
+     */
+    public RESTWorkItemHandler(int maxTotalConnections,
+                               int maxConnectionsPerRoute,
+                               int connectTimeout,
+                               int readTimeout,
+                               int idleTimeout) {
+        this();
+        configurePool(maxTotalConnections,
+                      maxConnectionsPerRoute,
+                      connectTimeout,
+                      readTimeout,
+                      idleTimeout);
+    }
+
+    /**
+     * Dedicated constructor when connection pool and BASIC authentication method shall be used
+     * @param username - user name to be used for authentication
+     * @param password - password to be used for authentication
+     * @param maxTotalConnections - maximum number of pooled connections
+     * @param maxConnectionsPerRoute - maximum number of pooled connections per target host
+     * @param connectTimeout - default connection time out (ms) used when not given as work item parameter
+     * @param readTimeout - default read time out (ms) used when not given as work item parameter
+     * @param idleTimeout - time (seconds) after which idle connections are evicted from the pool
+     */
+    public RESTWorkItemHandler(String username,
+                               String password,
+                               int maxTotalConnections,
+                               int maxConnectionsPerRoute,
+                               int connectTimeout,
+                               int readTimeout,
+                               int idleTimeout) {
+        this(username,
+             password);
+        configurePool(maxTotalConnections,
+                      maxConnectionsPerRoute,
+                      connectTimeout,
+                      readTimeout,
+                      idleTimeout);
+    }
+
+    /**
+     * Dedicated constructor when connection pool shall be used and no authentication is required
+     * @param classLoader - class loader used to load result classes
+     * @param maxTotalConnections - maximum number of pooled connections
+     * @param maxConnectionsPerRoute - maximum number of pooled connections per target host
+     * @param connectTimeout - default connection time out (ms) used when not given as work item parameter
+     * @param readTimeout - default read time out (ms) used when not given as work item parameter
+     * @param idleTimeout - time (seconds) after which idle connections are evicted from the pool
+     */
+    public RESTWorkItemHandler(ClassLoader classLoader,
+                               int maxTotalConnections,
+                               int maxConnectionsPerRoute,
+                               int connectTimeout,
+                               int readTimeout,
+                               int idleTimeout) {
+        this(classLoader);
+        configurePool(maxTotalConnections,
+                      maxConnectionsPerRoute,
+                      connectTimeout,
+                      readTimeout,
+                      idleTimeout);
+    }
+
+    protected void configurePool(int maxTotalConnections,
+                                 int maxConnectionsPerRoute,
+                                 int connectTimeout,
+                                 int readTimeout,
+                                 int idleTimeout) {
+        setDefaultTimeouts(connectTimeout,
+                           readTimeout);
+        if (HTTP_CLIENT_API_43) {
+            this.clientPool = HttpClientPool.get(maxTotalConnections,
+                                                 maxConnectionsPerRoute,
+                                                 idleTimeout);
+        } else {
+            logger.warn("Connection pool is only supported with http client 4.3 api, new client will be used for every work item");
+        }
+    }
+
+    /**
+     * @param connectTimeout - connection time out (ms) used when not given as work item parameter
+     * @param readTimeout - read time out (ms) used when not given as work item parameter
+     */
+    protected void setDefaultTimeouts(int connectTimeout,
+                                      int readTimeout) {
+        this.defaultConnectTimeout = connectTimeout;
+        this.defaultReadTimeout = readTimeout;
+    }
+
+    protected int getDefaultConnectTimeout() {
+        return defaultConnectTimeout;
+    }
+
+    protected int getDefaultReadTimeout() {
+        return defaultReadTimeout;
+    }
+
     public String getAuthUrl() {
         return authUrl;
     }
 
+    protected String getUsername() {
+        return username;
+    }
+
+    protected String getPassword() {
+        return password;
+    }
+
+    protected AuthenticationType getAuthenticationType() {
+        return type;
+    }
+
     public void executeWorkItem(WorkItem workItem,
                                 WorkItemManager manager) {
         boolean handleException = false;
@@ -238,61 +363,39 @@ public class RESTWorkItemHandler extends AbstractLogOrThrowWorkItemHandler {
         // optional timeout config parameters, defaulted to 60 seconds
         Integer connectTimeout = getParamAsInt(params.get("ConnectTimeout"));
         if (connectTimeout == null) {
-            connectTimeout = 60000;
+            connectTimeout = defaultConnectTimeout;
         }
         Integer readTimeout = getParamAsInt(params.get("ReadTimeout"));
         if (readTimeout == null) {
-            readTimeout = 60000;
+            readTimeout = defaultReadTimeout;
         }
 
-        HttpClient httpClient = getHttpClient(readTimeout,
-                                              connectTimeout);
+        boolean pooled = isPooled(authType);
+        HttpClient httpClient = pooled ? clientPool.getHttpClient() : getHttpClient(readTimeout,
+                                                                                    connectTimeout);
 
         Object methodObject = configureRequest(method,
                                                urlStr,
                                                params,
                                                acceptHeader);
+        if (pooled) {
+            // shared client has no default config so timeouts are set per request
+            ((RequestBuilder) methodObject).setConfig(RequestConfig.custom()
+                                                              .setSocketTimeout(readTimeout)
+                                                              .setConnectTimeout(connectTimeout)
+                                                              .setConnectionRequestTimeout(connectTimeout)
+                                                              .build());
+        }
+        HttpResponse response = null;
         try {
-            HttpResponse response = doRequestWithAuthorization(httpClient,
-                                                               methodObject,
-                                                               params,
-                                                               authType);
-            StatusLine statusLine = response.getStatusLine();
-            int responseCode = statusLine.getStatusCode();
-            Map<String, Object> results = new HashMap<String, Object>();
-            HttpEntity respEntity = response.getEntity();
-            String responseBody = null;
-            String contentType = null;
-            if (respEntity != null) {
-                responseBody = EntityUtils.toString(respEntity);
-
-                if (respEntity.getContentType() != null) {
-                    contentType = respEntity.getContentType().getValue();
-                }
-            }
-            if (responseCode >= 200 && responseCode < 300) {
-                postProcessResult(responseBody,
-                                  resultClass,
-                                  contentType,
-                                  results);
-                results.put("StatusMsg",
-                            "request to endpoint " + urlStr + " successfully completed " + statusLine.getReasonPhrase());
-            } else {
-                if (handleException) {
-                    handleException(new RESTServiceException(responseCode,
-                                                             responseBody,
-                                                             urlStr));
-                } else {
-                    logger.warn("Unsuccessful response from REST server (status: {}, endpoint: {}, response: {}",
-                                responseCode,
-                                urlStr,
-                                responseBody);
-                    results.put("StatusMsg",
-                                "endpoint " + urlStr + " could not be reached: " + responseBody);
-                }
-            }
-            results.put("Status",
-                        responseCode);
+            response = doRequestWithAuthorization(httpClient,
+                                                  methodObject,
+                                                  params,
+                                                  authType);
+            Map<String, Object> results = processResponse(response,
+                                                           urlStr,
+                                                           resultClass,
+                                                           handleException);
 
             // notify manager that work item has been completed
             manager.completeWorkItem(workItem.getId(),
@@ -301,14 +404,86 @@ public class RESTWorkItemHandler extends AbstractLogOrThrowWorkItemHandler {
             handleException(e);
         } finally {
             try {
-                close(httpClient,
-                      methodObject);
+                if (pooled) {
+                    release(response);
+                } else {
+                    close(httpClient,
+                          methodObject);
+                }
             } catch (Exception e) {
                 // no idea if this throws something, but we still don't care!
             }
         }
     }
 
+    protected boolean isPooled(AuthenticationType authType) {
+        return clientPool != null && HTTP_CLIENT_API_43 && authType != AuthenticationType.FORM_BASED;
+    }
+
+    /**
+     * Returns connection used by given response back to the pool (or closes it when response was not fully consumed)
+     */
+    protected void release(HttpResponse response) throws IOException {
+        if (response != null) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            if (response instanceof CloseableHttpResponse) {
+                ((CloseableHttpResponse) response).close();
+            }
+        }
+    }
+
+    /**
+     * Builds work item results out of given response
+     * @param response response of the REST service
+     * @param urlStr endpoint that was invoked
+     * @param resultClass optional class the response body should be transformed to
+     * @param handleException if error response should be handled as exception
+     * @return results to complete work item with
+     */
+    protected Map<String, Object> processResponse(HttpResponse response,
+                                                  String urlStr,
+                                                  String resultClass,
+                                                  boolean handleException) throws IOException {
+        StatusLine statusLine = response.getStatusLine();
+        int responseCode = statusLine.getStatusCode();
+        Map<String, Object> results = new HashMap<String, Object>();
+        HttpEntity respEntity = response.getEntity();
+        String responseBody = null;
+        String contentType = null;
+        if (respEntity != null) {
+            responseBody = EntityUtils.toString(respEntity);
+
+            if (respEntity.getContentType() != null) {
+                contentType = respEntity.getContentType().getValue();
+            }
+        }
+        if (responseCode >= 200 && responseCode < 300) {
+            postProcessResult(responseBody,
+                              resultClass,
+                              contentType,
+                              results);
+            results.put("StatusMsg",
+                        "request to endpoint " + urlStr + " successfully completed " + statusLine.getReasonPhrase());
+        } else {
+            if (handleException) {
+                handleException(new RESTServiceException(responseCode,
+                                                         responseBody,
+                                                         urlStr));
+            } else {
+                logger.warn("Unsuccessful response from REST server (status: {}, endpoint: {}, response: {}",
+                            responseCode,
+                            urlStr,
+                            responseBody);
+                results.put("StatusMsg",
+                            "endpoint " + urlStr + " could not be reached: " + responseBody);
+            }
+        }
+        results.put("Status",
+                    responseCode);
+
+        return results;
+    }
+
     protected Integer getParamAsInt(Object param) {
         if (param == null) {
             return null;
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.workitem.rest;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.ext.RuntimeDelegate;
+
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.provider.JAXBElementProvider;
+import org.drools.core.process.instance.impl.WorkItemImpl;
+import org.jbpm.process.workitem.core.TestWorkItemManager;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AsyncRESTWorkItemHandlerTest {
+
+    private final static String serverURL = "http://localhost:9998/test";
+    private static Server server;
+
+    @BeforeClass
+    public static void initialize() throws Exception {
+        SimpleRESTApplication application = new SimpleRESTApplication();
+        RuntimeDelegate delegate = RuntimeDelegate.getInstance();
+
+        JAXRSServerFactoryBean bean = delegate.createEndpoint(application,
+                                                              JAXRSServerFactoryBean.class);
+        bean.setProvider(new JAXBElementProvider());
+        bean.setAddress("http://localhost:9998" + bean.getAddress());
+        server = bean.create();
+        server.start();
+    }
+
+    @AfterClass
+    public static void destroy() throws Exception {
+        if (server != null) {
+            server.stop();
+            server.destroy();
+        }
+    }
+
+    @After
+    public void cleanup() {
+        AsyncRESTWorkItemHandler.shutdown();
+    }
+
+    @Test
+    public void testGETOperation() throws Exception {
+        TestAsyncRESTWorkItemHandler handler = new TestAsyncRESTWorkItemHandler();
+
+        WorkItemImpl workItem = new WorkItemImpl();
+        workItem.setId(1);
+        workItem.setParameter("Url",
+                              serverURL);
+        workItem.setParameter("Method",
+                              "GET");
+
+        handler.executeWorkItem(workItem,
+                                new TestWorkItemManager());
+        handler.await();
+
+        Map<String, Object> results = handler.manager.getResults(workItem.getId());
+        assertNotNull("results cannot be null",
+                      results);
+        assertEquals("Hello from REST",
+                     results.get("Result"));
+        assertEquals(200,
+                     results.get("Status"));
+        assertTrue(handler.manager.getAbortedWorkItems().isEmpty());
+    }
+
+    @Test
+    public void testHandleErrorOnNotSuccessfulResponse() throws Exception {
+        TestAsyncRESTWorkItemHandler handler = new TestAsyncRESTWorkItemHandler();
+
+        WorkItemImpl workItem = new WorkItemImpl();
+        workItem.setId(2);
+        workItem.setParameter("Url",
+                              serverURL + "/notexisting");
+        workItem.setParameter("Method",
+                              "GET");
+        workItem.setParameter("HandleResponseErrors",
+                              "true");
+
+        handler.executeWorkItem(workItem,
+                                new TestWorkItemManager());
+        handler.await();
+
+        // error response is not retried and as there is no error handling in the process work item is aborted
+        assertNull(handler.manager.getResults(workItem.getId()));
+        assertEquals(1,
+                     handler.manager.getAbortedWorkItems().size());
+        assertEquals(workItem.getId(),
+                     handler.manager.getAbortedWorkItems().get(0).longValue());
+    }
+
+    @Test
+    public void testNotSuccessfulResponseCompletesWorkItem() throws Exception {
+        TestAsyncRESTWorkItemHandler handler = new TestAsyncRESTWorkItemHandler();
+
+        WorkItemImpl workItem = new WorkItemImpl();
+        workItem.setId(3);
+        workItem.setParameter("Url",
+                              serverURL + "/notexisting");
+        workItem.setParameter("Method",
+                              "GET");
+
+        handler.executeWorkItem(workItem,
+                                new TestWorkItemManager());
+        handler.await();
+
+        Map<String, Object> results = handler.manager.getResults(workItem.getId());
+        assertNotNull(results);
+        assertEquals(405,
+                     results.get("Status"));
+    }
+
+    @Test
+    public void testReadTimeoutRetriedThenAborted() throws Exception {
+        TestAsyncRESTWorkItemHandler handler = new TestAsyncRESTWorkItemHandler();
+        handler.setRetries(1);
+        handler.setRetryDelay(10);
+        TestRESTResource.delayedCalls.set(0);
+
+        WorkItemImpl workItem = new WorkItemImpl();
+        workItem.setId(4);
+        workItem.setParameter("Url",
+                              serverURL + "/delayed?delay=2000");
+        workItem.setParameter("Method",
+                              "GET");
+        workItem.setParameter("ReadTimeout",
+                              "200");
+
+        long start = System.currentTimeMillis();
+        handler.executeWorkItem(workItem,
+                                new TestWorkItemManager());
+        handler.await();
+
+        assertTrue("read timeout from work item parameters was not applied",
+                   System.currentTimeMillis() - start < 2000);
+        assertEquals(2,
+                     TestRESTResource.delayedCalls.get());
+        assertNull(handler.manager.getResults(workItem.getId()));
+        assertEquals(1,
+                     handler.manager.getAbortedWorkItems().size());
+    }
+
+    @Test
+    public void testReadTimeoutOfPOSTNotRetried() throws Exception {
+        TestAsyncRESTWorkItemHandler handler = new TestAsyncRESTWorkItemHandler();
+        handler.setRetries(3);
+        handler.setRetryDelay(10);
+        TestRESTResource.delayedCalls.set(0);
+
+        WorkItemImpl workItem = new WorkItemImpl();
+        workItem.setId(6);
+        workItem.setParameter("Url",
+                              serverURL + "/delayed?delay=2000");
+        workItem.setParameter("Method",
+                              "POST");
+        workItem.setParameter("ContentType",
+                              "text/plain");
+        workItem.setParameter("Content",
+                              "data");
+        workItem.setParameter("ReadTimeout",
+                              "200");
+
+        handler.executeWorkItem(workItem,
+                                new TestWorkItemManager());
+        handler.await();
+
+        // service might have processed the request already so it is not sent again
+        assertEquals(1,
+                     TestRESTResource.delayedCalls.get());
+        assertNull(handler.manager.getResults(workItem.getId()));
+        assertEquals(1,
+                     handler.manager.getAbortedWorkItems().size());
+    }
+
+    @Test
+    public void testDefaultReadTimeoutOfHandler() throws Exception {
+        TestAsyncRESTWorkItemHandler handler = new TestAsyncRESTWorkItemHandler(60000,
+                                                                                200);
+        handler.setRetries(0);
+
+        WorkItemImpl workItem = new WorkItemImpl();
+        workItem.setId(5);
+        workItem.setParameter("Url",
+                              serverURL + "/delayed?delay=2000");
+        workItem.setParameter("Method",
+                              "GET");
+
+        handler.executeWorkItem(workItem,
+                                new TestWorkItemManager());
+        handler.await();
+
+        assertEquals(1,
+                     handler.manager.getAbortedWorkItems().size());
+    }
+
+    /*
+     * completes and aborts work items on test work item manager instead of the session of the process instance
+     */
+    private static class TestAsyncRESTWorkItemHandler extends AsyncRESTWorkItemHandler {
+
+        private final TestWorkItemManager manager = new TestWorkItemManager();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        TestAsyncRESTWorkItemHandler() {
+            super(null);
+        }
+
+        TestAsyncRESTWorkItemHandler(int connectTimeout,
+                                     int readTimeout) {
+            super(null,
+                  10,
+                  2,
+                  connectTimeout,
+                  readTimeout);
+        }
+
+        @Override
+        protected void completeWorkItem(String deploymentId,
+                                        long processInstanceId,
+                                        long workItemId,
+                                        Map<String, Object> results) {
+            synchronized (manager) {
+                manager.completeWorkItem(workItemId,
+                                         results);
+            }
+            done.countDown();
+        }
+
+        @Override
+        protected void abortWorkItem(String deploymentId,
+                                     long processInstanceId,
+                                     long workItemId) {
+            synchronized (manager) {
+                manager.abortWorkItem(workItemId);
+            }
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("work item was not completed nor aborted",
+                       done.await(10,
+                                  TimeUnit.SECONDS));
+        }
+    }
+}
@@ -118,6 +118,45 @@ public class RestWorkItemHandlerTest {
                      responseMsg);
     }
 
+    @Test
+    public void testGETOperationWithPooledClient() {
+        RESTWorkItemHandler handler = new RESTWorkItemHandler(10,
+                                                              2,
+                                                              60000,
+                                                              60000,
+                                                              30);
+
+        for (int i = 0; i < 3; i++) {
+            WorkItemImpl workItem = new WorkItemImpl();
+            workItem.setId(i);
+            workItem.setParameter("Url",
+                                  serverURL);
+            workItem.setParameter("Method",
+                                  "GET");
+
+            WorkItemManager manager = new TestWorkItemManager();
+            handler.executeWorkItem(workItem,
+                                    manager);
+
+            Map<String, Object> results = ((TestWorkItemManager) manager).getResults(workItem.getId());
+            assertNotNull("results cannot be null", results);
+            assertEquals("Hello from REST",
+                         results.get("Result"));
+            assertEquals(200,
+                         results.get("Status"));
+        }
+        if (httpClient43) {
+            // connection is kept alive and returned to the pool for reuse
+            HttpClientPool pool = HttpClientPool.get(10,
+                                                     2,
+                                                     30);
+            assertEquals(0,
+                         pool.getConnectionManager().getTotalStats().getLeased());
+            assertEquals(1,
+                         pool.getConnectionManager().getTotalStats().getAvailable());
+        }
+    }
+
     @Test
     public void testGETOperationWithJSONHeader() {
         RESTWorkItemHandler handler = new RESTWorkItemHandler();
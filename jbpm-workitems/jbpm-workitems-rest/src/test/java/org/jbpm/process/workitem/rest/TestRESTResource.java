@@ -16,6 +16,8 @@
 
 package org.jbpm.process.workitem.rest;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
@@ -29,6 +31,8 @@ import javax.ws.rs.QueryParam;
 @Path("/test")
 public class TestRESTResource {
 
+    static final AtomicInteger delayedCalls = new AtomicInteger();
+
     @GET
     @Produces("text/plain")
     public String get(@QueryParam("param") String param) {
@@ -115,4 +119,23 @@ public class TestRESTResource {
 
         return "{\"name\":\"Person Json\"}";
     }
+
+    @GET
+    @Path("/delayed")
+    @Produces("text/plain")
+    public String getDelayed(@QueryParam("delay") long delay) throws InterruptedException {
+        delayedCalls.incrementAndGet();
+        Thread.sleep(delay);
+        return "Hello from REST after " + delay;
+    }
+
+    @POST
+    @Path("/delayed")
+    @Consumes("text/plain")
+    @Produces("text/plain")
+    public String postDelayed(@QueryParam("delay") long delay) throws InterruptedException {
+        delayedCalls.incrementAndGet();
+        Thread.sleep(delay);
+        return "Created after " + delay;
+    }
 }